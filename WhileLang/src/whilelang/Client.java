@@ -0,0 +1,82 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+
+/**
+ * A thin client for the compile <code>Server</code>, which accepts the same
+ * command-line arguments as <code>Main</code>. These are forwarded to the
+ * server, and its output and exit status are reproduced here as the server
+ * produces them. If no server is running, or its token file cannot be read,
+ * then the arguments are executed locally instead. The port can be given
+ * with the <code>wlc.port</code> system property.
+ *
+ * @author agent
+ *
+ */
+public class Client {
+
+	public static void main(String[] args) throws IOException {
+		int port = Integer.getInteger("wlc.port", Server.DEFAULT_PORT);
+		byte[] token;
+		Socket socket;
+		try {
+			token = Files.readAllBytes(Server.tokenFile(port).toPath());
+			socket = new Socket(InetAddress.getByName(null), port);
+		} catch (IOException e) {
+			System.exit(Main.run(args) ? 0 : 1);
+			return;
+		}
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(socket.getOutputStream()));
+			out.write(token);
+			out.writeUTF(new File("").getAbsolutePath());
+			out.writeInt(args.length);
+			for (String arg : args) {
+				out.writeUTF(arg);
+			}
+			out.flush();
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					socket.getInputStream()));
+			int kind;
+			while ((kind = in.readByte()) != Server.EXIT) {
+				PrintStream stream = kind == Server.STDOUT ? System.out
+						: System.err;
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				stream.write(bytes);
+				stream.flush();
+			}
+			System.exit(in.readInt());
+		} catch (EOFException e) {
+			// The server rejected the request (e.g. because the token was
+			// out of date) or has exited.
+			System.err.println("Error: connection closed by server");
+			System.exit(1);
+		} finally {
+			socket.close();
+		}
+	}
+}
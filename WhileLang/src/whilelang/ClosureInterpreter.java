@@ -0,0 +1,1525 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang;
+
+import static whilelang.util.SyntaxError.internalFailure;
+
+import java.util.*;
+
+import whilelang.lang.*;
+import whilelang.runtime.Output;
+import whilelang.util.Attribute;
+import whilelang.util.Pair;
+import whilelang.util.SlotResolver;
+
+/**
+ * <p>
+ * An interpreter for WhileLang programs which, rather than walking the
+ * Abstract Syntax Tree directly, first compiles each function into a tree of
+ * executable nodes. Every node is specific to the kind of statement or
+ * expression it was compiled from, and has all of its operands resolved in
+ * advance. For example, variables are resolved to the slots in an
+ * <code>Object[]</code> stack frame (as determined by the
+ * <code>SlotResolver</code>) and invocations are resolved to the function they
+ * call. Thus, no type dispatch or name lookup is required during execution.
+ * </p>
+ *
+ * <p>
+ * The semantics of this interpreter are identical to the reference
+ * <code>Interpreter</code>, which remains the definitive implementation of the
+ * language.
+ * </p>
+ *
+ * @author agent
+ *
+ */
+public class ClosureInterpreter {
+	private WhileFile file;
+	private HashMap<String, Function> functions;
+
+	/**
+	 * The function currently being compiled, whose return type determines
+	 * whether returned values must be converted.
+	 */
+	private WhileFile.FunDecl function;
+
+	/**
+	 * The value of every constant referred to so far, indexed by name. Each is
+	 * evaluated once, when the first reference to it is compiled, and is
+	 * shared so that it is never modified in place.
+	 */
+	private HashMap<String, Object> constants;
+
+	public void run(WhileFile wf) {
+		this.file = wf;
+		new SlotResolver().resolve(wf);
+		constants = new HashMap<String, Object>();
+
+		// First, create an (as yet uncompiled) function for each declaration.
+		// This allows invocations to be resolved directly to the function they
+		// call, even for recursive or forward calls.
+		functions = new HashMap<String, Function>();
+		for (WhileFile.Decl decl : wf.declarations) {
+			if (decl instanceof WhileFile.FunDecl) {
+				WhileFile.FunDecl fd = (WhileFile.FunDecl) decl;
+				functions.put(fd.name(), new Function(fd));
+			}
+		}
+
+		// Second, compile the body of every function.
+		for (Function f : functions.values()) {
+			function = f.declaration;
+			f.body = compile(f.declaration.statements);
+		}
+
+		// Third, pick the main method (if one exits) and execute it
+		Function main = functions.get("main");
+		if (main != null) {
+			try {
+				main.invoke(new Object[0]);
+			} finally {
+				Output.flush();
+			}
+		} else {
+			System.out.println("Cannot find a main() function");
+		}
+	}
+
+	// =========================================================================
+	// Compilation
+	// =========================================================================
+
+	private StmtNode[] compile(List<Stmt> block) {
+		StmtNode[] nodes = new StmtNode[block.size()];
+		for (int i = 0; i != nodes.length; ++i) {
+			nodes[i] = compile(block.get(i));
+		}
+		return nodes;
+	}
+
+	private StmtNode compile(Stmt stmt) {
+		if (stmt instanceof Stmt.Assign) {
+			return compile((Stmt.Assign) stmt);
+		} else if (stmt instanceof Stmt.For) {
+			Stmt.For s = (Stmt.For) stmt;
+			return new For(compile(s.getDeclaration()),
+					compile(s.getCondition()), compile(s.getIncrement()),
+					compile(s.getBody()));
+		} else if (stmt instanceof Stmt.While) {
+			Stmt.While s = (Stmt.While) stmt;
+			return new While(compile(s.getCondition()), compile(s.getBody()));
+		} else if (stmt instanceof Stmt.IfElse) {
+			Stmt.IfElse s = (Stmt.IfElse) stmt;
+			return new IfElse(compile(s.getCondition()),
+					compile(s.getTrueBranch()), compile(s.getFalseBranch()));
+		} else if (stmt instanceof Stmt.Return) {
+			Expr e = ((Stmt.Return) stmt).getExpr();
+			return new Return(e == null ? null : compile(e, function.ret));
+		} else if (stmt instanceof Stmt.VariableDeclaration) {
+			Stmt.VariableDeclaration s = (Stmt.VariableDeclaration) stmt;
+			Expr e = s.getExpr();
+			return new VariableDeclaration(slot(s),
+					e == null ? null : compile(e, s.getType()));
+		} else if (stmt instanceof Stmt.Print) {
+			return new Print(compile(((Stmt.Print) stmt).getExpr()));
+		} else if (stmt instanceof Expr.Invoke) {
+			return new InvokeStmt(compile((Expr.Invoke) stmt));
+		} else {
+			internalFailure("unknown statement encountered (" + stmt + ")",
+					file.filename, stmt);
+			return null;
+		}
+	}
+
+	private StmtNode compile(Stmt.Assign stmt) {
+		Expr lhs = stmt.getLhs();
+		Attribute.Type lhsType = lhs.attribute(Attribute.Type.class);
+		ExprNode rhs = lhsType == null ? compile(stmt.getRhs()) : compile(
+				stmt.getRhs(), lhsType.type);
+		if (lhs instanceof Expr.Variable) {
+			return new AssignVariable(slot(lhs), rhs);
+		}
+		ArrayList<ExprNode> path = new ArrayList<ExprNode>();
+		Expr.Variable root = compile(lhs, path);
+		return new AssignElement(slot(root),
+				path.toArray(new ExprNode[path.size()]), rhs);
+	}
+
+	/**
+	 * Compile an lval into the variable it assigns to and the path of field
+	 * names and indices from that variable to the element assigned.
+	 *
+	 * @param lval
+	 *            The lval to compile.
+	 * @param path
+	 *            The path to the element assigned, which is built up in
+	 *            left-to-right order.
+	 * @return
+	 */
+	private Expr.Variable compile(Expr lval, ArrayList<ExprNode> path) {
+		if (lval instanceof Expr.Variable) {
+			return (Expr.Variable) lval;
+		} else if (lval instanceof Expr.RecordAccess) {
+			Expr.RecordAccess ra = (Expr.RecordAccess) lval;
+			Expr.Variable root = compile(ra.getSource(), path);
+			path.add(new Constant(ra.getName()));
+			return root;
+		} else if (lval instanceof Expr.IndexOf) {
+			Expr.IndexOf io = (Expr.IndexOf) lval;
+			Expr.Variable root = compile(io.getSource(), path);
+			path.add(compile(io.getIndex()));
+			return root;
+		} else {
+			internalFailure("unknown lval encountered (" + lval + ")",
+					file.filename, lval);
+			return null;
+		}
+	}
+
+	private ExprNode compile(Expr expr) {
+		if (expr instanceof Expr.Binary) {
+			return compile((Expr.Binary) expr);
+		} else if (expr instanceof Expr.Cast) {
+			Expr.Cast e = (Expr.Cast) expr;
+			return compile(e.getSource(), e.getType());
+		} else if (expr instanceof Expr.Constant) {
+			return new Constant(((Expr.Constant) expr).getValue());
+		} else if (expr instanceof Expr.Invoke) {
+			return compile((Expr.Invoke) expr);
+		} else if (expr instanceof Expr.IndexOf) {
+			Expr.IndexOf e = (Expr.IndexOf) expr;
+			return new IndexOf(compile(e.getSource()), compile(e.getIndex()));
+		} else if (expr instanceof Expr.ListConstructor) {
+			List<Expr> es = ((Expr.ListConstructor) expr).getArguments();
+			return new ListConstructor(compileAll(es));
+		} else if (expr instanceof Expr.RecordAccess) {
+			Expr.RecordAccess e = (Expr.RecordAccess) expr;
+			return new RecordAccess(compile(e.getSource()), e.getName());
+		} else if (expr instanceof Expr.RecordConstructor) {
+			List<Pair<String, Expr>> es = ((Expr.RecordConstructor) expr)
+					.getFields();
+			String[] fields = new String[es.size()];
+			ExprNode[] values = new ExprNode[es.size()];
+			for (int i = 0; i != fields.length; ++i) {
+				fields[i] = es.get(i).first();
+				values[i] = compile(es.get(i).second());
+			}
+			return new RecordConstructor(fields, values);
+		} else if (expr instanceof Expr.Unary) {
+			return compile((Expr.Unary) expr);
+		} else if (expr instanceof Expr.Variable) {
+			Attribute.Slot slot = expr.attribute(Attribute.Slot.class);
+			if (slot == null) {
+				// Variables without a slot refer to constants (or have no
+				// value).
+				return new Constant(constant(((Expr.Variable) expr).getName()));
+			}
+			return new Variable(slot.index);
+		} else {
+			internalFailure("unknown expression encountered (" + expr + ")",
+					file.filename, expr);
+			return null;
+		}
+	}
+
+	/**
+	 * Compile an expression whose value is stored in a location of a given
+	 * type (or cast to it), converting the value if necessary. Thus, a
+	 * location of type real always holds a <code>Double</code>, and the
+	 * specialised real nodes can be used for variables of type real.
+	 */
+	private ExprNode compile(Expr expr, Type type) {
+		ExprNode node = compile(expr);
+		Attribute.Type attr = expr.attribute(Attribute.Type.class);
+		Type from = attr == null ? null : attr.type;
+		if (!Interpreter.requiresConversion(from, type, file)) {
+			return node;
+		} else if (valueType(expr) instanceof Type.Int
+				&& expand(type) instanceof Type.Real) {
+			return new IntToReal(node);
+		}
+		return new Convert(node, type, file);
+	}
+
+	/**
+	 * Get the value of a given constant, evaluating it if this has not already
+	 * been done.
+	 */
+	private Object constant(String name) {
+		Object value = constants.get(name);
+		if (value == null && !constants.containsKey(name)) {
+			// NOTE: a constant which refers to itself sees null
+			constants.put(name, null);
+			WhileFile.ConstDecl cd = file.constant(name);
+			if (cd != null) {
+				value = Interpreter.share(compile(cd.constant).evaluate(
+						new Object[0]));
+				constants.put(name, value);
+			}
+		}
+		return value;
+	}
+
+	private ExprNode[] compileAll(List<Expr> exprs) {
+		ExprNode[] nodes = new ExprNode[exprs.size()];
+		for (int i = 0; i != nodes.length; ++i) {
+			nodes[i] = compile(exprs.get(i));
+		}
+		return nodes;
+	}
+
+	private ExprNode compile(Expr.Binary expr) {
+		ExprNode lhs = compile(expr.getLhs());
+		ExprNode rhs = compile(expr.getRhs());
+		Type lhsType = valueType(expr.getLhs());
+		Type rhsType = valueType(expr.getRhs());
+
+		if (lhsType instanceof Type.Int && rhsType instanceof Type.Int) {
+			return compileInt(expr, lhs, rhs);
+		} else if (lhsType instanceof Type.Real
+				&& rhsType instanceof Type.Real) {
+			return compileReal(expr, lhs, rhs);
+		}
+
+		return compileGeneric(expr, lhs, rhs);
+	}
+
+	/**
+	 * Compile a binary expression whose operands are both known to be
+	 * integers. The resulting nodes operate on unboxed values.
+	 */
+	private ExprNode compileInt(Expr.Binary expr, ExprNode lhs, ExprNode rhs) {
+		switch (expr.getOp()) {
+		case ADD:
+			return new IntAdd(lhs, rhs);
+		case SUB:
+			return new IntSub(lhs, rhs);
+		case MUL:
+			return new IntMul(lhs, rhs);
+		case DIV:
+			return new IntDiv(lhs, rhs);
+		case REM:
+			return new IntRem(lhs, rhs);
+		case EQ:
+			return new IntEq(lhs, rhs);
+		case NEQ:
+			return new IntNeq(lhs, rhs);
+		case LT:
+			return new IntLt(lhs, rhs);
+		case LTEQ:
+			return new IntLtEq(lhs, rhs);
+		case GT:
+			return new IntGt(lhs, rhs);
+		case GTEQ:
+			return new IntGtEq(lhs, rhs);
+		default:
+			return compileGeneric(expr, lhs, rhs);
+		}
+	}
+
+	/**
+	 * Compile a binary expression whose operands are both known to be reals.
+	 * The resulting nodes operate on unboxed values. Equality is not
+	 * specialised, since <code>Double.equals()</code> differs from
+	 * <code>==</code> for <code>NaN</code> and <code>-0.0</code>.
+	 */
+	private ExprNode compileReal(Expr.Binary expr, ExprNode lhs, ExprNode rhs) {
+		switch (expr.getOp()) {
+		case ADD:
+			return new RealAdd(lhs, rhs);
+		case SUB:
+			return new RealSub(lhs, rhs);
+		case MUL:
+			return new RealMul(lhs, rhs);
+		case DIV:
+			return new RealDiv(lhs, rhs);
+		case REM:
+			return new RealRem(lhs, rhs);
+		case LT:
+			return new RealLt(lhs, rhs);
+		case LTEQ:
+			return new RealLtEq(lhs, rhs);
+		case GT:
+			return new RealGt(lhs, rhs);
+		case GTEQ:
+			return new RealGtEq(lhs, rhs);
+		default:
+			return compileGeneric(expr, lhs, rhs);
+		}
+	}
+
+	private ExprNode compileGeneric(Expr.Binary expr, ExprNode lhs,
+			ExprNode rhs) {
+		switch (expr.getOp()) {
+		case AND:
+			return new And(lhs, rhs);
+		case OR:
+			return new Or(lhs, rhs);
+		case ADD:
+			return new Add(lhs, rhs);
+		case SUB:
+			return new Sub(lhs, rhs);
+		case MUL:
+			return new Mul(lhs, rhs);
+		case DIV:
+			return new Div(lhs, rhs);
+		case REM:
+			return new Rem(lhs, rhs);
+		case EQ:
+			return new Eq(lhs, rhs);
+		case NEQ:
+			return new Neq(lhs, rhs);
+		case LT:
+			return new Lt(lhs, rhs);
+		case LTEQ:
+			return new LtEq(lhs, rhs);
+		case GT:
+			return new Gt(lhs, rhs);
+		case GTEQ:
+			return new GtEq(lhs, rhs);
+		case APPEND:
+			return new Append(lhs, rhs);
+		}
+
+		internalFailure("unknown binary expression encountered (" + expr + ")",
+				file.filename, expr);
+		return null;
+	}
+
+	private ExprNode compile(Expr.Unary expr) {
+		ExprNode operand = compile(expr.getExpr());
+		switch (expr.getOp()) {
+		case NOT:
+			return new Not(operand);
+		case NEG:
+			Type type = valueType(expr.getExpr());
+			if (type instanceof Type.Int) {
+				return new IntNeg(operand);
+			} else if (type instanceof Type.Real) {
+				return new RealNeg(operand);
+			}
+			return new Neg(operand);
+		case LENGTHOF:
+			return new LengthOf(operand);
+		}
+
+		internalFailure("unknown unary expression encountered (" + expr + ")",
+				file.filename, expr);
+		return null;
+	}
+
+	private Invoke compile(Expr.Invoke expr) {
+		Function function = functions.get(expr.getName());
+		if (function == null) {
+			internalFailure("unknown function encountered (" + expr.getName()
+					+ ")", file.filename, expr);
+		}
+		List<Expr> arguments = expr.getArguments();
+		List<WhileFile.Parameter> parameters = function.declaration.parameters;
+		ExprNode[] nodes = new ExprNode[arguments.size()];
+		for (int i = 0; i != nodes.length; ++i) {
+			nodes[i] = i < parameters.size() ? compile(arguments.get(i),
+					parameters.get(i).type) : compile(arguments.get(i));
+		}
+		return new Invoke(function, nodes);
+	}
+
+	/**
+	 * Determine the type of value an expression will evaluate to, based on the
+	 * type attribute attached by the <code>TypeChecker</code>. Since casts have
+	 * no effect on the values being cast (unless they convert them), the type
+	 * is taken from the innermost cast operand which is not converted. Named
+	 * types are expanded.
+	 *
+	 * @return The type, or <code>null</code> if it is not known.
+	 */
+	private Type valueType(Expr expr) {
+		while (expr instanceof Expr.Cast) {
+			Expr.Cast cast = (Expr.Cast) expr;
+			Attribute.Type attr = cast.getSource().attribute(
+					Attribute.Type.class);
+			if (Interpreter.requiresConversion(attr == null ? null : attr.type,
+					cast.getType(), file)) {
+				break;
+			}
+			expr = cast.getSource();
+		}
+		Attribute.Type attr = expr.attribute(Attribute.Type.class);
+		if (attr == null) {
+			return null;
+		}
+		return expand(attr.type);
+	}
+
+	/**
+	 * Expand a named type into the type it is declared as.
+	 *
+	 * @return The type, or <code>null</code> if it is not declared.
+	 */
+	private Type expand(Type type) {
+		// NOTE: the iteration bound protects against cyclic type declarations
+		for (int i = 0; type instanceof Type.Named
+				&& i != file.declarations.size(); ++i) {
+			WhileFile.TypeDecl td = file.type(((Type.Named) type).getName());
+			if (td == null) {
+				return null;
+			}
+			type = td.type;
+		}
+		return type;
+	}
+
+	private int slot(whilelang.util.SyntacticElement element) {
+		Attribute.Slot slot = element.attribute(Attribute.Slot.class);
+		if (slot == null) {
+			internalFailure("unresolved variable encountered (" + element
+					+ ")", file.filename, element);
+		}
+		return slot.index;
+	}
+
+	// =========================================================================
+	// Functions
+	// =========================================================================
+
+	/**
+	 * A compiled function, whose body is executed in a fresh stack frame for
+	 * each invocation.
+	 *
+	 * @author agent
+	 *
+	 */
+	private static final class Function {
+		private final WhileFile.FunDecl declaration;
+		private final int frameSize;
+		private StmtNode[] body;
+
+		public Function(WhileFile.FunDecl declaration) {
+			this.declaration = declaration;
+			this.frameSize = declaration.attribute(Attribute.FrameSize.class).size;
+		}
+
+		public Object invoke(Object[] arguments) {
+			// First, sanity check the number of arguments
+			if (declaration.parameters.size() != arguments.length) {
+				throw new RuntimeException(
+						"invalid number of arguments supplied to execution of function \""
+								+ declaration.name + "\"");
+			}
+			// Second, construct the stack frame. Parameters occupy the first
+			// slots.
+			Object[] frame = new Object[frameSize];
+			System.arraycopy(arguments, 0, frame, 0, arguments.length);
+			// Third, execute the function body!
+			return execute(body, frame);
+		}
+	}
+
+	// =========================================================================
+	// Statements
+	// =========================================================================
+
+	/**
+	 * Execute a block of statements in a given stack frame.
+	 *
+	 * @return The return value if a return statement was executed, or
+	 *         <code>null</code> otherwise.
+	 */
+	private static Object execute(StmtNode[] block, Object[] frame) {
+		for (int i = 0; i != block.length; ++i) {
+			Object r = block[i].execute(frame);
+			if (r != null) {
+				return r;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A compiled statement. Executing a statement returns a non-null value
+	 * only when the enclosing function should return (with that value).
+	 *
+	 * @author agent
+	 *
+	 */
+	private static abstract class StmtNode {
+		public abstract Object execute(Object[] frame);
+	}
+
+	private static final class AssignVariable extends StmtNode {
+		private final int slot;
+		private final ExprNode rhs;
+
+		public AssignVariable(int slot, ExprNode rhs) {
+			this.slot = slot;
+			this.rhs = rhs;
+		}
+
+		public Object execute(Object[] frame) {
+			// We need to mark the value as shared here to ensure the value
+			// semantics used in While are preserved.
+			frame[slot] = Interpreter.share(rhs.evaluate(frame));
+			return null;
+		}
+	}
+
+	private static final class AssignElement extends StmtNode {
+		private final int slot;
+		private final ExprNode[] path;
+		private final ExprNode rhs;
+
+		public AssignElement(int slot, ExprNode[] path, ExprNode rhs) {
+			this.slot = slot;
+			this.path = path;
+			this.rhs = rhs;
+		}
+
+		public Object execute(Object[] frame) {
+			Object[] keys = new Object[path.length];
+			for (int i = 0; i != keys.length; ++i) {
+				keys[i] = path[i].evaluate(frame);
+			}
+			Object value = rhs.evaluate(frame);
+			// Any shared values along the path are copied, which ensures the
+			// value semantics used in While are preserved.
+			frame[slot] = Interpreter.update(frame[slot], keys, 0, value);
+			return null;
+		}
+	}
+
+	private static final class For extends StmtNode {
+		private final StmtNode declaration;
+		private final ExprNode condition;
+		private final StmtNode increment;
+		private final StmtNode[] body;
+
+		public For(StmtNode declaration, ExprNode condition,
+				StmtNode increment, StmtNode[] body) {
+			this.declaration = declaration;
+			this.condition = condition;
+			this.increment = increment;
+			this.body = body;
+		}
+
+		public Object execute(Object[] frame) {
+			declaration.execute(frame);
+			while (condition.evaluateBool(frame)) {
+				Object ret = ClosureInterpreter.execute(body, frame);
+				if (ret != null) {
+					return ret;
+				}
+				increment.execute(frame);
+			}
+			return null;
+		}
+	}
+
+	private static final class While extends StmtNode {
+		private final ExprNode condition;
+		private final StmtNode[] body;
+
+		public While(ExprNode condition, StmtNode[] body) {
+			this.condition = condition;
+			this.body = body;
+		}
+
+		public Object execute(Object[] frame) {
+			while (condition.evaluateBool(frame)) {
+				Object ret = ClosureInterpreter.execute(body, frame);
+				if (ret != null) {
+					return ret;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static final class IfElse extends StmtNode {
+		private final ExprNode condition;
+		private final StmtNode[] trueBranch;
+		private final StmtNode[] falseBranch;
+
+		public IfElse(ExprNode condition, StmtNode[] trueBranch,
+				StmtNode[] falseBranch) {
+			this.condition = condition;
+			this.trueBranch = trueBranch;
+			this.falseBranch = falseBranch;
+		}
+
+		public Object execute(Object[] frame) {
+			if (condition.evaluateBool(frame)) {
+				return ClosureInterpreter.execute(trueBranch, frame);
+			} else {
+				return ClosureInterpreter.execute(falseBranch, frame);
+			}
+		}
+	}
+
+	private static final class Return extends StmtNode {
+		private final ExprNode expr;
+
+		public Return(ExprNode expr) {
+			this.expr = expr;
+		}
+
+		public Object execute(Object[] frame) {
+			if (expr != null) {
+				return expr.evaluate(frame);
+			} else {
+				return Collections.EMPTY_SET; // used to indicate a function has returned
+			}
+		}
+	}
+
+	private static final class VariableDeclaration extends StmtNode {
+		private final int slot;
+		private final ExprNode expr;
+
+		public VariableDeclaration(int slot, ExprNode expr) {
+			this.slot = slot;
+			this.expr = expr;
+		}
+
+		public Object execute(Object[] frame) {
+			if (expr != null) {
+				frame[slot] = Interpreter.share(expr.evaluate(frame));
+			} else {
+				frame[slot] = Collections.EMPTY_SET; // used to indicate a
+														// variable has been
+														// declared
+			}
+			return null;
+		}
+	}
+
+	private static final class Print extends StmtNode {
+		private final ExprNode expr;
+
+		public Print(ExprNode expr) {
+			this.expr = expr;
+		}
+
+		public Object execute(Object[] frame) {
+			Output.println(Interpreter.toString(expr.evaluate(frame)));
+			return null;
+		}
+	}
+
+	private static final class InvokeStmt extends StmtNode {
+		private final Invoke invoke;
+
+		public InvokeStmt(Invoke invoke) {
+			this.invoke = invoke;
+		}
+
+		public Object execute(Object[] frame) {
+			return invoke.evaluate(frame);
+		}
+	}
+
+	// =========================================================================
+	// Expressions
+	// =========================================================================
+
+	/**
+	 * A compiled expression, which evaluates to a value in a given stack
+	 * frame.
+	 *
+	 * @author agent
+	 *
+	 */
+	private static abstract class ExprNode {
+		public abstract Object evaluate(Object[] frame);
+
+		/**
+		 * Evaluate an expression which is known to produce an integer. Nodes
+		 * which can do so without boxing override this.
+		 */
+		public int evaluateInt(Object[] frame) {
+			return (Integer) evaluate(frame);
+		}
+
+		/**
+		 * Evaluate an expression which is known to produce a real. Nodes which
+		 * can do so without boxing override this.
+		 */
+		public double evaluateReal(Object[] frame) {
+			return (Double) evaluate(frame);
+		}
+
+		/**
+		 * Evaluate an expression which is known to produce a boolean. Nodes
+		 * which can do so without boxing override this.
+		 */
+		public boolean evaluateBool(Object[] frame) {
+			return (Boolean) evaluate(frame);
+		}
+	}
+
+	private static final class Constant extends ExprNode {
+		private final Object value;
+
+		public Constant(Object value) {
+			this.value = value;
+		}
+
+		public Object evaluate(Object[] frame) {
+			return value;
+		}
+	}
+
+	private static final class Variable extends ExprNode {
+		private final int slot;
+
+		public Variable(int slot) {
+			this.slot = slot;
+		}
+
+		public Object evaluate(Object[] frame) {
+			return frame[slot];
+		}
+	}
+
+	private static final class Convert extends ExprNode {
+		private final ExprNode operand;
+		private final Type type;
+		private final WhileFile file;
+
+		public Convert(ExprNode operand, Type type, WhileFile file) {
+			this.operand = operand;
+			this.type = type;
+			this.file = file;
+		}
+
+		public Object evaluate(Object[] frame) {
+			return Interpreter.convert(operand.evaluate(frame), type, file);
+		}
+	}
+
+	private static final class Invoke extends ExprNode {
+		private final Function function;
+		private final ExprNode[] arguments;
+
+		public Invoke(Function function, ExprNode[] arguments) {
+			this.function = function;
+			this.arguments = arguments;
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object[] values = new Object[arguments.length];
+			for (int i = 0; i != values.length; ++i) {
+				// We need to mark the value as shared here to ensure the value
+				// semantics used in While are preserved.
+				values[i] = Interpreter.share(arguments[i].evaluate(frame));
+			}
+			return function.invoke(values);
+		}
+	}
+
+	private static final class IndexOf extends ExprNode {
+		private final ExprNode source;
+		private final ExprNode index;
+
+		public IndexOf(ExprNode source, ExprNode index) {
+			this.source = source;
+			this.index = index;
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object src = source.evaluate(frame);
+			int idx = index.evaluateInt(frame);
+			if (src instanceof String) {
+				return ((String) src).charAt(idx);
+			} else {
+				return ((List<?>) src).get(idx);
+			}
+		}
+	}
+
+	private static final class ListConstructor extends ExprNode {
+		private final ExprNode[] elements;
+
+		public ListConstructor(ExprNode[] elements) {
+			this.elements = elements;
+		}
+
+		public Object evaluate(Object[] frame) {
+			Value.List ls = new Value.List(elements.length);
+			for (int i = 0; i != elements.length; ++i) {
+				ls.add(Interpreter.share(elements[i].evaluate(frame)));
+			}
+			return ls;
+		}
+	}
+
+	private static final class RecordAccess extends ExprNode {
+		private final ExprNode source;
+		private final String field;
+
+		public RecordAccess(ExprNode source, String field) {
+			this.source = source;
+			this.field = field;
+		}
+
+		public Object evaluate(Object[] frame) {
+			return ((Map<?, ?>) source.evaluate(frame)).get(field);
+		}
+	}
+
+	private static final class RecordConstructor extends ExprNode {
+		private final String[] fields;
+		private final ExprNode[] values;
+
+		public RecordConstructor(String[] fields, ExprNode[] values) {
+			this.fields = fields;
+			this.values = values;
+		}
+
+		public Object evaluate(Object[] frame) {
+			Value.Record rs = new Value.Record();
+			for (int i = 0; i != fields.length; ++i) {
+				rs.put(fields[i], Interpreter.share(values[i].evaluate(frame)));
+			}
+			return rs;
+		}
+	}
+
+	private static final class Not extends ExprNode {
+		private final ExprNode operand;
+
+		public Not(ExprNode operand) {
+			this.operand = operand;
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateBool(frame);
+		}
+
+		public boolean evaluateBool(Object[] frame) {
+			return !operand.evaluateBool(frame);
+		}
+	}
+
+	private static final class Neg extends ExprNode {
+		private final ExprNode operand;
+
+		public Neg(ExprNode operand) {
+			this.operand = operand;
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object value = operand.evaluate(frame);
+			if (value instanceof Double) {
+				return -((Double) value);
+			} else {
+				return -((Integer) value);
+			}
+		}
+	}
+
+	private static final class LengthOf extends ExprNode {
+		private final ExprNode operand;
+
+		public LengthOf(ExprNode operand) {
+			this.operand = operand;
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateInt(frame);
+		}
+
+		public int evaluateInt(Object[] frame) {
+			Object value = operand.evaluate(frame);
+			if (value instanceof String) {
+				return ((String) value).length();
+			} else {
+				return ((List<?>) value).size();
+			}
+		}
+	}
+
+	/**
+	 * A compiled binary expression, whose operands are both compiled
+	 * expressions.
+	 *
+	 * @author agent
+	 *
+	 */
+	private static abstract class BinaryNode extends ExprNode {
+		protected final ExprNode lhs;
+		protected final ExprNode rhs;
+
+		public BinaryNode(ExprNode lhs, ExprNode rhs) {
+			this.lhs = lhs;
+			this.rhs = rhs;
+		}
+	}
+
+	private static final class And extends BinaryNode {
+		public And(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateBool(frame);
+		}
+
+		public boolean evaluateBool(Object[] frame) {
+			return lhs.evaluateBool(frame) && rhs.evaluateBool(frame);
+		}
+	}
+
+	private static final class Or extends BinaryNode {
+		public Or(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateBool(frame);
+		}
+
+		public boolean evaluateBool(Object[] frame) {
+			return lhs.evaluateBool(frame) || rhs.evaluateBool(frame);
+		}
+	}
+
+	private static final class Add extends BinaryNode {
+		public Add(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object l = lhs.evaluate(frame);
+			Object r = rhs.evaluate(frame);
+			if (l instanceof Integer) {
+				return ((Integer) l) + ((Integer) r);
+			} else {
+				return ((Double) l) + ((Double) r);
+			}
+		}
+	}
+
+	private static final class Sub extends BinaryNode {
+		public Sub(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object l = lhs.evaluate(frame);
+			Object r = rhs.evaluate(frame);
+			if (l instanceof Integer) {
+				return ((Integer) l) - ((Integer) r);
+			} else {
+				return ((Double) l) - ((Double) r);
+			}
+		}
+	}
+
+	private static final class Mul extends BinaryNode {
+		public Mul(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object l = lhs.evaluate(frame);
+			Object r = rhs.evaluate(frame);
+			if (l instanceof Integer) {
+				return ((Integer) l) * ((Integer) r);
+			} else {
+				return ((Double) l) * ((Double) r);
+			}
+		}
+	}
+
+	private static final class Div extends BinaryNode {
+		public Div(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object l = lhs.evaluate(frame);
+			Object r = rhs.evaluate(frame);
+			if (l instanceof Integer) {
+				return ((Integer) l) / ((Integer) r);
+			} else {
+				return ((Double) l) / ((Double) r);
+			}
+		}
+	}
+
+	private static final class Rem extends BinaryNode {
+		public Rem(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object l = lhs.evaluate(frame);
+			Object r = rhs.evaluate(frame);
+			if (l instanceof Integer) {
+				return ((Integer) l) % ((Integer) r);
+			} else {
+				return ((Double) l) % ((Double) r);
+			}
+		}
+	}
+
+	private static final class Eq extends BinaryNode {
+		public Eq(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object l = lhs.evaluate(frame);
+			Object r = rhs.evaluate(frame);
+			return l.equals(r);
+		}
+	}
+
+	private static final class Neq extends BinaryNode {
+		public Neq(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object l = lhs.evaluate(frame);
+			Object r = rhs.evaluate(frame);
+			return !l.equals(r);
+		}
+	}
+
+	private static final class Lt extends BinaryNode {
+		public Lt(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object l = lhs.evaluate(frame);
+			Object r = rhs.evaluate(frame);
+			if (l instanceof Integer) {
+				return ((Integer) l) < ((Integer) r);
+			} else {
+				return ((Double) l) < ((Double) r);
+			}
+		}
+	}
+
+	private static final class LtEq extends BinaryNode {
+		public LtEq(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object l = lhs.evaluate(frame);
+			Object r = rhs.evaluate(frame);
+			if (l instanceof Integer) {
+				return ((Integer) l) <= ((Integer) r);
+			} else {
+				return ((Double) l) <= ((Double) r);
+			}
+		}
+	}
+
+	private static final class Gt extends BinaryNode {
+		public Gt(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object l = lhs.evaluate(frame);
+			Object r = rhs.evaluate(frame);
+			if (l instanceof Integer) {
+				return ((Integer) l) > ((Integer) r);
+			} else {
+				return ((Double) l) > ((Double) r);
+			}
+		}
+	}
+
+	private static final class GtEq extends BinaryNode {
+		public GtEq(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object l = lhs.evaluate(frame);
+			Object r = rhs.evaluate(frame);
+			if (l instanceof Integer) {
+				return ((Integer) l) >= ((Integer) r);
+			} else {
+				return ((Double) l) >= ((Double) r);
+			}
+		}
+	}
+
+	private static final class Append extends BinaryNode {
+		public Append(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			Object l = lhs.evaluate(frame);
+			Object r = rhs.evaluate(frame);
+			if (l instanceof String && r instanceof String) {
+				return ((String) l) + ((String) r);
+			} else if (l instanceof String) {
+				return ((String) l) + Interpreter.toString(r);
+			} else if (r instanceof String) {
+				return Interpreter.toString(l) + ((String) r);
+			} else {
+				return Interpreter.append((List<?>) l, (List<?>) r);
+			}
+		}
+	}
+
+	// =========================================================================
+	// Integer Expressions
+	// =========================================================================
+
+	private static final class IntNeg extends ExprNode {
+		private final ExprNode operand;
+
+		public IntNeg(ExprNode operand) {
+			this.operand = operand;
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateInt(frame);
+		}
+
+		public int evaluateInt(Object[] frame) {
+			return -operand.evaluateInt(frame);
+		}
+	}
+
+	private static final class IntAdd extends BinaryNode {
+		public IntAdd(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateInt(frame);
+		}
+
+		public int evaluateInt(Object[] frame) {
+			return lhs.evaluateInt(frame) + rhs.evaluateInt(frame);
+		}
+	}
+
+	private static final class IntSub extends BinaryNode {
+		public IntSub(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateInt(frame);
+		}
+
+		public int evaluateInt(Object[] frame) {
+			return lhs.evaluateInt(frame) - rhs.evaluateInt(frame);
+		}
+	}
+
+	private static final class IntMul extends BinaryNode {
+		public IntMul(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateInt(frame);
+		}
+
+		public int evaluateInt(Object[] frame) {
+			return lhs.evaluateInt(frame) * rhs.evaluateInt(frame);
+		}
+	}
+
+	private static final class IntDiv extends BinaryNode {
+		public IntDiv(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateInt(frame);
+		}
+
+		public int evaluateInt(Object[] frame) {
+			return lhs.evaluateInt(frame) / rhs.evaluateInt(frame);
+		}
+	}
+
+	private static final class IntRem extends BinaryNode {
+		public IntRem(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateInt(frame);
+		}
+
+		public int evaluateInt(Object[] frame) {
+			return lhs.evaluateInt(frame) % rhs.evaluateInt(frame);
+		}
+	}
+
+	private static final class IntEq extends BinaryNode {
+		public IntEq(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateBool(frame);
+		}
+
+		public boolean evaluateBool(Object[] frame) {
+			return lhs.evaluateInt(frame) == rhs.evaluateInt(frame);
+		}
+	}
+
+	private static final class IntNeq extends BinaryNode {
+		public IntNeq(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateBool(frame);
+		}
+
+		public boolean evaluateBool(Object[] frame) {
+			return lhs.evaluateInt(frame) != rhs.evaluateInt(frame);
+		}
+	}
+
+	private static final class IntLt extends BinaryNode {
+		public IntLt(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateBool(frame);
+		}
+
+		public boolean evaluateBool(Object[] frame) {
+			return lhs.evaluateInt(frame) < rhs.evaluateInt(frame);
+		}
+	}
+
+	private static final class IntLtEq extends BinaryNode {
+		public IntLtEq(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateBool(frame);
+		}
+
+		public boolean evaluateBool(Object[] frame) {
+			return lhs.evaluateInt(frame) <= rhs.evaluateInt(frame);
+		}
+	}
+
+	private static final class IntGt extends BinaryNode {
+		public IntGt(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateBool(frame);
+		}
+
+		public boolean evaluateBool(Object[] frame) {
+			return lhs.evaluateInt(frame) > rhs.evaluateInt(frame);
+		}
+	}
+
+	private static final class IntGtEq extends BinaryNode {
+		public IntGtEq(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateBool(frame);
+		}
+
+		public boolean evaluateBool(Object[] frame) {
+			return lhs.evaluateInt(frame) >= rhs.evaluateInt(frame);
+		}
+	}
+
+	// =========================================================================
+	// Real Expressions
+	// =========================================================================
+
+	private static final class IntToReal extends ExprNode {
+		private final ExprNode operand;
+
+		public IntToReal(ExprNode operand) {
+			this.operand = operand;
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateReal(frame);
+		}
+
+		public double evaluateReal(Object[] frame) {
+			return operand.evaluateInt(frame);
+		}
+	}
+
+	private static final class RealNeg extends ExprNode {
+		private final ExprNode operand;
+
+		public RealNeg(ExprNode operand) {
+			this.operand = operand;
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateReal(frame);
+		}
+
+		public double evaluateReal(Object[] frame) {
+			return -operand.evaluateReal(frame);
+		}
+	}
+
+	private static final class RealAdd extends BinaryNode {
+		public RealAdd(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateReal(frame);
+		}
+
+		public double evaluateReal(Object[] frame) {
+			return lhs.evaluateReal(frame) + rhs.evaluateReal(frame);
+		}
+	}
+
+	private static final class RealSub extends BinaryNode {
+		public RealSub(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateReal(frame);
+		}
+
+		public double evaluateReal(Object[] frame) {
+			return lhs.evaluateReal(frame) - rhs.evaluateReal(frame);
+		}
+	}
+
+	private static final class RealMul extends BinaryNode {
+		public RealMul(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateReal(frame);
+		}
+
+		public double evaluateReal(Object[] frame) {
+			return lhs.evaluateReal(frame) * rhs.evaluateReal(frame);
+		}
+	}
+
+	private static final class RealDiv extends BinaryNode {
+		public RealDiv(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateReal(frame);
+		}
+
+		public double evaluateReal(Object[] frame) {
+			return lhs.evaluateReal(frame) / rhs.evaluateReal(frame);
+		}
+	}
+
+	private static final class RealRem extends BinaryNode {
+		public RealRem(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateReal(frame);
+		}
+
+		public double evaluateReal(Object[] frame) {
+			return lhs.evaluateReal(frame) % rhs.evaluateReal(frame);
+		}
+	}
+
+	private static final class RealLt extends BinaryNode {
+		public RealLt(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateBool(frame);
+		}
+
+		public boolean evaluateBool(Object[] frame) {
+			return lhs.evaluateReal(frame) < rhs.evaluateReal(frame);
+		}
+	}
+
+	private static final class RealLtEq extends BinaryNode {
+		public RealLtEq(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateBool(frame);
+		}
+
+		public boolean evaluateBool(Object[] frame) {
+			return lhs.evaluateReal(frame) <= rhs.evaluateReal(frame);
+		}
+	}
+
+	private static final class RealGt extends BinaryNode {
+		public RealGt(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateBool(frame);
+		}
+
+		public boolean evaluateBool(Object[] frame) {
+			return lhs.evaluateReal(frame) > rhs.evaluateReal(frame);
+		}
+	}
+
+	private static final class RealGtEq extends BinaryNode {
+		public RealGtEq(ExprNode lhs, ExprNode rhs) {
+			super(lhs, rhs);
+		}
+
+		public Object evaluate(Object[] frame) {
+			return evaluateBool(frame);
+		}
+
+		public boolean evaluateBool(Object[] frame) {
+			return lhs.evaluateReal(frame) >= rhs.evaluateReal(frame);
+		}
+	}
+}
@@ -19,8 +19,18 @@
 package whilelang;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
 import whilelang.lang.*;
+import whilelang.runtime.Output;
+import whilelang.util.Attribute;
 import whilelang.util.Pair;
+import whilelang.util.PurityAnalysis;
+import whilelang.util.SlotResolver;
+import whilelang.util.SyntacticElement;
 import static whilelang.util.SyntaxError.*;
 
 /**
@@ -33,22 +43,167 @@ import static whilelang.util.SyntaxError.*;
  * 
  */
 public class Interpreter {
-	private HashMap<String, WhileFile.Decl> declarations;
 	private WhileFile file;
+	private final boolean slotted;
+	
+	/**
+	 * Caches the results of previous invocations of pure functions, or is
+	 * <code>null</code> if memoisation is disabled.
+	 */
+	private final Memo memo;
+	
+	/**
+	 * The pool used to evaluate independent sub-expressions in parallel, or
+	 * <code>null</code> if parallel evaluation is disabled.
+	 */
+	private final ForkJoinPool pool;
+	
+	/**
+	 * The minimum estimated work (see <code>work()</code>) of a sub-expression
+	 * for it to be evaluated in parallel. This prevents small sub-expressions
+	 * from being forked, since the overhead would outweigh any benefit.
+	 */
+	private final int forkThreshold;
+	
+	/**
+	 * A sub-expression is not forked when the current worker already has more
+	 * than this number of queued tasks which have not been stolen, since
+	 * other workers are evidently busy. This bounds the overhead of forking
+	 * in deeply recursive functions, whose estimated work is unbounded at
+	 * every level.
+	 */
+	private static final int SURPLUS_LIMIT = 0;
+	
+	/**
+	 * Represents work which is unbounded, such as executing a loop or a
+	 * recursive function.
+	 */
+	private static final int UNBOUNDED = Integer.MAX_VALUE;
+	
+	/**
+	 * The estimated work of executing the body of each function.
+	 */
+	private HashMap<String, Integer> functionWork;
+	
+	/**
+	 * The value of every constant, indexed by name. These are evaluated once,
+	 * before execution begins, and are shared so that they are never modified
+	 * in place.
+	 */
+	private HashMap<String, Object> constants;
+	
+	/**
+	 * The estimated work of evaluating each expression considered for parallel
+	 * evaluation, or -1 if it is impure (and, hence, cannot be evaluated in
+	 * parallel). This is populated lazily by <code>work()</code>.
+	 */
+	private final ConcurrentHashMap<Expr, Integer> expressionWork = new ConcurrentHashMap<Expr, Integer>();
+	
+	/**
+	 * Construct an interpreter whose stack frames map variable names to their
+	 * values.
+	 */
+	public Interpreter() {
+		this(false);
+	}
+	
+	/**
+	 * Construct an interpreter which either uses stack frames mapping variable
+	 * names to their values or, alternatively, stack frames consisting of an
+	 * array of slots. In the latter case, variables are first resolved to
+	 * their slots using the <code>SlotResolver</code>.
+	 * 
+	 * @param slotted
+	 *            Indicates whether or not slot-indexed frames are used.
+	 */
+	public Interpreter(boolean slotted) {
+		this(slotted, 0);
+	}
+	
+	/**
+	 * Construct an interpreter which may, additionally, memoise the results of
+	 * invoking pure functions (as determined by the
+	 * <code>PurityAnalysis</code>). Thus, invoking a pure function more than
+	 * once with the same arguments executes its body only once. At most
+	 * <code>memoSize</code> results are cached, with the least recently used
+	 * being evicted first.
+	 * 
+	 * @param slotted
+	 *            Indicates whether or not slot-indexed frames are used.
+	 * @param memoSize
+	 *            The maximum number of results to cache, or zero to disable
+	 *            memoisation.
+	 */
+	public Interpreter(boolean slotted, int memoSize) {
+		this(slotted, memoSize, 0);
+	}
+	
+	/**
+	 * Construct an interpreter which may, additionally, evaluate independent
+	 * sub-expressions in parallel. Specifically, the operands of binary
+	 * expressions and the elements of list constructors are evaluated in
+	 * parallel when they invoke only pure functions, and their estimated work
+	 * is at least <code>forkThreshold</code>.
+	 * 
+	 * @param slotted
+	 *            Indicates whether or not slot-indexed frames are used.
+	 * @param memoSize
+	 *            The maximum number of results to cache, or zero to disable
+	 *            memoisation.
+	 * @param forkThreshold
+	 *            The minimum estimated work of a sub-expression for it to be
+	 *            evaluated in parallel, or zero to disable parallel
+	 *            evaluation.
+	 */
+	public Interpreter(boolean slotted, int memoSize, int forkThreshold) {
+		this.slotted = slotted;
+		this.memo = memoSize > 0 ? new Memo(memoSize) : null;
+		this.pool = forkThreshold > 0 ? new ForkJoinPool() : null;
+		this.forkThreshold = forkThreshold;
+	}
 	
 	public void run(WhileFile wf) {
-		// First, initialise the map of declaration names to their bodies.
-		declarations = new HashMap<String,WhileFile.Decl>();
+		// First, resolve and analyse the declarations as necessary.
+		this.file = wf;
+		if(slotted) {
+			new SlotResolver().resolve(wf);
+		}
+		if(memo != null || pool != null) {
+			new PurityAnalysis().analyse(wf);
+		}
+		constants = new HashMap<String,Object>();
 		for(WhileFile.Decl decl : wf.declarations) {
-			declarations.put(decl.name(), decl);
+			if(decl instanceof WhileFile.ConstDecl) {
+				constant(decl.name());
+			}
+		}
+		if(pool != null) {
+			functionWork = new HashMap<String,Integer>();
+			for(WhileFile.Decl decl : wf.declarations) {
+				if(decl instanceof WhileFile.FunDecl) {
+					work((WhileFile.FunDecl) decl, new HashSet<String>());
+				}
+			}
 		}
-		this.file = wf;
 		
 		// Second, pick the main method (if one exits) and execute it
-		WhileFile.Decl main = declarations.get("main");
-		if(main instanceof WhileFile.FunDecl) {
-			WhileFile.FunDecl fd = (WhileFile.FunDecl) main;
-			execute(fd);
+		final WhileFile.FunDecl fd = wf.function("main");
+		if(fd != null) {
+			try {
+				if(pool != null) {
+					// Execute within the pool, so sub-expressions can be forked.
+					join(pool.submit(new RecursiveTask<Object>() {
+						protected Object compute() {
+							return execute(fd);
+						}
+					}));
+					pool.shutdown();
+				} else {
+					execute(fd);
+				}
+			} finally {
+				Output.flush();
+			}
 		} else {
 			System.out.println("Cannot find a main() function");
 		}
@@ -74,17 +229,30 @@ public class Interpreter {
 		
 		// Second, construct the stack frame in which this function will
 		// execute.
-		HashMap<String,Object> frame = new HashMap<String,Object>();
+		Frame frame;
+		if(slotted) {
+			frame = new SlotFrame(function.attribute(Attribute.FrameSize.class).size);
+		} else {
+			frame = new NameFrame();
+		}
 		for(int i=0;i!=arguments.length;++i) {
 			WhileFile.Parameter parameter = function.parameters.get(i);
-			frame.put(parameter.name,arguments[i]);
+			Object argument = arguments[i];
+			if(requiresConversion(null, parameter.type, file)) {
+				argument = convert(argument, parameter.type, file);
+			}
+			frame.put(parameter.name,parameter,argument);
 		}
 		
 		// Third, execute the function body!
-		return execute(function.statements,frame);
+		Object r = execute(function.statements,frame);
+		if(requiresConversion(null, function.ret, file)) {
+			r = convert(r, function.ret, file);
+		}
+		return r;
 	}
 	
-	private Object execute(List<Stmt> block, HashMap<String,Object> frame) {
+	private Object execute(List<Stmt> block, Frame frame) {
 		for(int i=0;i!=block.size();i=i+1) {			
 			Object r = execute(block.get(i),frame);			
 			if(r != null) {
@@ -103,7 +271,7 @@ public class Interpreter {
 	 *            Stack frame mapping variables to their current value.
 	 * @return
 	 */
-	private Object execute(Stmt stmt, HashMap<String,Object> frame) {		
+	private Object execute(Stmt stmt, Frame frame) {		
 		if(stmt instanceof Stmt.Assign) {
 			return execute((Stmt.Assign) stmt,frame);
 		} else if(stmt instanceof Stmt.For) {
@@ -126,37 +294,57 @@ public class Interpreter {
 		} 
 	}
 	
-	private Object execute(Stmt.Assign stmt, HashMap<String,Object> frame) {	
-		Expr lhs = stmt.getLhs();
-		if(lhs instanceof Expr.Variable) {
-			Expr.Variable ev = (Expr.Variable) lhs;
-			Object rhs = execute(stmt.getRhs(),frame);
-			// We need to perform a deep clone here to ensure the value
-			// semantics used in While are preserved.
-			frame.put(ev.getName(),deepClone(rhs));
-		} else if(lhs instanceof Expr.RecordAccess) {
-			Expr.RecordAccess ra = (Expr.RecordAccess) lhs;
-			Map<String,Object> src = (Map) execute(ra.getSource(),frame);
-			Object rhs = execute(stmt.getRhs(),frame);
-			// We need to perform a deep clone here to ensure the value
-			// semantics used in While are preserved.
-			src.put(ra.getName(), deepClone(rhs));
-		} else if(lhs instanceof Expr.IndexOf) {
-			Expr.IndexOf io = (Expr.IndexOf) lhs;
-			ArrayList<Object> src = (ArrayList) execute(io.getSource(),frame);
-			Integer idx = (Integer) execute(io.getIndex(),frame);
-			Object rhs = execute(stmt.getRhs(),frame);
-			// We need to perform a deep clone here to ensure the value
-			// semantics used in While are preserved.
-			src.set(idx,deepClone(rhs));
-		} else {
-			internalFailure("unknown lval encountered (" + lhs + ")", file.filename,stmt);
+	private Object execute(Stmt.Assign stmt, Frame frame) {	
+		// First, evaluate the indices on the path from the assigned variable
+		// to the assigned element.
+		ArrayList<Object> path = new ArrayList<Object>();
+		Expr.Variable ev = execute(stmt.getLhs(), path, frame);
+		Object rhs = execute(stmt.getRhs(),frame);
+		Attribute.Type lhsType = stmt.getLhs().attribute(Attribute.Type.class);
+		if(lhsType != null && requiresConversion(type(stmt.getRhs()), lhsType.type, file)) {
+			rhs = convert(rhs, lhsType.type, file);
 		}
-		
+		// Second, update the element. Any shared values along the path are
+		// copied, which ensures the value semantics used in While are
+		// preserved.
+		Object value = frame.get(ev.getName(), ev);
+		frame.put(ev.getName(), ev, update(value, path.toArray(), 0, rhs));
 		return null;
 	}
 	
-	private Object execute(Stmt.For stmt, HashMap<String,Object> frame) {
+	/**
+	 * Evaluate an lval, producing the variable it assigns to and the path of
+	 * field names and indices from that variable to the element assigned.
+	 * 
+	 * @param lval
+	 *            The lval to evaluate.
+	 * @param path
+	 *            The path to the element assigned, which is built up in
+	 *            left-to-right order.
+	 * @param frame
+	 *            Stack frame mapping variables to their current value.
+	 * @return
+	 */
+	private Expr.Variable execute(Expr lval, ArrayList<Object> path, Frame frame) {
+		if(lval instanceof Expr.Variable) {
+			return (Expr.Variable) lval;
+		} else if(lval instanceof Expr.RecordAccess) {
+			Expr.RecordAccess ra = (Expr.RecordAccess) lval;
+			Expr.Variable ev = execute(ra.getSource(), path, frame);
+			path.add(ra.getName());
+			return ev;
+		} else if(lval instanceof Expr.IndexOf) {
+			Expr.IndexOf io = (Expr.IndexOf) lval;
+			Expr.Variable ev = execute(io.getSource(), path, frame);
+			path.add(execute(io.getIndex(),frame));
+			return ev;
+		} else {
+			internalFailure("unknown lval encountered (" + lval + ")", file.filename,lval);
+			return null; // dead code
+		}
+	}
+	
+	private Object execute(Stmt.For stmt, Frame frame) {
 		execute(stmt.getDeclaration(),frame);
 		while((Boolean) execute(stmt.getCondition(),frame)) {
 			Object ret = execute(stmt.getBody(),frame);
@@ -168,7 +356,7 @@ public class Interpreter {
 		return null;
 	}
 	
-	private Object execute(Stmt.While stmt, HashMap<String,Object> frame) {
+	private Object execute(Stmt.While stmt, Frame frame) {
 		while((Boolean) execute(stmt.getCondition(),frame)) {
 			Object ret = execute(stmt.getBody(),frame);
 			if(ret != null) {
@@ -178,7 +366,7 @@ public class Interpreter {
 		return null;
 	}
 	
-	private Object execute(Stmt.IfElse stmt, HashMap<String,Object> frame) {
+	private Object execute(Stmt.IfElse stmt, Frame frame) {
 		boolean condition = (Boolean) execute(stmt.getCondition(),frame);
 		if(condition) {
 			return execute(stmt.getTrueBranch(),frame);
@@ -187,7 +375,7 @@ public class Interpreter {
 		}
 	}
 	
-	private Object execute(Stmt.Return stmt, HashMap<String,Object> frame) {
+	private Object execute(Stmt.Return stmt, Frame frame) {
 		Expr re = stmt.getExpr();
 		if(re != null) {
 			return execute(re,frame);
@@ -196,25 +384,27 @@ public class Interpreter {
 		}
 	}
 	
-	private Object execute(Stmt.VariableDeclaration stmt,
-			HashMap<String, Object> frame) {
+	private Object execute(Stmt.VariableDeclaration stmt, Frame frame) {
 		Expr re = stmt.getExpr();
 		Object value;
 		if (re != null) {
 			value = execute(re, frame);
+			if (requiresConversion(type(re), stmt.getType(), file)) {
+				value = convert(value, stmt.getType(), file);
+			}
 		} else {
 			value = Collections.EMPTY_SET; // used to indicate a variable has
 											// been declared
 		}
-		// We need to perform a deep clone here to ensure the value
+		// We need to mark the value as shared here to ensure the value
 		// semantics used in While are preserved.
-		frame.put(stmt.getName(), deepClone(value));
+		frame.put(stmt.getName(), stmt, share(value));
 		return null;
 	}
 	
-	private Object execute(Stmt.Print stmt, HashMap<String,Object> frame) {
+	private Object execute(Stmt.Print stmt, Frame frame) {
 		String str = toString(execute(stmt.getExpr(),frame));
-		System.out.println(str);
+		Output.println(str);
 		return null;
 	}
 	
@@ -227,7 +417,7 @@ public class Interpreter {
 	 *            Stack frame mapping variables to their current value.
 	 * @return
 	 */
-	private Object execute(Expr expr, HashMap<String,Object> frame) {
+	private Object execute(Expr expr, Frame frame) {
 		if(expr instanceof Expr.Binary) {
 			return execute((Expr.Binary) expr,frame);
 		} else if(expr instanceof Expr.Cast) {
@@ -254,19 +444,29 @@ public class Interpreter {
 		} 
 	}
 	
-	private Object execute(Expr.Binary expr, HashMap<String,Object> frame) {
+	private Object execute(Expr.Binary expr, Frame frame) {
 		// First, deal with the short-circuiting operators first
-		Object lhs = execute(expr.getLhs(), frame);
-		
+		Object lhs, rhs;
 		switch (expr.getOp()) {
 		case AND:
+			lhs = execute(expr.getLhs(), frame);
 			return ((Boolean)lhs) && ((Boolean)execute(expr.getRhs(), frame));
 		case OR:
+			lhs = execute(expr.getLhs(), frame);
 			return ((Boolean)lhs) || ((Boolean)execute(expr.getRhs(), frame));
 		}
 		
-		// Second, deal the rest.		
-		Object rhs = execute(expr.getRhs(), frame);
+		// Second, deal the rest. Since the rhs is pure when forked, it is
+		// safe to evaluate the lhs at the same time.
+		if (shouldFork(expr.getRhs())
+				&& Math.abs(work(expr.getLhs())) >= forkThreshold) {
+			ForkJoinTask<Object> task = fork(expr.getRhs(), frame);
+			lhs = execute(expr.getLhs(), frame);
+			rhs = join(task);
+		} else {
+			lhs = execute(expr.getLhs(), frame);
+			rhs = execute(expr.getRhs(), frame);
+		}
 		
 		switch (expr.getOp()) {
 		case ADD:
@@ -335,9 +535,7 @@ public class Interpreter {
 			} else if(rhs instanceof String) {
 				return toString(lhs) + ((String)rhs);
 			} else if(lhs instanceof ArrayList && rhs instanceof ArrayList) {
-				ArrayList l = (ArrayList) lhs;
-				l.addAll((ArrayList)rhs);
-				return l;
+				return append((ArrayList) lhs, (ArrayList) rhs);
 			}
 		}
 
@@ -346,30 +544,49 @@ public class Interpreter {
 		return null;
 	}
 	
-	private Object execute(Expr.Cast expr, HashMap<String, Object> frame) {
-		Object rhs = execute(expr.getSource(), frame);		
-		// TODO: we need to actually implement casting here!
+	private Object execute(Expr.Cast expr, Frame frame) {
+		Object rhs = execute(expr.getSource(), frame);
+		if (requiresConversion(type(expr.getSource()), expr.getType(), file)) {
+			rhs = convert(rhs, expr.getType(), file);
+		}
 		return rhs;
 	}
 	
-	private Object execute(Expr.Constant expr, HashMap<String,Object> frame) {
+	private Object execute(Expr.Constant expr, Frame frame) {
 		return expr.getValue();
 	}
 	
-	private Object execute(Expr.Invoke expr, HashMap<String, Object> frame) {
+	private Object execute(Expr.Invoke expr, Frame frame) {
 		List<Expr> arguments = expr.getArguments();
 		Object[] values = new Object[arguments.size()];
 		for (int i = 0; i != values.length; ++i) {
-			// We need to perform a deep clone here to ensure the value
+			// We need to mark the value as shared here to ensure the value
 			// semantics used in While are preserved.
-			values[i] = deepClone(execute(arguments.get(i), frame));
+			values[i] = share(execute(arguments.get(i), frame));
+		}
+		WhileFile.FunDecl fun = file.function(expr.getName());
+		if (memo != null && fun.attribute(Attribute.Pure.class) != null) {
+			// The key compares argument values structurally. Since arguments
+			// are shared, they cannot subsequently be modified in place.
+			List<Object> key = new ArrayList<Object>(values.length + 1);
+			key.add(fun.name());
+			key.addAll(Arrays.asList(values));
+			synchronized (memo) {
+				if (memo.containsKey(key)) {
+					return memo.get(key);
+				}
+			}
+			// The result is shared, since it may be returned many times.
+			Object result = share(execute(fun, values));
+			synchronized (memo) {
+				memo.put(key, result);
+			}
+			return result;
 		}
-		WhileFile.FunDecl fun = (WhileFile.FunDecl) declarations.get(expr
-				.getName());
 		return execute(fun, values);
 	}
 	
-	private Object execute(Expr.IndexOf expr, HashMap<String,Object> frame) {
+	private Object execute(Expr.IndexOf expr, Frame frame) {
 		Object _src = execute(expr.getSource(),frame);
 		int idx = (Integer) execute(expr.getIndex(),frame);
 		if(_src instanceof String) {
@@ -381,33 +598,51 @@ public class Interpreter {
 		}
 	}
 	
-	private Object execute(Expr.ListConstructor expr,
-			HashMap<String, Object> frame) {
+	private Object execute(Expr.ListConstructor expr, Frame frame) {
 		List<Expr> es = expr.getArguments();
-		ArrayList<Object> ls = new ArrayList<Object>();
+		Value.List ls = new Value.List(es.size());
+		ArrayList<ForkJoinTask<Object>> tasks = null;
+		if (pool != null) {
+			// Fork every element which can be evaluated in parallel, except
+			// the last which is evaluated by this thread.
+			for (int i = es.size() - 2; i >= 0; --i) {
+				if (shouldFork(es.get(i))) {
+					if (tasks == null) {
+						tasks = new ArrayList<ForkJoinTask<Object>>(
+								Collections.<ForkJoinTask<Object>> nCopies(
+										es.size(), null));
+					}
+					tasks.set(i, fork(es.get(i), frame));
+				}
+			}
+		}
 		for (int i = 0; i != es.size(); ++i) {
-			ls.add(execute(es.get(i), frame));
+			if (tasks != null && tasks.get(i) != null) {
+				ls.add(share(join(tasks.get(i))));
+			} else {
+				ls.add(share(execute(es.get(i), frame)));
+			}
 		}
 		return ls;
 	}
 	
-	private Object execute(Expr.RecordAccess expr, HashMap<String, Object> frame) {
+	private Object execute(Expr.RecordAccess expr, Frame frame) {
 		HashMap<String, Object> src = (HashMap) execute(expr.getSource(), frame);
 		return src.get(expr.getName());
 	}
 	
-	private Object execute(Expr.RecordConstructor expr, HashMap<String,Object> frame) {
+	private Object execute(Expr.RecordConstructor expr, Frame frame) {
 		List<Pair<String,Expr>> es = expr.getFields();
-		HashMap<String,Object> rs = new HashMap<String,Object>();
+		Value.Record rs = new Value.Record();
 		
 		for(Pair<String,Expr> e : es) {
-			rs.put(e.first(),execute(e.second(),frame));
+			rs.put(e.first(),share(execute(e.second(),frame)));
 		}
 		
 		return rs;
 	}
 	
-	private Object execute(Expr.Unary expr, HashMap<String, Object> frame) {
+	private Object execute(Expr.Unary expr, Frame frame) {
 		Object value = execute(expr.getExpr(), frame);
 		switch (expr.getOp()) {
 		case NOT:
@@ -431,41 +666,461 @@ public class Interpreter {
 		return null;
 	}
 	
-	private Object execute(Expr.Variable expr, HashMap<String,Object> frame) {
-		return frame.get(expr.getName());
+	private Object execute(Expr.Variable expr, Frame frame) {
+		Object value = frame.get(expr.getName(), expr);
+		if(value == null && !frame.contains(expr.getName(), expr)) {
+			// The variable is not in scope, so it must refer to a constant.
+			value = constant(expr.getName());
+		}
+		return value;
 	}
 	
 	/**
-	 * Perform a deep clone of the given object value. This is either a
-	 * <code>Boolean</code>, <code>Integer</code>, <code>Double</code>,
-	 * <code>Character</code>, <code>String</code>, <code>ArrayList</code> (for
-	 * lists) or <code>HaspMap</code> (for records). Only the latter two need to
-	 * be cloned, since the others are immutable.
+	 * Get the value of a given constant. This is evaluated when first
+	 * requested, which happens for every constant before execution begins
+	 * (hence, the constants are never modified concurrently).
+	 * 
+	 * @param name
+	 *            Name of the constant.
+	 */
+	private Object constant(String name) {
+		Object value = constants.get(name);
+		if(value == null && !constants.containsKey(name)) {
+			// NOTE: a constant which refers to itself sees null
+			constants.put(name, null);
+			WhileFile.ConstDecl cd = file.constant(name);
+			if(cd != null) {
+				value = share(execute(cd.constant, new NameFrame()));
+				constants.put(name, value);
+			}
+		}
+		return value;
+	}
+	
+	/**
+	 * Mark the given object value as shared, since it is about to be stored in
+	 * a location. Only compound values (see <code>Value</code>) are affected,
+	 * since the others are immutable.
 	 * 
 	 * @param o
 	 * @return
 	 */
-	private Object deepClone(Object o) {
-		if (o instanceof ArrayList) {
-			ArrayList<Object> l = (ArrayList) o;
-			ArrayList<Object> n = new ArrayList<Object>();
-			for (int i = 0; i != l.size(); ++i) {
-				n.add(deepClone(l.get(i)));
+	static Object share(Object o) {
+		// NOTE: testing against the concrete classes, rather than the Value
+		// interface, is significantly faster for the common case of
+		// primitive values.
+		if (o instanceof Value.List) {
+			((Value.List) o).share();
+		} else if (o instanceof Value.Record) {
+			((Value.Record) o).share();
+		}
+		return o;
+	}
+	
+	/**
+	 * Determine the type of an expression, as given by the type attribute
+	 * attached by the <code>TypeChecker</code>.
+	 * 
+	 * @return The type, or <code>null</code> if it is not known.
+	 */
+	private static Type type(Expr expr) {
+		Attribute.Type attr = expr.attribute(Attribute.Type.class);
+		return attr == null ? null : attr.type;
+	}
+	
+	/**
+	 * Check whether a value of one type must be converted when it is stored in
+	 * a location of another. This is the case when an int may be stored where
+	 * a real is expected, including as an element of a list or a field of a
+	 * record. These are the same conversions made by the
+	 * <code>ClassFileWriter</code> and, hence, a location of type real always
+	 * holds a <code>Double</code>.
+	 * 
+	 * @param from
+	 *            The type of the value, or <code>null</code> if this is not
+	 *            known.
+	 * @param to
+	 *            The type of the location.
+	 * @param file
+	 *            The file in which any named types are declared.
+	 * @return
+	 */
+	static boolean requiresConversion(Type from, Type to, WhileFile file) {
+		return requiresConversion(from, to, file, 0);
+	}
+	
+	private static boolean requiresConversion(Type from, Type to,
+			WhileFile file, int depth) {
+		// NOTE: the depth bound protects against recursive type declarations
+		if (depth > file.declarations.size()) {
+			return false;
+		}
+		from = expand(from, file);
+		to = expand(to, file);
+		if (from instanceof Type.Union) {
+			for (Type bound : ((Type.Union) from).getBounds()) {
+				if (requiresConversion(bound, to, file, depth + 1)) {
+					return true;
+				}
 			}
-			return n;
-		} else if (o instanceof HashMap) {
-			HashMap<String, Object> m = (HashMap) o;
-			HashMap<String, Object> n = new HashMap<String, Object>();
-			for (String field : m.keySet()) {
-				n.put(field, deepClone(m.get(field)));
+			return false;
+		} else if (to instanceof Type.Real) {
+			return from == null || from instanceof Type.Int;
+		} else if (to instanceof Type.List) {
+			Type element = from instanceof Type.List ? ((Type.List) from)
+					.getElement() : null;
+			return requiresConversion(element, ((Type.List) to).getElement(),
+					file, depth + 1);
+		} else if (to instanceof Type.Record) {
+			Map<String, Type> fields = from instanceof Type.Record ? ((Type.Record) from)
+					.getFields() : null;
+			for (Map.Entry<String, Type> e : ((Type.Record) to).getFields()
+					.entrySet()) {
+				Type field = fields == null ? null : fields.get(e.getKey());
+				if (requiresConversion(field, e.getValue(), file, depth + 1)) {
+					return true;
+				}
 			}
-			return n;
+		}
+		return false;
+	}
+	
+	/**
+	 * Convert a value to the representation used by a location of a given
+	 * type, where <code>requiresConversion()</code> holds. An int becomes a
+	 * real and, if any of their elements are converted, lists and records are
+	 * copied rather than updated in place.
+	 * 
+	 * @param value
+	 *            The value to convert.
+	 * @param to
+	 *            The type of the location.
+	 * @param file
+	 *            The file in which any named types are declared.
+	 * @return
+	 */
+	static Object convert(Object value, Type to, WhileFile file) {
+		to = expand(to, file);
+		if (to instanceof Type.Real && value instanceof Integer) {
+			return ((Integer) value).doubleValue();
+		} else if (to instanceof Type.List && value instanceof List) {
+			Type element = ((Type.List) to).getElement();
+			List<?> list = (List<?>) value;
+			Value.List r = null;
+			for (int i = 0; i != list.size(); ++i) {
+				Object e = list.get(i);
+				Object c = convert(e, element, file);
+				if (c != e && r == null) {
+					r = new Value.List(list);
+					for (Object o : r) {
+						share(o);
+					}
+				}
+				if (r != null) {
+					r.set(i, c);
+				}
+			}
+			return r == null ? value : r;
+		} else if (to instanceof Type.Record && value instanceof Map) {
+			Map<?, ?> record = (Map<?, ?>) value;
+			Value.Record r = null;
+			for (Map.Entry<String, Type> field : ((Type.Record) to)
+					.getFields().entrySet()) {
+				Object e = record.get(field.getKey());
+				Object c = convert(e, field.getValue(), file);
+				if (c != e && r == null) {
+					r = new Value.Record();
+					for (Map.Entry<?, ?> f : record.entrySet()) {
+						r.put((String) f.getKey(), share(f.getValue()));
+					}
+				}
+				if (r != null) {
+					r.put(field.getKey(), c);
+				}
+			}
+			return r == null ? value : r;
+		}
+		return value;
+	}
+	
+	/**
+	 * Expand a named type into the type it is declared as.
+	 */
+	private static Type expand(Type type, WhileFile file) {
+		// NOTE: the iteration bound protects against cyclic type declarations
+		for (int i = 0; type instanceof Type.Named
+				&& i != file.declarations.size(); ++i) {
+			WhileFile.TypeDecl td = file.type(((Type.Named) type).getName());
+			if (td == null) {
+				break;
+			}
+			type = td.type;
+		}
+		return type;
+	}
+	
+	// =========================================================================
+	// Parallel Evaluation
+	// =========================================================================
+	
+	/**
+	 * Determine whether a given expression should be evaluated in parallel.
+	 * This requires that it is pure, that its estimated work is above the
+	 * fork threshold and that the pool is not already saturated.
+	 * 
+	 * @param expr
+	 * @return
+	 */
+	private boolean shouldFork(Expr expr) {
+		return pool != null && work(expr) >= forkThreshold
+				&& ForkJoinTask.inForkJoinPool()
+				&& ForkJoinTask.getSurplusQueuedTaskCount() <= SURPLUS_LIMIT;
+	}
+	
+	/**
+	 * Begin evaluating a given expression asynchronously. The frame is only
+	 * read (never written) whilst evaluating an expression and, hence, can be
+	 * safely shared between threads.
+	 */
+	private ForkJoinTask<Object> fork(final Expr expr, final Frame frame) {
+		return new RecursiveTask<Object>() {
+			protected Object compute() {
+				return execute(expr, frame);
+			}
+		}.fork();
+	}
+	
+	/**
+	 * Wait for an asynchronous evaluation to complete, returning its result.
+	 * When a task fails in another thread, <code>ForkJoinTask</code> rethrows
+	 * a new exception of the same class which wraps the original and loses
+	 * its message. In this case, the original is rethrown instead, so that
+	 * errors are reported just as they are without forking.
+	 */
+	private static Object join(ForkJoinTask<Object> task) {
+		try {
+			return task.join();
+		} catch (RuntimeException e) {
+			throw unwrap(e);
+		} catch (Error e) {
+			throw unwrap(e);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T extends Throwable> T unwrap(T e) {
+		Throwable cause = e.getCause();
+		if (cause != null && cause.getClass() == e.getClass()) {
+			return (T) cause;
+		}
+		return e;
+	}
+	
+	/**
+	 * Estimate the work required to evaluate a given expression, which is
+	 * roughly the number of nodes which will be evaluated. If the expression
+	 * invokes an impure function, then its estimate is negated (since it
+	 * cannot be evaluated in parallel).
+	 * 
+	 * @param expr
+	 * @return
+	 */
+	private int work(Expr expr) {
+		Integer w = expressionWork.get(expr);
+		if (w == null) {
+			w = work(expr, new HashSet<String>());
+			expressionWork.put(expr, w);
+		}
+		return w;
+	}
+	
+	/**
+	 * Estimate the work required to evaluate a given expression, given the set
+	 * of functions whose work is currently being estimated (i.e. those which
+	 * may be recursive).
+	 */
+	private int work(Expr expr, HashSet<String> visiting) {
+		int work = 1;
+		boolean pure = true;
+		List<Expr> children = new ArrayList<Expr>();
+		if (expr instanceof Expr.Binary) {
+			children.add(((Expr.Binary) expr).getLhs());
+			children.add(((Expr.Binary) expr).getRhs());
+		} else if (expr instanceof Expr.Cast) {
+			children.add(((Expr.Cast) expr).getSource());
+		} else if (expr instanceof Expr.IndexOf) {
+			children.add(((Expr.IndexOf) expr).getSource());
+			children.add(((Expr.IndexOf) expr).getIndex());
+		} else if (expr instanceof Expr.Invoke) {
+			Expr.Invoke e = (Expr.Invoke) expr;
+			children.addAll(e.getArguments());
+			WhileFile.FunDecl fd = file.function(e.getName());
+			work = add(work, work(fd, visiting));
+			pure = fd.attribute(Attribute.Pure.class) != null;
+		} else if (expr instanceof Expr.ListConstructor) {
+			children.addAll(((Expr.ListConstructor) expr).getArguments());
+		} else if (expr instanceof Expr.RecordAccess) {
+			children.add(((Expr.RecordAccess) expr).getSource());
+		} else if (expr instanceof Expr.RecordConstructor) {
+			for (Pair<String, Expr> p : ((Expr.RecordConstructor) expr)
+					.getFields()) {
+				children.add(p.second());
+			}
+		} else if (expr instanceof Expr.Unary) {
+			children.add(((Expr.Unary) expr).getExpr());
+		}
+		for (Expr child : children) {
+			int w = work(child, visiting);
+			pure &= w >= 0;
+			work = add(work, Math.abs(w));
+		}
+		return pure ? work : -work;
+	}
+	
+	/**
+	 * Estimate the work required to execute the body of a given function. The
+	 * work of a function containing a loop, or which may be recursive, is
+	 * unbounded.
+	 */
+	private int work(WhileFile.FunDecl fd, HashSet<String> visiting) {
+		Integer w = functionWork.get(fd.name());
+		if (w != null) {
+			return w;
+		} else if (visiting.contains(fd.name())) {
+			return UNBOUNDED;
+		}
+		visiting.add(fd.name());
+		int work = work(fd.statements, visiting);
+		visiting.remove(fd.name());
+		if (visiting.isEmpty() || work == UNBOUNDED) {
+			// NOTE: estimates for functions which may be part of a recursive
+			// cycle under investigation cannot be cached.
+			functionWork.put(fd.name(), work);
+		}
+		return work;
+	}
+	
+	private int work(List<Stmt> statements, HashSet<String> visiting) {
+		int work = 0;
+		for (Stmt s : statements) {
+			work = add(work, work(s, visiting));
+		}
+		return work;
+	}
+	
+	private int work(Stmt stmt, HashSet<String> visiting) {
+		if (stmt instanceof Stmt.For || stmt instanceof Stmt.While) {
+			return UNBOUNDED;
+		} else if (stmt instanceof Stmt.Assign) {
+			Stmt.Assign s = (Stmt.Assign) stmt;
+			return add(Math.abs(work(s.getLhs(), visiting)),
+					Math.abs(work(s.getRhs(), visiting)));
+		} else if (stmt instanceof Stmt.IfElse) {
+			Stmt.IfElse s = (Stmt.IfElse) stmt;
+			return add(Math.abs(work(s.getCondition(), visiting)), Math.max(
+					work(s.getTrueBranch(), visiting),
+					work(s.getFalseBranch(), visiting)));
 		} else {
-			// other cases can be ignored
-			return o;
+			Expr e = null;
+			if (stmt instanceof Stmt.Print) {
+				e = ((Stmt.Print) stmt).getExpr();
+			} else if (stmt instanceof Stmt.Return) {
+				e = ((Stmt.Return) stmt).getExpr();
+			} else if (stmt instanceof Stmt.VariableDeclaration) {
+				e = ((Stmt.VariableDeclaration) stmt).getExpr();
+			} else if (stmt instanceof Expr.Invoke) {
+				e = (Expr.Invoke) stmt;
+			}
+			return e == null ? 1 : Math.abs(work(e, visiting));
 		}
 	}
 	
+	/**
+	 * Add two (non-negative) work estimates, saturating at
+	 * <code>UNBOUNDED</code>.
+	 */
+	private static int add(int w1, int w2) {
+		long w = (long) w1 + w2;
+		return w >= UNBOUNDED ? UNBOUNDED : (int) w;
+	}
+	
+	/**
+	 * A cache of function results, keyed on the function's name and argument
+	 * values, which evicts the least recently used result when full.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static final class Memo extends LinkedHashMap<List<Object>, Object> {
+		public static final long serialVersionUID = 1l;
+
+		private final int capacity;
+
+		public Memo(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+			return size() > capacity;
+		}
+	}
+	
+	/**
+	 * Update the element reached from a given value by following a path of
+	 * field names and indices. Any shared values along the path are copied
+	 * before being modified, so that other locations referring to them are
+	 * unaffected.
+	 * 
+	 * @param value
+	 *            The value being updated.
+	 * @param path
+	 *            The field names (for records) and indices (for lists) leading
+	 *            to the element being updated.
+	 * @param depth
+	 *            The position in the path reached by this value.
+	 * @param rhs
+	 *            The new value of the element being updated.
+	 * @return The updated value, which may be a copy of the original.
+	 */
+	static Object update(Object value, Object[] path, int depth, Object rhs) {
+		if (depth == path.length) {
+			return share(rhs);
+		}
+		Value v = (Value) value;
+		if (v.isShared()) {
+			v = v.copy();
+		}
+		if (v instanceof Value.Record) {
+			Value.Record r = (Value.Record) v;
+			String field = (String) path[depth];
+			r.put(field, update(r.get(field), path, depth + 1, rhs));
+		} else {
+			Value.List l = (Value.List) v;
+			int index = (Integer) path[depth];
+			l.set(index, update(l.get(index), path, depth + 1, rhs));
+		}
+		return v;
+	}
+	
+	/**
+	 * Append two lists together, producing a new list.
+	 * 
+	 * @param lhs
+	 * @param rhs
+	 * @return
+	 */
+	static Value.List append(List<?> lhs, List<?> rhs) {
+		Value.List r = new Value.List(lhs.size() + rhs.size());
+		r.addAll(lhs);
+		r.addAll(rhs);
+		// Elements of the result are now shared with the operands.
+		for (int i = 0; i != r.size(); ++i) {
+			share(r.get(i));
+		}
+		return r;
+	}
+	
 	/**
 	 * Convert the given object value to a string. This is either a
 	 * <code>Boolean</code>, <code>Integer</code>, <code>Double</code>,
@@ -476,7 +1131,7 @@ public class Interpreter {
 	 * @param o
 	 * @return
 	 */
-	private String toString(Object o) {
+	static String toString(Object o) {
 		if (o instanceof ArrayList) {
 			ArrayList<Object> l = (ArrayList) o;
 			String r = "[";
@@ -508,4 +1163,76 @@ public class Interpreter {
 			return "null";
 		}
 	}
+	
+	/**
+	 * A stack frame holds the current values of the local variables in an
+	 * executing function. Variables are identified by their name and the
+	 * syntactic element (i.e. parameter, declaration or variable use) which
+	 * refers to them.
+	 * 
+	 * @author agent
+	 * 
+	 */
+	private interface Frame {
+		public Object get(String name, SyntacticElement element);
+		
+		/**
+		 * Check whether a given variable is in scope, which distinguishes a
+		 * variable holding <code>null</code> from a constant.
+		 */
+		public boolean contains(String name, SyntacticElement element);
+		
+		public void put(String name, SyntacticElement element, Object value);
+	}
+	
+	/**
+	 * A stack frame which maps variable names to their current values.
+	 * 
+	 * @author agent
+	 * 
+	 */
+	private static final class NameFrame implements Frame {
+		private final HashMap<String,Object> values = new HashMap<String,Object>();
+		
+		public Object get(String name, SyntacticElement element) {
+			return values.get(name);
+		}
+		
+		public boolean contains(String name, SyntacticElement element) {
+			return values.containsKey(name);
+		}
+		
+		public void put(String name, SyntacticElement element, Object value) {
+			values.put(name, value);
+		}
+	}
+	
+	/**
+	 * A stack frame made up from an array of slots, where each variable is
+	 * held in the slot determined by the <code>SlotResolver</code>. Variables
+	 * which were not resolved to a slot have no value in the frame.
+	 * 
+	 * @author agent
+	 * 
+	 */
+	private static final class SlotFrame implements Frame {
+		private final Object[] slots;
+		
+		public SlotFrame(int size) {
+			this.slots = new Object[size];
+		}
+		
+		public Object get(String name, SyntacticElement element) {
+			int slot = element.slot();
+			return slot < 0 ? null : slots[slot];
+		}
+		
+		public boolean contains(String name, SyntacticElement element) {
+			return element.slot() >= 0;
+		}
+		
+		public void put(String name, SyntacticElement element, Object value) {
+			slots[element.slot()] = value;
+		}
+	}
 }
@@ -18,9 +18,22 @@
 
 package whilelang;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 // import jx86.io.AsmFileWriter;
 // import jx86.lang.X86File;
@@ -41,11 +54,47 @@ public class Main {
 		}
 	}
 
-	private static enum Mode { interpret, jvm, x86 };
+	/**
+	 * The version of this compiler.
+	 */
+	public static final String VERSION = "0.2";
+
+	/**
+	 * Identifies this build of the compiler in the keys of the build cache,
+	 * so that entries are never reused by a compiler which may generate
+	 * different code or report different diagnostics. This is computed when
+	 * the cache is first created.
+	 */
+	private static String build;
+
+	/**
+	 * The default maximum size of the build cache (in megabytes), which can be
+	 * changed with the <code>wlc.cache.size</code> system property.
+	 */
+	private static final int CACHE_SIZE = 64;
+
+	/**
+	 * The maximum number of function results cached by the interpreter when
+	 * memoisation is enabled.
+	 */
+	private static final int MEMO_SIZE = 10000;
+
+	/**
+	 * The minimum estimated work of a sub-expression for the interpreter to
+	 * evaluate it in parallel, when parallel evaluation is enabled.
+	 */
+	private static final int FORK_THRESHOLD = 1000;
+
+	private static enum Mode { interpret, closures, jvm, run, x86 };
 	
 	public static boolean run(String[] args) {
 		boolean verbose = false;
+		boolean slotted = false;
+		boolean peephole = true;
+		int memoSize = 0;
+		int forkThreshold = 0;
 		int fileArgsBegin = 0;
+		BuildCache cache = null;
 		Mode mode = Mode.interpret;
 		// jx86.lang.Target target = jx86.lang.Target.MACOS_X86_64; // default
 		
@@ -54,14 +103,29 @@ public class Main {
 				String arg = args[i];
 				if (arg.equals("-help")) {
 					usage();
-					System.exit(0);
+					return true;
 				} else if (arg.equals("-version")) {
-					System.out.println("While Language Compiler (wlc)");
-					System.exit(0);
+					System.out.println("While Language Compiler (wlc), version "
+							+ VERSION);
+					return true;
 				} else if (arg.equals("-verbose")) {
 					verbose = true;
+				} else if (arg.equals("-slots")) {
+					slotted = true;
+				} else if (arg.equals("-memo")) {
+					memoSize = MEMO_SIZE;
+				} else if (arg.equals("-parallel")) {
+					forkThreshold = FORK_THRESHOLD;
+				} else if (arg.equals("-closures")) {
+					mode = Mode.closures;
 				} else if (arg.equals("-jvm")) {
 					mode = Mode.jvm;
+				} else if (arg.equals("-run")) {
+					mode = Mode.run;
+				} else if (arg.equals("-nopeephole")) {
+					peephole = false;
+				} else if (arg.equals("-cache")) {
+					cache = createCache();
 				} else if (arg.equals("-x86")) {
 					mode = Mode.x86;
 				} else {
@@ -77,68 +141,302 @@ public class Main {
 			return false;
 		}
 
+		// First, lex, parse and check every source file and, when compiling,
+		// generate its output. Diagnostics are buffered so they can be
+		// reported in order.
+		List<Compilation> compilations = new ArrayList<Compilation>();
+		for (int i = fileArgsBegin; i != args.length; ++i) {
+			compilations.add(new Compilation(args[i], mode, verbose,
+					peephole, cache));
+		}
+		compile(compilations);
+
+		// Second, report any diagnostics and run the interpreter (if
+		// applicable) on each file in turn.
+		boolean ok = true;
+		for (Compilation c : compilations) {
+			c.report();
+			if (!c.ok) {
+				ok = false;
+				continue;
+			}
+			try {
+				switch (mode) {
+				case interpret:
+					new Interpreter(slotted, memoSize, forkThreshold).run(c.ast);
+					break;
+				case closures:
+					new ClosureInterpreter().run(c.ast);
+					break;
+				case run:
+					ClassFileWriter cfw = new ClassFileWriter();
+					cfw.setPeephole(peephole);
+					Map<String, byte[]> classes = cfw.generate(c.ast);
+					new MemoryClassLoader(classes).run(classes.keySet()
+							.iterator().next());
+					break;
+				}
+			} catch (Exception e) {
+				errout.println("Error: " + e.getMessage());
+				e.printStackTrace(errout);
+				ok = false;
+			}
+		}
+
+		return ok;
+	}
+
+	/**
+	 * Create the build cache, which is located in the directory given by the
+	 * <code>wlc.cache</code> system property or, by default, in
+	 * <code>.wlc-cache</code> in the user's home directory.
+	 */
+	private static synchronized BuildCache createCache() {
+		if (build == null) {
+			build = VERSION + "/" + BuildCache.fingerprint(Main.class);
+		}
+		String dir = System.getProperty("wlc.cache");
+		File directory = dir != null ? new File(dir) : new File(
+				System.getProperty("user.home"), ".wlc-cache");
+		long capacity = Integer.getInteger("wlc.cache.size", CACHE_SIZE)
+				* 1024L * 1024L;
+		return new BuildCache(directory, capacity);
+	}
+
+	/**
+	 * Execute a number of compilations. When there is more than one, they are
+	 * executed in parallel.
+	 * 
+	 * @param compilations
+	 */
+	private static void compile(List<Compilation> compilations) {
+		if (compilations.size() == 1) {
+			compilations.get(0).call();
+			return;
+		}
+		int threads = Math.min(compilations.size(), Runtime.getRuntime()
+				.availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
 		try {
-			String filename = args[fileArgsBegin];
-			File srcFile = new File(filename);
-
-			// First, lex and parse the source file
-			Lexer lexer = new Lexer(srcFile.getPath());
-			Parser parser = new Parser(srcFile.getPath(), lexer.scan());
-			WhileFile ast = parser.read();
-			
-			// Second, we'd want to perform some kind of type checking here.			
-			new DefiniteAssignment().check(ast);
-			new TypeChecker().check(ast);
-			
-			// Third, we'd want to run the interpreter or compile the file.
-			switch(mode) {
-			case interpret:
-				new Interpreter().run(ast);
-				break;
-			case jvm:
-				File classFile = new File(filename.substring(0,filename.lastIndexOf('.')) + ".class");
-				System.out.println("Compiling to JVM Bytecode...");
-				ClassFileWriter cfw = new ClassFileWriter(classFile);
-				cfw.write(ast);				
-				break;
-			case x86:
-				System.out.println("Compiling to X86 Assembly Language...");
-				// First, determine output filename
-				// File asFile = new File(filename.substring(0,filename.lastIndexOf('.')) + ".s");
-				// Second, build the x86 file
-				// X86File xf = new X86FileWriter(target).build(ast);
-				// Third, write that file in GAS compatible assembly language
-				// AsmFileWriter afw = new AsmFileWriter(asFile); 
-				// afw.write(xf);
-				// afw.close();
-				break;
+			for (Future<Object> f : pool.invokeAll(compilations)) {
+				f.get();
 			}
-			
-		} catch (SyntaxError e) {
-			if (e.filename() != null) {
-				e.outputSourceError(System.out);
-			} else {
-				System.err.println("syntax error (" + e.getMessage() + ").");
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
 			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
 
-			if (verbose) {
-				e.printStackTrace(errout);
+	/**
+	 * Responsible for lexing, parsing and checking a single source file and,
+	 * when compiling, writing the generated output. Since compilations may
+	 * execute in parallel, anything written to standard output or standard
+	 * error is buffered until <code>report()</code> is called. When using a
+	 * build cache, a source file which has been compiled before is not
+	 * compiled again. Instead, its diagnostics and either its classes (when
+	 * compiling to JVM Bytecode) or its checked AST (when running it) are
+	 * taken from the cache.
+	 * 
+	 * @author agent
+	 * 
+	 */
+	private static final class Compilation implements Callable<Object> {
+		private final String filename;
+		private final Mode mode;
+		private final boolean verbose;
+		private final boolean peephole;
+		private final BuildCache cache;
+		private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+		private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+		/**
+		 * The checked source file. This is <code>null</code> if compilation
+		 * failed, or if its result was taken from the build cache.
+		 */
+		private WhileFile ast;
+
+		/**
+		 * Whether or not compilation succeeded.
+		 */
+		private boolean ok;
+
+		/**
+		 * The classes generated for the source file, which are recorded so
+		 * they can be added to the build cache.
+		 */
+		private Map<String, byte[]> classes = Collections.emptyMap();
+
+		/**
+		 * Whether or not the outcome of compilation depends only on the
+		 * source file, and can therefore be added to the build cache.
+		 */
+		private boolean cacheable = true;
+
+		public Compilation(String filename, Mode mode, boolean verbose,
+				boolean peephole, BuildCache cache) {
+			this.filename = filename;
+			this.mode = mode;
+			this.verbose = verbose;
+			this.peephole = peephole;
+			this.cache = mode != Mode.x86 ? cache : null;
+		}
+
+		public Object call() {
+			if (cache == null) {
+				compile();
+				return null;
 			}
+			String key;
+			try {
+				key = BuildCache.key(build + "/" + mode
+						+ (peephole ? "" : "/nopeephole")
+						+ (verbose ? "/verbose" : ""), filename,
+						Files.readAllBytes(Paths.get(filename)));
+			} catch (IOException e) {
+				// Let the lexer report the problem
+				compile();
+				return null;
+			}
+			BuildCache.Entry entry = cache.get(key);
+			if (entry != null) {
+				try {
+					if (entry.ok && mode == Mode.jvm) {
+						new ClassFileWriter(classFile()).write(entry.classes);
+					} else if (entry.ok) {
+						ast = new WhileFileReader(entry.ast).read();
+					}
+					stdout.write(entry.stdout, 0, entry.stdout.length);
+					stderr.write(entry.stderr, 0, entry.stderr.length);
+					ok = entry.ok;
+					return null;
+				} catch (IOException e) {
+					// Fall through and compile as normal
+				}
+			}
+			compile();
+			if (cacheable) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				if (ok && mode != Mode.jvm) {
+					try {
+						new WhileFileWriter(bytes).write(ast);
+					} catch (IOException e) {
+						return null;
+					}
+				}
+				cache.put(key, new BuildCache.Entry(ok, stdout.toByteArray(),
+						stderr.toByteArray(), classes, bytes.toByteArray()));
+			}
+			return null;
+		}
 
-			return false;
-		} catch (Exception e) {
-			errout.println("Error: " + e.getMessage());
-//			if (verbose) {
-				e.printStackTrace(errout);
-//			}
-			return false;
+		private void compile() {
+			PrintStream out = new PrintStream(stdout, true);
+			PrintStream err = new PrintStream(stderr, true);
+			try {
+				File srcFile = new File(filename);
+
+				// First, lex and parse the source file
+				Lexer lexer = new Lexer(srcFile.getPath());
+				Parser parser = new Parser(srcFile.getPath(), lexer.scan());
+				WhileFile ast = parser.read();
+
+				// Second, we'd want to perform some kind of type checking here.
+				new DefiniteAssignment().check(ast);
+				new TypeChecker().check(ast);
+				ast = new ConstantFolder().fold(ast);
+
+				// Third, we'd want to compile the file.
+				switch (mode) {
+				case jvm:
+					out.println("Compiling to JVM Bytecode...");
+					ClassFileWriter cfw = new ClassFileWriter(classFile());
+					cfw.setPeephole(peephole);
+					classes = cfw.generate(ast);
+					cfw.write(classes);
+					if (verbose && peephole) {
+						report(cfw.getSavings(), out);
+					}
+					break;
+				case x86:
+					out.println("Compiling to X86 Assembly Language...");
+					// First, determine output filename
+					// File asFile = new File(filename.substring(0,filename.lastIndexOf('.')) + ".s");
+					// Second, build the x86 file
+					// X86File xf = new X86FileWriter(target).build(ast);
+					// Third, write that file in GAS compatible assembly language
+					// AsmFileWriter afw = new AsmFileWriter(asFile); 
+					// afw.write(xf);
+					// afw.close();
+					break;
+				}
+				this.ast = ast;
+				this.ok = true;
+			} catch (SyntaxError e) {
+				if (e.filename() != null) {
+					e.outputSourceError(out);
+				} else {
+					err.println("syntax error (" + e.getMessage() + ").");
+				}
+
+				if (verbose) {
+					e.printStackTrace(err);
+				}
+			} catch (Exception e) {
+				// e.g. the class file could not be written
+				cacheable = false;
+				err.println("Error: " + e.getMessage());
+//				if (verbose) {
+					e.printStackTrace(err);
+//				}
+			}
 		}
 
-		return true;
+		/**
+		 * Report the number of bytes saved in each method by peephole
+		 * optimisation.
+		 */
+		private void report(Map<String, Integer> savings, PrintStream out) {
+			int total = 0;
+			for (int saved : savings.values()) {
+				total += saved;
+			}
+			out.println("Peephole optimisation saved " + total + " bytes");
+			for (Map.Entry<String, Integer> e : savings.entrySet()) {
+				if (e.getValue() != 0) {
+					out.println("  " + e.getKey() + ": " + e.getValue()
+							+ " bytes");
+				}
+			}
+		}
+
+		private File classFile() {
+			return new File(filename.substring(0, filename.lastIndexOf('.'))
+					+ ".class");
+		}
+
+		/**
+		 * Write out any diagnostics produced by this compilation.
+		 */
+		public void report() {
+			System.out.write(stdout.toByteArray(), 0, stdout.size());
+			System.out.flush();
+			errout.write(stderr.toByteArray(), 0, stderr.size());
+			errout.flush();
+		}
 	}
 
 	public static void main(String[] args) throws Exception {
-		run(args);
+		if (args.length > 0 && args[0].equals("-server")) {
+			Server.main(Arrays.copyOfRange(args, 1, args.length));
+		} else if (!run(args)) {
+			System.exit(1);
+		}
 	}
 
 	/**
@@ -150,10 +448,26 @@ public class Main {
 				{ "version", "Print version information" },
 				{ "verbose",
 				"Print detailed information on what the compiler is doing" },
+				{ "slots",
+				"Interpret using slot-indexed stack frames" },
+				{ "memo",
+				"Interpret caching the results of pure functions" },
+				{ "parallel",
+				"Interpret evaluating calls to pure functions in parallel" },
+				{ "closures",
+				"Interpret by first compiling functions into executable trees" },
 				{ "jvm",
 				"Generate JVM Bytecode" },
+				{ "run",
+				"Generate JVM Bytecode in memory and run it" },
 				{ "x86",
-				"Generate x86 Assembly Language" }};
+				"Generate x86 Assembly Language" },
+				{ "nopeephole",
+				"Do not remove redundant bytecodes from generated methods" },
+				{ "cache",
+				"Reuse the output of unchanged files from a build cache" },
+				{ "server",
+				"Run as a compile server for whilelang.Client (optional port)" }};
 
 		System.out.println("usage: wlc <options> <source-files>");
 		System.out.println("Options:");
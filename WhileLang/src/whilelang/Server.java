@@ -0,0 +1,333 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>
+ * A long-running compile server, which accepts requests from the
+ * <code>Client</code> over a local socket and executes them using
+ * <code>Main.run()</code>. This avoids paying the cost of starting a JVM (and
+ * of loading and warming up the compiler) for every invocation.
+ * </p>
+ *
+ * <p>
+ * Since any local user can connect to the socket, requests are authenticated.
+ * When it starts, the server writes a random token to a file which only the
+ * user running it can read (see <code>tokenFile()</code>), and every request
+ * must begin with this token. Otherwise, other users could read and write
+ * files with the server's permissions.
+ * </p>
+ *
+ * <p>
+ * A request consists of the token, the client's working directory and its
+ * command-line arguments. The response is a sequence of frames, which stream
+ * back anything written to standard output and standard error whilst
+ * executing the request, followed by its exit status. Connections are handled
+ * by a pool of threads, but requests are executed one at a time, since
+ * <code>Main.run()</code> writes to <code>System.out</code>. A request which
+ * does not complete within the timeout cannot be safely stopped and, hence,
+ * the server reports this to the client and then exits.
+ * </p>
+ *
+ * @author agent
+ *
+ */
+public class Server {
+
+	/**
+	 * The port used when none is given.
+	 */
+	public static final int DEFAULT_PORT = 4430;
+
+	/**
+	 * The time allowed for executing a request (in seconds) when none is given
+	 * by the <code>wlc.server.timeout</code> system property.
+	 */
+	public static final int DEFAULT_TIMEOUT = 600;
+
+	/**
+	 * The kinds of frame in a response. An output frame consists of its kind,
+	 * its length and then its bytes. An exit frame consists of its kind and
+	 * then the exit status.
+	 */
+	static final int EXIT = 0, STDOUT = 1, STDERR = 2;
+
+	/**
+	 * The size of the token which authenticates requests (in bytes).
+	 */
+	static final int TOKEN_SIZE = 32;
+
+	/**
+	 * The number of threads used to handle connections.
+	 */
+	private static final int THREADS = 4;
+
+	/**
+	 * The time allowed for a client to send its request (in milliseconds).
+	 */
+	private static final int READ_TIMEOUT = 10 * 1000;
+
+	private final int port;
+
+	private final int timeout;
+
+	private final byte[] token;
+
+	private final Object lock = new Object();
+
+	private final Timer watchdog = new Timer(true);
+
+	/**
+	 * Where the server reports its own problems. This is captured on
+	 * construction, since <code>System.err</code> is redirected whilst
+	 * executing a request.
+	 */
+	private final PrintStream log = System.err;
+
+	public Server(int port, int timeout) throws IOException {
+		this.port = port;
+		this.timeout = timeout;
+		this.token = createToken(tokenFile(port));
+	}
+
+	/**
+	 * Get the file holding the token for the server on a given port, which is
+	 * located in the user's home directory.
+	 *
+	 * @param port
+	 * @return
+	 */
+	public static File tokenFile(int port) {
+		return new File(System.getProperty("user.home"), ".wlc-server-"
+				+ port);
+	}
+
+	/**
+	 * Accept and handle requests until the process is terminated. The server
+	 * only listens on the loopback interface.
+	 *
+	 * @throws IOException
+	 */
+	public void serve() throws IOException {
+		ServerSocket server = new ServerSocket(port, 50,
+				InetAddress.getByName(null));
+		ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+		try {
+			while (true) {
+				final Socket socket = server.accept();
+				workers.execute(new Runnable() {
+					public void run() {
+						try {
+							serve(socket);
+						} catch (IOException e) {
+							// the client has gone away, so keep going
+							e.printStackTrace(log);
+						} finally {
+							try {
+								socket.close();
+							} catch (IOException e) {
+							}
+						}
+					}
+				});
+			}
+		} finally {
+			workers.shutdown();
+			server.close();
+		}
+	}
+
+	private void serve(Socket socket) throws IOException {
+		// A client which is slow to send its request must not hold up a
+		// thread indefinitely.
+		socket.setSoTimeout(READ_TIMEOUT);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				socket.getInputStream()));
+		byte[] given = new byte[TOKEN_SIZE];
+		in.readFully(given);
+		if (!MessageDigest.isEqual(given, token)) {
+			log.println("Rejected request from " + socket.getInetAddress()
+					+ " with invalid token");
+			return;
+		}
+		File directory = new File(in.readUTF());
+		String[] args = new String[in.readInt()];
+		for (int i = 0; i != args.length; ++i) {
+			args[i] = in.readUTF();
+			if (!args[i].startsWith("-")) {
+				// Source files are relative to the client's directory
+				File file = new File(args[i]);
+				if (!file.isAbsolute()) {
+					args[i] = new File(directory, args[i]).getPath();
+				}
+			}
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				socket.getOutputStream()));
+		int status;
+		synchronized (lock) {
+			status = execute(args, out);
+		}
+		exit(out, status);
+	}
+
+	/**
+	 * Execute a given request with standard output and standard error
+	 * streamed back to the client.
+	 *
+	 * @return The exit status of the request.
+	 */
+	private int execute(String[] args, final DataOutputStream out) {
+		PrintStream oldOut = System.out;
+		PrintStream oldErr = System.err;
+		PrintStream oldErrout = Main.errout;
+		final PrintStream stderr = new PrintStream(new BufferedOutputStream(
+				new Channel(out, STDERR)), true);
+		TimerTask timer = new TimerTask() {
+			public void run() {
+				stderr.println("Error: request timed out after " + timeout
+						+ "s");
+				try {
+					exit(out, 1);
+				} catch (IOException e) {
+				}
+				log.println("Request timed out, shutting down");
+				System.exit(1);
+			}
+		};
+		watchdog.schedule(timer, timeout * 1000L);
+		try {
+			System.setOut(new PrintStream(new BufferedOutputStream(
+					new Channel(out, STDOUT)), true));
+			System.setErr(stderr);
+			Main.errout = new PrintStream(new BufferedOutputStream(
+					new Channel(out, STDERR)), true, "UTF8");
+			return Main.run(args) ? 0 : 1;
+		} catch (Throwable e) {
+			e.printStackTrace(System.err);
+			return 1;
+		} finally {
+			timer.cancel();
+			System.out.flush();
+			System.err.flush();
+			Main.errout.flush();
+			System.setOut(oldOut);
+			System.setErr(oldErr);
+			Main.errout = oldErrout;
+		}
+	}
+
+	private static void exit(DataOutputStream out, int status)
+			throws IOException {
+		synchronized (out) {
+			out.writeByte(EXIT);
+			out.writeInt(status);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Create a new random token, and write it to a given file which only the
+	 * current user can read. The file is removed when the server exits.
+	 */
+	private static byte[] createToken(File file) throws IOException {
+		byte[] token = new byte[TOKEN_SIZE];
+		new SecureRandom().nextBytes(token);
+		Path path = file.toPath();
+		Files.deleteIfExists(path);
+		try {
+			Files.createFile(path, PosixFilePermissions
+					.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ,
+							PosixFilePermission.OWNER_WRITE)));
+		} catch (UnsupportedOperationException e) {
+			// Not a POSIX file system, so restrict access as far as possible.
+			Files.createFile(path);
+			file.setReadable(false, false);
+			file.setReadable(true, true);
+			file.setWritable(false, false);
+			file.setWritable(true, true);
+		}
+		file.deleteOnExit();
+		Files.write(path, token);
+		return token;
+	}
+
+	/**
+	 * An output stream which writes everything as frames of a given kind in a
+	 * response. Since standard output and standard error share the socket,
+	 * each frame is written atomically.
+	 *
+	 * @author agent
+	 *
+	 */
+	private static final class Channel extends OutputStream {
+		private final DataOutputStream out;
+		private final int kind;
+
+		public Channel(DataOutputStream out, int kind) {
+			this.out = out;
+			this.kind = kind;
+		}
+
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		public void write(byte[] bytes, int offset, int length)
+				throws IOException {
+			synchronized (out) {
+				out.writeByte(kind);
+				out.writeInt(length);
+				out.write(bytes, offset, length);
+			}
+		}
+
+		public void flush() throws IOException {
+			synchronized (out) {
+				out.flush();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int timeout = Integer.getInteger("wlc.server.timeout",
+				DEFAULT_TIMEOUT);
+		System.out.println("While Language Compiler (wlc) server on port "
+				+ port);
+		new Server(port, timeout).serve();
+	}
+}
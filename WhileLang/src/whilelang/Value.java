@@ -0,0 +1,141 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Represents a compound value (i.e. a list or record) manipulated by the
+ * interpreters. Other values (e.g. <code>Integer</code>, <code>String</code>,
+ * etc) are immutable and need no special treatment.
+ * </p>
+ *
+ * <p>
+ * Compound values are <i>copy-on-write</i>. That is, whenever a compound value
+ * is stored in a location (e.g. a variable, a parameter, a list element or a
+ * record field) it is marked as <i>shared</i>, rather than being cloned. A
+ * shared value must never be modified in place; instead, it is first copied
+ * and the (unshared) copy is modified. Thus, assignment and parameter passing
+ * are constant time, and a value is only copied when it is actually updated.
+ * The shared mark is never removed, even when all but one of the references
+ * to a value have gone, and therefore may cause some unnecessary copies.
+ * </p>
+ *
+ * @author agent
+ *
+ */
+public interface Value {
+
+	/**
+	 * Check whether this value may be referred to from more than one
+	 * location and, hence, must not be modified in place.
+	 *
+	 * @return
+	 */
+	public boolean isShared();
+
+	/**
+	 * Mark this value as being referred to from more than one location.
+	 */
+	public void share();
+
+	/**
+	 * Create an unshared copy of this value. The copy is shallow and, hence,
+	 * all elements of this value become shared.
+	 *
+	 * @return
+	 */
+	public Value copy();
+
+	/**
+	 * A copy-on-write list value.
+	 *
+	 * @author agent
+	 *
+	 */
+	public static final class List extends ArrayList<Object> implements Value {
+		public static final long serialVersionUID = 1l;
+
+		private boolean shared;
+
+		public List() {
+		}
+
+		public List(int capacity) {
+			super(capacity);
+		}
+
+		public List(Collection<?> elements) {
+			super(elements);
+		}
+
+		public boolean isShared() {
+			return shared;
+		}
+
+		public void share() {
+			shared = true;
+		}
+
+		public List copy() {
+			List r = new List(this);
+			for (int i = 0; i != r.size(); ++i) {
+				Interpreter.share(r.get(i));
+			}
+			return r;
+		}
+	}
+
+	/**
+	 * A copy-on-write record value.
+	 *
+	 * @author agent
+	 *
+	 */
+	public static final class Record extends HashMap<String, Object> implements
+			Value {
+		public static final long serialVersionUID = 1l;
+
+		private boolean shared;
+
+		public Record() {
+		}
+
+		public Record(Map<String, Object> fields) {
+			super(fields);
+		}
+
+		public boolean isShared() {
+			return shared;
+		}
+
+		public void share() {
+			shared = true;
+		}
+
+		public Record copy() {
+			Record r = new Record(this);
+			for (Object o : r.values()) {
+				Interpreter.share(o);
+			}
+			return r;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package whilelang.io;
 
+import static whilelang.util.SyntaxError.internalFailure;
+
 import jasm.attributes.Code;
 import jasm.lang.Bytecode;
 import jasm.lang.Bytecode.FieldMode;
@@ -12,15 +14,18 @@ import jasm.lang.JvmType.Reference;
 import jasm.lang.JvmTypes;
 import jasm.lang.Modifier;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import whilelang.lang.Expr;
 import whilelang.lang.Expr.LVal;
@@ -31,6 +36,9 @@ import whilelang.lang.WhileFile.ConstDecl;
 import whilelang.lang.WhileFile.Decl;
 import whilelang.lang.WhileFile.FunDecl;
 import whilelang.lang.WhileFile.Parameter;
+import whilelang.util.Pair;
+import whilelang.util.SyntacticElement;
+import whilelang.util.TypeInterner;
 
 /**
  * Responsible for translating a While source file into a JVM Class file.
@@ -39,37 +47,192 @@ import whilelang.lang.WhileFile.Parameter;
  * 
  */
 public class ClassFileWriter {
-	private static Map<String, JvmType> methodReturnTypes = new HashMap<String, JvmType>();// Method
-																							// name
-																							// to
-																							// return
-																							// type
-
-	JvmType.Clazz JAVA_LANG_SYSTEM = new JvmType.Clazz("java.lang", "System"),
-			JAVA_IO_PRINTSTREAM = new JvmType.Clazz("java.io", "PrintStream"),
+	/**
+	 * Maps each function name to its return type. This is specific to the
+	 * source file being written, so separate writers can run concurrently.
+	 */
+	private Map<String, JvmType> methodReturnTypes;
+
+	JvmType.Clazz JAVA_UTIL_LIST = new JvmType.Clazz("java.util", "List"),
 			JAVA_UTIL_ARRAYLIST = new JvmType.Clazz("java.util", "ArrayList"),
-			JAVA_UTIL_HASHMAP = new JvmType.Clazz("java.io", "HashMap");
+			JAVA_LANG_BOOLEAN = new JvmType.Clazz("java.lang", "Boolean"),
+			JAVA_LANG_CHARACTER = new JvmType.Clazz("java.lang", "Character"),
+			JAVA_LANG_INTEGER = new JvmType.Clazz("java.lang", "Integer"),
+			JAVA_LANG_DOUBLE = new JvmType.Clazz("java.lang", "Double"),
+			WHILELANG_RUNTIME_UTIL = new JvmType.Clazz("whilelang.runtime",
+					"Util"),
+			WHILELANG_RUNTIME_RECORD = new JvmType.Clazz("whilelang.runtime",
+					"Record"),
+			WHILELANG_RUNTIME_OUTPUT = new JvmType.Clazz("whilelang.runtime",
+					"Output"),
+			WHILELANG_RUNTIME_PRIMITIVELIST = new JvmType.Clazz(
+					"whilelang.runtime", "PrimitiveList"),
+			WHILELANG_RUNTIME_INTLIST = new JvmType.Clazz("whilelang.runtime",
+					"PrimitiveList", "Int"),
+			WHILELANG_RUNTIME_REALLIST = new JvmType.Clazz("whilelang.runtime",
+					"PrimitiveList", "Real"),
+			WHILELANG_RUNTIME_BOOLLIST = new JvmType.Clazz("whilelang.runtime",
+					"PrimitiveList", "Bool"),
+			WHILELANG_RUNTIME_CHARLIST = new JvmType.Clazz("whilelang.runtime",
+					"PrimitiveList", "Char");
+
+	private WhileFile sourceFile;
+	private File classFile;
+	private String className;
+
+	/**
+	 * Maps each record type (as determined by <code>getRecordKey()</code>) to
+	 * the class generated for it.
+	 */
+	private HashMap<String, JvmType.Clazz> recordClasses;
 
-	jasm.io.ClassFileWriter writer;
+	/**
+	 * Maps each generated record class to the types of its fields.
+	 */
+	private HashMap<JvmType, Map<String, JvmType>> recordFields;
+
+	/**
+	 * The generated record classes, indexed by name. These are written
+	 * alongside the class file for the source file.
+	 */
+	private Map<String, ClassFile> recordFiles;
+
+	/**
+	 * The stack map writer for each class file being generated, which
+	 * records the analysis of each method as it is added.
+	 */
+	private Map<ClassFile, StackMapWriter> stackMaps;
+
+	/**
+	 * Used to compare the bounds of unions, and record types, structurally.
+	 */
+	private TypeInterner types;
+
+	/**
+	 * The (canonical) record types whose classes are currently being
+	 * determined. See <code>getJvmType(Type.Union)</code>.
+	 */
+	private ArrayList<Type> pendingRecords;
+
+	/**
+	 * The value of every constant which is known at compile time, indexed by
+	 * name. These are inlined wherever they are used, rather than being held
+	 * in static fields.
+	 */
+	private HashMap<String, Expr.Constant> constants;
+
+	/**
+	 * Used to remove redundant bytecodes from each method before it is
+	 * added, or <code>null</code> if this is disabled.
+	 */
+	private PeepholeOptimiser peephole = new PeepholeOptimiser();
+
+	/**
+	 * The (estimated) number of bytes removed from each method by the peephole
+	 * optimiser, indexed by the name of its class and its own name.
+	 */
+	private Map<String, Integer> savings;
+
+	/**
+	 * Construct a writer which generates classes in memory only, via
+	 * <code>generate()</code>.
+	 */
+	public ClassFileWriter() {
+	}
 
 	public ClassFileWriter(File classFile) {
-		try {
-			writer = new jasm.io.ClassFileWriter(
-					new FileOutputStream(classFile));
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		}
+		this.classFile = classFile;
+	}
+
+	/**
+	 * Enable or disable the peephole optimisation of generated methods, which
+	 * is enabled by default.
+	 *
+	 * @param enabled
+	 */
+	public void setPeephole(boolean enabled) {
+		peephole = enabled ? new PeepholeOptimiser() : null;
+	}
+
+	/**
+	 * Get the (estimated) number of bytes removed from each method by the
+	 * peephole optimiser in the last call to <code>generate()</code>.
+	 *
+	 * @return A map from the name of each method (qualified with the name of
+	 *         its class) to the number of bytes saved.
+	 */
+	public Map<String, Integer> getSavings() {
+		return savings;
 	}
 
 	public void write(WhileFile sourceFile) throws IOException {
+		write(generate(sourceFile));
+	}
+
+	/**
+	 * Write out classes previously produced by <code>generate()</code>. The
+	 * first is written to this writer's class file, and the remainder
+	 * alongside it.
+	 *
+	 * @param classes
+	 *            A map from the binary name of each class to its bytes.
+	 * @throws IOException
+	 */
+	public void write(Map<String, byte[]> classes) throws IOException {
+		boolean first = true;
+		for (Map.Entry<String, byte[]> e : classes.entrySet()) {
+			File file = first ? classFile : new File(
+					classFile.getParentFile(), e.getKey() + ".class");
+			first = false;
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				out.write(e.getValue());
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Generate the classes for a given source file in memory. The first class
+	 * returned contains the source file's functions (including
+	 * <code>main</code>) and is named after it; the remainder are the
+	 * classes generated for its record types.
+	 *
+	 * @param sourceFile
+	 * @return A map from the binary name of each class to its bytes.
+	 * @throws IOException
+	 */
+	public Map<String, byte[]> generate(WhileFile sourceFile)
+			throws IOException {
+		this.sourceFile = sourceFile;
 		List<Modifier> modifiers = new ArrayList<Modifier>();
 		modifiers.add(Modifier.ACC_PUBLIC);
 		String className = sourceFile.filename;
 		className = className.substring(className.lastIndexOf('/') + 1,
 				className.lastIndexOf('.'));
+		this.className = className;
+		recordClasses = new HashMap<String, JvmType.Clazz>();
+		recordFields = new HashMap<JvmType, Map<String, JvmType>>();
+		recordFiles = new LinkedHashMap<String, ClassFile>();
+		stackMaps = new HashMap<ClassFile, StackMapWriter>();
+		types = new TypeInterner();
+		pendingRecords = new ArrayList<Type>();
+		constants = new HashMap<String, Expr.Constant>();
+		savings = new LinkedHashMap<String, Integer>();
+		// NOTE: where a name is declared more than once, only the last
+		// declaration (i.e. the one the name refers to) is generated.
+		for (Decl d : sourceFile.declarations) {
+			if (d instanceof ConstDecl && sourceFile.constant(d.name()) == d) {
+				Expr.Constant value = getConstantValue((ConstDecl) d);
+				if (value != null) {
+					constants.put(d.name(), value);
+				}
+			}
+		}
 
 		JvmType.Clazz thIs = new JvmType.Clazz("", className);
-		jasm.lang.ClassFile cf = new ClassFile(50, thIs,
+		jasm.lang.ClassFile cf = new ClassFile(52, thIs,
 				JvmTypes.JAVA_LANG_OBJECT, Collections.EMPTY_LIST, modifiers);
 
 		methodReturnTypes = new HashMap<String, JvmType>();
@@ -80,36 +243,107 @@ public class ClassFileWriter {
 
 		List<ConstDecl> cd = new ArrayList<ConstDecl>();
 		for (Decl d : sourceFile.declarations)
-			if (d instanceof ConstDecl) {
+			if (d instanceof ConstDecl && sourceFile.constant(d.name()) == d
+					&& !constants.containsKey(d.name())) {
 				cd.add((ConstDecl) d);
 				List<Modifier> l = new ArrayList<Modifier>(modifiers);
 				l.add(Modifier.ACC_STATIC);
 				cf.fields().add(
 						new ClassFile.Field(d.name(),
-								getJvmType(((ConstDecl) d).attributes()), l));
+								getJvmType(getType(d)), l));
 			}
 		
 		if(cf.fields().size()!=0){
-			addFields(cf, cd);
+			addFields(cf, cd, thIs, sourceFile);
 		}
 
 		for (Decl function : sourceFile.declarations) {
-			if (function instanceof FunDecl) {
+			if (function instanceof FunDecl
+					&& sourceFile.function(function.name()) == function) {
 				addMethod(cf, (FunDecl) function, thIs, sourceFile);
 			}
 		}
 
-		writer.write(cf);
+		Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+		classes.put(className, toBytes(cf));
+		for (Map.Entry<String, ClassFile> e : recordFiles.entrySet()) {
+			classes.put(className + "$" + e.getKey(), toBytes(e.getValue()));
+		}
+		return classes;
+	}
+
+	/**
+	 * Determine the value of a given constant, if it is known at compile time.
+	 * That is, if it is given by a literal, or by another such constant.
+	 *
+	 * @return The literal giving the constant's value, or <code>null</code>.
+	 */
+	private Expr.Constant getConstantValue(ConstDecl cd) {
+		HashSet<String> visited = new HashSet<String>();
+		while (cd != null && visited.add(cd.name())) {
+			if (cd.constant instanceof Expr.Constant) {
+				return (Expr.Constant) cd.constant;
+			} else if (cd.constant instanceof Expr.Variable) {
+				cd = sourceFile.constant(((Expr.Variable) cd.constant)
+						.getName());
+			} else {
+				return null;
+			}
+		}
+		return null;
 	}
 
-	private void addFields(ClassFile cf, List<ConstDecl> cd) {
-		// TODO Auto-generated method stub
+	/**
+	 * Convert a given class file into bytes, adding the stack map frames
+	 * required for verification.
+	 */
+	private byte[] toBytes(ClassFile cf) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new jasm.io.ClassFileWriter(bytes).write(cf);
+		return stackMaps.get(cf).write(bytes.toByteArray());
+	}
+
+	/**
+	 * Add a method to a given class file. This also computes the stack map
+	 * frames for the method, which removes any unreachable bytecodes.
+	 */
+	private void addMethod(ClassFile cf, ClassFile.Method method,
+			List<Bytecode> bytecodes) {
+		StackMapWriter stackMap = stackMaps.get(cf);
+		if (stackMap == null) {
+			stackMap = new StackMapWriter(cf.type());
+			stackMaps.put(cf, stackMap);
+		}
+		if (peephole != null) {
+			savings.put(cf.type().lastComponent() + "." + method.name(),
+					peephole.optimise(bytecodes));
+		}
+		stackMap.analyse(method, bytecodes);
+		method.attributes()
+				.add(new Code(bytecodes, Collections.EMPTY_LIST, method));
+		cf.methods().add(method);
+	}
+
+	/**
+	 * Adds a static initialiser which evaluates each constant declaration, and
+	 * stores the result in the corresponding static field.
+	 */
+	private void addFields(ClassFile cf, List<ConstDecl> cd, JvmType.Clazz thIs,
+			WhileFile sourceFile) {
+		MethodPage mp = new MethodPage(thIs, sourceFile);
 		for(ConstDecl c : cd){
-			String name = c.name;
-			Object value = ((Expr.Constant)c.constant).getValue();
-			
+			JvmType type = getJvmType(getType(c));
+			addBytecodes(c.constant, type, mp);
+			mp.bc.add(new Bytecode.PutField(thIs, c.name, type,
+					FieldMode.STATIC));
 		}
-		
+		mp.bc.add(new Bytecode.Return(null));
+
+		List<Modifier> modifiers = new ArrayList<Modifier>();
+		modifiers.add(Modifier.ACC_STATIC);
+		ClassFile.Method method = new ClassFile.Method("<clinit>",
+				new JvmType.Function(JvmTypes.T_VOID), modifiers);
+		addMethod(cf, method, mp.bc);
 	}
 
 	private void addMethod(ClassFile cf, FunDecl function, JvmType.Clazz thIs,
@@ -118,11 +352,12 @@ public class ClassFileWriter {
 
 		String methodName = function.name();
 		JvmType returnType = getJvmType(function.ret);
+		mp.returnType = returnType;
 
 		List<JvmType> parameters = new ArrayList<JvmType>();
 		for (Parameter param : function.parameters) {
 			parameters.add(getJvmType(param.type));
-			mp.put(param.name(), jvmTypeSize(getJvmType(param.type)));
+			mp.put(param.name(), getJvmType(param.type));
 		}
 
 		List<Modifier> modifiers = new ArrayList<Modifier>();
@@ -139,10 +374,7 @@ public class ClassFileWriter {
 		addBytecodes(function.statements, mp);
 		mp.bc.add(new Bytecode.Return(null));
 
-		method.attributes()
-				.add(new Code(mp.bc, Collections.EMPTY_LIST, method));
-
-		cf.methods().add(method);
+		addMethod(cf, method, mp.bc);
 	}
 
 	/**
@@ -166,10 +398,8 @@ public class ClassFileWriter {
 			addBytecodes((Stmt.Assign) stmt, mp);
 		} else if (stmt instanceof Stmt.For) {
 			addBytecodes((Stmt.For) stmt, mp);
-			// TODO
 		} else if (stmt instanceof Stmt.While) {
 			addBytecodes((Stmt.While) stmt, mp);
-			// TODO
 		} else if (stmt instanceof Stmt.IfElse) {
 			addBytecodes((Stmt.IfElse) stmt, mp);
 		} else if (stmt instanceof Stmt.Return) {
@@ -180,100 +410,302 @@ public class ClassFileWriter {
 			addBytecodes((Stmt.Print) stmt, mp);
 		} else if (stmt instanceof Expr.Invoke) {
 			JvmType type = addBytecodes((Expr.Invoke) stmt, mp);
-			mp.bc.add(new Bytecode.Pop(type));
+			if (!(type instanceof JvmType.Void)) {
+				mp.bc.add(new Bytecode.Pop(type));
+			}
 		} else {
-			// TODO unknown statement type, we need to fail here
+			internalFailure("unknown statement encountered (" + stmt + ")",
+					sourceFile.filename, stmt);
 		}
 	}
 
 	private void addBytecodes(Stmt.Assign statement, MethodPage mp) {
+		LVal lhs = statement.getLhs();
 		Expr rhs = statement.getRhs();
-		JvmType type = addBytecodes(rhs, mp);
 
-		LVal lhs = statement.getLhs();
 		if (lhs instanceof Expr.Variable) {
-			mp.bc.add(new Bytecode.Store(mp.localIndexs
-					.get(((Expr.Variable) lhs).getName()), type));
+			String name = ((Expr.Variable) lhs).getName();
+			JvmType type = mp.localTypes.get(name);
+			addValue(rhs, type, mp);
+			mp.bc.add(new Bytecode.Store(mp.localIndexs.get(name), type));
+		} else if (lhs instanceof Expr.IndexOf
+				|| lhs instanceof Expr.RecordAccess) {
+			addAssignment(lhs, rhs, mp);
+		} else {
+			internalFailure("unknown lval encountered (" + lhs + ")",
+					sourceFile.filename, statement);
 		}
-		// TODO index of
-		// TODO record access
+	}
 
+	/**
+	 * <p>
+	 * Adds bytecodes for an assignment to a list element or record field, such
+	 * as <code>x.f[i] = e</code>. The lval is split into the variable being
+	 * assigned (i.e. <code>x</code>), and the path of accesses into it (i.e.
+	 * <code>.f</code> and <code>[i]</code>). The containers along the path are
+	 * loaded into temporary variables, the last one is updated, and then each
+	 * container is written back into its parent.
+	 * </p>
+	 *
+	 * <p>
+	 * Writing containers back is necessary because loading a container may
+	 * have changed its representation (e.g. from an <code>ArrayList</code> to
+	 * a <code>PrimitiveList</code>), and because strings are immutable.
+	 * </p>
+	 */
+	private void addAssignment(LVal lhs, Expr rhs, MethodPage mp) {
+		ArrayList<Expr> path = new ArrayList<Expr>();
+		Expr e = (Expr) lhs;
+		while (!(e instanceof Expr.Variable)) {
+			path.add(0, e);
+			e = getSource(e);
+		}
+		Expr.Variable root = (Expr.Variable) e;
+		int n = path.size();
+
+		// First, evaluate the indices and the right-hand side.
+		int[] keys = new int[n];
+		for (int i = 0; i != n; ++i) {
+			if (path.get(i) instanceof Expr.IndexOf) {
+				addBytecodes(((Expr.IndexOf) path.get(i)).getIndex(),
+						JvmTypes.T_INT, mp);
+				keys[i] = mp.allocate(JvmTypes.T_INT);
+				mp.bc.add(new Bytecode.Store(keys[i], JvmTypes.T_INT));
+			}
+		}
+		JvmType valueType = getJvmType(rhs);
+		addValue(rhs, valueType, mp);
+		int value = mp.allocate(valueType);
+		mp.bc.add(new Bytecode.Store(value, valueType));
+
+		// Second, load each container along the path.
+		int[] containers = new int[n];
+		JvmType[] containerTypes = new JvmType[n];
+		for (int i = 0; i != n; ++i) {
+			containerTypes[i] = getContainerType(path.get(i));
+			if (i == 0) {
+				addBytecodes(root, containerTypes[i], mp);
+			} else {
+				mp.bc.add(new Bytecode.Load(containers[i - 1],
+						containerTypes[i - 1]));
+				JvmType type = addAccess(path.get(i - 1), containerTypes[i - 1],
+						keys[i - 1], mp);
+				addCoercion(type, containerTypes[i], mp);
+			}
+			containers[i] = mp.allocate(containerTypes[i]);
+			mp.bc.add(new Bytecode.Store(containers[i], containerTypes[i]));
+		}
+
+		// Third, update the last container and write each back into its
+		// parent.
+		addUpdate(path.get(n - 1), containers[n - 1], containerTypes[n - 1],
+				keys[n - 1], value, valueType, mp);
+		for (int i = n - 2; i >= 0; --i) {
+			addUpdate(path.get(i), containers[i], containerTypes[i], keys[i],
+					containers[i + 1], containerTypes[i + 1], mp);
+		}
+		JvmType rootType = mp.localTypes.get(root.getName());
+		mp.bc.add(new Bytecode.Load(containers[0], containerTypes[0]));
+		addCoercion(containerTypes[0], rootType, mp);
+		mp.bc.add(new Bytecode.Store(mp.localIndexs.get(root.getName()),
+				rootType));
+	}
+
+	private Expr getSource(Expr lval) {
+		if (lval instanceof Expr.IndexOf) {
+			return ((Expr.IndexOf) lval).getSource();
+		} else {
+			return ((Expr.RecordAccess) lval).getSource();
+		}
+	}
+
+	/**
+	 * Determine the JVM type of the container accessed by a given list or
+	 * record access.
+	 */
+	private JvmType getContainerType(Expr access) {
+		JvmType type = getJvmType(getSource(access));
+		if (access instanceof Expr.RecordAccess) {
+			return recordFields.containsKey(type) ? type
+					: WHILELANG_RUNTIME_RECORD;
+		} else if (JvmTypes.isJavaLangString(type) || isPrimitiveList(type)
+				|| type.equals(JAVA_UTIL_ARRAYLIST)) {
+			return type;
+		} else {
+			return JAVA_UTIL_LIST;
+		}
+	}
+
+	/**
+	 * Adds bytecodes to read the element or field of a container on top of
+	 * the stack, where the index (if any) is held in a given variable.
+	 */
+	private JvmType addAccess(Expr access, JvmType containerType, int key,
+			MethodPage mp) {
+		if (access instanceof Expr.RecordAccess) {
+			return addFieldAccess(containerType,
+					((Expr.RecordAccess) access).getName(), mp);
+		} else if (isPrimitiveList(containerType)) {
+			JvmType.Array array = getArrayType((JvmType.Clazz) containerType);
+			mp.bc.add(new Bytecode.GetField((JvmType.Clazz) containerType,
+					"data", array, FieldMode.NONSTATIC));
+			mp.bc.add(new Bytecode.Load(key, JvmTypes.T_INT));
+			mp.bc.add(new Bytecode.ArrayLoad(array));
+			return array.element();
+		} else {
+			// NOTE: a string cannot contain a container
+			mp.bc.add(new Bytecode.Load(key, JvmTypes.T_INT));
+			mp.bc.add(new Bytecode.Invoke(JAVA_UTIL_LIST, "get",
+					new JvmType.Function(JvmTypes.JAVA_LANG_OBJECT,
+							JvmTypes.T_INT), Bytecode.InvokeMode.INTERFACE));
+			return JvmTypes.JAVA_LANG_OBJECT;
+		}
+	}
+
+	/**
+	 * Adds bytecodes to update the element or field of a container held in a
+	 * given variable, using a value held in another variable.
+	 */
+	private void addUpdate(Expr access, int container, JvmType containerType,
+			int key, int value, JvmType valueType, MethodPage mp) {
+		mp.bc.add(new Bytecode.Load(container, containerType));
+		if (access instanceof Expr.RecordAccess) {
+			String field = ((Expr.RecordAccess) access).getName();
+			if (recordFields.containsKey(containerType)) {
+				// record.field = value
+				JvmType fieldType = recordFields.get(containerType).get(field);
+				mp.bc.add(new Bytecode.Load(value, valueType));
+				addCoercion(valueType, fieldType, mp);
+				mp.bc.add(new Bytecode.PutField((JvmType.Clazz) containerType,
+						field, fieldType, FieldMode.NONSTATIC));
+			} else {
+				// record.set(field, value)
+				mp.bc.add(new Bytecode.LoadConst(field));
+				mp.bc.add(new Bytecode.Load(value, valueType));
+				addCoercion(valueType, JvmTypes.JAVA_LANG_OBJECT, mp);
+				mp.bc.add(new Bytecode.Invoke(WHILELANG_RUNTIME_RECORD, "set",
+						new JvmType.Function(JvmTypes.T_VOID,
+								JvmTypes.JAVA_LANG_STRING,
+								JvmTypes.JAVA_LANG_OBJECT),
+						Bytecode.InvokeMode.VIRTUAL));
+			}
+		} else if (JvmTypes.isJavaLangString(containerType)) {
+			// str = Util.update(str, index, value)
+			mp.bc.add(new Bytecode.Load(key, JvmTypes.T_INT));
+			mp.bc.add(new Bytecode.Load(value, valueType));
+			addCoercion(valueType, JvmTypes.T_CHAR, mp);
+			mp.bc.add(new Bytecode.Invoke(WHILELANG_RUNTIME_UTIL, "update",
+					new JvmType.Function(JvmTypes.JAVA_LANG_STRING,
+							JvmTypes.JAVA_LANG_STRING, JvmTypes.T_INT,
+							JvmTypes.T_CHAR), Bytecode.InvokeMode.STATIC));
+			mp.bc.add(new Bytecode.Store(container, containerType));
+		} else if (isPrimitiveList(containerType)) {
+			// list.data[index] = value
+			JvmType.Array array = getArrayType((JvmType.Clazz) containerType);
+			mp.bc.add(new Bytecode.GetField((JvmType.Clazz) containerType,
+					"data", array, FieldMode.NONSTATIC));
+			mp.bc.add(new Bytecode.Load(key, JvmTypes.T_INT));
+			mp.bc.add(new Bytecode.Load(value, valueType));
+			addCoercion(valueType, array.element(), mp);
+			mp.bc.add(new Bytecode.ArrayStore(array));
+		} else {
+			// list.set(index, value)
+			mp.bc.add(new Bytecode.Load(key, JvmTypes.T_INT));
+			mp.bc.add(new Bytecode.Load(value, valueType));
+			addCoercion(valueType, JvmTypes.JAVA_LANG_OBJECT, mp);
+			mp.bc.add(new Bytecode.Invoke(JAVA_UTIL_LIST, "set",
+					new JvmType.Function(JvmTypes.JAVA_LANG_OBJECT,
+							JvmTypes.T_INT, JvmTypes.JAVA_LANG_OBJECT),
+					Bytecode.InvokeMode.INTERFACE));
+			mp.bc.add(new Bytecode.Pop(JvmTypes.JAVA_LANG_OBJECT));
+		}
 	}
 
 	private void addBytecodes(Stmt.For statement, MethodPage mp) {
 		addBytecodes(statement.getDeclaration(),mp);
-		
-		String startLabel = mp.next(), endLabel = mp.next();
-		mp.bc.add(new Bytecode.Label(startLabel));
-		addBytecodes(statement.getCondition(), mp);		
-		mp.bc.add(new Bytecode.If(Bytecode.IfMode.EQ, endLabel));
+
+		// NOTE: the condition is placed after the body, so that each
+		// iteration executes only one branch.
+		String bodyLabel = mp.next(), conditionLabel = mp.next();
+		mp.bc.add(new Bytecode.Goto(conditionLabel));
+		mp.bc.add(new Bytecode.Label(bodyLabel));
 		addBytecodes(statement.getBody(), mp);
 		addBytecodes(statement.getIncrement(),mp);
-		mp.bc.add(new Bytecode.Goto(startLabel));
-		mp.bc.add(new Bytecode.Label(endLabel));
+		mp.bc.add(new Bytecode.Label(conditionLabel));
+		addCondition(statement.getCondition(), true, bodyLabel, mp);
 	}
 
 	private void addBytecodes(Stmt.While statement, MethodPage mp) {
-		String startLabel = mp.next(), endLabel = mp.next();
-		mp.bc.add(new Bytecode.Label(startLabel));
-		addBytecodes(statement.getCondition(), mp);		
-		mp.bc.add(new Bytecode.If(Bytecode.IfMode.EQ, endLabel));
+		String bodyLabel = mp.next(), conditionLabel = mp.next();
+		mp.bc.add(new Bytecode.Goto(conditionLabel));
+		mp.bc.add(new Bytecode.Label(bodyLabel));
 		addBytecodes(statement.getBody(), mp);
-		mp.bc.add(new Bytecode.Goto(startLabel));
-		mp.bc.add(new Bytecode.Label(endLabel));
+		mp.bc.add(new Bytecode.Label(conditionLabel));
+		addCondition(statement.getCondition(), true, bodyLabel, mp);
 	}
 
 	private void addBytecodes(Stmt.IfElse stmt, MethodPage mp) {
-		addBytecodes(stmt.getCondition(), mp);
-
 		String falseLabel = mp.next(), endLabel = mp.next();
-		mp.bc.add(new Bytecode.If(Bytecode.IfMode.EQ, falseLabel));
+		addCondition(stmt.getCondition(), false, falseLabel, mp);
 
 		// execute true branch
 		addBytecodes(stmt.getTrueBranch(), mp);
-		// skip false branch and go to end
-		mp.bc.add(new Bytecode.Goto(endLabel));
-		// false branchlabel
-		mp.bc.add(new Bytecode.Label(falseLabel));
-		// false branch
 		if (stmt.getFalseBranch().size() != 0) {
+			// skip false branch and go to end
+			mp.bc.add(new Bytecode.Goto(endLabel));
+			// false branch
+			mp.bc.add(new Bytecode.Label(falseLabel));
 			addBytecodes(stmt.getFalseBranch(), mp);
+			mp.bc.add(new Bytecode.Label(endLabel));
+		} else {
+			mp.bc.add(new Bytecode.Label(falseLabel));
 		}
-		mp.bc.add(new Bytecode.Label(endLabel));
 	}
 
 	private void addBytecodes(Stmt.Return statement, MethodPage mp) {
-		JvmType type = addBytecodes(statement.getExpr(), mp);
-		mp.bc.add(new Bytecode.Return(type));
+		if (statement.getExpr() != null) {
+			addValue(statement.getExpr(), mp.returnType, mp);
+			mp.bc.add(new Bytecode.Return(mp.returnType));
+		} else {
+			mp.bc.add(new Bytecode.Return(null));
+		}
 	}
 
 	private void addBytecodes(Stmt.VariableDeclaration statement, MethodPage mp) {
-		JvmType type = addBytecodes(statement.getExpr(), mp);
-
-		mp.put(statement.getName(), jvmTypeSize(type));
-		mp.bc.add(new Bytecode.Store(mp.localIndexs.get(statement.getName()),
-				type));
+		JvmType type = getJvmType(statement.getType());
+		if (statement.getExpr() != null) {
+			addValue(statement.getExpr(), type, mp);
+		}
+		// NOTE: the variable is only in scope after its initialiser
+		mp.put(statement.getName(), type);
+		if (statement.getExpr() != null) {
+			mp.bc.add(new Bytecode.Store(mp.localIndexs.get(statement
+					.getName()), type));
+		}
 	}
 
 	private void addBytecodes(Stmt.Print stmt, MethodPage mp) {
-		mp.bc.add(new Bytecode.GetField(JAVA_LANG_SYSTEM, "out",
-				JAVA_IO_PRINTSTREAM, Bytecode.FieldMode.STATIC));
-
 		// String str = toString(execute(stmt.getExpr(),frame));
 		// execute expression leaving value on top returning the JvmType of the
 		// value
 		JvmType type = addBytecodes(stmt.getExpr(), mp);
+		if (!(type instanceof Primitive)) {
+			addToString(type, mp);
+			type = JvmTypes.JAVA_LANG_STRING;
+		}
 
-		// System.out.println(str);
+		// Output.println(str);
 
-		mp.bc.add(new Bytecode.Invoke(JAVA_IO_PRINTSTREAM, "println",
+		mp.bc.add(new Bytecode.Invoke(WHILELANG_RUNTIME_OUTPUT, "println",
 				new JvmType.Function(JvmTypes.T_VOID, type),
-				Bytecode.InvokeMode.VIRTUAL));
+				Bytecode.InvokeMode.STATIC));
 	}
 
 	/**
 	 * Adds bytecodes for executing the expression so that the top result on the
-	 * stack is the resulting value
+	 * stack is the resulting value. The value is represented using the JVM
+	 * type corresponding to the type of the expression (see
+	 * <code>getJvmType()</code>).
 	 * 
 	 * @param localIndexs
 	 * @param bytecodes
@@ -301,139 +733,438 @@ public class ClassFileWriter {
 		} else if (expr instanceof Expr.Variable) {
 			return addBytecodes((Expr.Variable) expr, mp);
 		} else {
-			// TODO unknown expression type, should through a compile error
-			return null;
+			internalFailure("unknown expression encountered (" + expr + ")",
+					sourceFile.filename, expr);
+			return null; // dead code
 		}
 	}
 
+	/**
+	 * Adds bytecodes for executing the expression, such that the resulting
+	 * value is represented using a given JVM type.
+	 */
+	private void addBytecodes(Expr expr, JvmType target, MethodPage mp) {
+		JvmType type = addBytecodes(expr, mp);
+		addCoercion(type, target, mp);
+	}
+
+	/**
+	 * Adds bytecodes for executing an expression whose value is about to be
+	 * stored in some location (e.g. a variable or a list element). In
+	 * addition to coercing the value to the JVM type of the location, this
+	 * ensures the value semantics used in While are preserved. That is, a
+	 * list or record which may be referred to from another location is
+	 * cloned. Values produced by other expressions (e.g. constructors and
+	 * invocations) are fresh and need not be cloned.
+	 */
+	private void addValue(Expr expr, JvmType target, MethodPage mp) {
+		JvmType type = addBytecodes(expr, mp);
+		Expr e = expr;
+		while (e instanceof Expr.Cast) {
+			e = ((Expr.Cast) e).getSource();
+		}
+		if (isMutable(type)
+				&& (e instanceof Expr.Variable || e instanceof Expr.IndexOf
+						|| e instanceof Expr.RecordAccess)) {
+			mp.bc.add(new Bytecode.Invoke(WHILELANG_RUNTIME_UTIL, "clone",
+					new JvmType.Function(JvmTypes.JAVA_LANG_OBJECT,
+							JvmTypes.JAVA_LANG_OBJECT),
+					Bytecode.InvokeMode.STATIC));
+			addCoercion(JvmTypes.JAVA_LANG_OBJECT, type, mp);
+		}
+		addCoercion(type, target, mp);
+	}
+
 	private JvmType addBytecodes(Expr.Binary expr, MethodPage mp) {
-		// TODO
-		JvmType lhs = addBytecodes(expr.getLhs(), mp);
-		String label = mp.next();
-		mp.bc.add(new Bytecode.Label(label));
-		JvmType rhs = addBytecodes(expr.getRhs(), mp);
-
-		if (lhs.getClass().equals(rhs.getClass())) {
-		} else if (lhs instanceof JvmType.Int && rhs instanceof JvmType.Double) {
-			for (int i = mp.bc.size() - 1; 0 <= i; i--) {
-				Bytecode b = mp.bc.get(i);
-				if (b instanceof Bytecode.Label
-						&& ((Bytecode.Label) b).name.equals(label)) {
-					mp.bc.set(i, new Bytecode.Conversion(new JvmType.Int(),
-							new JvmType.Double()));
-					break;
+		JvmType lhsType = getJvmType(expr.getLhs());
+		JvmType rhsType = getJvmType(expr.getRhs());
+
+		switch (expr.getOp()) {
+		case ADD:
+		case SUB:
+		case MUL:
+		case DIV:
+		case REM: {
+			JvmType type = getOperandType(lhsType, rhsType);
+			addBytecodes(expr.getLhs(), type, mp);
+			addBytecodes(expr.getRhs(), type, mp);
+			mp.bc.add(new Bytecode.BinOp(getBinOp(expr.getOp()), type));
+			return type;
+		}
+		case AND:
+		case OR:
+		case EQ:
+		case NEQ:
+		case LT:
+		case LTEQ:
+		case GT:
+		case GTEQ:
+			return addConditionValue(expr, mp);
+		case APPEND:
+			if (JvmTypes.isJavaLangString(lhsType)
+					|| JvmTypes.isJavaLangString(rhsType)) {
+				// lhs.concat(rhs)
+				addToString(addBytecodes(expr.getLhs(), mp), mp);
+				addToString(addBytecodes(expr.getRhs(), mp), mp);
+				mp.bc.add(new Bytecode.Invoke(JvmTypes.JAVA_LANG_STRING,
+						"concat", new JvmType.Function(
+								JvmTypes.JAVA_LANG_STRING,
+								JvmTypes.JAVA_LANG_STRING),
+						Bytecode.InvokeMode.VIRTUAL));
+				return JvmTypes.JAVA_LANG_STRING;
+			} else if (isPrimitiveList(getJvmType(expr))) {
+				JvmType type = getJvmType(expr);
+				addBytecodes(expr.getLhs(), type, mp);
+				addBytecodes(expr.getRhs(), type, mp);
+				mp.bc.add(new Bytecode.Invoke((JvmType.Clazz) type, "append",
+						new JvmType.Function(type, type, type),
+						Bytecode.InvokeMode.STATIC));
+				return type;
+			} else {
+				addBytecodes(expr.getLhs(), JAVA_UTIL_LIST, mp);
+				addBytecodes(expr.getRhs(), JAVA_UTIL_LIST, mp);
+				mp.bc.add(new Bytecode.Invoke(WHILELANG_RUNTIME_UTIL, "append",
+						new JvmType.Function(JAVA_UTIL_ARRAYLIST,
+								JAVA_UTIL_LIST, JAVA_UTIL_LIST),
+						Bytecode.InvokeMode.STATIC));
+				return JAVA_UTIL_ARRAYLIST;
+			}
+		}
+
+		internalFailure("unknown binary expression encountered (" + expr + ")",
+				sourceFile.filename, expr);
+		return null; // dead code
+	}
+
+	/**
+	 * Adds bytecodes for a condition which is used as a value, such as
+	 * <code>b = x < y;</code>. The condition is translated into branches
+	 * which then load the appropriate boolean constant.
+	 */
+	private JvmType addConditionValue(Expr condition, MethodPage mp) {
+		String trueLabel = mp.next();
+		String endLabel = mp.next();
+		addCondition(condition, true, trueLabel, mp);
+		mp.bc.add(new Bytecode.LoadConst(false));
+		mp.bc.add(new Bytecode.Goto(endLabel));
+		mp.bc.add(new Bytecode.Label(trueLabel));
+		mp.bc.add(new Bytecode.LoadConst(true));
+		mp.bc.add(new Bytecode.Label(endLabel));
+		return JvmTypes.T_BOOL;
+	}
+
+	/**
+	 * Adds bytecodes for a condition which branch to a given label if the
+	 * condition evaluates to a given outcome, and fall through otherwise.
+	 * Comparisons branch directly on their operands (e.g. using
+	 * <code>if_icmplt</code>), rather than first producing a boolean value.
+	 * Logical operators short-circuit, since their rhs may depend on their
+	 * lhs (e.g. <code>i >= 0 && xs[i] == 0</code>).
+	 *
+	 * @param condition
+	 *            The condition to translate.
+	 * @param outcome
+	 *            The outcome for which to branch.
+	 * @param target
+	 *            The label to branch to.
+	 * @param mp
+	 */
+	private void addCondition(Expr condition, boolean outcome, String target,
+			MethodPage mp) {
+		if (condition instanceof Expr.Constant
+				&& ((Expr.Constant) condition).getValue() instanceof Boolean) {
+			if (((Expr.Constant) condition).getValue().equals(outcome)) {
+				mp.bc.add(new Bytecode.Goto(target));
+			}
+			return;
+		} else if (condition instanceof Expr.Unary
+				&& ((Expr.Unary) condition).getOp() == Expr.UOp.NOT) {
+			addCondition(((Expr.Unary) condition).getExpr(), !outcome, target,
+					mp);
+			return;
+		} else if (condition instanceof Expr.Binary) {
+			Expr.Binary expr = (Expr.Binary) condition;
+			Expr.BOp op = expr.getOp();
+			if (op == Expr.BOp.AND || op == Expr.BOp.OR) {
+				// An AND is true when both operands are; an OR is false when
+				// both operands are.
+				if (outcome == (op == Expr.BOp.AND)) {
+					String skipLabel = mp.next();
+					addCondition(expr.getLhs(), !outcome, skipLabel, mp);
+					addCondition(expr.getRhs(), outcome, target, mp);
+					mp.bc.add(new Bytecode.Label(skipLabel));
+				} else {
+					addCondition(expr.getLhs(), outcome, target, mp);
+					addCondition(expr.getRhs(), outcome, target, mp);
 				}
+				return;
+			} else if (op == Expr.BOp.EQ || op == Expr.BOp.NEQ
+					|| op == Expr.BOp.LT || op == Expr.BOp.LTEQ
+					|| op == Expr.BOp.GT || op == Expr.BOp.GTEQ) {
+				addComparison(expr, outcome, target, mp);
+				return;
 			}
-			lhs = new JvmType.Double();
-		} else if (lhs instanceof JvmType.Double && rhs instanceof JvmType.Int) {
-			rhs = new JvmType.Double();
-			mp.bc.add(new Bytecode.Conversion(new JvmType.Int(),
-					new JvmType.Double()));
 		}
+		// otherwise, evaluate the condition and branch on its value
+		addBytecodes(condition, JvmTypes.T_BOOL, mp);
+		mp.bc.add(new Bytecode.If(outcome ? Bytecode.IfMode.NE
+				: Bytecode.IfMode.EQ, target));
+	}
 
-		// TODO test the types, if the are not the same like integer and double
-		// or float then we need to cast them and then try again
+	/**
+	 * Adds bytecodes for a comparison which branch to a given label if the
+	 * comparison evaluates to a given outcome, and fall through otherwise.
+	 */
+	private void addComparison(Expr.Binary expr, boolean outcome,
+			String target, MethodPage mp) {
+		JvmType type = getOperandType(getJvmType(expr.getLhs()),
+				getJvmType(expr.getRhs()));
+		Expr.BOp op = expr.getOp();
+		Expr.BOp branchOp = outcome ? op : negate(op);
+
+		if (type instanceof JvmType.Int && isZero(expr.getRhs())) {
+			// compare against zero using a single ifXX
+			addBytecodes(expr.getLhs(), type, mp);
+			mp.bc.add(new Bytecode.If(getIfMode(branchOp), target));
+			return;
+		}
 
-		JvmType type = lhs;
-		String trueLabel, endLabel;
+		addBytecodes(expr.getLhs(), type, mp);
+		addBytecodes(expr.getRhs(), type, mp);
+
+		if (type instanceof JvmType.Double) {
+			// NOTE: the choice of comparison ensures comparisons involving
+			// NaN are false.
+			int mode = (op == Expr.BOp.LT || op == Expr.BOp.LTEQ) ? Bytecode.Cmp.GT
+					: Bytecode.Cmp.LT;
+			mp.bc.add(new Bytecode.Cmp(type, mode));
+			mp.bc.add(new Bytecode.If(getIfMode(branchOp), target));
+		} else if (type instanceof Primitive) {
+			mp.bc.add(new Bytecode.IfCmp(getIfCmpOp(branchOp), type, target));
+		} else {
+			// Util.equals(lhs, rhs)
+			mp.bc.add(new Bytecode.Invoke(WHILELANG_RUNTIME_UTIL, "equals",
+					new JvmType.Function(JvmTypes.T_BOOL,
+							JvmTypes.JAVA_LANG_OBJECT,
+							JvmTypes.JAVA_LANG_OBJECT),
+					Bytecode.InvokeMode.STATIC));
+			Bytecode.IfMode mode = branchOp == Expr.BOp.EQ ? Bytecode.IfMode.NE
+					: Bytecode.IfMode.EQ;
+			mp.bc.add(new Bytecode.If(mode, target));
+		}
+	}
 
-		switch (expr.getOp()) {
-		case AND:
-			type = new JvmType.Bool();
-			mp.bc.add(new Bytecode.BinOp(Bytecode.BinOp.AND, type));
-			return type;
-		case OR:
-			type = new JvmType.Bool();
-			mp.bc.add(new Bytecode.BinOp(Bytecode.BinOp.OR, type));
-			return type;
+	private boolean isZero(Expr expr) {
+		return expr instanceof Expr.Constant
+				&& Integer.valueOf(0).equals(((Expr.Constant) expr).getValue());
+	}
+
+	/**
+	 * Determine the comparison which holds exactly when a given comparison
+	 * doesn't.
+	 */
+	private Expr.BOp negate(Expr.BOp op) {
+		switch (op) {
+		case EQ:
+			return Expr.BOp.NEQ;
+		case NEQ:
+			return Expr.BOp.EQ;
+		case LT:
+			return Expr.BOp.GTEQ;
+		case LTEQ:
+			return Expr.BOp.GT;
+		case GT:
+			return Expr.BOp.LTEQ;
+		default:
+			return Expr.BOp.LT;
+		}
+	}
+
+	/**
+	 * Determine the JVM type to which the operands of a binary arithmetic
+	 * or comparison operator are converted. Integers are promoted to reals
+	 * when mixed with them, whilst boxed values are unboxed when mixed with
+	 * primitive values.
+	 */
+	private JvmType getOperandType(JvmType lhs, JvmType rhs) {
+		if (lhs instanceof JvmType.Double || rhs instanceof JvmType.Double) {
+			return JvmTypes.T_DOUBLE;
+		} else if (lhs instanceof Primitive) {
+			return lhs;
+		} else if (rhs instanceof Primitive) {
+			return rhs;
+		} else {
+			return JvmTypes.JAVA_LANG_OBJECT;
+		}
+	}
+
+	private int getBinOp(Expr.BOp op) {
+		switch (op) {
 		case ADD:
-			mp.bc.add(new Bytecode.BinOp(Bytecode.BinOp.ADD, type));
-			return type;
+			return Bytecode.BinOp.ADD;
 		case SUB:
-			mp.bc.add(new Bytecode.BinOp(Bytecode.BinOp.SUB, type));
-			return type;
+			return Bytecode.BinOp.SUB;
 		case MUL:
-			mp.bc.add(new Bytecode.BinOp(Bytecode.BinOp.MUL, type));
-			return type;
+			return Bytecode.BinOp.MUL;
 		case DIV:
-			mp.bc.add(new Bytecode.BinOp(Bytecode.BinOp.DIV, type));
-			return type;
-		case REM:
-			mp.bc.add(new Bytecode.BinOp(Bytecode.BinOp.REM, type));
-			return type;
+			return Bytecode.BinOp.DIV;
+		default:
+			return Bytecode.BinOp.REM;
+		}
+	}
+
+	private int getIfCmpOp(Expr.BOp op) {
+		switch (op) {
 		case EQ:
-			trueLabel = mp.next();
-			endLabel = mp.next();
-			mp.bc.add(new Bytecode.IfCmp(Bytecode.IfCmp.EQ, type, trueLabel));
-			mp.bc.add(new Bytecode.LoadConst(false));
-			mp.bc.add(new Bytecode.Goto(endLabel));
-			mp.bc.add(new Bytecode.Label(trueLabel));
-			mp.bc.add(new Bytecode.LoadConst(true));
-			mp.bc.add(new Bytecode.Label(endLabel));
-			return new JvmType.Bool();
-		case NEQ:// TODO
-			trueLabel = mp.next();
-			endLabel = mp.next();
-			mp.bc.add(new Bytecode.IfCmp(Bytecode.IfCmp.NE, type, trueLabel));
-			mp.bc.add(new Bytecode.LoadConst(false));
-			mp.bc.add(new Bytecode.Goto(endLabel));
-			mp.bc.add(new Bytecode.Label(trueLabel));
-			mp.bc.add(new Bytecode.LoadConst(true));
-			mp.bc.add(new Bytecode.Label(endLabel));
-			return new JvmType.Bool();
-		case LT:// TODO
-			trueLabel = mp.next();
-			endLabel = mp.next();
-			mp.bc.add(new Bytecode.IfCmp(Bytecode.IfCmp.LT, type, trueLabel));
-			mp.bc.add(new Bytecode.LoadConst(false));
-			mp.bc.add(new Bytecode.Goto(endLabel));
-			mp.bc.add(new Bytecode.Label(trueLabel));
-			mp.bc.add(new Bytecode.LoadConst(true));
-			mp.bc.add(new Bytecode.Label(endLabel));
-			return new JvmType.Bool();
-		case LTEQ:// TODO
-			trueLabel = mp.next();
-			endLabel = mp.next();
-			mp.bc.add(new Bytecode.IfCmp(Bytecode.IfCmp.LE, type, trueLabel));
-			mp.bc.add(new Bytecode.LoadConst(false));
-			mp.bc.add(new Bytecode.Goto(endLabel));
-			mp.bc.add(new Bytecode.Label(trueLabel));
-			mp.bc.add(new Bytecode.LoadConst(true));
-			mp.bc.add(new Bytecode.Label(endLabel));
-			return new JvmType.Bool();
-		case GT:// TODO
-			trueLabel = mp.next();
-			endLabel = mp.next();
-			mp.bc.add(new Bytecode.IfCmp(Bytecode.IfCmp.GT, type, trueLabel));
-			mp.bc.add(new Bytecode.LoadConst(false));
-			mp.bc.add(new Bytecode.Goto(endLabel));
-			mp.bc.add(new Bytecode.Label(trueLabel));
-			mp.bc.add(new Bytecode.LoadConst(true));
-			mp.bc.add(new Bytecode.Label(endLabel));
-			return new JvmType.Bool();
-		case GTEQ:// TODO
-			trueLabel = mp.next();
-			endLabel = mp.next();
-			mp.bc.add(new Bytecode.IfCmp(Bytecode.IfCmp.GE, type, trueLabel));
-			mp.bc.add(new Bytecode.LoadConst(false));
-			mp.bc.add(new Bytecode.Goto(endLabel));
-			mp.bc.add(new Bytecode.Label(trueLabel));
-			mp.bc.add(new Bytecode.LoadConst(true));
-			mp.bc.add(new Bytecode.Label(endLabel));
-			return new JvmType.Bool();
-		case APPEND:// TODO
+			return Bytecode.IfCmp.EQ;
+		case NEQ:
+			return Bytecode.IfCmp.NE;
+		case LT:
+			return Bytecode.IfCmp.LT;
+		case LTEQ:
+			return Bytecode.IfCmp.LE;
+		case GT:
+			return Bytecode.IfCmp.GT;
+		default:
+			return Bytecode.IfCmp.GE;
 		}
+	}
 
-		return null;
+	private Bytecode.IfMode getIfMode(Expr.BOp op) {
+		switch (op) {
+		case EQ:
+			return Bytecode.IfMode.EQ;
+		case NEQ:
+			return Bytecode.IfMode.NE;
+		case LT:
+			return Bytecode.IfMode.LT;
+		case LTEQ:
+			return Bytecode.IfMode.LE;
+		case GT:
+			return Bytecode.IfMode.GT;
+		default:
+			return Bytecode.IfMode.GE;
+		}
 	}
 
 	private JvmType addBytecodes(Expr.Cast expr, MethodPage mp) {
-		JvmType type = addBytecodes(expr.getSource(), mp);
-		if (type instanceof Primitive
-				&& getJvmType(expr.getType()) instanceof Primitive)
-			mp.bc.add(new Bytecode.Conversion((Primitive) type,
-					(Primitive) getJvmType(expr.getType())));
-		return getJvmType(expr.getType());
+		JvmType type = getJvmType(expr.getType());
+		Type from = getType(expr.getSource());
+		JvmType srcType = addBytecodes(expr.getSource(), mp);
+		if (from != null && requiresConversion(from, expr.getType())) {
+			addCoercion(srcType, getJvmType(from), mp);
+			addConversion(from, expr.getType(), mp);
+		} else {
+			addCoercion(srcType, type, mp);
+		}
+		return type;
+	}
+
+	/**
+	 * Check whether casting a value of one type to another requires its
+	 * representation to be changed. This is the case when an int is cast to a
+	 * real, including when they are elements of a list or fields of a record.
+	 */
+	private boolean requiresConversion(Type from, Type to) {
+		from = expand(from);
+		to = expand(to);
+		if (from instanceof Type.Int && to instanceof Type.Real) {
+			return true;
+		} else if (from instanceof Type.List && to instanceof Type.List) {
+			return requiresConversion(((Type.List) from).getElement(),
+					((Type.List) to).getElement());
+		} else if (from instanceof Type.Record && to instanceof Type.Record) {
+			Map<String, Type> fromFields = ((Type.Record) from).getFields();
+			for (Map.Entry<String, Type> e : ((Type.Record) to).getFields()
+					.entrySet()) {
+				Type field = fromFields.get(e.getKey());
+				if (field != null && requiresConversion(field, e.getValue())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds bytecodes to convert the value on top of the stack from one type to
+	 * another, where <code>requiresConversion(from,to)</code> holds. Lists and
+	 * records are converted by constructing a new list or record whose
+	 * elements have been converted.
+	 */
+	private void addConversion(Type from, Type to, MethodPage mp) {
+		from = expand(from);
+		to = expand(to);
+		if (!requiresConversion(from, to) || isPrimitiveList(getJvmType(to))) {
+			// NOTE: primitive lists convert their elements as necessary
+			addCoercion(getJvmType(from), getJvmType(to), mp);
+		} else if (from instanceof Type.List) {
+			Type fromElement = ((Type.List) from).getElement();
+			Type toElement = ((Type.List) to).getElement();
+			int src = mp.allocate(JAVA_UTIL_LIST);
+			int index = mp.allocate(JvmTypes.T_INT);
+			String startLabel = mp.next(), endLabel = mp.next();
+			addCoercion(getJvmType(from), JAVA_UTIL_LIST, mp);
+			mp.bc.add(new Bytecode.Store(src, JAVA_UTIL_LIST));
+			mp.bc.add(new Bytecode.New(JAVA_UTIL_ARRAYLIST));
+			mp.bc.add(new Bytecode.Dup(JAVA_UTIL_ARRAYLIST));
+			mp.bc.add(new Bytecode.Invoke(JAVA_UTIL_ARRAYLIST, "<init>",
+					new JvmType.Function(JvmTypes.T_VOID),
+					Bytecode.InvokeMode.SPECIAL));
+			// for(int i=0;i<src.size();i=i+1) { list.add(src.get(i)); }
+			mp.bc.add(new Bytecode.LoadConst(0));
+			mp.bc.add(new Bytecode.Store(index, JvmTypes.T_INT));
+			mp.bc.add(new Bytecode.Label(startLabel));
+			mp.bc.add(new Bytecode.Load(index, JvmTypes.T_INT));
+			mp.bc.add(new Bytecode.Load(src, JAVA_UTIL_LIST));
+			mp.bc.add(new Bytecode.Invoke(JAVA_UTIL_LIST, "size",
+					new JvmType.Function(JvmTypes.T_INT),
+					Bytecode.InvokeMode.INTERFACE));
+			mp.bc.add(new Bytecode.IfCmp(Bytecode.IfCmp.GE, JvmTypes.T_INT,
+					endLabel));
+			mp.bc.add(new Bytecode.Dup(JAVA_UTIL_ARRAYLIST));
+			mp.bc.add(new Bytecode.Load(src, JAVA_UTIL_LIST));
+			mp.bc.add(new Bytecode.Load(index, JvmTypes.T_INT));
+			mp.bc.add(new Bytecode.Invoke(JAVA_UTIL_LIST, "get",
+					new JvmType.Function(JvmTypes.JAVA_LANG_OBJECT,
+							JvmTypes.T_INT), Bytecode.InvokeMode.INTERFACE));
+			addCoercion(JvmTypes.JAVA_LANG_OBJECT, getJvmType(fromElement), mp);
+			addConversion(fromElement, toElement, mp);
+			addCoercion(getJvmType(toElement), JvmTypes.JAVA_LANG_OBJECT, mp);
+			mp.bc.add(new Bytecode.Invoke(JAVA_UTIL_ARRAYLIST, "add",
+					new JvmType.Function(JvmTypes.T_BOOL,
+							JvmTypes.JAVA_LANG_OBJECT),
+					Bytecode.InvokeMode.VIRTUAL));
+			mp.bc.add(new Bytecode.Pop(JvmTypes.T_BOOL));
+			mp.bc.add(new Bytecode.Iinc(index, 1));
+			mp.bc.add(new Bytecode.Goto(startLabel));
+			mp.bc.add(new Bytecode.Label(endLabel));
+		} else if (from instanceof Type.Record) {
+			Map<String, Type> fromFields = ((Type.Record) from).getFields();
+			JvmType.Clazz fromType = (JvmType.Clazz) getJvmType(from);
+			JvmType.Clazz toType = (JvmType.Clazz) getJvmType(to);
+			Map<String, JvmType> toFields = recordFields.get(toType);
+			int src = mp.allocate(fromType);
+			mp.bc.add(new Bytecode.Store(src, fromType));
+			mp.bc.add(new Bytecode.New(toType));
+			mp.bc.add(new Bytecode.Dup(toType));
+			mp.bc.add(new Bytecode.Invoke(toType, "<init>",
+					new JvmType.Function(JvmTypes.T_VOID),
+					Bytecode.InvokeMode.SPECIAL));
+			for (Map.Entry<String, Type> e : ((Type.Record) to).getFields()
+					.entrySet()) {
+				// record.field = src.field
+				Type fromField = fromFields.get(e.getKey());
+				mp.bc.add(new Bytecode.Dup(toType));
+				mp.bc.add(new Bytecode.Load(src, fromType));
+				addFieldAccess(fromType, e.getKey(), mp);
+				addConversion(fromField, e.getValue(), mp);
+				mp.bc.add(new Bytecode.PutField(toType, e.getKey(), toFields
+						.get(e.getKey()), FieldMode.NONSTATIC));
+			}
+		} else {
+			addCoercion(getJvmType(from), getJvmType(to), mp);
+		}
 	}
 
 	private JvmType addBytecodes(Expr.Constant expr, MethodPage mp) {
@@ -442,13 +1173,18 @@ public class ClassFileWriter {
 	}
 
 	private JvmType addBytecodes(Expr.Invoke expr, MethodPage mp) {
-		List<JvmType> argumentTypes = new ArrayList<JvmType>();
-		for (Expr arg : expr.getArguments())
-			argumentTypes.add(addBytecodes(arg, mp));
+		FunDecl function = sourceFile.function(expr.getName());
+		List<Expr> arguments = expr.getArguments();
+		List<JvmType> parameterTypes = new ArrayList<JvmType>();
+		for (int i = 0; i != arguments.size(); ++i) {
+			JvmType type = getJvmType(function.parameters.get(i).type);
+			addValue(arguments.get(i), type, mp);
+			parameterTypes.add(type);
+		}
 
 		String methodName = expr.getName();
 		JvmType.Function func = new JvmType.Function(
-				methodReturnTypes.get(methodName), argumentTypes);
+				methodReturnTypes.get(methodName), parameterTypes);
 
 		mp.bc.add(new Bytecode.Invoke(mp.thIs, methodName, func,
 				Bytecode.InvokeMode.STATIC));
@@ -456,83 +1192,370 @@ public class ClassFileWriter {
 	}
 
 	private JvmType addBytecodes(Expr.IndexOf expr, MethodPage mp) {
-		// TODO
-		return null;
+		JvmType srcType = addBytecodes(expr.getSource(), mp);
+		if (JvmTypes.isJavaLangString(srcType)) {
+			// src.charAt(index)
+			addBytecodes(expr.getIndex(), JvmTypes.T_INT, mp);
+			mp.bc.add(new Bytecode.Invoke(JvmTypes.JAVA_LANG_STRING, "charAt",
+					new JvmType.Function(JvmTypes.T_CHAR, JvmTypes.T_INT),
+					Bytecode.InvokeMode.VIRTUAL));
+			return JvmTypes.T_CHAR;
+		} else if (isPrimitiveList(srcType)) {
+			// src.data[index]
+			JvmType.Array array = getArrayType((JvmType.Clazz) srcType);
+			mp.bc.add(new Bytecode.GetField((JvmType.Clazz) srcType, "data",
+					array, FieldMode.NONSTATIC));
+			addBytecodes(expr.getIndex(), JvmTypes.T_INT, mp);
+			mp.bc.add(new Bytecode.ArrayLoad(array));
+			return array.element();
+		} else {
+			// src.get(index)
+			addCoercion(srcType, JAVA_UTIL_LIST, mp);
+			addBytecodes(expr.getIndex(), JvmTypes.T_INT, mp);
+			mp.bc.add(new Bytecode.Invoke(JAVA_UTIL_LIST, "get",
+					new JvmType.Function(JvmTypes.JAVA_LANG_OBJECT,
+							JvmTypes.T_INT), Bytecode.InvokeMode.INTERFACE));
+			JvmType type = getJvmType(expr);
+			addCoercion(JvmTypes.JAVA_LANG_OBJECT, type, mp);
+			return type;
+		}
 	}
 
 	private JvmType addBytecodes(Expr.ListConstructor expr, MethodPage mp) {
-		// TODO
-		return null;
+		List<Expr> arguments = expr.getArguments();
+		JvmType type = getJvmType(expr);
+		if (isPrimitiveList(type)) {
+			// new PrimitiveList.Int(new int[] { arguments })
+			JvmType.Array array = getArrayType((JvmType.Clazz) type);
+			mp.bc.add(new Bytecode.New(type));
+			mp.bc.add(new Bytecode.Dup(type));
+			mp.bc.add(new Bytecode.LoadConst(arguments.size()));
+			mp.bc.add(new Bytecode.New(array));
+			for (int i = 0; i != arguments.size(); ++i) {
+				mp.bc.add(new Bytecode.Dup(array));
+				mp.bc.add(new Bytecode.LoadConst(i));
+				addBytecodes(arguments.get(i), array.element(), mp);
+				mp.bc.add(new Bytecode.ArrayStore(array));
+			}
+			mp.bc.add(new Bytecode.Invoke((JvmType.Clazz) type, "<init>",
+					new JvmType.Function(JvmTypes.T_VOID, array),
+					Bytecode.InvokeMode.SPECIAL));
+			return type;
+		}
+
+		// new ArrayList()
+		Type.List listType = (Type.List) expand(getType(expr));
+		JvmType elementType = getJvmType(listType.getElement());
+		mp.bc.add(new Bytecode.New(JAVA_UTIL_ARRAYLIST));
+		mp.bc.add(new Bytecode.Dup(JAVA_UTIL_ARRAYLIST));
+		mp.bc.add(new Bytecode.Invoke(JAVA_UTIL_ARRAYLIST, "<init>",
+				new JvmType.Function(JvmTypes.T_VOID),
+				Bytecode.InvokeMode.SPECIAL));
+		for (Expr argument : arguments) {
+			// list.add(argument)
+			mp.bc.add(new Bytecode.Dup(JAVA_UTIL_ARRAYLIST));
+			if (elementType instanceof JvmType.Void) {
+				addValue(argument, JvmTypes.JAVA_LANG_OBJECT, mp);
+			} else {
+				addValue(argument, elementType, mp);
+				addCoercion(elementType, JvmTypes.JAVA_LANG_OBJECT, mp);
+			}
+			mp.bc.add(new Bytecode.Invoke(JAVA_UTIL_ARRAYLIST, "add",
+					new JvmType.Function(JvmTypes.T_BOOL,
+							JvmTypes.JAVA_LANG_OBJECT),
+					Bytecode.InvokeMode.VIRTUAL));
+			mp.bc.add(new Bytecode.Pop(JvmTypes.T_BOOL));
+		}
+		return JAVA_UTIL_ARRAYLIST;
 	}
 
 	private JvmType addBytecodes(Expr.RecordAccess expr, MethodPage mp) {
-		// TODO
-		return null;
+		JvmType srcType = addBytecodes(expr.getSource(), mp);
+		if (!recordFields.containsKey(srcType)) {
+			addCoercion(srcType, WHILELANG_RUNTIME_RECORD, mp);
+			srcType = WHILELANG_RUNTIME_RECORD;
+		}
+		JvmType type = addFieldAccess(srcType, expr.getName(), mp);
+		if (type.equals(JvmTypes.JAVA_LANG_OBJECT)) {
+			type = getJvmType(expr);
+			addCoercion(JvmTypes.JAVA_LANG_OBJECT, type, mp);
+		}
+		return type;
+	}
+
+	/**
+	 * Adds bytecodes to read a given field of the record on top of the stack.
+	 * If the record's class is known then the field is read directly,
+	 * otherwise it is looked up by name (and boxed).
+	 */
+	private JvmType addFieldAccess(JvmType recordType, String field,
+			MethodPage mp) {
+		if (recordFields.containsKey(recordType)) {
+			// record.field
+			JvmType type = recordFields.get(recordType).get(field);
+			mp.bc.add(new Bytecode.GetField((JvmType.Clazz) recordType, field,
+					type, FieldMode.NONSTATIC));
+			return type;
+		} else {
+			// record.get(field)
+			mp.bc.add(new Bytecode.LoadConst(field));
+			mp.bc.add(new Bytecode.Invoke(WHILELANG_RUNTIME_RECORD, "get",
+					new JvmType.Function(JvmTypes.JAVA_LANG_OBJECT,
+							JvmTypes.JAVA_LANG_STRING),
+					Bytecode.InvokeMode.VIRTUAL));
+			return JvmTypes.JAVA_LANG_OBJECT;
+		}
 	}
 
 	private JvmType addBytecodes(Expr.RecordConstructor expr, MethodPage mp) {
-		// TODO
-		return null;
+		// new Record()
+		JvmType.Clazz type = (JvmType.Clazz) getJvmType(expr);
+		Map<String, JvmType> fields = recordFields.get(type);
+		mp.bc.add(new Bytecode.New(type));
+		mp.bc.add(new Bytecode.Dup(type));
+		mp.bc.add(new Bytecode.Invoke(type, "<init>",
+				new JvmType.Function(JvmTypes.T_VOID),
+				Bytecode.InvokeMode.SPECIAL));
+		for (Pair<String, Expr> field : expr.getFields()) {
+			// record.field = value
+			JvmType fieldType = fields.get(field.first());
+			mp.bc.add(new Bytecode.Dup(type));
+			addValue(field.second(), fieldType, mp);
+			mp.bc.add(new Bytecode.PutField(type, field.first(), fieldType,
+					FieldMode.NONSTATIC));
+		}
+		return type;
 	}
 
 	private JvmType addBytecodes(Expr.Unary expr, MethodPage mp) {
-		JvmType type = addBytecodes(expr.getExpr(), mp);
+		JvmType type;
 		switch (expr.getOp()) {
 		case NOT:
-			mp.bc.add(new Bytecode.LoadConst(true));
-			mp.bc.add(new Bytecode.BinOp(Bytecode.BinOp.XOR, type));
-			return type;
+			return addConditionValue(expr, mp);
 		case NEG:
+			type = getOperandType(getJvmType(expr.getExpr()), JvmTypes.T_INT);
+			addBytecodes(expr.getExpr(), type, mp);
 			mp.bc.add(new Bytecode.Neg(type));
 			return type;
 		case LENGTHOF:
-			Reference ref;
-			String methodName;
+			type = addBytecodes(expr.getExpr(), mp);
 			if (JvmTypes.isJavaLangString(type)) {
-				ref = JvmTypes.JAVA_LANG_STRING;
-				methodName = "length";
-			} else if (JvmTypes.isJavaLangObject(type)) {
-				ref = null; // TODO figure out if list or map
-				methodName = "size";
+				mp.bc.add(new Bytecode.Invoke(JvmTypes.JAVA_LANG_STRING,
+						"length", new JvmType.Function(JvmTypes.T_INT),
+						Bytecode.InvokeMode.VIRTUAL));
+			} else if (isPrimitiveList(type)) {
+				mp.bc.add(new Bytecode.GetField(WHILELANG_RUNTIME_PRIMITIVELIST,
+						"length", JvmTypes.T_INT, FieldMode.NONSTATIC));
 			} else {
-				// TODO throw error
-				ref = null;
-				methodName = null;
+				addCoercion(type, JAVA_UTIL_LIST, mp);
+				mp.bc.add(new Bytecode.Invoke(JAVA_UTIL_LIST, "size",
+						new JvmType.Function(JvmTypes.T_INT),
+						Bytecode.InvokeMode.INTERFACE));
 			}
-			mp.bc.add(new Bytecode.Invoke(ref, methodName,
-					new JvmType.Function(new JvmType.Int()),
-					Bytecode.InvokeMode.VIRTUAL));
-			type = new JvmType.Int();
+			return JvmTypes.T_INT;
 		}
-		// TODO
-		return type;
+
+		internalFailure("unknown unary expression encountered (" + expr + ")",
+				sourceFile.filename, expr);
+		return null; // dead code
 	}
 
 	private JvmType addBytecodes(Expr.Variable expr, MethodPage mp) {
-		JvmType type = getJvmType(((Expr.Variable) expr).attributes());
-
-		if (!mp.localIndexs.containsKey(((Expr.Variable) expr).getName()))
-			mp.bc.add(new Bytecode.GetField(mp.thIs, expr.getName(), type,
+		String name = expr.getName();
+		if (!mp.localIndexs.containsKey(name) && constants.containsKey(name)) {
+			return addBytecodes(constants.get(name), mp);
+		} else if (!mp.localIndexs.containsKey(name)) {
+			JvmType type = getJvmType(expr);
+			mp.bc.add(new Bytecode.GetField(mp.thIs, name, type,
 					FieldMode.STATIC));
-		else
-			mp.bc.add(new Bytecode.Load(mp.localIndexs
-					.get(((Expr.Variable) expr).getName()), type));
-		return type;
+			return type;
+		} else {
+			JvmType type = mp.localTypes.get(name);
+			mp.bc.add(new Bytecode.Load(mp.localIndexs.get(name), type));
+			return type;
+		}
 	}
 
-	private JvmType getJvmType(List<whilelang.util.Attribute> attributes) {
-		for (int i = attributes.size() - 1; i >= 0; i--) {
-			if (attributes.get(i) instanceof whilelang.util.Attribute.Type) {
-				return getJvmType(((whilelang.util.Attribute.Type) attributes
-						.get(i)).type);
+	/**
+	 * Adds bytecodes to convert the value on top of the stack from one JVM
+	 * type to another. Primitive values are boxed when converted to a
+	 * reference type, and unboxed when converted from one. A primitive value
+	 * being boxed for another primitive type (e.g. a <code>char</code> held in
+	 * an <code>int|null</code> variable) is converted first, and likewise an
+	 * unboxed value is converted afterwards (e.g. when casting an
+	 * <code>int|null</code> to a <code>real</code>).
+	 */
+	private void addCoercion(JvmType from, JvmType to, MethodPage mp) {
+		if (from.equals(to)) {
+			return;
+		} else if (from instanceof Primitive && to instanceof Primitive) {
+			if (jvmTypeSize(from) != jvmTypeSize(to)
+					|| to instanceof JvmType.Char) {
+				mp.bc.add(new Bytecode.Conversion((Primitive) from,
+						(Primitive) to));
+			}
+		} else if (from instanceof Primitive) {
+			// box
+			JvmType unboxed = getUnboxedType(to);
+			if (unboxed != null) {
+				addCoercion(from, unboxed, mp);
+				from = unboxed;
+			}
+			JvmType.Clazz boxed = getBoxedType(from);
+			mp.bc.add(new Bytecode.Invoke(boxed, "valueOf",
+					new JvmType.Function(boxed, from),
+					Bytecode.InvokeMode.STATIC));
+		} else if (to instanceof Primitive) {
+			// unbox
+			JvmType unboxed = getUnboxedType(from);
+			if (unboxed == null) {
+				unboxed = to;
+			}
+			JvmType.Clazz boxed = getBoxedType(unboxed);
+			String method = unboxed instanceof JvmType.Bool ? "booleanValue"
+					: unboxed instanceof JvmType.Char ? "charValue"
+							: unboxed instanceof JvmType.Int ? "intValue"
+									: "doubleValue";
+			if (!from.equals(boxed)) {
+				mp.bc.add(new Bytecode.CheckCast(boxed));
 			}
+			mp.bc.add(new Bytecode.Invoke(boxed, method,
+					new JvmType.Function(unboxed), Bytecode.InvokeMode.VIRTUAL));
+			addCoercion(unboxed, to, mp);
+		} else if (isPrimitiveList(to)) {
+			// PrimitiveList.Int.valueOf(value)
+			mp.bc.add(new Bytecode.Invoke((JvmType.Clazz) to, "valueOf",
+					new JvmType.Function(to, JvmTypes.JAVA_LANG_OBJECT),
+					Bytecode.InvokeMode.STATIC));
+		} else if (recordFields.containsKey(to)) {
+			// Record.valueOf(value)
+			mp.bc.add(new Bytecode.Invoke((JvmType.Clazz) to, "valueOf",
+					new JvmType.Function(to, JvmTypes.JAVA_LANG_OBJECT),
+					Bytecode.InvokeMode.STATIC));
+		} else if (to.equals(JAVA_UTIL_ARRAYLIST)) {
+			// Util.toArrayList(value)
+			mp.bc.add(new Bytecode.Invoke(WHILELANG_RUNTIME_UTIL,
+					"toArrayList", new JvmType.Function(JAVA_UTIL_ARRAYLIST,
+							JvmTypes.JAVA_LANG_OBJECT),
+					Bytecode.InvokeMode.STATIC));
+		} else if (!JvmTypes.isJavaLangObject(to)
+				&& !(from instanceof JvmType.Null)
+				&& !(to.equals(WHILELANG_RUNTIME_RECORD) && recordFields
+						.containsKey(from))
+				&& !(to.equals(JAVA_UTIL_LIST) && (isPrimitiveList(from) || from
+						.equals(JAVA_UTIL_ARRAYLIST)))) {
+			mp.bc.add(new Bytecode.CheckCast(to));
 		}
-		return null;
 	}
 
+	/**
+	 * Adds bytecodes to convert the value on top of the stack into a
+	 * <code>String</code>, using the same format as the
+	 * <code>Interpreter</code>.
+	 */
+	private void addToString(JvmType type, MethodPage mp) {
+		if (JvmTypes.isJavaLangString(type)) {
+			return;
+		} else if (type instanceof Primitive) {
+			// String.valueOf(value)
+			mp.bc.add(new Bytecode.Invoke(JvmTypes.JAVA_LANG_STRING, "valueOf",
+					new JvmType.Function(JvmTypes.JAVA_LANG_STRING, type),
+					Bytecode.InvokeMode.STATIC));
+		} else {
+			// Util.toString(value)
+			mp.bc.add(new Bytecode.Invoke(WHILELANG_RUNTIME_UTIL, "toString",
+					new JvmType.Function(JvmTypes.JAVA_LANG_STRING,
+							JvmTypes.JAVA_LANG_OBJECT),
+					Bytecode.InvokeMode.STATIC));
+		}
+	}
+
+	private JvmType.Clazz getBoxedType(JvmType type) {
+		if (type instanceof JvmType.Bool) {
+			return JAVA_LANG_BOOLEAN;
+		} else if (type instanceof JvmType.Char) {
+			return JAVA_LANG_CHARACTER;
+		} else if (type instanceof JvmType.Int) {
+			return JAVA_LANG_INTEGER;
+		} else {
+			return JAVA_LANG_DOUBLE;
+		}
+	}
+
+	/**
+	 * Determine the primitive type boxed by a given type, or
+	 * <code>null</code> if it is not a boxed type.
+	 */
+	private JvmType getUnboxedType(JvmType type) {
+		if (type.equals(JAVA_LANG_BOOLEAN)) {
+			return JvmTypes.T_BOOL;
+		} else if (type.equals(JAVA_LANG_CHARACTER)) {
+			return JvmTypes.T_CHAR;
+		} else if (type.equals(JAVA_LANG_INTEGER)) {
+			return JvmTypes.T_INT;
+		} else if (type.equals(JAVA_LANG_DOUBLE)) {
+			return JvmTypes.T_DOUBLE;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Check whether values of a given JVM type may be mutated, and hence must
+	 * be cloned to preserve value semantics. Strings and boxed values are
+	 * immutable.
+	 */
+	private boolean isMutable(JvmType type) {
+		return type instanceof Reference && !JvmTypes.isJavaLangString(type)
+				&& getUnboxedType(type) == null;
+	}
+
+	/**
+	 * Determine the JVM type used to represent the value of a given
+	 * expression, as determined by the type attribute attached by the
+	 * <code>TypeChecker</code>.
+	 */
+	private JvmType getJvmType(Expr expr) {
+		if (expr instanceof Expr.Constant) {
+			return getJvmType(((Expr.Constant) expr).getValue());
+		}
+		Type type = getType(expr);
+		return type == null ? null : getJvmType(type);
+	}
+
+	/**
+	 * Get the type attached to a given element by the
+	 * <code>TypeChecker</code>, or <code>null</code> if there is none.
+	 */
+	private Type getType(SyntacticElement element) {
+		whilelang.util.Attribute.Type attr = element
+				.attribute(whilelang.util.Attribute.Type.class);
+		return attr == null ? null : attr.type;
+	}
+
+	/**
+	 * Expand a named type into its definition.
+	 */
+	private Type expand(Type type) {
+		while (type instanceof Type.Named) {
+			type = sourceFile.type(((Type.Named) type).getName()).type;
+		}
+		return type;
+	}
+
+	/**
+	 * Determine the JVM type used to represent a given While type, or a given
+	 * constant value. Lists are represented as <code>ArrayList</code>s (or
+	 * <code>PrimitiveList</code>s), records using generated classes and unions
+	 * as described for <code>getJvmType(Type.Union)</code>.
+	 */
 	private JvmType getJvmType(Object value) {
-		if (value instanceof Type.Null) {
-			return new JvmType.Null();
+		if (value instanceof Type.Named) {
+			WhileFile.TypeDecl td = sourceFile.type(((Type.Named) value)
+					.getName());
+			return getJvmType(td.type);
+		} else if (value == null || value instanceof Type.Null) {
+			return JvmTypes.JAVA_LANG_OBJECT;
 		} else if (value instanceof Boolean || value instanceof Type.Bool) {
 			return new JvmType.Bool();
 		} else if (value instanceof Character || value instanceof Type.Char) {
@@ -546,10 +1569,414 @@ public class ClassFileWriter {
 			return JvmTypes.JAVA_LANG_STRING;
 		} else if (value instanceof Type.Void) {
 			return new JvmType.Void();
+		} else if (value instanceof Type.List) {
+			Type element = expand(((Type.List) value).getElement());
+			if (element instanceof Type.Int || element instanceof Type.Real
+					|| element instanceof Type.Bool
+					|| element instanceof Type.Char) {
+				return getPrimitiveListType(getJvmType(element));
+			}
+			return JAVA_UTIL_ARRAYLIST;
+		} else if (value instanceof Type.Record) {
+			return getRecordType((Type.Record) value);
+		} else if (value instanceof Type.Union) {
+			return getJvmType((Type.Union) value);
 		}
 		return null;
 	}
 
+	/**
+	 * Determine the JVM type used to represent a given union type. Once
+	 * normalised, a union of some type and <code>null</code> (e.g.
+	 * <code>int|null</code>) is represented as a nullable reference to that
+	 * type, boxing it if necessary (e.g. as an <code>Integer</code>). Any
+	 * other union is represented as an <code>Object</code>, whose class then
+	 * identifies which bound the value belongs to. Strings are not treated
+	 * specially, since <code>null</code> is converted to a string differently.
+	 * Neither are reals, since a value of type <code>real</code> may actually
+	 * be an <code>int</code> (e.g. in a record converted by
+	 * <code>valueOf()</code>).
+	 */
+	private JvmType getJvmType(Type.Union type) {
+		List<Type> bounds = normalise(type);
+		if (bounds.size() == 1) {
+			return getJvmType(bounds.get(0));
+		} else if (bounds.size() == 2
+				&& (bounds.get(0) instanceof Type.Null
+						|| bounds.get(1) instanceof Type.Null)) {
+			Type bound = bounds.get(bounds.get(0) instanceof Type.Null ? 1
+					: 0);
+			if (pendingRecords.contains(bound)) {
+				// The class of this record type is still being determined
+				// (i.e. it is recursive), so it cannot be referred to yet.
+				return JvmTypes.JAVA_LANG_OBJECT;
+			}
+			JvmType jvmType = getJvmType(bound);
+			if (jvmType instanceof Primitive
+					&& !(jvmType instanceof JvmType.Double)) {
+				return getBoxedType(jvmType);
+			} else if (jvmType instanceof Reference
+					&& !JvmTypes.isJavaLangString(jvmType)) {
+				return jvmType;
+			}
+		}
+		return JvmTypes.JAVA_LANG_OBJECT;
+	}
+
+	/**
+	 * Normalise a given union type by expanding named types, flattening
+	 * nested unions and removing duplicate bounds.
+	 *
+	 * @return The distinct bounds of the union, in canonical form.
+	 */
+	private List<Type> normalise(Type.Union type) {
+		ArrayList<Type> bounds = new ArrayList<Type>();
+		normalise(type, bounds, new ArrayList<Type>());
+		return bounds;
+	}
+
+	private void normalise(Type type, List<Type> bounds, List<Type> visited) {
+		type = types.intern(expand(type));
+		if (type instanceof Type.Union) {
+			if (visited.contains(type)) {
+				return;
+			}
+			visited.add(type);
+			for (Type bound : ((Type.Union) type).getBounds()) {
+				normalise(bound, bounds, visited);
+			}
+		} else if (!bounds.contains(type)) {
+			bounds.add(type);
+		}
+	}
+
+	/**
+	 * Determine the class representing a given record type, generating it if
+	 * necessary. Record types whose fields have the same names and are
+	 * represented by the same JVM types share a class. Where a type
+	 * declaration gives a name to the record type, the class is named after it.
+	 */
+	private JvmType.Clazz getRecordType(Type.Record type) {
+		Type record = types.intern(type);
+		pendingRecords.add(record);
+		Map<String, JvmType> fields = getRecordFields(type);
+		String key = fields.toString();
+		JvmType.Clazz clazz = recordClasses.get(key);
+		if (clazz == null) {
+			String name = null;
+			for (Decl d : sourceFile.declarations) {
+				if (d instanceof WhileFile.TypeDecl) {
+					Type t = expand(((WhileFile.TypeDecl) d).type);
+					if (t instanceof Type.Record
+							&& key.equals(getRecordFields((Type.Record) t)
+									.toString())
+							&& !recordFiles.containsKey(d.name())) {
+						name = d.name();
+						break;
+					}
+				}
+			}
+			if (name == null) {
+				name = "Record" + recordFiles.size();
+			}
+
+			clazz = new JvmType.Clazz("", className, name);
+			recordClasses.put(key, clazz);
+			recordFields.put(clazz, fields);
+			// NOTE: reserve the name before generating the class, since this
+			// may generate the classes of nested records.
+			recordFiles.put(name, null);
+			recordFiles.put(name, addRecordClass(clazz, fields));
+		}
+		pendingRecords.remove(record);
+		return clazz;
+	}
+
+	private Map<String, JvmType> getRecordFields(Type.Record type) {
+		Map<String, JvmType> fields = new TreeMap<String, JvmType>();
+		for (Map.Entry<String, Type> e : type.getFields().entrySet()) {
+			fields.put(e.getKey(), getJvmType(e.getValue()));
+		}
+		return fields;
+	}
+
+	/**
+	 * Generate the class for a given record type. This extends
+	 * <code>whilelang.runtime.Record</code> with a public field for each field
+	 * of the record, and implements its abstract methods. It also provides a
+	 * static <code>valueOf()</code> method, which converts a record of another
+	 * type into this type.
+	 */
+	private ClassFile addRecordClass(JvmType.Clazz type,
+			Map<String, JvmType> fields) {
+		List<Modifier> modifiers = new ArrayList<Modifier>();
+		modifiers.add(Modifier.ACC_PUBLIC);
+		modifiers.add(Modifier.ACC_FINAL);
+		ClassFile cf = new ClassFile(52, type, WHILELANG_RUNTIME_RECORD,
+				Collections.EMPTY_LIST, modifiers);
+		List<Modifier> publicOnly = new ArrayList<Modifier>();
+		publicOnly.add(Modifier.ACC_PUBLIC);
+		List<Modifier> publicStatic = new ArrayList<Modifier>(publicOnly);
+		publicStatic.add(Modifier.ACC_STATIC);
+		JvmType.Array strings = new JvmType.Array(JvmTypes.JAVA_LANG_STRING);
+
+		for (Map.Entry<String, JvmType> e : fields.entrySet()) {
+			cf.fields().add(
+					new ClassFile.Field(e.getKey(), e.getValue(), publicOnly));
+		}
+
+		// public Record() { super(); }
+		MethodPage mp = new MethodPage(type, sourceFile);
+		mp.put("this", type);
+		mp.bc.add(new Bytecode.Load(0, type));
+		mp.bc.add(new Bytecode.Invoke(WHILELANG_RUNTIME_RECORD, "<init>",
+				new JvmType.Function(JvmTypes.T_VOID),
+				Bytecode.InvokeMode.SPECIAL));
+		mp.bc.add(new Bytecode.Return(null));
+		addMethod(cf, "<init>", new JvmType.Function(JvmTypes.T_VOID),
+				publicOnly, mp);
+
+		// public String[] fields() { return new String[] { ... }; }
+		mp = new MethodPage(type, sourceFile);
+		mp.put("this", type);
+		mp.bc.add(new Bytecode.LoadConst(fields.size()));
+		mp.bc.add(new Bytecode.New(strings));
+		int index = 0;
+		for (String field : fields.keySet()) {
+			mp.bc.add(new Bytecode.Dup(strings));
+			mp.bc.add(new Bytecode.LoadConst(index++));
+			mp.bc.add(new Bytecode.LoadConst(field));
+			mp.bc.add(new Bytecode.ArrayStore(strings));
+		}
+		mp.bc.add(new Bytecode.Return(strings));
+		addMethod(cf, "fields", new JvmType.Function(strings), publicOnly, mp);
+
+		// public Object get(String field) {
+		//   if(field.equals("f")) { return f; } ...
+		// }
+		mp = new MethodPage(type, sourceFile);
+		mp.put("this", type);
+		mp.put("field", JvmTypes.JAVA_LANG_STRING);
+		for (Map.Entry<String, JvmType> e : fields.entrySet()) {
+			String next = mp.next();
+			addFieldNameTest(e.getKey(), next, mp);
+			mp.bc.add(new Bytecode.Load(0, type));
+			mp.bc.add(new Bytecode.GetField(type, e.getKey(), e.getValue(),
+					FieldMode.NONSTATIC));
+			addCoercion(e.getValue(), JvmTypes.JAVA_LANG_OBJECT, mp);
+			mp.bc.add(new Bytecode.Return(JvmTypes.JAVA_LANG_OBJECT));
+			mp.bc.add(new Bytecode.Label(next));
+		}
+		mp.bc.add(new Bytecode.LoadConst(null));
+		mp.bc.add(new Bytecode.Return(JvmTypes.JAVA_LANG_OBJECT));
+		addMethod(cf, "get", new JvmType.Function(JvmTypes.JAVA_LANG_OBJECT,
+				JvmTypes.JAVA_LANG_STRING), publicOnly, mp);
+
+		// public void set(String field, Object value) {
+		//   if(field.equals("f")) { f = value; return; } ...
+		// }
+		mp = new MethodPage(type, sourceFile);
+		mp.put("this", type);
+		mp.put("field", JvmTypes.JAVA_LANG_STRING);
+		mp.put("value", JvmTypes.JAVA_LANG_OBJECT);
+		for (Map.Entry<String, JvmType> e : fields.entrySet()) {
+			String next = mp.next();
+			addFieldNameTest(e.getKey(), next, mp);
+			mp.bc.add(new Bytecode.Load(0, type));
+			mp.bc.add(new Bytecode.Load(2, JvmTypes.JAVA_LANG_OBJECT));
+			addCoercion(JvmTypes.JAVA_LANG_OBJECT, e.getValue(), mp);
+			mp.bc.add(new Bytecode.PutField(type, e.getKey(), e.getValue(),
+					FieldMode.NONSTATIC));
+			mp.bc.add(new Bytecode.Return(null));
+			mp.bc.add(new Bytecode.Label(next));
+		}
+		mp.bc.add(new Bytecode.Return(null));
+		addMethod(cf, "set", new JvmType.Function(JvmTypes.T_VOID,
+				JvmTypes.JAVA_LANG_STRING, JvmTypes.JAVA_LANG_OBJECT),
+				publicOnly, mp);
+
+		// public Record copy() {
+		//   Record r = new Record(); r.f = Util.clone(f); ... return r;
+		// }
+		mp = new MethodPage(type, sourceFile);
+		mp.put("this", type);
+		mp.bc.add(new Bytecode.New(type));
+		mp.bc.add(new Bytecode.Dup(type));
+		mp.bc.add(new Bytecode.Invoke(type, "<init>",
+				new JvmType.Function(JvmTypes.T_VOID),
+				Bytecode.InvokeMode.SPECIAL));
+		for (Map.Entry<String, JvmType> e : fields.entrySet()) {
+			JvmType fieldType = e.getValue();
+			mp.bc.add(new Bytecode.Dup(type));
+			mp.bc.add(new Bytecode.Load(0, type));
+			mp.bc.add(new Bytecode.GetField(type, e.getKey(), fieldType,
+					FieldMode.NONSTATIC));
+			if (isMutable(fieldType)) {
+				mp.bc.add(new Bytecode.Invoke(WHILELANG_RUNTIME_UTIL, "clone",
+						new JvmType.Function(JvmTypes.JAVA_LANG_OBJECT,
+								JvmTypes.JAVA_LANG_OBJECT),
+						Bytecode.InvokeMode.STATIC));
+				addCoercion(JvmTypes.JAVA_LANG_OBJECT, fieldType, mp);
+			}
+			mp.bc.add(new Bytecode.PutField(type, e.getKey(), fieldType,
+					FieldMode.NONSTATIC));
+		}
+		mp.bc.add(new Bytecode.Return(WHILELANG_RUNTIME_RECORD));
+		addMethod(cf, "copy", new JvmType.Function(WHILELANG_RUNTIME_RECORD),
+				publicOnly, mp);
+
+		// public boolean equals(Object o) {
+		//   if(o instanceof Record) { return f == o.f && ...; }
+		//   return super.equals(o);
+		// }
+		mp = new MethodPage(type, sourceFile);
+		mp.put("this", type);
+		mp.put("o", JvmTypes.JAVA_LANG_OBJECT);
+		int other = mp.allocate(type);
+		String falseLabel = mp.next(), superLabel = mp.next();
+		mp.bc.add(new Bytecode.Load(1, JvmTypes.JAVA_LANG_OBJECT));
+		mp.bc.add(new Bytecode.InstanceOf(type));
+		mp.bc.add(new Bytecode.If(Bytecode.IfMode.EQ, superLabel));
+		mp.bc.add(new Bytecode.Load(1, JvmTypes.JAVA_LANG_OBJECT));
+		mp.bc.add(new Bytecode.CheckCast(type));
+		mp.bc.add(new Bytecode.Store(other, type));
+		for (Map.Entry<String, JvmType> e : fields.entrySet()) {
+			JvmType fieldType = e.getValue();
+			mp.bc.add(new Bytecode.Load(0, type));
+			mp.bc.add(new Bytecode.GetField(type, e.getKey(), fieldType,
+					FieldMode.NONSTATIC));
+			mp.bc.add(new Bytecode.Load(other, type));
+			mp.bc.add(new Bytecode.GetField(type, e.getKey(), fieldType,
+					FieldMode.NONSTATIC));
+			if (fieldType instanceof JvmType.Double) {
+				mp.bc.add(new Bytecode.Cmp(fieldType, Bytecode.Cmp.LT));
+				mp.bc.add(new Bytecode.If(Bytecode.IfMode.NE, falseLabel));
+			} else if (fieldType instanceof Primitive) {
+				mp.bc.add(new Bytecode.IfCmp(Bytecode.IfCmp.NE, fieldType,
+						falseLabel));
+			} else {
+				mp.bc.add(new Bytecode.Invoke(WHILELANG_RUNTIME_UTIL, "equals",
+						new JvmType.Function(JvmTypes.T_BOOL,
+								JvmTypes.JAVA_LANG_OBJECT,
+								JvmTypes.JAVA_LANG_OBJECT),
+						Bytecode.InvokeMode.STATIC));
+				mp.bc.add(new Bytecode.If(Bytecode.IfMode.EQ, falseLabel));
+			}
+		}
+		mp.bc.add(new Bytecode.LoadConst(true));
+		mp.bc.add(new Bytecode.Return(JvmTypes.T_BOOL));
+		mp.bc.add(new Bytecode.Label(falseLabel));
+		mp.bc.add(new Bytecode.LoadConst(false));
+		mp.bc.add(new Bytecode.Return(JvmTypes.T_BOOL));
+		mp.bc.add(new Bytecode.Label(superLabel));
+		mp.bc.add(new Bytecode.Load(0, type));
+		mp.bc.add(new Bytecode.Load(1, JvmTypes.JAVA_LANG_OBJECT));
+		mp.bc.add(new Bytecode.Invoke(WHILELANG_RUNTIME_RECORD, "equals",
+				new JvmType.Function(JvmTypes.T_BOOL, JvmTypes.JAVA_LANG_OBJECT),
+				Bytecode.InvokeMode.SPECIAL));
+		mp.bc.add(new Bytecode.Return(JvmTypes.T_BOOL));
+		addMethod(cf, "equals", new JvmType.Function(JvmTypes.T_BOOL,
+				JvmTypes.JAVA_LANG_OBJECT), publicOnly, mp);
+
+		// public static Record valueOf(Object o) {
+		//   if(o == null || o instanceof Record) { return (Record) o; }
+		//   Record r = new Record(); r.f = o.get("f"); ... return r;
+		// }
+		mp = new MethodPage(type, sourceFile);
+		mp.put("o", JvmTypes.JAVA_LANG_OBJECT);
+		int record = mp.allocate(WHILELANG_RUNTIME_RECORD);
+		String castLabel = mp.next(), convertLabel = mp.next();
+		mp.bc.add(new Bytecode.Load(0, JvmTypes.JAVA_LANG_OBJECT));
+		mp.bc.add(new Bytecode.If(Bytecode.IfMode.NULL, castLabel));
+		mp.bc.add(new Bytecode.Load(0, JvmTypes.JAVA_LANG_OBJECT));
+		mp.bc.add(new Bytecode.InstanceOf(type));
+		mp.bc.add(new Bytecode.If(Bytecode.IfMode.EQ, convertLabel));
+		mp.bc.add(new Bytecode.Label(castLabel));
+		mp.bc.add(new Bytecode.Load(0, JvmTypes.JAVA_LANG_OBJECT));
+		mp.bc.add(new Bytecode.CheckCast(type));
+		mp.bc.add(new Bytecode.Return(type));
+		mp.bc.add(new Bytecode.Label(convertLabel));
+		mp.bc.add(new Bytecode.Load(0, JvmTypes.JAVA_LANG_OBJECT));
+		mp.bc.add(new Bytecode.CheckCast(WHILELANG_RUNTIME_RECORD));
+		mp.bc.add(new Bytecode.Store(record, WHILELANG_RUNTIME_RECORD));
+		mp.bc.add(new Bytecode.New(type));
+		mp.bc.add(new Bytecode.Dup(type));
+		mp.bc.add(new Bytecode.Invoke(type, "<init>",
+				new JvmType.Function(JvmTypes.T_VOID),
+				Bytecode.InvokeMode.SPECIAL));
+		for (Map.Entry<String, JvmType> e : fields.entrySet()) {
+			mp.bc.add(new Bytecode.Dup(type));
+			mp.bc.add(new Bytecode.Load(record, WHILELANG_RUNTIME_RECORD));
+			addFieldAccess(WHILELANG_RUNTIME_RECORD, e.getKey(), mp);
+			addCoercion(JvmTypes.JAVA_LANG_OBJECT, e.getValue(), mp);
+			mp.bc.add(new Bytecode.PutField(type, e.getKey(), e.getValue(),
+					FieldMode.NONSTATIC));
+		}
+		mp.bc.add(new Bytecode.Return(type));
+		addMethod(cf, "valueOf", new JvmType.Function(type,
+				JvmTypes.JAVA_LANG_OBJECT), publicStatic, mp);
+
+		return cf;
+	}
+
+	/**
+	 * Adds bytecodes which branch to a given label unless the string held in
+	 * variable 1 is the given field name.
+	 */
+	private void addFieldNameTest(String field, String label, MethodPage mp) {
+		mp.bc.add(new Bytecode.Load(1, JvmTypes.JAVA_LANG_STRING));
+		mp.bc.add(new Bytecode.LoadConst(field));
+		mp.bc.add(new Bytecode.Invoke(JvmTypes.JAVA_LANG_STRING, "equals",
+				new JvmType.Function(JvmTypes.T_BOOL, JvmTypes.JAVA_LANG_OBJECT),
+				Bytecode.InvokeMode.VIRTUAL));
+		mp.bc.add(new Bytecode.If(Bytecode.IfMode.EQ, label));
+	}
+
+	private void addMethod(ClassFile cf, String name, JvmType.Function type,
+			List<Modifier> modifiers, MethodPage mp) {
+		ClassFile.Method method = new ClassFile.Method(name, type, modifiers);
+		addMethod(cf, method, mp.bc);
+	}
+
+	/**
+	 * Determine the class representing lists with a given primitive element
+	 * type (see <code>whilelang.runtime.PrimitiveList</code>).
+	 */
+	private JvmType.Clazz getPrimitiveListType(JvmType element) {
+		if (element instanceof JvmType.Int) {
+			return WHILELANG_RUNTIME_INTLIST;
+		} else if (element instanceof JvmType.Double) {
+			return WHILELANG_RUNTIME_REALLIST;
+		} else if (element instanceof JvmType.Bool) {
+			return WHILELANG_RUNTIME_BOOLLIST;
+		} else {
+			return WHILELANG_RUNTIME_CHARLIST;
+		}
+	}
+
+	/**
+	 * Determine the type of the array holding the elements of a given
+	 * primitive list class.
+	 */
+	private JvmType.Array getArrayType(JvmType.Clazz type) {
+		if (type.equals(WHILELANG_RUNTIME_INTLIST)) {
+			return new JvmType.Array(JvmTypes.T_INT);
+		} else if (type.equals(WHILELANG_RUNTIME_REALLIST)) {
+			return new JvmType.Array(JvmTypes.T_DOUBLE);
+		} else if (type.equals(WHILELANG_RUNTIME_BOOLLIST)) {
+			return new JvmType.Array(JvmTypes.T_BOOL);
+		} else {
+			return new JvmType.Array(JvmTypes.T_CHAR);
+		}
+	}
+
+	private boolean isPrimitiveList(JvmType type) {
+		return type.equals(WHILELANG_RUNTIME_INTLIST)
+				|| type.equals(WHILELANG_RUNTIME_REALLIST)
+				|| type.equals(WHILELANG_RUNTIME_BOOLLIST)
+				|| type.equals(WHILELANG_RUNTIME_CHARLIST);
+	}
+
 	private int jvmTypeSize(JvmType type) {
 		if (type instanceof JvmType.Long || type instanceof JvmType.Double)
 			return 2;
@@ -561,8 +1988,10 @@ public class ClassFileWriter {
 		public Clazz thIs;
 		public WhileFile sourceFile;
 		public List<Bytecode> bc;
+		public JvmType returnType;
 
 		public Map<String, Integer> localIndexs;
+		public Map<String, JvmType> localTypes;
 		public int nextIndex;
 		private int labelCounter;
 
@@ -570,14 +1999,24 @@ public class ClassFileWriter {
 			this.thIs = thIs;
 			this.sourceFile = sourceFile;
 			localIndexs = new HashMap<String, Integer>();
+			localTypes = new HashMap<String, JvmType>();
 			nextIndex = 0;
 			bc = new ArrayList<Bytecode>();
 			labelCounter = 0;
 		}
 
-		private void put(String name, int typeSize) {
-			localIndexs.put(name, nextIndex);
-			nextIndex += typeSize;
+		private void put(String name, JvmType type) {
+			localIndexs.put(name, allocate(type));
+			localTypes.put(name, type);
+		}
+
+		/**
+		 * Allocate a fresh local variable of a given type.
+		 */
+		private int allocate(JvmType type) {
+			int index = nextIndex;
+			nextIndex += jvmTypeSize(type);
+			return index;
 		}
 
 		private String next() {
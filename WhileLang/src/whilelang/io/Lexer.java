@@ -18,32 +18,94 @@
 
 package whilelang.io;
 
-import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.math.BigInteger;
-import java.util.ArrayList;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
 import whilelang.util.SyntaxError;
 
 /**
  * Responsible for turning a stream of characters into a sequence of tokens.
+ * Tokens are recorded as a <code>Tokens</code> list, which stores the kind
+ * and extent of each token in arrays, and only creates the corresponding
+ * <code>Token</code> objects (and their text) when they are requested.
  * 
  * @author Daivd J. Pearce
  * 
  */
 public class Lexer {
 
+	// The kinds of token
+	public static final int INT = 0;
+	public static final int REAL = 1;
+	public static final int CHAR = 2;
+	public static final int STRING = 3;
+	public static final int IDENTIFIER = 4;
+	public static final int KEYWORD = 5;
+	public static final int COMMA = 6;
+	public static final int SEMICOLON = 7;
+	public static final int COLON = 8;
+	public static final int BAR = 9;
+	public static final int LEFTBRACE = 10;
+	public static final int RIGHTBRACE = 11;
+	public static final int LEFTSQUARE = 12;
+	public static final int RIGHTSQUARE = 13;
+	public static final int LEFTCURLY = 14;
+	public static final int RIGHTCURLY = 15;
+	public static final int PLUSPLUS = 16;
+	public static final int PLUS = 17;
+	public static final int MINUS = 18;
+	public static final int STAR = 19;
+	public static final int RIGHTSLASH = 20;
+	public static final int PERCENT = 21;
+	public static final int SHREAK = 22;
+	public static final int DOT = 23;
+	public static final int EQUALS = 24;
+	public static final int EQUALSEQUALS = 25;
+	public static final int NOTEQUALS = 26;
+	public static final int LESSEQUALS = 27;
+	public static final int GREATEREQUALS = 28;
+	public static final int LEFTANGLE = 29;
+	public static final int RIGHTANGLE = 30;
+	public static final int LOGICALAND = 31;
+	public static final int LOGICALOR = 32;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
 	private String filename;
-	private StringBuffer input;
+	private char[] input;
+	private int length;
 	private int pos;
+	private Tokens tokens;
 
+	/**
+	 * Construct a lexer for a given file. The file is memory mapped, rather
+	 * than being read through a stream.
+	 * 
+	 * @param filename
+	 * @throws IOException
+	 */
 	public Lexer(String filename) throws IOException {
-		this(new InputStreamReader(new FileInputStream(filename), "UTF8"));
+		FileInputStream in = new FileInputStream(filename);
+		try {
+			FileChannel channel = in.getChannel();
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, channel.size());
+			setInput(UTF8.decode(bytes));
+		} finally {
+			in.close();
+		}
 		this.filename = filename;
 	}
 
@@ -52,16 +114,27 @@ public class Lexer {
 	}
 
 	public Lexer(Reader reader) throws IOException {
-		BufferedReader in = new BufferedReader(reader);
-
-		StringBuffer text = new StringBuffer();
-		String tmp;
-		while ((tmp = in.readLine()) != null) {
-			text.append(tmp);
-			text.append("\n");
+		char[] text = new char[4096];
+		int len = 0;
+		int n;
+		while ((n = reader.read(text, len, text.length - len)) != -1) {
+			len += n;
+			if (len == text.length) {
+				text = Arrays.copyOf(text, text.length * 2);
+			}
 		}
-
 		input = text;
+		length = len;
+	}
+
+	private void setInput(CharBuffer chars) {
+		if (chars.hasArray() && chars.arrayOffset() == 0) {
+			input = chars.array();
+		} else {
+			input = new char[chars.remaining()];
+			chars.get(input);
+		}
+		length = chars.limit();
 	}
 
 	/**
@@ -71,24 +144,36 @@ public class Lexer {
 	 * @return
 	 */
 	public List<Token> scan() {
-		ArrayList<Token> tokens = new ArrayList<Token>();
+		return scanTokens();
+	}
+
+	/**
+	 * Scan all characters from the input stream and generate a corresponding
+	 * list of tokens, whilst discarding all whitespace and comments. Unlike
+	 * <code>scan()</code>, this allows the kind and extent of each token to be
+	 * accessed without creating a <code>Token</code> object.
+	 * 
+	 * @return
+	 */
+	public Tokens scanTokens() {
+		tokens = new Tokens(this, Math.max(16, length / 4));
 		pos = 0;
 
-		while (pos < input.length()) {
-			char c = input.charAt(pos);
+		while (pos < length) {
+			char c = input[pos];
 
 			if (Character.isDigit(c)) {
-				tokens.add(scanNumericConstant());
+				scanNumericConstant();
 			} else if (c == '"') {
-				tokens.add(scanStringConstant());
+				scanStringConstant();
 			} else if (c == '\'') {
-				tokens.add(scanCharacterConstant());
+				scanCharacterConstant();
 			} else if (isOperatorStart(c)) {
-				tokens.add(scanOperator());
+				scanOperator();
 			} else if (Character.isJavaIdentifierStart(c)) {
-				tokens.add(scanIdentifier());
+				scanIdentifier();
 			} else if (Character.isWhitespace(c)) {
-				skipWhitespace(tokens);
+				skipWhitespace();
 			} else {
 				syntaxError("syntax error");
 			}
@@ -100,30 +185,26 @@ public class Lexer {
 	/**
 	 * Scan a numeric constant. That is a sequence of digits which gives either
 	 * an integer constant, or a real constant (if it includes a dot).
-	 * 
-	 * @return
 	 */
-	public Token scanNumericConstant() {
+	public void scanNumericConstant() {
 		int start = pos;
-		while (pos < input.length() && Character.isDigit(input.charAt(pos))) {
+		while (pos < length && Character.isDigit(input[pos])) {
 			pos = pos + 1;
 		}
-		if (pos < input.length() && input.charAt(pos) == '.') {
+		if (pos < length && input[pos] == '.') {
 			pos = pos + 1;
-			if (pos < input.length() && input.charAt(pos) == '.') {
+			if (pos < length && input[pos] == '.') {
 				// this is case for range e.g. 0..1
 				pos = pos - 1;
-				int r = new BigInteger(input.substring(start, pos)).intValue();
-				return new Int(r, input.substring(start, pos), start);
+				tokens.add(INT, start, pos);
+				return;
 			}
-			while (pos < input.length() && Character.isDigit(input.charAt(pos))) {
+			while (pos < length && Character.isDigit(input[pos])) {
 				pos = pos + 1;
 			}
-			Double r = new Double(input.substring(start, pos));
-			return new Real(r, input.substring(start, pos), start);
+			tokens.add(REAL, start, pos);
 		} else {
-			int r = new BigInteger(input.substring(start, pos)).intValue();
-			return new Int(r, input.substring(start, pos), start);
+			tokens.add(INT, start, pos);
 		}
 	}
 
@@ -132,55 +213,62 @@ public class Lexer {
 	 * taken to properly handle escape codes. For example, '\n' is a single
 	 * character constant which is made up from two characters in the input
 	 * string.
-	 * 
-	 * @return
 	 */
-	public Token scanCharacterConstant() {
+	public void scanCharacterConstant() {
 		int start = pos;
 		pos++;
-		char c = input.charAt(pos++);
+		char c = input[pos++];
 		if (c == '\\') {
 			// escape code
-			switch (input.charAt(pos++)) {
+			switch (input[pos++]) {
 			case 't':
-				c = '\t';
-				break;
 			case 'n':
-				c = '\n';
 				break;
 			default:
 				syntaxError("unrecognised escape character", pos);
 			}
 		}
-		if (input.charAt(pos) != '\'') {
+		if (pos >= length || input[pos] != '\'') {
 			syntaxError("unexpected end-of-character", pos);
 		}
 		pos = pos + 1;
-		return new Char(c, input.substring(start, pos), start);
+		tokens.add(CHAR, start, pos);
 	}
 
-	public Token scanStringConstant() {
+	public void scanStringConstant() {
 		int start = pos;
 		pos++;
-		while (pos < input.length()) {
-			char c = input.charAt(pos);
+		while (pos < length) {
+			char c = input[pos];
 			if (c == '"') {
-				String v = input.substring(start, ++pos);
-				return new Strung(parseString(v), v, start);
+				tokens.add(STRING, start, ++pos);
+				return;
 			}
 			pos = pos + 1;
 		}
 		syntaxError("unexpected end-of-string", pos - 1);
-		return null;
 	}
 
 	protected String parseString(String v) {
+		return parseString(v, pos);
+	}
+
+	/**
+	 * Parse the text of a string constant, which ends at a given position.
+	 * 
+	 * @param v
+	 *            The text of the string constant, including quotes.
+	 * @param end
+	 *            The position immediately after the string constant.
+	 * @return
+	 */
+	private String parseString(String v, int end) {
 		/*
 		 * Parsing a string requires several steps to be taken. First, we need to
 		 * strip quotes from the ends of the string.
 		 */
 		v = v.substring(1, v.length() - 1);
-		int start = pos - v.length();
+		int start = end - v.length();
 		// Second, step through the string and replace escaped characters
 		for (int i = 0; i < v.length(); i++) {
 			if (v.charAt(i) == '\\') {
@@ -260,128 +348,228 @@ public class Lexer {
 		return false;
 	}
 
-	public Token scanOperator() {
-		char c = input.charAt(pos);
+	public void scanOperator() {
+		char c = input[pos];
 
-		if (c == '.') {			
-			return new Dot(pos++);
+		if (c == '.') {
+			tokens.add(DOT, pos, ++pos);
 		} else if (c == ',') {
-			return new Comma(pos++);
+			tokens.add(COMMA, pos, ++pos);
 		} else if (c == ';') {
-			return new SemiColon(pos++);
+			tokens.add(SEMICOLON, pos, ++pos);
 		} else if (c == ':') {
-			return new Colon(pos++);
+			tokens.add(COLON, pos, ++pos);
 		} else if (c == '|') {
-			return new Bar(pos++);
+			tokens.add(BAR, pos, ++pos);
 		} else if (c == '(') {
-			return new LeftBrace(pos++);
+			tokens.add(LEFTBRACE, pos, ++pos);
 		} else if (c == ')') {
-			return new RightBrace(pos++);
+			tokens.add(RIGHTBRACE, pos, ++pos);
 		} else if (c == '[') {
-			return new LeftSquare(pos++);
+			tokens.add(LEFTSQUARE, pos, ++pos);
 		} else if (c == ']') {
-			return new RightSquare(pos++);
+			tokens.add(RIGHTSQUARE, pos, ++pos);
 		} else if (c == '{') {
-			return new LeftCurly(pos++);
+			tokens.add(LEFTCURLY, pos, ++pos);
 		} else if (c == '}') {
-			return new RightCurly(pos++);
+			tokens.add(RIGHTCURLY, pos, ++pos);
 		} else if (c == '+') {
-			if((pos+1) < input.length() && input.charAt(pos+1) == '+') {
+			if((pos+1) < length && input[pos+1] == '+') {
 				pos = pos + 2;
-				return new PlusPlus(pos);
+				tokens.add(PLUSPLUS, pos - 2, pos);
 			} else {
-				return new Plus(pos++);
+				tokens.add(PLUS, pos, ++pos);
 			}
-		} else if (c == '-') {			
-			return new Minus(pos++);
+		} else if (c == '-') {
+			tokens.add(MINUS, pos, ++pos);
 		} else if (c == '*') {
-			return new Star(pos++);
-		} else if (c == '&' && (pos + 1) < input.length()
-				&& input.charAt(pos + 1) == '&') {
+			tokens.add(STAR, pos, ++pos);
+		} else if (c == '&' && (pos + 1) < length && input[pos + 1] == '&') {
 			pos += 2;
-			return new LogicalAnd("&&", pos - 2);
-		} else if (c == '/') {			
-			return new RightSlash(pos++);
-		} else if (c == '%') {			
-			return new Percent(pos++);
+			tokens.add(LOGICALAND, pos - 2, pos);
+		} else if (c == '/') {
+			tokens.add(RIGHTSLASH, pos, ++pos);
+		} else if (c == '%') {
+			tokens.add(PERCENT, pos, ++pos);
 		} else if (c == '!') {
-			if ((pos + 1) < input.length() && input.charAt(pos + 1) == '=') {
+			if ((pos + 1) < length && input[pos + 1] == '=') {
 				pos += 2;
-				return new NotEquals("!=", pos - 2);
+				tokens.add(NOTEQUALS, pos - 2, pos);
 			} else {
-				return new Shreak(pos++);
+				tokens.add(SHREAK, pos, ++pos);
 			}
 		} else if (c == '=') {
-			if ((pos + 1) < input.length() && input.charAt(pos + 1) == '=') {
+			if ((pos + 1) < length && input[pos + 1] == '=') {
 				pos += 2;
-				return new EqualsEquals(pos - 2);
+				tokens.add(EQUALSEQUALS, pos - 2, pos);
 			} else {
-				return new Equals(pos++);
+				tokens.add(EQUALS, pos, ++pos);
 			}
 		} else if (c == '<') {
-			if ((pos + 1) < input.length() && input.charAt(pos + 1) == '=') {
+			if ((pos + 1) < length && input[pos + 1] == '=') {
 				pos += 2;
-				return new LessEquals("<=", pos - 2);
+				tokens.add(LESSEQUALS, pos - 2, pos);
 			} else {
-				return new LeftAngle(pos++);
+				tokens.add(LEFTANGLE, pos, ++pos);
 			}
 		} else if (c == '>') {
-			if ((pos + 1) < input.length() && input.charAt(pos + 1) == '=') {
+			if ((pos + 1) < length && input[pos + 1] == '=') {
 				pos += 2;
-				return new GreaterEquals(">=", pos - 2);
+				tokens.add(GREATEREQUALS, pos - 2, pos);
 			} else {
-				return new RightAngle(pos++);
+				tokens.add(RIGHTANGLE, pos, ++pos);
 			}
 		} else if (c == UC_LESSEQUALS) {
-			return new LessEquals("" + UC_LESSEQUALS, pos++);
+			tokens.add(LESSEQUALS, pos, ++pos);
 		} else if (c == UC_GREATEREQUALS) {
-			return new GreaterEquals("" + UC_GREATEREQUALS, pos++);
+			tokens.add(GREATEREQUALS, pos, ++pos);
 		} else if (c == UC_LOGICALOR) {
-			return new LogicalOr("" + UC_LOGICALOR, pos++);
+			tokens.add(LOGICALOR, pos, ++pos);
 		} else if (c == UC_LOGICALAND) {
-			return new LogicalAnd("" + UC_LOGICALAND, pos++);
+			tokens.add(LOGICALAND, pos, ++pos);
+		} else {
+			syntaxError("unknown operator encountered: " + c);
 		}
-
-		syntaxError("unknown operator encountered: " + c);
-		return null;
 	}
 
 	public static final String[] keywords = { "true", "false", "null", "void",
 		"int", "real", "char", "string", "bool", "if", "switch", "while", "else",
 		"is", "for", "debug", "print", "return", "const", "type" };
 
-	public Token scanIdentifier() {
+	public void scanIdentifier() {
 		int start = pos;
-		while (pos < input.length()
-				&& Character.isJavaIdentifierPart(input.charAt(pos))) {
+		while (pos < length && Character.isJavaIdentifierPart(input[pos])) {
 			pos++;
 		}
-		String text = input.substring(start, pos);
 
-		// now, check for keywords
+		// now, check for keywords without extracting the text
 		for (String keyword : keywords) {
-			if (keyword.equals(text)) {
-				return new Keyword(text, start);
+			if (matches(keyword, start, pos)) {
+				tokens.add(KEYWORD, start, pos);
+				return;
 			}
 		}
 
 		// otherwise, must be identifier
-		return new Identifier(text, start);
+		tokens.add(IDENTIFIER, start, pos);
 	}
-	
+
+	/**
+	 * Check whether the input between two positions matches a given string.
+	 */
+	private boolean matches(String text, int start, int end) {
+		if (text.length() != end - start) {
+			return false;
+		}
+		for (int i = 0; i != text.length(); ++i) {
+			if (text.charAt(i) != input[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Skip over any whitespace at the current index position in the input
 	 * string.
-	 * 
-	 * @param tokens
 	 */
-	public void skipWhitespace(List<Token> tokens) {
-		while (pos < input.length()
-				&& Character.isWhitespace(input.charAt(pos))) {
+	public void skipWhitespace() {
+		while (pos < length && Character.isWhitespace(input[pos])) {
 			pos++;
 		}
 	}
 
+	/**
+	 * Create the token object for a given token. This is called lazily when a
+	 * token is first requested from the <code>Tokens</code> list.
+	 * 
+	 * @param kind
+	 *            The kind of the token.
+	 * @param start
+	 *            The position of the token's first character.
+	 * @param end
+	 *            The position immediately after the token's last character.
+	 * @return
+	 */
+	private Token token(int kind, int start, int end) {
+		String text = new String(input, start, end - start);
+		switch (kind) {
+		case INT:
+			return new Int(new BigInteger(text).intValue(), text, start);
+		case REAL:
+			return new Real(Double.parseDouble(text), text, start);
+		case CHAR: {
+			char c = text.charAt(1);
+			if (c == '\\') {
+				c = text.charAt(2) == 't' ? '\t' : '\n';
+			}
+			return new Char(c, text, start);
+		}
+		case STRING:
+			return new Strung(parseString(text, end), text, start);
+		case IDENTIFIER:
+			return new Identifier(text, start);
+		case KEYWORD:
+			return new Keyword(text, start);
+		case COMMA:
+			return new Comma(start);
+		case SEMICOLON:
+			return new SemiColon(start);
+		case COLON:
+			return new Colon(start);
+		case BAR:
+			return new Bar(start);
+		case LEFTBRACE:
+			return new LeftBrace(start);
+		case RIGHTBRACE:
+			return new RightBrace(start);
+		case LEFTSQUARE:
+			return new LeftSquare(start);
+		case RIGHTSQUARE:
+			return new RightSquare(start);
+		case LEFTCURLY:
+			return new LeftCurly(start);
+		case RIGHTCURLY:
+			return new RightCurly(start);
+		case PLUSPLUS:
+			return new PlusPlus(start);
+		case PLUS:
+			return new Plus(start);
+		case MINUS:
+			return new Minus(start);
+		case STAR:
+			return new Star(start);
+		case RIGHTSLASH:
+			return new RightSlash(start);
+		case PERCENT:
+			return new Percent(start);
+		case SHREAK:
+			return new Shreak(start);
+		case DOT:
+			return new Dot(start);
+		case EQUALS:
+			return new Equals(start);
+		case EQUALSEQUALS:
+			return new EqualsEquals(start);
+		case NOTEQUALS:
+			return new NotEquals(text, start);
+		case LESSEQUALS:
+			return new LessEquals(text, start);
+		case GREATEREQUALS:
+			return new GreaterEquals(text, start);
+		case LEFTANGLE:
+			return new LeftAngle(start);
+		case RIGHTANGLE:
+			return new RightAngle(start);
+		case LOGICALAND:
+			return new LogicalAnd(text, start);
+		case LOGICALOR:
+			return new LogicalOr(text, start);
+		default:
+			throw new IllegalArgumentException("unknown token kind: " + kind);
+		}
+	}
+
 	/**
 	 * Raise a syntax error with a given message at given index.
 	 * 
@@ -717,4 +905,90 @@ public class Lexer {
 			super(text, pos);
 		}
 	}
+
+	/**
+	 * A list of tokens stored as parallel arrays, giving the kind, start and
+	 * end of each token. The text of a token, and its <code>Token</code>
+	 * object, are only created when requested.
+	 * 
+	 * @author agent
+	 * 
+	 */
+	public static final class Tokens extends AbstractList<Token> implements
+			RandomAccess {
+		private final Lexer lexer;
+		private int[] kind;
+		private int[] start;
+		private int[] end;
+		private Token[] objects;
+		private int size;
+
+		private Tokens(Lexer lexer, int capacity) {
+			this.lexer = lexer;
+			this.kind = new int[capacity];
+			this.start = new int[capacity];
+			this.end = new int[capacity];
+		}
+
+		private void add(int k, int s, int e) {
+			if (size == kind.length) {
+				int capacity = size * 2;
+				kind = Arrays.copyOf(kind, capacity);
+				start = Arrays.copyOf(start, capacity);
+				end = Arrays.copyOf(end, capacity);
+			}
+			kind[size] = k;
+			start[size] = s;
+			end[size] = e;
+			size = size + 1;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Get the kind of the ith token (e.g. <code>Lexer.INT</code>).
+		 */
+		public int kind(int i) {
+			return kind[i];
+		}
+
+		/**
+		 * Get the position of the first character of the ith token.
+		 */
+		public int start(int i) {
+			return start[i];
+		}
+
+		/**
+		 * Get the position immediately after the last character of the ith
+		 * token.
+		 */
+		public int end(int i) {
+			return end[i];
+		}
+
+		/**
+		 * Get the text of the ith token.
+		 */
+		public String text(int i) {
+			return new String(lexer.input, start[i], end[i] - start[i]);
+		}
+
+		public Token get(int i) {
+			if (i >= size) {
+				throw new IndexOutOfBoundsException("index: " + i);
+			}
+			if (objects == null) {
+				objects = new Token[size];
+			}
+			Token token = objects[i];
+			if (token == null) {
+				token = lexer.token(kind[i], start[i], end[i]);
+				objects[i] = token;
+			}
+			return token;
+		}
+	}
 }
@@ -0,0 +1,428 @@
+package whilelang.io;
+
+import jasm.lang.Bytecode;
+import jasm.lang.JvmType;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Responsible for removing redundant bytecodes from the methods generated by
+ * <code>ClassFileWriter</code>, before their stack maps are determined. The
+ * code generator translates each statement and expression in isolation, and
+ * this leaves behind a number of simple patterns which are cleaned up here:
+ * </p>
+ *
+ * <ul>
+ * <li>Bytecodes which follow a <code>Goto</code>, <code>Return</code> or
+ * <code>Throw</code>, and which cannot be reached, are removed (along with
+ * any labels which are no longer branched to).</li>
+ * <li>A <code>Goto</code> to the label which immediately follows it is
+ * removed, a branch to a <code>Goto</code> is redirected to its target, and a
+ * <code>Goto</code> to a <code>Return</code> is replaced by the
+ * <code>Return</code>.</li>
+ * <li>A branch on a constant (e.g. the <code>true</code> or
+ * <code>false</code> produced when a condition is evaluated to a value) is
+ * replaced by a <code>Goto</code> to wherever it would go.</li>
+ * <li>A value which is loaded and then immediately popped, or stored back
+ * into the variable it was loaded from, is not loaded at all; and a variable
+ * which is loaded, incremented by a constant and stored back is incremented
+ * in place (i.e. using <code>Iinc</code>).</li>
+ * </ul>
+ *
+ * <p>
+ * Each of these is applied repeatedly until none applies, since removing one
+ * redundancy often exposes another. Smaller methods are cheaper to verify
+ * and, more importantly, are more likely to be inlined by the JVM.
+ * </p>
+ *
+ * @author agent
+ *
+ */
+public class PeepholeOptimiser {
+
+	/**
+	 * The number of labels introduced so far, which is used to give them
+	 * names distinct from those introduced by <code>ClassFileWriter</code>.
+	 */
+	private int labels;
+
+	/**
+	 * Optimise the bytecodes of a given method in place.
+	 *
+	 * @param bytecodes
+	 * @return The (estimated) number of bytes saved.
+	 */
+	public int optimise(List<Bytecode> bytecodes) {
+		int before = size(bytecodes);
+		boolean changed;
+		do {
+			changed = removeUnreachable(bytecodes);
+			changed |= simplify(bytecodes);
+			changed |= simplifyBranches(bytecodes);
+			changed |= removeUnusedLabels(bytecodes);
+		} while (changed);
+		return before - size(bytecodes);
+	}
+
+	/**
+	 * Remove any bytecodes following a <code>Goto</code>, <code>Return</code>
+	 * or <code>Throw</code>, up to the next label.
+	 */
+	private static boolean removeUnreachable(List<Bytecode> bytecodes) {
+		ArrayList<Bytecode> out = new ArrayList<Bytecode>(bytecodes.size());
+		boolean reachable = true;
+		for (Bytecode b : bytecodes) {
+			if (b instanceof Bytecode.Label) {
+				reachable = true;
+			}
+			if (reachable) {
+				out.add(b);
+			}
+			if (b instanceof Bytecode.Goto || b instanceof Bytecode.Return
+					|| b instanceof Bytecode.Throw) {
+				reachable = false;
+			}
+		}
+		return update(bytecodes, out);
+	}
+
+	/**
+	 * Remove redundant loads and stores. Each bytecode is compared against
+	 * those which have been kept before it, so that the removal of one pair
+	 * (e.g. <code>Dup; Pop</code>) can expose another.
+	 */
+	private static boolean simplify(List<Bytecode> bytecodes) {
+		ArrayList<Bytecode> out = new ArrayList<Bytecode>(bytecodes.size());
+		for (Bytecode b : bytecodes) {
+			Bytecode last = out.isEmpty() ? null : out.get(out.size() - 1);
+			if (b instanceof Bytecode.Pop
+					&& (last instanceof Bytecode.Load
+							|| last instanceof Bytecode.LoadConst || last instanceof Bytecode.Dup)) {
+				// e.g. load x; pop
+				out.remove(out.size() - 1);
+				continue;
+			} else if (b instanceof Bytecode.Store) {
+				Bytecode.Store store = (Bytecode.Store) b;
+				if (last instanceof Bytecode.Load
+						&& ((Bytecode.Load) last).slot == store.slot) {
+					// e.g. load x; store x
+					out.remove(out.size() - 1);
+					continue;
+				}
+				int increment = getIncrement(out, store);
+				if (increment != 0) {
+					// e.g. load x; ldc 1; add; store x
+					out.subList(out.size() - 3, out.size()).clear();
+					out.add(new Bytecode.Iinc(store.slot, increment));
+					continue;
+				}
+			}
+			out.add(b);
+		}
+		return update(bytecodes, out);
+	}
+
+	/**
+	 * Determine whether a given <code>Store</code> completes an increment of
+	 * an integer variable by a (small) constant, i.e. whether it is preceded
+	 * by <code>Load x; LoadConst c; BinOp</code>, where <code>x</code> is the
+	 * variable being stored and the operation is an addition or subtraction.
+	 *
+	 * @return The amount the variable is incremented by, or zero if the store
+	 *         is not an increment.
+	 */
+	private static int getIncrement(List<Bytecode> out, Bytecode.Store store) {
+		int n = out.size();
+		if (n < 3 || !(store.type instanceof JvmType.Int)
+				|| !(out.get(n - 3) instanceof Bytecode.Load)
+				|| !(out.get(n - 2) instanceof Bytecode.LoadConst)
+				|| !(out.get(n - 1) instanceof Bytecode.BinOp)) {
+			return 0;
+		}
+		Bytecode.Load load = (Bytecode.Load) out.get(n - 3);
+		Object constant = ((Bytecode.LoadConst) out.get(n - 2)).constant;
+		Bytecode.BinOp op = (Bytecode.BinOp) out.get(n - 1);
+		if (load.slot != store.slot || !(constant instanceof Integer)
+				|| !(op.type instanceof JvmType.Int)) {
+			return 0;
+		}
+		int increment = (Integer) constant;
+		if (op.op == Bytecode.BinOp.SUB) {
+			increment = -increment;
+		} else if (op.op != Bytecode.BinOp.ADD) {
+			return 0;
+		}
+		// Larger increments require a wide iinc, which saves nothing
+		return increment >= Byte.MIN_VALUE && increment <= Byte.MAX_VALUE ? increment
+				: 0;
+	}
+
+	/**
+	 * Simplify branches, by redirecting those whose target is another branch,
+	 * and by removing those which are redundant or whose outcome is known.
+	 */
+	private boolean simplifyBranches(List<Bytecode> bytecodes) {
+		HashMap<String, Integer> labels = new HashMap<String, Integer>();
+		for (int i = 0; i != bytecodes.size(); ++i) {
+			Bytecode b = bytecodes.get(i);
+			if (b instanceof Bytecode.Label) {
+				labels.put(((Bytecode.Label) b).name, i);
+			}
+		}
+		boolean changed = false;
+		for (int i = 0; i != bytecodes.size(); ++i) {
+			Bytecode b = bytecodes.get(i);
+			if (b instanceof Bytecode.Goto) {
+				String label = ((Bytecode.Goto) b).label;
+				int target = next(bytecodes, labels.get(label), labels);
+				if (target == bytecodes.size()) {
+					// e.g. an infinite loop
+					continue;
+				} else if (target == next(bytecodes, i + 1, labels)) {
+					// e.g. goto L; L: ...
+					bytecodes.remove(i);
+					return true;
+				} else if (bytecodes.get(target) instanceof Bytecode.Return) {
+					// e.g. goto L; ... L: return
+					bytecodes.set(i, new Bytecode.Return(
+							((Bytecode.Return) bytecodes.get(target)).type));
+					changed = true;
+				} else {
+					String to = getTarget(bytecodes, label, labels);
+					if (!to.equals(label)) {
+						bytecodes.set(i, new Bytecode.Goto(to));
+						changed = true;
+					}
+				}
+			} else if (b instanceof Bytecode.If) {
+				Bytecode.If branch = (Bytecode.If) b;
+				String to = getTarget(bytecodes, branch.label, labels);
+				if (!to.equals(branch.label)) {
+					bytecodes.set(i, new Bytecode.If(branch.op, to));
+					changed = true;
+				}
+			} else if (b instanceof Bytecode.IfCmp) {
+				Bytecode.IfCmp branch = (Bytecode.IfCmp) b;
+				String to = getTarget(bytecodes, branch.label, labels);
+				if (!to.equals(branch.label)) {
+					bytecodes.set(i, new Bytecode.IfCmp(branch.op, branch.type,
+							to));
+					changed = true;
+				}
+			} else if (b instanceof Bytecode.LoadConst) {
+				// e.g. ldc true; L: ifeq M
+				int target = next(bytecodes, i + 1, labels);
+				if (target == bytecodes.size()
+						|| !(bytecodes.get(target) instanceof Bytecode.If)) {
+					continue;
+				}
+				Bytecode.If branch = (Bytecode.If) bytecodes.get(target);
+				Boolean taken = isTaken(branch.op,
+						((Bytecode.LoadConst) b).constant);
+				if (taken == null) {
+					continue;
+				} else if (taken) {
+					bytecodes.set(i, new Bytecode.Goto(branch.label));
+				} else if (bytecodes.get(target + 1) instanceof Bytecode.Label) {
+					bytecodes.set(i, new Bytecode.Goto(
+							((Bytecode.Label) bytecodes.get(target + 1)).name));
+				} else {
+					// A label is needed for the bytecode following the
+					// branch. Since this moves everything after it, the
+					// labels must be located again.
+					String label = "peephole-" + this.labels++;
+					bytecodes.add(target + 1, new Bytecode.Label(label));
+					bytecodes.set(i, new Bytecode.Goto(label));
+					return true;
+				}
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Determine the index of the first bytecode executed from a given index,
+	 * skipping over any labels and following any <code>Goto</code>s. This is
+	 * the size of the method if it falls off the end, or if it enters an
+	 * infinite loop.
+	 */
+	private static int next(List<Bytecode> bytecodes, int index,
+			Map<String, Integer> labels) {
+		for (int count = 0; index < bytecodes.size()
+				&& count <= bytecodes.size(); ++count) {
+			Bytecode b = bytecodes.get(index);
+			if (b instanceof Bytecode.Label) {
+				index = index + 1;
+			} else if (b instanceof Bytecode.Goto) {
+				index = labels.get(((Bytecode.Goto) b).label);
+			} else {
+				return index;
+			}
+		}
+		return bytecodes.size();
+	}
+
+	/**
+	 * Determine the label that a branch to a given label ultimately arrives
+	 * at, by following any <code>Goto</code>s which immediately follow it.
+	 */
+	private static String getTarget(List<Bytecode> bytecodes, String label,
+			Map<String, Integer> labels) {
+		HashSet<String> visited = new HashSet<String>();
+		while (visited.add(label)) {
+			int index = labels.get(label) + 1;
+			while (index < bytecodes.size()
+					&& bytecodes.get(index) instanceof Bytecode.Label) {
+				index = index + 1;
+			}
+			if (index == bytecodes.size()
+					|| !(bytecodes.get(index) instanceof Bytecode.Goto)) {
+				break;
+			}
+			label = ((Bytecode.Goto) bytecodes.get(index)).label;
+		}
+		return label;
+	}
+
+	/**
+	 * Determine whether or not a conditional branch on a given constant is
+	 * taken.
+	 *
+	 * @return The outcome, or <code>null</code> if this cannot be determined.
+	 */
+	private static Boolean isTaken(Bytecode.IfMode mode, Object constant) {
+		if (mode == Bytecode.IfMode.NULL) {
+			return constant == null;
+		} else if (mode == Bytecode.IfMode.NONNULL) {
+			return constant != null;
+		}
+		int value;
+		if (constant instanceof Boolean) {
+			value = (Boolean) constant ? 1 : 0;
+		} else if (constant instanceof Character) {
+			value = (Character) constant;
+		} else if (constant instanceof Integer) {
+			value = (Integer) constant;
+		} else {
+			return null;
+		}
+		switch (mode) {
+		case EQ:
+			return value == 0;
+		case NE:
+			return value != 0;
+		case LT:
+			return value < 0;
+		case GE:
+			return value >= 0;
+		case GT:
+			return value > 0;
+		case LE:
+			return value <= 0;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Remove any labels which are not the target of a branch.
+	 */
+	private static boolean removeUnusedLabels(List<Bytecode> bytecodes) {
+		HashSet<String> targets = new HashSet<String>();
+		for (Bytecode b : bytecodes) {
+			if (b instanceof Bytecode.Goto) {
+				targets.add(((Bytecode.Goto) b).label);
+			} else if (b instanceof Bytecode.If) {
+				targets.add(((Bytecode.If) b).label);
+			} else if (b instanceof Bytecode.IfCmp) {
+				targets.add(((Bytecode.IfCmp) b).label);
+			}
+		}
+		ArrayList<Bytecode> out = new ArrayList<Bytecode>(bytecodes.size());
+		for (Bytecode b : bytecodes) {
+			if (!(b instanceof Bytecode.Label)
+					|| targets.contains(((Bytecode.Label) b).name)) {
+				out.add(b);
+			}
+		}
+		return update(bytecodes, out);
+	}
+
+	private static boolean update(List<Bytecode> bytecodes, List<Bytecode> out) {
+		if (out.size() == bytecodes.size()) {
+			return false;
+		}
+		bytecodes.clear();
+		bytecodes.addAll(out);
+		return true;
+	}
+
+	/**
+	 * Estimate the number of bytes occupied by a list of bytecodes. This is
+	 * only an estimate, since the size of some bytecodes (e.g.
+	 * <code>ldc</code>) depends upon the constant pool, which is not
+	 * determined until the class file is written.
+	 */
+	public static int size(List<Bytecode> bytecodes) {
+		int size = 0;
+		for (Bytecode b : bytecodes) {
+			size += size(b);
+		}
+		return size;
+	}
+
+	private static int size(Bytecode b) {
+		if (b instanceof Bytecode.Label) {
+			return 0;
+		} else if (b instanceof Bytecode.Load) {
+			return size(((Bytecode.Load) b).slot);
+		} else if (b instanceof Bytecode.Store) {
+			return size(((Bytecode.Store) b).slot);
+		} else if (b instanceof Bytecode.LoadConst) {
+			Object constant = ((Bytecode.LoadConst) b).constant;
+			if (constant instanceof Character) {
+				constant = (int) (Character) constant;
+			}
+			if (constant == null || constant instanceof Boolean) {
+				return 1;
+			} else if (constant instanceof Integer) {
+				int i = (Integer) constant;
+				if (i >= -1 && i <= 5) {
+					return 1; // iconst
+				} else if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) {
+					return 2; // bipush
+				} else {
+					return 3; // sipush or ldc_w
+				}
+			} else if (constant instanceof Double) {
+				double d = (Double) constant;
+				return d == 0.0 || d == 1.0 ? 1 : 3;
+			} else {
+				return 2; // ldc
+			}
+		} else if (b instanceof Bytecode.Invoke) {
+			return ((Bytecode.Invoke) b).mode == Bytecode.InvokeMode.INTERFACE ? 5
+					: 3;
+		} else if (b instanceof Bytecode.Iinc || b instanceof Bytecode.Goto
+				|| b instanceof Bytecode.If || b instanceof Bytecode.IfCmp
+				|| b instanceof Bytecode.GetField
+				|| b instanceof Bytecode.PutField
+				|| b instanceof Bytecode.CheckCast
+				|| b instanceof Bytecode.InstanceOf) {
+			return 3;
+		} else if (b instanceof Bytecode.New) {
+			JvmType type = ((Bytecode.New) b).type;
+			return type instanceof JvmType.Array
+					&& ((JvmType.Array) type).element() instanceof JvmType.Primitive ? 2
+					: 3;
+		} else {
+			return 1;
+		}
+	}
+
+	private static int size(int slot) {
+		return slot <= 3 ? 1 : (slot <= 255 ? 2 : 4);
+	}
+}
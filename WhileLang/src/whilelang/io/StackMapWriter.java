@@ -0,0 +1,864 @@
+package whilelang.io;
+
+import jasm.lang.Bytecode;
+import jasm.lang.ClassFile;
+import jasm.lang.JvmType;
+import jasm.lang.JvmTypes;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * <p>
+ * Responsible for adding <code>StackMapTable</code> attributes to the class
+ * files generated by <code>ClassFileWriter</code>, as required by the
+ * type-checking verifier for class files of version 50 and above. Without
+ * these, the JVM falls back to the (slower) type-inferencing verifier for
+ * version 50 class files, and rejects class files of version 51 and above.
+ * </p>
+ *
+ * <p>
+ * This operates in two phases. Firstly, before the class file is written,
+ * the bytecodes of each method are analysed by a dataflow pass which
+ * determines the types of the local variables and stack elements at every
+ * point, along with the maximum stack height and number of local variables.
+ * Any unreachable bytecodes are removed at this point, since the
+ * type-checking verifier requires that every instruction is type-correct
+ * (including unreachable ones). Secondly, once the class file has been
+ * written, the offset of every branch target is determined and a
+ * <code>StackMapTable</code> containing a frame for each is added to the
+ * method's <code>Code</code> attribute.
+ * </p>
+ *
+ * @author agent
+ *
+ */
+public class StackMapWriter {
+
+	/**
+	 * The type of an unusable local variable, such as one which has not been
+	 * assigned on every path.
+	 */
+	private static final Object TOP = "top";
+
+	/**
+	 * The type of the <code>null</code> constant.
+	 */
+	private static final Object NULL = "null";
+
+	/**
+	 * The type of <code>this</code> in a constructor, before the super
+	 * constructor has been called.
+	 */
+	private static final Object UNINITIALIZED_THIS = "uninitializedThis";
+
+	/**
+	 * The type of an object created by a given <code>new</code> bytecode,
+	 * whose constructor has not yet been called.
+	 */
+	private static final class Uninitialized {
+		public final int index;
+
+		public Uninitialized(int index) {
+			this.index = index;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Uninitialized
+					&& ((Uninitialized) o).index == index;
+		}
+
+		public int hashCode() {
+			return index;
+		}
+	}
+
+	/**
+	 * The types of the local variables and stack elements at a given point.
+	 * Double values occupy two local variables (the second of which is
+	 * <code>TOP</code>), but only a single stack element.
+	 */
+	private static final class Frame {
+		public final Object[] locals;
+		public final ArrayList<Object> stack;
+
+		public Frame(int maxLocals) {
+			locals = new Object[maxLocals];
+			Arrays.fill(locals, TOP);
+			stack = new ArrayList<Object>();
+		}
+
+		public Frame(Frame frame) {
+			locals = frame.locals.clone();
+			stack = new ArrayList<Object>(frame.stack);
+		}
+
+		public void push(Object type) {
+			stack.add(type);
+		}
+
+		public Object pop() {
+			return stack.remove(stack.size() - 1);
+		}
+
+		public void store(int slot, Object type) {
+			if (slot > 0 && locals[slot - 1] == T_DOUBLE) {
+				locals[slot - 1] = TOP;
+			}
+			locals[slot] = type;
+			if (type == T_DOUBLE) {
+				locals[slot + 1] = TOP;
+			}
+		}
+
+		/**
+		 * Merge another frame into this frame, returning true if this frame
+		 * changed as a result.
+		 */
+		public boolean merge(Frame frame) {
+			boolean changed = false;
+			for (int i = 0; i != locals.length; ++i) {
+				Object type = mergeTypes(locals[i], frame.locals[i], TOP);
+				changed |= !type.equals(locals[i]);
+				locals[i] = type;
+			}
+			if (stack.size() != frame.stack.size()) {
+				throw new IllegalArgumentException("inconsistent stack height");
+			}
+			for (int i = 0; i != stack.size(); ++i) {
+				Object type = mergeTypes(stack.get(i), frame.stack.get(i), null);
+				if (type == null) {
+					throw new IllegalArgumentException(
+							"inconsistent stack types");
+				}
+				changed |= !type.equals(stack.get(i));
+				stack.set(i, type);
+			}
+			return changed;
+		}
+
+		public int stackSize() {
+			int size = 0;
+			for (Object type : stack) {
+				size += type == T_DOUBLE ? 2 : 1;
+			}
+			return size;
+		}
+	}
+
+	private static final Object T_INT = JvmTypes.T_INT;
+	private static final Object T_DOUBLE = JvmTypes.T_DOUBLE;
+
+	/**
+	 * The result of analysing a method.
+	 */
+	private static final class MethodInfo {
+		public final List<Bytecode> bytecodes;
+		public final Frame[] frames;
+		public final int maxStack;
+		public final int maxLocals;
+
+		public MethodInfo(List<Bytecode> bytecodes, Frame[] frames,
+				int maxStack, int maxLocals) {
+			this.bytecodes = bytecodes;
+			this.frames = frames;
+			this.maxStack = maxStack;
+			this.maxLocals = maxLocals;
+		}
+	}
+
+	private final JvmType.Clazz owner;
+
+	/**
+	 * The analysis of each method, in the order they appear in the class
+	 * file.
+	 */
+	private final ArrayList<MethodInfo> methods = new ArrayList<MethodInfo>();
+
+	public StackMapWriter(JvmType.Clazz owner) {
+		this.owner = owner;
+	}
+
+	/**
+	 * Analyse the bytecodes of the next method in the class, removing any
+	 * which are unreachable. This must be called for every method, in the
+	 * order they are added to the class.
+	 *
+	 * @param method
+	 *            The method being analysed.
+	 * @param bytecodes
+	 *            The bytecodes of the method, which may be modified.
+	 */
+	public void analyse(ClassFile.Method method, List<Bytecode> bytecodes) {
+		Frame[] frames = analyse(method, bytecodes, maxLocals(method,
+				bytecodes));
+		// Remove unreachable bytecodes, which would not type check
+		for (int i = bytecodes.size() - 1; i >= 0; --i) {
+			if (frames[i] == null && !(bytecodes.get(i) instanceof Bytecode.Label)) {
+				bytecodes.remove(i);
+			}
+		}
+		int maxLocals = maxLocals(method, bytecodes);
+		frames = analyse(method, bytecodes, maxLocals);
+		int maxStack = 0;
+		for (Frame frame : frames) {
+			if (frame != null) {
+				maxStack = Math.max(maxStack, frame.stackSize());
+			}
+		}
+		// NOTE: the stack height after the last bytecode may be larger
+		for (int i = 0; i != bytecodes.size(); ++i) {
+			if (frames[i] != null) {
+				Frame next = new Frame(frames[i]);
+				apply(bytecodes.get(i), i, next, bytecodes);
+				maxStack = Math.max(maxStack, next.stackSize());
+			}
+		}
+		methods.add(new MethodInfo(bytecodes, frames, maxStack, maxLocals));
+	}
+
+	private int maxLocals(ClassFile.Method method, List<Bytecode> bytecodes) {
+		int maxLocals = method.isStatic() ? 0 : 1;
+		for (JvmType parameter : method.type().parameterTypes()) {
+			maxLocals += size(parameter);
+		}
+		for (Bytecode b : bytecodes) {
+			if (b instanceof Bytecode.Load) {
+				Bytecode.Load l = (Bytecode.Load) b;
+				maxLocals = Math.max(maxLocals, l.slot + size(l.type));
+			} else if (b instanceof Bytecode.Store) {
+				Bytecode.Store s = (Bytecode.Store) b;
+				maxLocals = Math.max(maxLocals, s.slot + size(s.type));
+			} else if (b instanceof Bytecode.Iinc) {
+				maxLocals = Math.max(maxLocals, ((Bytecode.Iinc) b).slot + 1);
+			}
+		}
+		return maxLocals;
+	}
+
+	/**
+	 * Determine the frame on entry to each bytecode of a method, using a
+	 * standard worklist algorithm. Unreachable bytecodes have no frame.
+	 */
+	private Frame[] analyse(ClassFile.Method method, List<Bytecode> bytecodes,
+			int maxLocals) {
+		HashMap<String, Integer> labels = new HashMap<String, Integer>();
+		for (int i = 0; i != bytecodes.size(); ++i) {
+			if (bytecodes.get(i) instanceof Bytecode.Label) {
+				labels.put(((Bytecode.Label) bytecodes.get(i)).name, i);
+			}
+		}
+
+		Frame entry = new Frame(maxLocals);
+		int slot = 0;
+		if (!method.isStatic()) {
+			entry.store(slot++, method.name().equals("<init>") ? UNINITIALIZED_THIS
+					: owner);
+		}
+		for (JvmType parameter : method.type().parameterTypes()) {
+			entry.store(slot, verificationType(parameter));
+			slot += size(parameter);
+		}
+
+		Frame[] frames = new Frame[bytecodes.size() + 1];
+		frames[0] = entry;
+		BitSet worklist = new BitSet();
+		worklist.set(0);
+		while (!worklist.isEmpty()) {
+			int i = worklist.nextSetBit(0);
+			worklist.clear(i);
+			Bytecode b = bytecodes.get(i);
+			Frame frame = new Frame(frames[i]);
+			apply(b, i, frame, bytecodes);
+			String target = null;
+			if (b instanceof Bytecode.Goto) {
+				target = ((Bytecode.Goto) b).label;
+			} else if (b instanceof Bytecode.If) {
+				target = ((Bytecode.If) b).label;
+			} else if (b instanceof Bytecode.IfCmp) {
+				target = ((Bytecode.IfCmp) b).label;
+			}
+			if (target != null) {
+				int j = labels.get(target);
+				if (merge(frames, j, frame)) {
+					worklist.set(j);
+				}
+			}
+			if (!(b instanceof Bytecode.Goto || b instanceof Bytecode.Return || b instanceof Bytecode.Throw)
+					&& i + 1 < bytecodes.size()) {
+				if (merge(frames, i + 1, frame)) {
+					worklist.set(i + 1);
+				}
+			}
+		}
+		return frames;
+	}
+
+	private static boolean merge(Frame[] frames, int index, Frame frame) {
+		if (frames[index] == null) {
+			frames[index] = new Frame(frame);
+			return true;
+		}
+		return frames[index].merge(frame);
+	}
+
+	/**
+	 * Update a frame to reflect the effect of executing a given bytecode.
+	 */
+	private void apply(Bytecode b, int index, Frame frame,
+			List<Bytecode> bytecodes) {
+		if (b instanceof Bytecode.Load) {
+			frame.push(frame.locals[((Bytecode.Load) b).slot]);
+		} else if (b instanceof Bytecode.Store) {
+			frame.store(((Bytecode.Store) b).slot, frame.pop());
+		} else if (b instanceof Bytecode.LoadConst) {
+			Object constant = ((Bytecode.LoadConst) b).constant;
+			if (constant == null) {
+				frame.push(NULL);
+			} else if (constant instanceof String) {
+				frame.push(JvmTypes.JAVA_LANG_STRING);
+			} else if (constant instanceof Double) {
+				frame.push(T_DOUBLE);
+			} else {
+				frame.push(T_INT);
+			}
+		} else if (b instanceof Bytecode.Return) {
+			if (((Bytecode.Return) b).type != null) {
+				frame.pop();
+			}
+		} else if (b instanceof Bytecode.BinOp) {
+			frame.pop();
+			frame.pop();
+			frame.push(verificationType(((Bytecode.BinOp) b).type));
+		} else if (b instanceof Bytecode.Neg) {
+			// no change
+		} else if (b instanceof Bytecode.New) {
+			Bytecode.New n = (Bytecode.New) b;
+			if (n.type instanceof JvmType.Array) {
+				for (int i = 0; i != n.dims; ++i) {
+					frame.pop();
+				}
+				frame.push(n.type);
+			} else {
+				frame.push(new Uninitialized(index));
+			}
+		} else if (b instanceof Bytecode.Dup) {
+			frame.push(frame.stack.get(frame.stack.size() - 1));
+		} else if (b instanceof Bytecode.DupX1) {
+			Object v1 = frame.pop(), v2 = frame.pop();
+			frame.push(v1);
+			frame.push(v2);
+			frame.push(v1);
+		} else if (b instanceof Bytecode.DupX2) {
+			Object v1 = frame.pop(), v2 = frame.pop();
+			if (v2 == T_DOUBLE) {
+				frame.push(v1);
+				frame.push(v2);
+			} else {
+				Object v3 = frame.pop();
+				frame.push(v1);
+				frame.push(v3);
+				frame.push(v2);
+			}
+			frame.push(v1);
+		} else if (b instanceof Bytecode.Swap) {
+			Object v1 = frame.pop(), v2 = frame.pop();
+			frame.push(v1);
+			frame.push(v2);
+		} else if (b instanceof Bytecode.Pop) {
+			frame.pop();
+		} else if (b instanceof Bytecode.Conversion) {
+			frame.pop();
+			frame.push(verificationType(((Bytecode.Conversion) b).to));
+		} else if (b instanceof Bytecode.CheckCast) {
+			frame.pop();
+			frame.push(((Bytecode.CheckCast) b).type);
+		} else if (b instanceof Bytecode.InstanceOf
+				|| b instanceof Bytecode.ArrayLength) {
+			frame.pop();
+			frame.push(T_INT);
+		} else if (b instanceof Bytecode.ArrayLoad) {
+			frame.pop();
+			frame.pop();
+			frame.push(verificationType(((Bytecode.ArrayLoad) b).type
+					.element()));
+		} else if (b instanceof Bytecode.ArrayStore) {
+			frame.pop();
+			frame.pop();
+			frame.pop();
+		} else if (b instanceof Bytecode.Cmp) {
+			frame.pop();
+			frame.pop();
+			frame.push(T_INT);
+		} else if (b instanceof Bytecode.If || b instanceof Bytecode.Throw) {
+			frame.pop();
+		} else if (b instanceof Bytecode.IfCmp) {
+			frame.pop();
+			frame.pop();
+		} else if (b instanceof Bytecode.GetField) {
+			Bytecode.GetField g = (Bytecode.GetField) b;
+			if (g.mode != Bytecode.FieldMode.STATIC) {
+				frame.pop();
+			}
+			frame.push(verificationType(g.type));
+		} else if (b instanceof Bytecode.PutField) {
+			Bytecode.PutField p = (Bytecode.PutField) b;
+			frame.pop();
+			if (p.mode != Bytecode.FieldMode.STATIC) {
+				frame.pop();
+			}
+		} else if (b instanceof Bytecode.Invoke) {
+			Bytecode.Invoke invoke = (Bytecode.Invoke) b;
+			for (int i = 0; i != invoke.type.parameterTypes().size(); ++i) {
+				frame.pop();
+			}
+			if (invoke.mode != Bytecode.InvokeMode.STATIC) {
+				Object receiver = frame.pop();
+				if (invoke.name.equals("<init>")) {
+					// the receiver is now initialised
+					Object type = receiver == UNINITIALIZED_THIS ? owner
+							: invoke.owner;
+					for (int i = 0; i != frame.locals.length; ++i) {
+						if (frame.locals[i].equals(receiver)) {
+							frame.locals[i] = type;
+						}
+					}
+					for (int i = 0; i != frame.stack.size(); ++i) {
+						if (frame.stack.get(i).equals(receiver)) {
+							frame.stack.set(i, type);
+						}
+					}
+				}
+			}
+			JvmType ret = invoke.type.returnType();
+			if (!(ret instanceof JvmType.Void)) {
+				frame.push(verificationType(ret));
+			}
+		}
+		// Otherwise, the bytecode (e.g. Label, Goto, Iinc or Nop) does not
+		// affect the types of locals or stack elements.
+	}
+
+	/**
+	 * Merge two types. If they are the same, then that type results; if they
+	 * are both references, then their common supertype results (which we
+	 * conservatively take to be Object); otherwise, the given default
+	 * results.
+	 */
+	private static Object mergeTypes(Object t1, Object t2, Object otherwise) {
+		if (t1.equals(t2)) {
+			return t1;
+		} else if (t1 == NULL && isReference(t2)) {
+			return t2;
+		} else if (t2 == NULL && isReference(t1)) {
+			return t1;
+		} else if (isReference(t1) && isReference(t2)) {
+			return JvmTypes.JAVA_LANG_OBJECT;
+		} else {
+			return otherwise;
+		}
+	}
+
+	private static boolean isReference(Object type) {
+		return type instanceof JvmType.Reference;
+	}
+
+	private static Object verificationType(JvmType type) {
+		if (type instanceof JvmType.Double) {
+			return T_DOUBLE;
+		} else if (type instanceof JvmType.Primitive) {
+			// bool, char, byte, short and int are all ints
+			return T_INT;
+		} else {
+			return type;
+		}
+	}
+
+	private static int size(JvmType type) {
+		return type instanceof JvmType.Double || type instanceof JvmType.Long ? 2
+				: 1;
+	}
+
+	// =========================================================================
+	// Rewriting
+	// =========================================================================
+
+	/**
+	 * Add a <code>StackMapTable</code> attribute to each method of a class
+	 * file, which was previously analysed. The max stack and max locals of
+	 * each method are also updated.
+	 *
+	 * @param bytes
+	 *            The bytes of the class file.
+	 * @return The bytes of the rewritten class file.
+	 * @throws IOException
+	 */
+	public byte[] write(byte[] bytes) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				bytes));
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(body);
+
+		int magic = in.readInt();
+		int minor = in.readUnsignedShort();
+		int major = in.readUnsignedShort();
+
+		// First, read the constant pool so that new entries can be added.
+		ConstantPool pool = new ConstantPool(in);
+
+		// Second, copy everything up to the methods
+		copy(in, out, 6); // access flags, this and super
+		int interfaces = copyShort(in, out);
+		copy(in, out, interfaces * 2);
+		int fields = copyShort(in, out);
+		for (int i = 0; i != fields; ++i) {
+			copy(in, out, 6);
+			copyAttributes(in, out);
+		}
+
+		// Third, rewrite the methods
+		int count = copyShort(in, out);
+		for (int i = 0; i != count; ++i) {
+			copy(in, out, 6);
+			int attributes = copyShort(in, out);
+			for (int j = 0; j != attributes; ++j) {
+				int name = copyShort(in, out);
+				int length = in.readInt();
+				byte[] data = new byte[length];
+				in.readFully(data);
+				if (pool.utf8(name).equals("Code")) {
+					data = rewriteCode(data, methods.get(i), pool);
+				}
+				out.writeInt(data.length);
+				out.write(data);
+			}
+		}
+
+		// Finally, copy the class attributes
+		copyAttributes(in, out);
+		out.flush();
+
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(result);
+		header.writeInt(magic);
+		header.writeShort(minor);
+		header.writeShort(major);
+		pool.write(header);
+		header.flush();
+		body.writeTo(result);
+		return result.toByteArray();
+	}
+
+	private byte[] rewriteCode(byte[] data, MethodInfo method,
+			ConstantPool pool) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		in.readUnsignedShort();
+		in.readUnsignedShort();
+		out.writeShort(method.maxStack);
+		out.writeShort(method.maxLocals);
+		int length = in.readInt();
+		byte[] code = new byte[length];
+		in.readFully(code);
+		out.writeInt(length);
+		out.write(code);
+		int handlers = copyShort(in, out);
+		copy(in, out, handlers * 8);
+		int attributes = in.readUnsignedShort();
+
+		// Determine the offset of every bytecode. Each bytecode other than a
+		// label corresponds to exactly one instruction.
+		List<Bytecode> bytecodes = method.bytecodes;
+		int[] offsets = new int[bytecodes.size()];
+		int offset = 0;
+		for (int i = 0; i != bytecodes.size(); ++i) {
+			offsets[i] = offset;
+			if (!(bytecodes.get(i) instanceof Bytecode.Label)) {
+				offset += instructionLength(code, offset);
+			}
+		}
+
+		// Determine the frame at each branch target
+		HashSet<String> targets = new HashSet<String>();
+		for (Bytecode b : bytecodes) {
+			if (b instanceof Bytecode.Goto) {
+				targets.add(((Bytecode.Goto) b).label);
+			} else if (b instanceof Bytecode.If) {
+				targets.add(((Bytecode.If) b).label);
+			} else if (b instanceof Bytecode.IfCmp) {
+				targets.add(((Bytecode.IfCmp) b).label);
+			}
+		}
+		TreeMap<Integer, Frame> frames = new TreeMap<Integer, Frame>();
+		for (int i = 0; i != bytecodes.size(); ++i) {
+			Bytecode b = bytecodes.get(i);
+			if (b instanceof Bytecode.Label
+					&& targets.contains(((Bytecode.Label) b).name)) {
+				frames.put(offsets[i], method.frames[i]);
+			}
+		}
+
+		if (frames.isEmpty()) {
+			out.writeShort(attributes);
+		} else {
+			out.writeShort(attributes + 1);
+			out.writeShort(pool.utf8("StackMapTable"));
+			ByteArrayOutputStream table = new ByteArrayOutputStream();
+			DataOutputStream tout = new DataOutputStream(table);
+			tout.writeShort(frames.size());
+			int last = -1;
+			for (Map.Entry<Integer, Frame> e : frames.entrySet()) {
+				// full_frame
+				tout.writeByte(255);
+				tout.writeShort(e.getKey() - last - 1);
+				last = e.getKey();
+				writeFrame(e.getValue(), offsets, pool, tout);
+			}
+			tout.flush();
+			out.writeInt(table.size());
+			table.writeTo(out);
+		}
+		for (int i = 0; i != attributes; ++i) {
+			copyShort(in, out);
+			int len = in.readInt();
+			out.writeInt(len);
+			copy(in, out, len);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private void writeFrame(Frame frame, int[] offsets, ConstantPool pool,
+			DataOutputStream out) throws IOException {
+		// Locals are written without the second half of doubles, and without
+		// any trailing unusable locals.
+		ArrayList<Object> locals = new ArrayList<Object>();
+		for (int i = 0; i < frame.locals.length; ++i) {
+			locals.add(frame.locals[i]);
+			if (frame.locals[i] == T_DOUBLE) {
+				i = i + 1;
+			}
+		}
+		while (!locals.isEmpty() && locals.get(locals.size() - 1) == TOP) {
+			locals.remove(locals.size() - 1);
+		}
+		out.writeShort(locals.size());
+		for (Object type : locals) {
+			writeVerificationType(type, offsets, pool, out);
+		}
+		out.writeShort(frame.stack.size());
+		for (Object type : frame.stack) {
+			writeVerificationType(type, offsets, pool, out);
+		}
+	}
+
+	private void writeVerificationType(Object type, int[] offsets,
+			ConstantPool pool, DataOutputStream out) throws IOException {
+		if (type == TOP) {
+			out.writeByte(0);
+		} else if (type == T_INT) {
+			out.writeByte(1);
+		} else if (type == T_DOUBLE) {
+			out.writeByte(3);
+		} else if (type == NULL) {
+			out.writeByte(5);
+		} else if (type == UNINITIALIZED_THIS) {
+			out.writeByte(6);
+		} else if (type instanceof Uninitialized) {
+			out.writeByte(8);
+			out.writeShort(offsets[((Uninitialized) type).index]);
+		} else {
+			out.writeByte(7);
+			String descriptor = ClassFile.descriptor((JvmType) type, false);
+			if (descriptor.startsWith("L")) {
+				descriptor = descriptor.substring(1, descriptor.length() - 1);
+			}
+			out.writeShort(pool.clazz(descriptor));
+		}
+	}
+
+	/**
+	 * Determine the length of the instruction at a given offset.
+	 */
+	private static int instructionLength(byte[] code, int offset) {
+		int opcode = code[offset] & 0xFF;
+		switch (opcode) {
+		case 0x10: // bipush
+		case 0x12: // ldc
+		case 0xbc: // newarray
+			return 2;
+		case 0x15: // iload .. aload
+		case 0x16:
+		case 0x17:
+		case 0x18:
+		case 0x19:
+		case 0x36: // istore .. astore
+		case 0x37:
+		case 0x38:
+		case 0x39:
+		case 0x3a:
+		case 0xa9: // ret
+			return 2;
+		case 0x11: // sipush
+		case 0x13: // ldc_w
+		case 0x14: // ldc2_w
+		case 0x84: // iinc
+		case 0xb2: // getstatic .. invokestatic
+		case 0xb3:
+		case 0xb4:
+		case 0xb5:
+		case 0xb6:
+		case 0xb7:
+		case 0xb8:
+		case 0xbb: // new
+		case 0xbd: // anewarray
+		case 0xc0: // checkcast
+		case 0xc1: // instanceof
+			return 3;
+		case 0xc5: // multianewarray
+			return 4;
+		case 0xb9: // invokeinterface
+		case 0xba: // invokedynamic
+		case 0xc8: // goto_w
+		case 0xc9: // jsr_w
+			return 5;
+		case 0xc4: // wide
+			return (code[offset + 1] & 0xFF) == 0x84 ? 6 : 4;
+		case 0xaa: { // tableswitch
+			int pc = (offset + 4) & ~3;
+			int low = readInt(code, pc + 4);
+			int high = readInt(code, pc + 8);
+			return pc + 12 + (high - low + 1) * 4 - offset;
+		}
+		case 0xab: { // lookupswitch
+			int pc = (offset + 4) & ~3;
+			int npairs = readInt(code, pc + 4);
+			return pc + 8 + npairs * 8 - offset;
+		}
+		default:
+			if (opcode >= 0x99 && opcode <= 0xa8 || opcode == 0xc6
+					|| opcode == 0xc7) {
+				// if<cond>, if_<x>cmp<cond>, goto, jsr, ifnull, ifnonnull
+				return 3;
+			}
+			return 1;
+		}
+	}
+
+	private static int readInt(byte[] code, int offset) {
+		return ((code[offset] & 0xFF) << 24) | ((code[offset + 1] & 0xFF) << 16)
+				| ((code[offset + 2] & 0xFF) << 8) | (code[offset + 3] & 0xFF);
+	}
+
+	private static void copy(DataInputStream in, DataOutputStream out,
+			int length) throws IOException {
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		out.write(bytes);
+	}
+
+	private static int copyShort(DataInputStream in, DataOutputStream out)
+			throws IOException {
+		int value = in.readUnsignedShort();
+		out.writeShort(value);
+		return value;
+	}
+
+	private static void copyAttributes(DataInputStream in, DataOutputStream out)
+			throws IOException {
+		int attributes = copyShort(in, out);
+		for (int i = 0; i != attributes; ++i) {
+			copyShort(in, out);
+			int length = in.readInt();
+			out.writeInt(length);
+			copy(in, out, length);
+		}
+	}
+
+	/**
+	 * A constant pool which has been read from a class file, and to which new
+	 * (UTF8 and Class) entries may be appended.
+	 */
+	private static final class ConstantPool {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final HashMap<String, Integer> utf8s = new HashMap<String, Integer>();
+		private final HashMap<Integer, String> utf8Indices = new HashMap<Integer, String>();
+		private final HashMap<Integer, Integer> classes = new HashMap<Integer, Integer>();
+		private int count;
+
+		public ConstantPool(DataInputStream in) throws IOException {
+			count = in.readUnsignedShort();
+			for (int i = 1; i < count; ++i) {
+				int tag = in.readUnsignedByte();
+				out.writeByte(tag);
+				switch (tag) {
+				case 1: { // Utf8
+					String s = in.readUTF();
+					out.writeUTF(s);
+					if (!utf8s.containsKey(s)) {
+						utf8s.put(s, i);
+					}
+					utf8Indices.put(i, s);
+					break;
+				}
+				case 7: { // Class
+					int name = copyShort(in, out);
+					classes.put(name, i);
+					break;
+				}
+				case 8: // String
+				case 16: // MethodType
+					copy(in, out, 2);
+					break;
+				case 15: // MethodHandle
+					copy(in, out, 3);
+					break;
+				case 5: // Long
+				case 6: // Double
+					copy(in, out, 8);
+					++i;
+					break;
+				default: // Integer, Float, refs, NameAndType, InvokeDynamic
+					copy(in, out, 4);
+				}
+			}
+		}
+
+		public String utf8(int index) {
+			return utf8Indices.get(index);
+		}
+
+		public int utf8(String s) throws IOException {
+			Integer index = utf8s.get(s);
+			if (index == null) {
+				index = count++;
+				out.writeByte(1);
+				out.writeUTF(s);
+				utf8s.put(s, index);
+				utf8Indices.put(index, s);
+			}
+			return index;
+		}
+
+		public int clazz(String name) throws IOException {
+			int utf8 = utf8(name);
+			Integer index = classes.get(utf8);
+			if (index == null) {
+				index = count++;
+				out.writeByte(7);
+				out.writeShort(utf8);
+				classes.put(utf8, index);
+			}
+			return index;
+		}
+
+		public void write(DataOutputStream writer) throws IOException {
+			out.flush();
+			writer.writeShort(count);
+			bytes.writeTo(writer);
+		}
+	}
+}
@@ -0,0 +1,409 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang.io;
+
+import static whilelang.io.WhileFileWriter.*;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+
+import whilelang.lang.Expr;
+import whilelang.lang.Stmt;
+import whilelang.lang.Type;
+import whilelang.lang.WhileFile;
+import whilelang.util.Attribute;
+import whilelang.util.Pair;
+
+/**
+ * Responsible for reading a <code>WhileFile</code> written by
+ * <code>WhileFileWriter</code>, including the <code>Attribute.Source</code>
+ * and <code>Attribute.Type</code> attributes of each element. Since these
+ * are restored, the result can be given directly to the interpreters or the
+ * <code>ClassFileWriter</code> without checking it again. Elements are
+ * decoded directly from the underlying buffer (which, when reading from a
+ * file, is mapped into memory), and each string is decoded only once, when it
+ * is first used.
+ *
+ * @author agent
+ *
+ */
+public class WhileFileReader {
+
+	private static final Charset UTF8 = Charset.forName("UTF8");
+
+	private final ByteBuffer buffer;
+
+	/**
+	 * The offset of each string in the buffer.
+	 */
+	private int[] offsets;
+
+	/**
+	 * The length of each string in the buffer (in bytes).
+	 */
+	private int[] lengths;
+
+	/**
+	 * Each string which has been decoded so far.
+	 */
+	private String[] strings;
+
+	/**
+	 * Each type read so far, in the order they were read.
+	 */
+	private ArrayList<Type> types;
+
+	public WhileFileReader(String filename) throws IOException {
+		FileInputStream fin = new FileInputStream(filename);
+		try {
+			FileChannel channel = fin.getChannel();
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			fin.close();
+		}
+	}
+
+	public WhileFileReader(byte[] bytes) {
+		this.buffer = ByteBuffer.wrap(bytes);
+	}
+
+	public WhileFileReader(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	public WhileFile read() throws IOException {
+		try {
+			if (buffer.getInt() != MAGIC || buffer.get() != FORMAT) {
+				throw new IOException("invalid AST file");
+			}
+			// First, locate the strings. These are not decoded yet, since
+			// many will be used only once, if at all.
+			int count = readInt();
+			offsets = new int[count];
+			lengths = new int[count];
+			strings = new String[count];
+			types = new ArrayList<Type>();
+			for (int i = 0; i != count; ++i) {
+				lengths[i] = readInt();
+				offsets[i] = buffer.position();
+				buffer.position(offsets[i] + lengths[i]);
+			}
+
+			// Second, read the declarations.
+			String filename = readString();
+			int size = readInt();
+			ArrayList<WhileFile.Decl> decls = new ArrayList<WhileFile.Decl>(
+					size);
+			for (int i = 0; i != size; ++i) {
+				decls.add(readDecl());
+			}
+			return new WhileFile(filename, decls);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("truncated AST file");
+		} catch (IllegalArgumentException e) {
+			throw new IOException("invalid AST file");
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("invalid AST file");
+		}
+	}
+
+	private WhileFile.Decl readDecl() throws IOException {
+		int tag = buffer.get();
+		Attribute[] attributes = readAttributes();
+		switch (tag) {
+		case CONSTDECL: {
+			String name = readString();
+			return new WhileFile.ConstDecl(readExpr(), name, attributes);
+		}
+		case TYPEDECL: {
+			String name = readString();
+			return new WhileFile.TypeDecl(readType(), name, attributes);
+		}
+		case FUNDECL: {
+			String name = readString();
+			Type ret = readType();
+			int count = readInt();
+			ArrayList<WhileFile.Parameter> parameters = new ArrayList<WhileFile.Parameter>(
+					count);
+			for (int i = 0; i != count; ++i) {
+				Attribute[] pattributes = readAttributes();
+				String pname = readString();
+				parameters.add(new WhileFile.Parameter(readType(), pname,
+						pattributes));
+			}
+			return new WhileFile.FunDecl(name, ret, parameters,
+					readStmts(), attributes);
+		}
+		default:
+			throw new IOException("unknown declaration tag (" + tag + ")");
+		}
+	}
+
+	private ArrayList<Stmt> readStmts() throws IOException {
+		int count = readInt();
+		ArrayList<Stmt> stmts = new ArrayList<Stmt>(count);
+		for (int i = 0; i != count; ++i) {
+			stmts.add(readStmt());
+		}
+		return stmts;
+	}
+
+	private Stmt readStmt() throws IOException {
+		int tag = buffer.get();
+		if (tag == ABSENT) {
+			return null;
+		} else if (tag == INVOKE) {
+			return readInvoke(readAttributes());
+		}
+		Attribute[] attributes = readAttributes();
+		switch (tag) {
+		case ASSIGN: {
+			Expr.LVal lhs = (Expr.LVal) readExpr();
+			return new Stmt.Assign(lhs, readExpr(), attributes);
+		}
+		case RETURN:
+			return new Stmt.Return(readExpr(), attributes);
+		case WHILE: {
+			Expr condition = readExpr();
+			return new Stmt.While(condition, readStmts(), attributes);
+		}
+		case FOR: {
+			Stmt.VariableDeclaration declaration = (Stmt.VariableDeclaration) readStmt();
+			Expr condition = readExpr();
+			Stmt increment = readStmt();
+			return new Stmt.For(declaration, condition, increment,
+					readStmts(), attributes);
+		}
+		case IFELSE: {
+			Expr condition = readExpr();
+			ArrayList<Stmt> trueBranch = readStmts();
+			return new Stmt.IfElse(condition, trueBranch, readStmts(),
+					attributes);
+		}
+		case PRINT:
+			return new Stmt.Print(readExpr(), attributes);
+		case VARDECL: {
+			Type type = readType();
+			String name = readString();
+			return new Stmt.VariableDeclaration(type, name, readExpr(),
+					attributes);
+		}
+		default:
+			throw new IOException("unknown statement tag (" + tag + ")");
+		}
+	}
+
+	private Expr readExpr() throws IOException {
+		int tag = buffer.get();
+		if (tag == ABSENT) {
+			return null;
+		}
+		Attribute[] attributes = readAttributes();
+		switch (tag) {
+		case VARIABLE:
+			return new Expr.Variable(readString(), attributes);
+		case CONSTANT:
+			return new Expr.Constant(readValue(), attributes);
+		case BINARY: {
+			Expr.BOp op = Expr.BOp.values()[buffer.get()];
+			Expr lhs = readExpr();
+			return new Expr.Binary(op, lhs, readExpr(), attributes);
+		}
+		case INDEXOF: {
+			Expr source = readExpr();
+			return new Expr.IndexOf(source, readExpr(), attributes);
+		}
+		case UNARY: {
+			Expr.UOp op = Expr.UOp.values()[buffer.get()];
+			return new Expr.Unary(op, readExpr(), attributes);
+		}
+		case CAST: {
+			Type type = readType();
+			return new Expr.Cast(type, readExpr(), attributes);
+		}
+		case LISTCONSTRUCTOR:
+			return new Expr.ListConstructor(readExprs(), attributes);
+		case RECORDACCESS: {
+			Expr source = readExpr();
+			return new Expr.RecordAccess(source, readString(), attributes);
+		}
+		case RECORDCONSTRUCTOR: {
+			int count = readInt();
+			ArrayList<Pair<String, Expr>> fields = new ArrayList<Pair<String, Expr>>(
+					count);
+			for (int i = 0; i != count; ++i) {
+				String name = readString();
+				fields.add(new Pair<String, Expr>(name, readExpr()));
+			}
+			return new Expr.RecordConstructor(fields, attributes);
+		}
+		case INVOKE:
+			return readInvoke(attributes);
+		default:
+			throw new IOException("unknown expression tag (" + tag + ")");
+		}
+	}
+
+	private Expr.Invoke readInvoke(Attribute[] attributes) throws IOException {
+		String name = readString();
+		return new Expr.Invoke(name, readExprs(), attributes);
+	}
+
+	private ArrayList<Expr> readExprs() throws IOException {
+		int count = readInt();
+		ArrayList<Expr> exprs = new ArrayList<Expr>(count);
+		for (int i = 0; i != count; ++i) {
+			exprs.add(readExpr());
+		}
+		return exprs;
+	}
+
+	private Type readType() throws IOException {
+		int tag = buffer.get();
+		if (tag == ABSENT) {
+			return null;
+		} else if (tag == TYPEREF) {
+			return types.get(readInt());
+		}
+		Type type = readType(tag, readAttributes());
+		types.add(type);
+		return type;
+	}
+
+	private Type readType(int tag, Attribute[] attributes) throws IOException {
+		switch (tag) {
+		case VOID:
+			return new Type.Void(attributes);
+		case NULLTYPE:
+			return new Type.Null(attributes);
+		case BOOL:
+			return new Type.Bool(attributes);
+		case INT:
+			return new Type.Int(attributes);
+		case REAL:
+			return new Type.Real(attributes);
+		case CHAR:
+			return new Type.Char(attributes);
+		case STRING:
+			return new Type.Strung(attributes);
+		case NAMED:
+			return new Type.Named(readString(), attributes);
+		case LIST:
+			return new Type.List(readType(), attributes);
+		case RECORD: {
+			int count = readInt();
+			HashMap<String, Type> fields = new HashMap<String, Type>();
+			for (int i = 0; i != count; ++i) {
+				String name = readString();
+				fields.put(name, readType());
+			}
+			return new Type.Record(fields, attributes);
+		}
+		case UNION: {
+			int count = readInt();
+			ArrayList<Type> bounds = new ArrayList<Type>(count);
+			for (int i = 0; i != count; ++i) {
+				bounds.add(readType());
+			}
+			return new Type.Union(bounds, attributes);
+		}
+		default:
+			throw new IOException("unknown type tag (" + tag + ")");
+		}
+	}
+
+	private Object readValue() throws IOException {
+		int tag = buffer.get();
+		switch (tag) {
+		case NULLVALUE:
+			return null;
+		case TRUE:
+			return true;
+		case FALSE:
+			return false;
+		case CHARVALUE:
+			return (char) readInt();
+		case INTVALUE:
+			return readSignedInt();
+		case REALVALUE:
+			return Double.longBitsToDouble(buffer.getLong());
+		case STRINGVALUE:
+			return readString();
+		default:
+			throw new IOException("unknown constant tag (" + tag + ")");
+		}
+	}
+
+	private Attribute[] readAttributes() throws IOException {
+		int flags = buffer.get();
+		if (flags == 0) {
+			return new Attribute[0];
+		}
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>(2);
+		if ((flags & SOURCE_ATTR) != 0) {
+			int start = readSignedInt();
+			attributes.add(new Attribute.Source(start, readSignedInt()));
+		}
+		if ((flags & TYPE_ATTR) != 0) {
+			attributes.add(new Attribute.Type(readType()));
+		}
+		return attributes.toArray(new Attribute[attributes.size()]);
+	}
+
+	private String readString() {
+		int index = readInt();
+		String s = strings[index];
+		if (s == null) {
+			if (buffer.hasArray()) {
+				s = new String(buffer.array(), buffer.arrayOffset()
+						+ offsets[index], lengths[index], UTF8);
+			} else {
+				ByteBuffer bytes = buffer.duplicate();
+				bytes.position(offsets[index]);
+				bytes.limit(offsets[index] + lengths[index]);
+				s = UTF8.decode(bytes).toString();
+			}
+			strings[index] = s;
+		}
+		return s;
+	}
+
+	private int readSignedInt() {
+		int i = readInt();
+		return (i >>> 1) ^ -(i & 1);
+	}
+
+	private int readInt() {
+		int i = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = buffer.get();
+			i |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return i;
+	}
+}
@@ -0,0 +1,454 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang.io;
+
+import static whilelang.util.SyntaxError.internalFailure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+import whilelang.lang.Expr;
+import whilelang.lang.Stmt;
+import whilelang.lang.Type;
+import whilelang.lang.WhileFile;
+import whilelang.util.Attribute;
+import whilelang.util.Pair;
+import whilelang.util.SyntacticElement;
+
+/**
+ * <p>
+ * Responsible for writing a <code>WhileFile</code> in a compact binary form,
+ * which can be read back by <code>WhileFileReader</code> without lexing,
+ * parsing or type checking the source file again. The
+ * <code>Attribute.Source</code> and <code>Attribute.Type</code> attributes of
+ * each element are written as well; other attributes are not, since they are
+ * recomputed by the passes which need them.
+ * </p>
+ *
+ * <p>
+ * The format consists of a header, a table of every string used (e.g. names
+ * of variables, functions and fields), and then the declarations. Each element
+ * is written as a one byte tag identifying its kind, followed by its
+ * attributes and then its children. Strings are written as indices into the
+ * string table, and integers as variable-length quantities, so most elements
+ * occupy only a few bytes. Since the type checker attaches the same type
+ * object to many expressions, a type which has already been written is
+ * written as a reference to it instead.
+ * </p>
+ *
+ * @author agent
+ *
+ */
+public class WhileFileWriter {
+
+	static final int MAGIC = 0x57484C41; // "WHLA"
+	static final int FORMAT = 1;
+
+	// Tags for declarations
+	static final int CONSTDECL = 1;
+	static final int TYPEDECL = 2;
+	static final int FUNDECL = 3;
+
+	// Tags for statements
+	static final int ASSIGN = 10;
+	static final int RETURN = 11;
+	static final int WHILE = 12;
+	static final int FOR = 13;
+	static final int IFELSE = 14;
+	static final int PRINT = 15;
+	static final int VARDECL = 16;
+
+	// Tags for expressions
+	static final int VARIABLE = 20;
+	static final int CONSTANT = 21;
+	static final int BINARY = 22;
+	static final int INDEXOF = 23;
+	static final int UNARY = 24;
+	static final int CAST = 25;
+	static final int LISTCONSTRUCTOR = 26;
+	static final int RECORDACCESS = 27;
+	static final int RECORDCONSTRUCTOR = 28;
+	static final int INVOKE = 29;
+
+	// Tags for types
+	static final int VOID = 40;
+	static final int NULLTYPE = 41;
+	static final int BOOL = 42;
+	static final int INT = 43;
+	static final int REAL = 44;
+	static final int CHAR = 45;
+	static final int STRING = 46;
+	static final int NAMED = 47;
+	static final int LIST = 48;
+	static final int RECORD = 49;
+	static final int UNION = 50;
+
+	/**
+	 * Written in place of a type which has already been written, followed by
+	 * the index of that type in the order types were written.
+	 */
+	static final int TYPEREF = 51;
+
+	// Tags for constant values
+	static final int NULLVALUE = 60;
+	static final int TRUE = 61;
+	static final int FALSE = 62;
+	static final int CHARVALUE = 63;
+	static final int INTVALUE = 64;
+	static final int REALVALUE = 65;
+	static final int STRINGVALUE = 66;
+
+	/**
+	 * Written in place of an optional element which is absent.
+	 */
+	static final int ABSENT = 0;
+
+	// Flags identifying which attributes follow an element's tag
+	static final int SOURCE_ATTR = 1;
+	static final int TYPE_ATTR = 2;
+
+	private final OutputStream output;
+	private WhileFile file;
+	private DataOutputStream body;
+	private HashMap<String, Integer> strings;
+	private IdentityHashMap<Type, Integer> types;
+
+	public WhileFileWriter(OutputStream output) {
+		this.output = output;
+	}
+
+	public void write(WhileFile wf) throws IOException {
+		this.file = wf;
+		this.strings = new LinkedHashMap<String, Integer>();
+		this.types = new IdentityHashMap<Type, Integer>();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		this.body = new DataOutputStream(bytes);
+
+		// First, write the declarations, collecting the strings they use.
+		writeString(wf.filename);
+		writeInt(wf.declarations.size());
+		for (WhileFile.Decl d : wf.declarations) {
+			write(d);
+		}
+		body.flush();
+
+		// Second, write the header and string table, followed by the
+		// declarations.
+		DataOutputStream out = new DataOutputStream(output);
+		out.writeInt(MAGIC);
+		out.writeByte(FORMAT);
+		this.body = out;
+		writeInt(strings.size());
+		for (String s : strings.keySet()) {
+			byte[] utf8 = s.getBytes("UTF8");
+			writeInt(utf8.length);
+			out.write(utf8);
+		}
+		bytes.writeTo(out);
+		out.flush();
+	}
+
+	private void write(WhileFile.Decl decl) throws IOException {
+		if (decl instanceof WhileFile.ConstDecl) {
+			WhileFile.ConstDecl cd = (WhileFile.ConstDecl) decl;
+			writeTag(CONSTDECL, cd);
+			writeString(cd.name);
+			write(cd.constant);
+		} else if (decl instanceof WhileFile.TypeDecl) {
+			WhileFile.TypeDecl td = (WhileFile.TypeDecl) decl;
+			writeTag(TYPEDECL, td);
+			writeString(td.name);
+			write(td.type);
+		} else if (decl instanceof WhileFile.FunDecl) {
+			WhileFile.FunDecl fd = (WhileFile.FunDecl) decl;
+			writeTag(FUNDECL, fd);
+			writeString(fd.name);
+			write(fd.ret);
+			writeInt(fd.parameters.size());
+			for (WhileFile.Parameter p : fd.parameters) {
+				writeAttributes(p);
+				writeString(p.name);
+				write(p.type);
+			}
+			write(fd.statements);
+		} else {
+			internalFailure("unknown declaration encountered (" + decl + ")",
+					file.filename, decl);
+		}
+	}
+
+	private void write(List<Stmt> statements) throws IOException {
+		writeInt(statements.size());
+		for (Stmt s : statements) {
+			write(s);
+		}
+	}
+
+	private void write(Stmt stmt) throws IOException {
+		if (stmt == null) {
+			body.writeByte(ABSENT);
+		} else if (stmt instanceof Stmt.Assign) {
+			Stmt.Assign s = (Stmt.Assign) stmt;
+			writeTag(ASSIGN, s);
+			write(s.getLhs());
+			write(s.getRhs());
+		} else if (stmt instanceof Stmt.Return) {
+			Stmt.Return s = (Stmt.Return) stmt;
+			writeTag(RETURN, s);
+			write(s.getExpr());
+		} else if (stmt instanceof Stmt.While) {
+			Stmt.While s = (Stmt.While) stmt;
+			writeTag(WHILE, s);
+			write(s.getCondition());
+			write(s.getBody());
+		} else if (stmt instanceof Stmt.For) {
+			Stmt.For s = (Stmt.For) stmt;
+			writeTag(FOR, s);
+			write(s.getDeclaration());
+			write(s.getCondition());
+			write(s.getIncrement());
+			write(s.getBody());
+		} else if (stmt instanceof Stmt.IfElse) {
+			Stmt.IfElse s = (Stmt.IfElse) stmt;
+			writeTag(IFELSE, s);
+			write(s.getCondition());
+			write(s.getTrueBranch());
+			write(s.getFalseBranch());
+		} else if (stmt instanceof Stmt.Print) {
+			Stmt.Print s = (Stmt.Print) stmt;
+			writeTag(PRINT, s);
+			write(s.getExpr());
+		} else if (stmt instanceof Stmt.VariableDeclaration) {
+			Stmt.VariableDeclaration s = (Stmt.VariableDeclaration) stmt;
+			writeTag(VARDECL, s);
+			write(s.getType());
+			writeString(s.getName());
+			write(s.getExpr());
+		} else if (stmt instanceof Expr.Invoke) {
+			write((Expr) stmt);
+		} else {
+			internalFailure("unknown statement encountered (" + stmt + ")",
+					file.filename, stmt);
+		}
+	}
+
+	private void write(Expr expr) throws IOException {
+		if (expr == null) {
+			body.writeByte(ABSENT);
+		} else if (expr instanceof Expr.Variable) {
+			Expr.Variable e = (Expr.Variable) expr;
+			writeTag(VARIABLE, e);
+			writeString(e.getName());
+		} else if (expr instanceof Expr.Constant) {
+			Expr.Constant e = (Expr.Constant) expr;
+			writeTag(CONSTANT, e);
+			writeValue(e);
+		} else if (expr instanceof Expr.Binary) {
+			Expr.Binary e = (Expr.Binary) expr;
+			writeTag(BINARY, e);
+			body.writeByte(e.getOp().ordinal());
+			write(e.getLhs());
+			write(e.getRhs());
+		} else if (expr instanceof Expr.IndexOf) {
+			Expr.IndexOf e = (Expr.IndexOf) expr;
+			writeTag(INDEXOF, e);
+			write(e.getSource());
+			write(e.getIndex());
+		} else if (expr instanceof Expr.Unary) {
+			Expr.Unary e = (Expr.Unary) expr;
+			writeTag(UNARY, e);
+			body.writeByte(e.getOp().ordinal());
+			write(e.getExpr());
+		} else if (expr instanceof Expr.Cast) {
+			Expr.Cast e = (Expr.Cast) expr;
+			writeTag(CAST, e);
+			write(e.getType());
+			write(e.getSource());
+		} else if (expr instanceof Expr.ListConstructor) {
+			Expr.ListConstructor e = (Expr.ListConstructor) expr;
+			writeTag(LISTCONSTRUCTOR, e);
+			writeInt(e.getArguments().size());
+			for (Expr arg : e.getArguments()) {
+				write(arg);
+			}
+		} else if (expr instanceof Expr.RecordAccess) {
+			Expr.RecordAccess e = (Expr.RecordAccess) expr;
+			writeTag(RECORDACCESS, e);
+			write(e.getSource());
+			writeString(e.getName());
+		} else if (expr instanceof Expr.RecordConstructor) {
+			Expr.RecordConstructor e = (Expr.RecordConstructor) expr;
+			writeTag(RECORDCONSTRUCTOR, e);
+			writeInt(e.getFields().size());
+			for (Pair<String, Expr> p : e.getFields()) {
+				writeString(p.first());
+				write(p.second());
+			}
+		} else if (expr instanceof Expr.Invoke) {
+			Expr.Invoke e = (Expr.Invoke) expr;
+			writeTag(INVOKE, e);
+			writeString(e.getName());
+			writeInt(e.getArguments().size());
+			for (Expr arg : e.getArguments()) {
+				write(arg);
+			}
+		} else {
+			internalFailure("unknown expression encountered (" + expr + ")",
+					file.filename, expr);
+		}
+	}
+
+	private void write(Type type) throws IOException {
+		if (type == null) {
+			body.writeByte(ABSENT);
+			return;
+		}
+		Integer index = types.get(type);
+		if (index != null) {
+			body.writeByte(TYPEREF);
+			writeInt(index);
+			return;
+		}
+		if (type instanceof Type.Void) {
+			writeTag(VOID, type);
+		} else if (type instanceof Type.Null) {
+			writeTag(NULLTYPE, type);
+		} else if (type instanceof Type.Bool) {
+			writeTag(BOOL, type);
+		} else if (type instanceof Type.Int) {
+			writeTag(INT, type);
+		} else if (type instanceof Type.Real) {
+			writeTag(REAL, type);
+		} else if (type instanceof Type.Char) {
+			writeTag(CHAR, type);
+		} else if (type instanceof Type.Strung) {
+			writeTag(STRING, type);
+		} else if (type instanceof Type.Named) {
+			writeTag(NAMED, type);
+			writeString(((Type.Named) type).getName());
+		} else if (type instanceof Type.List) {
+			writeTag(LIST, type);
+			write(((Type.List) type).getElement());
+		} else if (type instanceof Type.Record) {
+			writeTag(RECORD, type);
+			// Fields are written in a fixed order, so the output does not
+			// depend on the order of the record's map.
+			Map<String, Type> fields = ((Type.Record) type).getFields();
+			ArrayList<String> names = new ArrayList<String>(fields.keySet());
+			Collections.sort(names);
+			writeInt(names.size());
+			for (String name : names) {
+				writeString(name);
+				write(fields.get(name));
+			}
+		} else if (type instanceof Type.Union) {
+			writeTag(UNION, type);
+			List<Type> bounds = ((Type.Union) type).getBounds();
+			writeInt(bounds.size());
+			for (Type bound : bounds) {
+				write(bound);
+			}
+		} else {
+			internalFailure("unknown type encountered (" + type + ")",
+					file.filename, type);
+		}
+		types.put(type, types.size());
+	}
+
+	private void writeValue(Expr.Constant constant) throws IOException {
+		Object value = constant.getValue();
+		if (value == null) {
+			body.writeByte(NULLVALUE);
+		} else if (value instanceof Boolean) {
+			body.writeByte((Boolean) value ? TRUE : FALSE);
+		} else if (value instanceof Character) {
+			body.writeByte(CHARVALUE);
+			writeInt((Character) value);
+		} else if (value instanceof Integer) {
+			body.writeByte(INTVALUE);
+			writeSignedInt((Integer) value);
+		} else if (value instanceof Double) {
+			body.writeByte(REALVALUE);
+			body.writeLong(Double.doubleToRawLongBits((Double) value));
+		} else if (value instanceof String) {
+			body.writeByte(STRINGVALUE);
+			writeString((String) value);
+		} else {
+			internalFailure("unknown constant encountered (" + value + ")",
+					file.filename, constant);
+		}
+	}
+
+	/**
+	 * Write the tag for a given element, followed by its attributes.
+	 */
+	private void writeTag(int tag, SyntacticElement element)
+			throws IOException {
+		body.writeByte(tag);
+		writeAttributes(element);
+	}
+
+	private void writeAttributes(SyntacticElement element) throws IOException {
+		Attribute.Source source = element.attribute(Attribute.Source.class);
+		Attribute.Type type = element.attribute(Attribute.Type.class);
+		int flags = (source != null ? SOURCE_ATTR : 0)
+				| (type != null ? TYPE_ATTR : 0);
+		body.writeByte(flags);
+		if (source != null) {
+			writeSignedInt(source.start);
+			writeSignedInt(source.end);
+		}
+		if (type != null) {
+			write(type.type);
+		}
+	}
+
+	private void writeString(String s) throws IOException {
+		Integer index = strings.get(s);
+		if (index == null) {
+			index = strings.size();
+			strings.put(s, index);
+		}
+		writeInt(index);
+	}
+
+	/**
+	 * Write a signed integer as a variable-length quantity, using zig-zag
+	 * encoding so that small negative numbers are also short.
+	 */
+	private void writeSignedInt(int i) throws IOException {
+		writeInt((i << 1) ^ (i >> 31));
+	}
+
+	/**
+	 * Write an unsigned integer as a variable-length quantity, seven bits at a
+	 * time starting with the least significant. The top bit of each byte
+	 * indicates whether more follow.
+	 */
+	private void writeInt(int i) throws IOException {
+		while ((i & ~0x7F) != 0) {
+			body.writeByte((i & 0x7F) | 0x80);
+			i >>>= 7;
+		}
+		body.writeByte(i);
+	}
+}
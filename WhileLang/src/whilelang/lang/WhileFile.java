@@ -19,79 +19,108 @@
 package whilelang.lang;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 
 import whilelang.util.Attribute;
 import whilelang.util.SyntacticElement;
 
+/**
+ * Represents a single source file, consisting of a list of declarations. Each
+ * source file also provides a symbol table which indexes its declarations by
+ * name. This is built once, when the file is constructed, and is then shared
+ * by every subsequent pass. Therefore, the list of declarations should not be
+ * modified afterwards.
+ * 
+ * @author David J. Pearce
+ * 
+ */
 public class WhileFile {
 
 	public final String filename;
 
 	public final ArrayList<Decl> declarations;
 
+	/**
+	 * The constants declared in this file, indexed by name.
+	 */
+	private final HashMap<String, ConstDecl> constants;
+
+	/**
+	 * The types declared in this file, indexed by name.
+	 */
+	private final HashMap<String, TypeDecl> types;
+
+	/**
+	 * The functions declared in this file, indexed by name. Since functions
+	 * may be overloaded, each name maps to every function declared with it in
+	 * declaration order.
+	 */
+	private final HashMap<String, List<FunDecl>> functions;
+
 	public WhileFile(String filename, List<Decl> decls) {
 		this.filename = filename;
 		this.declarations = new ArrayList<Decl>(decls);
-	}
-
-	public boolean hasName(String name) {
+		this.constants = new HashMap<String, ConstDecl>();
+		this.types = new HashMap<String, TypeDecl>();
+		this.functions = new HashMap<String, List<FunDecl>>();
 		for (Decl d : declarations) {
+			// NOTE: where a name is declared more than once, the last
+			// declaration takes precedence.
 			if (d instanceof ConstDecl) {
-				ConstDecl cd = (ConstDecl) d;
-				if (cd.name().equals(name)) {
-					return true;
-				}
+				constants.put(d.name(), (ConstDecl) d);
 			} else if (d instanceof TypeDecl) {
-				TypeDecl cd = (TypeDecl) d;
-				if (cd.name().equals(name)) {
-					return true;
-				}
+				types.put(d.name(), (TypeDecl) d);
 			} else if (d instanceof FunDecl) {
-				FunDecl fd = (FunDecl) d;
-				if (fd.name().equals(name)) {
-					return true;
+				List<FunDecl> overloads = functions.get(d.name());
+				if (overloads == null) {
+					overloads = new ArrayList<FunDecl>(1);
+					functions.put(d.name(), overloads);
 				}
+				overloads.add((FunDecl) d);
 			}
 		}
-		return false;
+	}
+
+	public boolean hasName(String name) {
+		return constants.containsKey(name) || types.containsKey(name)
+				|| functions.containsKey(name);
 	}
 
 	public ConstDecl constant(String name) {
-		for (Decl d : declarations) {
-			if (d instanceof ConstDecl) {
-				ConstDecl cd = (ConstDecl) d;
-				if (cd.name().equals(name)) {
-					return cd;
-				}
-			}
-		}
-		return null;
+		return constants.get(name);
 	}
 
 	public TypeDecl type(String name) {
-		for (Decl d : declarations) {
-			if (d instanceof TypeDecl) {
-				TypeDecl cd = (TypeDecl) d;
-				if (cd.name().equals(name)) {
-					return cd;
-				}
-			}
-		}
-		return null;
+		return types.get(name);
 	}
 
+	/**
+	 * Get the overload set for a given name.
+	 * 
+	 * @param name
+	 * @return Every function declared with the given name, in declaration
+	 *         order. This is empty if there are none.
+	 */
 	public List<FunDecl> functions(String name) {
-		ArrayList<FunDecl> matches = new ArrayList<FunDecl>();
-		for (Decl d : declarations) {
-			if (d instanceof FunDecl) {
-				FunDecl cd = (FunDecl) d;
-				if (cd.name().equals(name)) {
-					matches.add(cd);
-				}
-			}
+		List<FunDecl> overloads = functions.get(name);
+		if (overloads == null) {
+			return Collections.emptyList();
 		}
-		return matches;
+		return Collections.unmodifiableList(overloads);
+	}
+
+	/**
+	 * Get the function which a given name refers to. Where more than one
+	 * function is declared with the name, this is the last.
+	 * 
+	 * @param name
+	 * @return The function, or <code>null</code> if there is none.
+	 */
+	public FunDecl function(String name) {
+		List<FunDecl> overloads = functions.get(name);
+		return overloads == null ? null : overloads.get(overloads.size() - 1);
 	}
 
 	public interface Decl extends SyntacticElement {
@@ -0,0 +1,139 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang.runtime;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * <p>
+ * The output channel used by print statements, both in the interpreters and
+ * in programs compiled to JVM Bytecode. Unlike <code>System.out</code>, which
+ * is flushed after every line, output is accumulated in a buffer and written
+ * to <code>System.out</code> in large blocks. The buffer is flushed when it
+ * becomes full, when <code>flush()</code> is called and when the JVM exits.
+ * </p>
+ *
+ * <p>
+ * When the output is an interactive console, rather than being redirected to
+ * a file or pipe, the buffer is flushed after every line instead so that
+ * output appears promptly.
+ * </p>
+ *
+ * @author agent
+ *
+ */
+public final class Output {
+
+	/**
+	 * The size of the output buffer (in bytes).
+	 */
+	private static final int CAPACITY = 64 * 1024;
+
+	private static final ByteBuffer buffer = ByteBuffer.allocate(CAPACITY);
+
+	private static final Charset charset = Charset.defaultCharset();
+
+	private static final String lineSeparator = System
+			.getProperty("line.separator");
+
+	private static final boolean interactive = System.console() != null;
+
+	static {
+		// Ensure any buffered output is written when the program exits,
+		// including when it terminates with an exception.
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				flush();
+			}
+		});
+	}
+
+	private Output() {
+	}
+
+	public static synchronized void println(String s) {
+		write(s);
+		write(lineSeparator);
+		if (interactive) {
+			flush();
+		}
+	}
+
+	public static void println(int i) {
+		println(String.valueOf(i));
+	}
+
+	public static void println(double d) {
+		println(String.valueOf(d));
+	}
+
+	public static void println(boolean b) {
+		println(String.valueOf(b));
+	}
+
+	public static void println(char c) {
+		println(String.valueOf(c));
+	}
+
+	/**
+	 * Write any buffered output to <code>System.out</code>.
+	 */
+	public static synchronized void flush() {
+		if (buffer.position() != 0) {
+			System.out.write(buffer.array(), 0, buffer.position());
+			buffer.clear();
+		}
+		System.out.flush();
+	}
+
+	private static void write(String s) {
+		int length = s.length();
+		if (length > buffer.remaining()) {
+			flush();
+		}
+		if (length <= buffer.remaining()) {
+			// Fast path for ASCII strings, which avoids encoding them.
+			byte[] bytes = buffer.array();
+			int pos = buffer.position();
+			for (int i = 0; i != length; ++i) {
+				char c = s.charAt(i);
+				if (c >= 0x80) {
+					write(s.getBytes(charset));
+					return;
+				}
+				bytes[pos++] = (byte) c;
+			}
+			buffer.position(pos);
+		} else {
+			write(s.getBytes(charset));
+		}
+	}
+
+	private static void write(byte[] bytes) {
+		if (bytes.length > buffer.remaining()) {
+			flush();
+		}
+		if (bytes.length > buffer.remaining()) {
+			System.out.write(bytes, 0, bytes.length);
+		} else {
+			buffer.put(bytes);
+		}
+	}
+}
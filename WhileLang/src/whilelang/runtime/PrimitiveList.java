@@ -0,0 +1,373 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang.runtime;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Represents a list whose elements are of primitive type (i.e.
+ * <code>[int]</code>, <code>[real]</code>, <code>[bool]</code> or
+ * <code>[char]</code>) in programs compiled to JVM Bytecode. The elements are
+ * stored unboxed in a primitive array, which compiled code reads and writes
+ * directly (e.g. using <code>iaload</code> and <code>iastore</code>). The
+ * array is always exactly <code>length</code> elements long, so the JVM's own
+ * bounds checks apply to list accesses.
+ * </p>
+ *
+ * <p>
+ * Primitive lists are also <code>java.util.List</code>s of boxed elements,
+ * which allows them to be printed, compared and stored alongside lists
+ * represented as <code>ArrayList</code>s (e.g. in a list of union type).
+ * </p>
+ *
+ * @author agent
+ *
+ */
+public abstract class PrimitiveList extends AbstractList<Object> implements
+		RandomAccess {
+
+	/**
+	 * The number of elements in this list.
+	 */
+	public final int length;
+
+	public PrimitiveList(int length) {
+		this.length = length;
+	}
+
+	public int size() {
+		return length;
+	}
+
+	/**
+	 * Create a copy of this list, which does not share its array.
+	 *
+	 * @return
+	 */
+	public abstract PrimitiveList copy();
+
+	/**
+	 * A list of <code>int</code> elements.
+	 *
+	 * @author agent
+	 *
+	 */
+	public static final class Int extends PrimitiveList {
+		public final int[] data;
+
+		public Int(int[] data) {
+			super(data.length);
+			this.data = data;
+		}
+
+		public Object get(int index) {
+			return data[index];
+		}
+
+		public Object set(int index, Object element) {
+			int old = data[index];
+			data[index] = (Integer) element;
+			return old;
+		}
+
+		public Int copy() {
+			return new Int(data.clone());
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof Int) {
+				return Arrays.equals(data, ((Int) o).data);
+			}
+			return super.equals(o);
+		}
+
+		public int hashCode() {
+			// NOTE: this must agree with AbstractList.hashCode(), since a
+			// primitive list may equal an ArrayList.
+			return super.hashCode();
+		}
+
+		/**
+		 * Append two lists together, producing a new list.
+		 *
+		 * @param lhs
+		 * @param rhs
+		 * @return
+		 */
+		public static Int append(Int lhs, Int rhs) {
+			int[] data = new int[lhs.length + rhs.length];
+			System.arraycopy(lhs.data, 0, data, 0, lhs.length);
+			System.arraycopy(rhs.data, 0, data, lhs.length, rhs.length);
+			return new Int(data);
+		}
+
+		/**
+		 * Convert a given list (e.g. an <code>ArrayList</code> of boxed
+		 * elements) into a list of <code>int</code> elements. If it already
+		 * is one (or is <code>null</code>), then it is returned as is.
+		 *
+		 * @param o
+		 * @return
+		 */
+		public static Int valueOf(Object o) {
+			if (o == null || o instanceof Int) {
+				return (Int) o;
+			}
+			List<?> l = (List<?>) o;
+			int[] data = new int[l.size()];
+			for (int i = 0; i != data.length; ++i) {
+				Object e = l.get(i);
+				data[i] = ((Integer) e).intValue();
+			}
+			return new Int(data);
+		}
+	}
+
+	/**
+	 * A list of <code>double</code> elements.
+	 *
+	 * @author agent
+	 *
+	 */
+	public static final class Real extends PrimitiveList {
+		public final double[] data;
+
+		public Real(double[] data) {
+			super(data.length);
+			this.data = data;
+		}
+
+		public Object get(int index) {
+			return data[index];
+		}
+
+		public Object set(int index, Object element) {
+			double old = data[index];
+			data[index] = (Double) element;
+			return old;
+		}
+
+		public Real copy() {
+			return new Real(data.clone());
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof Real) {
+				return Arrays.equals(data, ((Real) o).data);
+			}
+			return super.equals(o);
+		}
+
+		public int hashCode() {
+			// NOTE: this must agree with AbstractList.hashCode(), since a
+			// primitive list may equal an ArrayList.
+			return super.hashCode();
+		}
+
+		/**
+		 * Append two lists together, producing a new list.
+		 *
+		 * @param lhs
+		 * @param rhs
+		 * @return
+		 */
+		public static Real append(Real lhs, Real rhs) {
+			double[] data = new double[lhs.length + rhs.length];
+			System.arraycopy(lhs.data, 0, data, 0, lhs.length);
+			System.arraycopy(rhs.data, 0, data, lhs.length, rhs.length);
+			return new Real(data);
+		}
+
+		/**
+		 * Convert a given list (e.g. an <code>ArrayList</code> of boxed
+		 * elements) into a list of <code>double</code> elements. If it already
+		 * is one (or is <code>null</code>), then it is returned as is.
+		 *
+		 * @param o
+		 * @return
+		 */
+		public static Real valueOf(Object o) {
+			if (o == null || o instanceof Real) {
+				return (Real) o;
+			}
+			List<?> l = (List<?>) o;
+			double[] data = new double[l.size()];
+			for (int i = 0; i != data.length; ++i) {
+				Object e = l.get(i);
+				data[i] = ((Number) e).doubleValue();
+			}
+			return new Real(data);
+		}
+	}
+
+	/**
+	 * A list of <code>boolean</code> elements.
+	 *
+	 * @author agent
+	 *
+	 */
+	public static final class Bool extends PrimitiveList {
+		public final boolean[] data;
+
+		public Bool(boolean[] data) {
+			super(data.length);
+			this.data = data;
+		}
+
+		public Object get(int index) {
+			return data[index];
+		}
+
+		public Object set(int index, Object element) {
+			boolean old = data[index];
+			data[index] = (Boolean) element;
+			return old;
+		}
+
+		public Bool copy() {
+			return new Bool(data.clone());
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof Bool) {
+				return Arrays.equals(data, ((Bool) o).data);
+			}
+			return super.equals(o);
+		}
+
+		public int hashCode() {
+			// NOTE: this must agree with AbstractList.hashCode(), since a
+			// primitive list may equal an ArrayList.
+			return super.hashCode();
+		}
+
+		/**
+		 * Append two lists together, producing a new list.
+		 *
+		 * @param lhs
+		 * @param rhs
+		 * @return
+		 */
+		public static Bool append(Bool lhs, Bool rhs) {
+			boolean[] data = new boolean[lhs.length + rhs.length];
+			System.arraycopy(lhs.data, 0, data, 0, lhs.length);
+			System.arraycopy(rhs.data, 0, data, lhs.length, rhs.length);
+			return new Bool(data);
+		}
+
+		/**
+		 * Convert a given list (e.g. an <code>ArrayList</code> of boxed
+		 * elements) into a list of <code>boolean</code> elements. If it already
+		 * is one (or is <code>null</code>), then it is returned as is.
+		 *
+		 * @param o
+		 * @return
+		 */
+		public static Bool valueOf(Object o) {
+			if (o == null || o instanceof Bool) {
+				return (Bool) o;
+			}
+			List<?> l = (List<?>) o;
+			boolean[] data = new boolean[l.size()];
+			for (int i = 0; i != data.length; ++i) {
+				Object e = l.get(i);
+				data[i] = ((Boolean) e).booleanValue();
+			}
+			return new Bool(data);
+		}
+	}
+
+	/**
+	 * A list of <code>char</code> elements.
+	 *
+	 * @author agent
+	 *
+	 */
+	public static final class Char extends PrimitiveList {
+		public final char[] data;
+
+		public Char(char[] data) {
+			super(data.length);
+			this.data = data;
+		}
+
+		public Object get(int index) {
+			return data[index];
+		}
+
+		public Object set(int index, Object element) {
+			char old = data[index];
+			data[index] = (Character) element;
+			return old;
+		}
+
+		public Char copy() {
+			return new Char(data.clone());
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof Char) {
+				return Arrays.equals(data, ((Char) o).data);
+			}
+			return super.equals(o);
+		}
+
+		public int hashCode() {
+			// NOTE: this must agree with AbstractList.hashCode(), since a
+			// primitive list may equal an ArrayList.
+			return super.hashCode();
+		}
+
+		/**
+		 * Append two lists together, producing a new list.
+		 *
+		 * @param lhs
+		 * @param rhs
+		 * @return
+		 */
+		public static Char append(Char lhs, Char rhs) {
+			char[] data = new char[lhs.length + rhs.length];
+			System.arraycopy(lhs.data, 0, data, 0, lhs.length);
+			System.arraycopy(rhs.data, 0, data, lhs.length, rhs.length);
+			return new Char(data);
+		}
+
+		/**
+		 * Convert a given list (e.g. an <code>ArrayList</code> of boxed
+		 * elements) into a list of <code>char</code> elements. If it already
+		 * is one (or is <code>null</code>), then it is returned as is.
+		 *
+		 * @param o
+		 * @return
+		 */
+		public static Char valueOf(Object o) {
+			if (o == null || o instanceof Char) {
+				return (Char) o;
+			}
+			List<?> l = (List<?>) o;
+			char[] data = new char[l.size()];
+			for (int i = 0; i != data.length; ++i) {
+				Object e = l.get(i);
+				data[i] = ((Character) e).charValue();
+			}
+			return new Char(data);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang.runtime;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Represents a record value in programs compiled to JVM Bytecode. For every
+ * record type used in a While program, a final subclass of this class is
+ * generated with one (typed) field for each field of the record. Compiled code
+ * then accesses record fields directly (i.e. using <code>getfield</code> and
+ * <code>putfield</code>).
+ * </p>
+ *
+ * <p>
+ * This class provides access to the fields of a record by name, which is
+ * needed when the exact type of a record is not known (e.g. because it has a
+ * union type). This is also used to compare, hash and print records of any
+ * type.
+ * </p>
+ *
+ * @author agent
+ *
+ */
+public abstract class Record {
+
+	/**
+	 * Get the names of the fields in this record, in sorted order.
+	 *
+	 * @return
+	 */
+	public abstract String[] fields();
+
+	/**
+	 * Get the value of a given field in this record. Primitive values are
+	 * boxed.
+	 *
+	 * @param field
+	 * @return
+	 */
+	public abstract Object get(String field);
+
+	/**
+	 * Set the value of a given field in this record. Primitive values are
+	 * unboxed.
+	 *
+	 * @param field
+	 * @param value
+	 */
+	public abstract void set(String field, Object value);
+
+	/**
+	 * Create a copy of this record, whose compound fields (e.g. lists) are
+	 * copied as well.
+	 *
+	 * @return
+	 */
+	public abstract Record copy();
+
+	public boolean equals(Object o) {
+		if (!(o instanceof Record)) {
+			return false;
+		}
+		Record r = (Record) o;
+		String[] fields = fields();
+		if (!Arrays.equals(fields, r.fields())) {
+			return false;
+		}
+		for (String field : fields) {
+			if (!Util.equals(get(field), r.get(field))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		int hash = 0;
+		for (String field : fields()) {
+			Object value = get(field);
+			hash += field.hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+		return hash;
+	}
+
+	public String toString() {
+		StringBuilder r = new StringBuilder("{");
+		boolean firstTime = true;
+		for (String field : fields()) {
+			if (!firstTime) {
+				r.append(",");
+			}
+			firstTime = false;
+			r.append(field).append(":").append(Util.toString(get(field)));
+		}
+		return r.append("}").toString();
+	}
+}
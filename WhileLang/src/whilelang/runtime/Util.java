@@ -0,0 +1,150 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang.runtime;
+
+import java.util.*;
+
+/**
+ * Runtime support for While programs compiled to JVM Bytecode. Values in
+ * compiled programs are unboxed where their type is known. Lists are
+ * <code>ArrayList</code>s whose elements are boxed, except for lists of
+ * primitive elements, which are <code>PrimitiveList</code>s. Records are
+ * instances of classes generated for each record type, which extend
+ * <code>Record</code>.
+ *
+ * @author agent
+ *
+ */
+public class Util {
+
+	/**
+	 * Convert the given value to a string, using the same format as the
+	 * <code>Interpreter</code>.
+	 *
+	 * @param o
+	 * @return
+	 */
+	public static String toString(Object o) {
+		if (o instanceof List) {
+			List<?> l = (List<?>) o;
+			StringBuilder r = new StringBuilder("[");
+			for (int i = 0; i != l.size(); ++i) {
+				if (i != 0) {
+					r.append(", ");
+				}
+				r.append(toString(l.get(i)));
+			}
+			return r.append("]").toString();
+		} else if (o != null) {
+			// other cases can use their default toString methods.
+			return o.toString();
+		} else {
+			return "null";
+		}
+	}
+
+	/**
+	 * Perform a deep clone of the given value. Only lists and records need to
+	 * be cloned, since the others are immutable.
+	 *
+	 * @param o
+	 * @return
+	 */
+	public static Object clone(Object o) {
+		if (o instanceof ArrayList) {
+			ArrayList<?> l = (ArrayList<?>) o;
+			ArrayList<Object> n = new ArrayList<Object>(l.size());
+			for (int i = 0; i != l.size(); ++i) {
+				n.add(clone(l.get(i)));
+			}
+			return n;
+		} else if (o instanceof PrimitiveList) {
+			return ((PrimitiveList) o).copy();
+		} else if (o instanceof Record) {
+			return ((Record) o).copy();
+		} else {
+			return o;
+		}
+	}
+
+	/**
+	 * Append two lists together, producing a new list whose elements are not
+	 * shared with either of them.
+	 *
+	 * @param lhs
+	 * @param rhs
+	 * @return
+	 */
+	public static ArrayList<Object> append(List<?> lhs, List<?> rhs) {
+		ArrayList<Object> r = new ArrayList<Object>(lhs.size() + rhs.size());
+		for (int i = 0; i != lhs.size(); ++i) {
+			r.add(clone(lhs.get(i)));
+		}
+		for (int i = 0; i != rhs.size(); ++i) {
+			r.add(clone(rhs.get(i)));
+		}
+		return r;
+	}
+
+	/**
+	 * Convert a given list (e.g. a <code>PrimitiveList</code>) into an
+	 * <code>ArrayList</code>. If it already is one (or is <code>null</code>),
+	 * then it is returned as is.
+	 *
+	 * @param o
+	 * @return
+	 */
+	public static ArrayList<?> toArrayList(Object o) {
+		if (o == null || o instanceof ArrayList) {
+			return (ArrayList<?>) o;
+		}
+		return new ArrayList<Object>((List<?>) o);
+	}
+
+	/**
+	 * Replace the character at a given position in a string. Since strings are
+	 * immutable, this produces a new string.
+	 *
+	 * @param str
+	 * @param index
+	 * @param c
+	 * @return
+	 */
+	public static String update(String str, int index, char c) {
+		char[] chars = str.toCharArray();
+		chars[index] = c;
+		return new String(chars);
+	}
+
+	/**
+	 * Check whether two values are equal. Either value may be
+	 * <code>null</code>.
+	 *
+	 * @param lhs
+	 * @param rhs
+	 * @return
+	 */
+	public static boolean equals(Object lhs, Object rhs) {
+		if (lhs == null) {
+			return rhs == null;
+		} else {
+			return lhs.equals(rhs);
+		}
+	}
+}
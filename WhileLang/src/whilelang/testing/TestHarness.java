@@ -3,11 +3,26 @@ package whilelang.testing;
 import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
 import java.io.StringReader;
+import java.util.Map;
+
+import whilelang.Interpreter;
+import whilelang.io.ClassFileWriter;
+import whilelang.io.Lexer;
+import whilelang.io.Parser;
+import whilelang.io.WhileFileReader;
+import whilelang.io.WhileFileWriter;
+import whilelang.lang.WhileFile;
+import whilelang.util.ConstantFolder;
+import whilelang.util.DefiniteAssignment;
+import whilelang.util.MemoryClassLoader;
+import whilelang.util.TypeChecker;
 
 public class TestHarness {
 
@@ -44,6 +59,27 @@ public class TestHarness {
 				+ outputExtension);
 	}
 
+	protected void runInterpreterTest(String name, String option) {
+		String output = runJava(srcPath, "whilelang.Main", option, name
+				+ ".while");
+		compare(output, outputPath + File.separatorChar + name + "."
+				+ outputExtension);
+	}
+
+	/**
+	 * Run the compiler on a test which is expected to fail, and check that it
+	 * exits with a non-zero status after reporting the expected errors.
+	 * 
+	 * @param name
+	 *            The name of the test to run.
+	 */
+	protected void runInvalidTest(String name) {
+		String output = runJava(srcPath, false, "whilelang.Main", name
+				+ ".while");
+		compare(output, outputPath + File.separatorChar + name + "."
+				+ outputExtension);
+	}
+
 	protected void runClassFileTest(String name) {
 		// First, we need to compiler the class
 		runJava(srcPath, "whilelang.Main", "-jvm", name + ".while");
@@ -54,7 +90,105 @@ public class TestHarness {
 				+ outputExtension);
 	}
 	
+	/**
+	 * Compile a test to JVM bytecode in memory, and then run it in this JVM.
+	 * Unlike <code>runClassFileTest()</code>, no class files are written and
+	 * no other JVMs are started.
+	 * 
+	 * @param name
+	 *            The name of the test to run.
+	 */
+	protected void runInMemoryClassFileTest(String name) {
+		runInMemoryClassFileTest(name, true);
+	}
+
+	/**
+	 * Compile a test to JVM bytecode in memory, with or without the peephole
+	 * optimiser, and then run it in this JVM.
+	 * 
+	 * @param name
+	 *            The name of the test to run.
+	 * @param peephole
+	 *            Whether redundant bytecodes are removed.
+	 */
+	protected void runInMemoryClassFileTest(String name, boolean peephole) {
+		String filename = srcPath + File.separatorChar + name + ".while";
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream stdout = System.out;
+		try {
+			System.setOut(new PrintStream(output, true));
+			WhileFile ast = new Parser(filename, new Lexer(filename).scan())
+					.read();
+			new DefiniteAssignment().check(ast);
+			new TypeChecker().check(ast);
+			ast = new ConstantFolder().fold(ast);
+			ClassFileWriter writer = new ClassFileWriter();
+			writer.setPeephole(peephole);
+			Map<String, byte[]> classes = writer.generate(ast);
+			new MemoryClassLoader(classes).run(classes.keySet().iterator()
+					.next());
+		} catch (Exception ex) {
+			ex.printStackTrace();
+			fail("Problem running compiled test");
+		} finally {
+			System.setOut(stdout);
+		}
+		compare(output.toString(), outputPath + File.separatorChar + name
+				+ "." + outputExtension);
+	}
+
+	/**
+	 * Check a test, write its AST using <code>WhileFileWriter</code> and then
+	 * interpret the AST read back by <code>WhileFileReader</code>. This checks
+	 * that the AST (including its type attributes) survives the round trip.
+	 * 
+	 * @param name
+	 *            The name of the test to run.
+	 */
+	protected void runSerializedAstTest(String name) {
+		String filename = srcPath + File.separatorChar + name + ".while";
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream stdout = System.out;
+		try {
+			System.setOut(new PrintStream(output, true));
+			WhileFile ast = new Parser(filename, new Lexer(filename).scan())
+					.read();
+			new DefiniteAssignment().check(ast);
+			new TypeChecker().check(ast);
+			ast = new ConstantFolder().fold(ast);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			new WhileFileWriter(bytes).write(ast);
+			new Interpreter().run(new WhileFileReader(bytes.toByteArray())
+					.read());
+		} catch (Exception ex) {
+			ex.printStackTrace();
+			fail("Problem running serialized test");
+		} finally {
+			System.setOut(stdout);
+		}
+		compare(output.toString(), outputPath + File.separatorChar + name
+				+ "." + outputExtension);
+	}
+
 	protected static String runJava(String path, String... args) {
+		return runJava(path, true, args);
+	}
+
+	/**
+	 * Run a given Java class in a separate JVM, returning what it writes to
+	 * standard output.
+	 * 
+	 * @param path
+	 *            The directory to run in.
+	 * @param succeed
+	 *            Whether the JVM is expected to exit successfully, or with a
+	 *            non-zero status. Otherwise, <code>null</code> is returned.
+	 * @param args
+	 *            The class to run, and its arguments.
+	 * @return
+	 */
+	protected static String runJava(String path, boolean succeed,
+			String... args) {
 		try {
 			// We need to have
 			String classpath = "." + File.pathSeparator + "../../src/"
@@ -73,7 +207,7 @@ public class TestHarness {
 			new StreamGrabber(p.getInputStream(), sysout);
 			int exitCode = p.waitFor();
 			System.err.println(syserr); // propagate anything from the error stream
-			if (exitCode != 0) {
+			if ((exitCode == 0) != succeed) {
 				System.err
 						.println("============================================================");
 				System.err.println(tmp);
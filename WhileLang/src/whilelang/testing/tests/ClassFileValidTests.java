@@ -1,129 +1,167 @@
 package whilelang.testing.tests;
 
+import java.util.Arrays;
+import java.util.Collection;
+
 import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 
 import whilelang.testing.TestHarness;
 
+@RunWith(Parameterized.class)
 public class ClassFileValidTests extends TestHarness {
- public ClassFileValidTests() {
+
+ /**
+  * The modes in which each test is run. These are either "file", which writes
+  * a class file and runs it in a separate JVM; "memory", which loads the
+  * generated classes directly into this JVM; or "nopeephole", which does the
+  * same without the peephole optimiser (and so checks that it preserves the
+  * output of every test).
+  */
+ @Parameters(name = "{0}")
+ public static Collection<Object[]> modes() {
+  return Arrays.asList(new Object[][] { { "file" }, { "memory" },
+    { "nopeephole" } });
+ }
+
+ private final String mode;
+
+ public ClassFileValidTests(String mode) {
   super("tests/valid","tests/valid","sysout");
+  this.mode = mode;
+ }
+
+ private void runTest(String name) {
+  if (mode.equals("file")) {
+   runClassFileTest(name);
+  } else {
+   runInMemoryClassFileTest(name, !mode.equals("nopeephole"));
+  }
  }
 
- @Test public void BoolAssign_Valid_1() { runClassFileTest("BoolAssign_Valid_1"); }
- @Test public void BoolAssign_Valid_2() { runClassFileTest("BoolAssign_Valid_2"); }
- @Test public void BoolAssign_Valid_3() { runClassFileTest("BoolAssign_Valid_3"); } 
- @Test public void BoolAssign_Valid_4() { runClassFileTest("BoolAssign_Valid_4"); } 
- @Test public void BoolAssign_Valid_5() { runClassFileTest("BoolAssign_Valid_5"); } 
- @Test public void BoolIfElse_Valid_1() { runClassFileTest("BoolIfElse_Valid_1"); }
- @Test public void BoolIfElse_Valid_2() { runClassFileTest("BoolIfElse_Valid_2"); } 
- @Test public void BoolList_Valid_1() { runClassFileTest("BoolList_Valid_1"); } 
- @Test public void BoolList_Valid_2() { runClassFileTest("BoolList_Valid_2"); }  
- @Test public void BoolRecord_Valid_1() { runClassFileTest("BoolRecord_Valid_1"); }
- @Test public void BoolRecord_Valid_2() { runClassFileTest("BoolRecord_Valid_2"); }
- @Test public void BoolReturn_Valid_1() { runClassFileTest("BoolReturn_Valid_1"); } 
- @Test public void Cast_Valid_1() { runClassFileTest("Cast_Valid_1"); } 
- @Test public void Cast_Valid_2() { runClassFileTest("Cast_Valid_2"); }
- @Test public void Cast_Valid_3() { runClassFileTest("Cast_Valid_3"); } 
- @Test public void Cast_Valid_4() { runClassFileTest("Cast_Valid_4"); }  
- @Test public void Char_Valid_1() { runClassFileTest("Char_Valid_1"); }
- @Test public void Char_Valid_2() { runClassFileTest("Char_Valid_2"); }
- @Test public void Char_Valid_3() { runClassFileTest("Char_Valid_3"); }
- @Test public void Const_Valid_1() { runClassFileTest("Const_Valid_1"); }
- @Test public void Const_Valid_2() { runClassFileTest("Const_Valid_2"); }
- @Test public void Const_Valid_3() { runClassFileTest("Const_Valid_3"); }
- @Test public void Const_Valid_4() { runClassFileTest("Const_Valid_4"); }
- @Test public void Define_Valid_1() { runClassFileTest("Define_Valid_1"); } 
- @Test public void Define_Valid_2() { runClassFileTest("Define_Valid_2"); } 
- @Test public void Function_Valid_1() { runClassFileTest("Function_Valid_1"); }
- @Test public void Function_Valid_2() { runClassFileTest("Function_Valid_2"); } 
- @Test public void Function_Valid_4() { runClassFileTest("Function_Valid_4"); }
- @Test public void IfElse_Valid_1() { runClassFileTest("IfElse_Valid_1"); }
- @Test public void IfElse_Valid_2() { runClassFileTest("IfElse_Valid_2"); }
- @Test public void IfElse_Valid_3() { runClassFileTest("IfElse_Valid_3"); } 
- @Test public void IntDefine_Valid_1() { runClassFileTest("IntDefine_Valid_1"); }
- @Test public void IntDiv_Valid_1() { runClassFileTest("IntDiv_Valid_1"); }
- @Test public void IntDiv_Valid_2() { runClassFileTest("IntDiv_Valid_2"); } 
- @Test public void IntEquals_Valid_1() { runClassFileTest("IntEquals_Valid_1"); }
- @Test public void IntMul_Valid_1() { runClassFileTest("IntMul_Valid_1"); }
- @Test public void LengthOf_Valid_1() { runClassFileTest("LengthOf_Valid_1"); }
- @Test public void LengthOf_Valid_5() { runClassFileTest("LengthOf_Valid_5"); }
- @Test public void ListAccess_Valid_1() { runClassFileTest("ListAccess_Valid_1"); } 
- @Test public void ListAccess_Valid_3() { runClassFileTest("ListAccess_Valid_3"); }
- @Test public void ListAccess_Valid_4() { runClassFileTest("ListAccess_Valid_4"); }  
- @Test public void ListAppend_Valid_1() { runClassFileTest("ListAppend_Valid_1"); }
- @Test public void ListAppend_Valid_2() { runClassFileTest("ListAppend_Valid_2"); }
- @Test public void ListAppend_Valid_3() { runClassFileTest("ListAppend_Valid_3"); }
- @Test public void ListAppend_Valid_4() { runClassFileTest("ListAppend_Valid_4"); }
- @Test public void ListAppend_Valid_5() { runClassFileTest("ListAppend_Valid_5"); }
- @Test public void ListAppend_Valid_6() { runClassFileTest("ListAppend_Valid_6"); }
- @Test public void ListAppend_Valid_7() { runClassFileTest("ListAppend_Valid_7"); } 
- @Test public void ListAssign_Valid_1() { runClassFileTest("ListAssign_Valid_1"); }
- @Test public void ListAssign_Valid_2() { runClassFileTest("ListAssign_Valid_2"); }
- @Test public void ListAssign_Valid_3() { runClassFileTest("ListAssign_Valid_3"); }
- @Test public void ListAssign_Valid_4() { runClassFileTest("ListAssign_Valid_4"); }
- @Test public void ListAssign_Valid_5() { runClassFileTest("ListAssign_Valid_5"); }
- @Test public void ListAssign_Valid_6() { runClassFileTest("ListAssign_Valid_6"); }
- @Test public void ListAssign_Valid_10() { runClassFileTest("ListAssign_Valid_10"); }
- @Test public void ListConversion_Valid_1() { runClassFileTest("ListConversion_Valid_1"); }
- @Test public void ListEmpty_Valid_1() { runClassFileTest("ListEmpty_Valid_1"); }
- @Test public void ListEquals_Valid_1() { runClassFileTest("ListEquals_Valid_1"); }
- @Test public void ListGenerator_Valid_1() { runClassFileTest("ListGenerator_Valid_1"); }
- @Test public void ListGenerator_Valid_2() { runClassFileTest("ListGenerator_Valid_2"); }
- @Test public void ListGenerator_Valid_3() { runClassFileTest("ListGenerator_Valid_3"); } 
- @Test public void ListLength_Valid_1() { runClassFileTest("ListLength_Valid_1"); }
- @Test public void ListLength_Valid_2() { runClassFileTest("ListLength_Valid_2"); }
- @Test public void MultiLineComment_Valid_1() { runClassFileTest("MultiLineComment_Valid_1"); }
- @Test public void MultiLineComment_Valid_2() { runClassFileTest("MultiLineComment_Valid_2"); }
- @Test public void RealDiv_Valid_1() { runClassFileTest("RealDiv_Valid_1"); } 
- @Test public void RealDiv_Valid_3() { runClassFileTest("RealDiv_Valid_3"); } 
- @Test public void RealDiv_Valid_4() { runClassFileTest("RealDiv_Valid_4"); }
- @Test public void RealNeg_Valid_1() { runClassFileTest("RealNeg_Valid_1"); } 
- @Test public void RealSub_Valid_1() { runClassFileTest("RealSub_Valid_1"); }
- @Test public void RealSub_Valid_2() { runClassFileTest("RealSub_Valid_2"); } 
- @Test public void Real_Valid_1() { runClassFileTest("Real_Valid_1"); }
- @Test public void RecordAccess_Valid_2() { runClassFileTest("RecordAccess_Valid_2"); }
- @Test public void RecordAssign_Valid_1() { runClassFileTest("RecordAssign_Valid_1"); }
- @Test public void RecordAssign_Valid_2() { runClassFileTest("RecordAssign_Valid_2"); }
- @Test public void RecordAssign_Valid_3() { runClassFileTest("RecordAssign_Valid_3"); }
- @Test public void RecordAssign_Valid_4() { runClassFileTest("RecordAssign_Valid_4"); }
- @Test public void RecordAssign_Valid_5() { runClassFileTest("RecordAssign_Valid_5"); }
- @Test public void RecordAssign_Valid_6() { runClassFileTest("RecordAssign_Valid_6"); }
- @Test public void RecordDefine_Valid_1() { runClassFileTest("RecordDefine_Valid_1"); } 
- @Test public void Remainder_Valid_1() { runClassFileTest("Remainder_Valid_1"); } 
- @Test public void SingleLineComment_Valid_1() { runClassFileTest("SingleLineComment_Valid_1"); } 
- @Test public void String_Valid_1() { runClassFileTest("String_Valid_1"); }
- @Test public void String_Valid_2() { runClassFileTest("String_Valid_2"); }
- @Test public void String_Valid_3() { runClassFileTest("String_Valid_3"); }
- @Test public void String_Valid_4() { runClassFileTest("String_Valid_4"); } 
+ @Test public void BoolAssign_Valid_1() { runTest("BoolAssign_Valid_1"); }
+ @Test public void BoolAssign_Valid_2() { runTest("BoolAssign_Valid_2"); }
+ @Test public void BoolAssign_Valid_3() { runTest("BoolAssign_Valid_3"); } 
+ @Test public void BoolAssign_Valid_4() { runTest("BoolAssign_Valid_4"); } 
+ @Test public void BoolAssign_Valid_5() { runTest("BoolAssign_Valid_5"); } 
+ @Test public void BoolIfElse_Valid_1() { runTest("BoolIfElse_Valid_1"); }
+ @Test public void BoolIfElse_Valid_2() { runTest("BoolIfElse_Valid_2"); } 
+ @Test public void BoolList_Valid_1() { runTest("BoolList_Valid_1"); } 
+ @Test public void BoolList_Valid_2() { runTest("BoolList_Valid_2"); }  
+ @Test public void BoolRecord_Valid_1() { runTest("BoolRecord_Valid_1"); }
+ @Test public void BoolRecord_Valid_2() { runTest("BoolRecord_Valid_2"); }
+ @Test public void BoolReturn_Valid_1() { runTest("BoolReturn_Valid_1"); } 
+ @Test public void Cast_Valid_1() { runTest("Cast_Valid_1"); } 
+ @Test public void Cast_Valid_2() { runTest("Cast_Valid_2"); }
+ @Test public void Cast_Valid_3() { runTest("Cast_Valid_3"); } 
+ @Test public void Cast_Valid_4() { runTest("Cast_Valid_4"); }  
+ @Test public void Char_Valid_1() { runTest("Char_Valid_1"); }
+ @Test public void Char_Valid_2() { runTest("Char_Valid_2"); }
+ @Test public void Char_Valid_3() { runTest("Char_Valid_3"); }
+ @Test public void Const_Valid_1() { runTest("Const_Valid_1"); }
+ @Test public void Const_Valid_2() { runTest("Const_Valid_2"); }
+ @Test public void Const_Valid_3() { runTest("Const_Valid_3"); }
+ @Test public void Const_Valid_4() { runTest("Const_Valid_4"); }
+ @Test public void ConstantFold_Valid_1() { runTest("ConstantFold_Valid_1"); }
+ @Test public void ConstantFold_Valid_2() { runTest("ConstantFold_Valid_2"); }
+ @Test public void ConstantFold_Valid_3() { runTest("ConstantFold_Valid_3"); }
+ @Test public void ConstantFold_Valid_4() { runTest("ConstantFold_Valid_4"); }
+ @Test public void Define_Valid_1() { runTest("Define_Valid_1"); } 
+ @Test public void Define_Valid_2() { runTest("Define_Valid_2"); } 
+ @Test public void Duplicate_Valid_1() { runTest("Duplicate_Valid_1"); }
+ @Test public void Function_Valid_1() { runTest("Function_Valid_1"); }
+ @Test public void Function_Valid_2() { runTest("Function_Valid_2"); } 
+ @Test public void Function_Valid_4() { runTest("Function_Valid_4"); }
+ @Test public void IfElse_Valid_1() { runTest("IfElse_Valid_1"); }
+ @Test public void IfElse_Valid_2() { runTest("IfElse_Valid_2"); }
+ @Test public void IfElse_Valid_3() { runTest("IfElse_Valid_3"); } 
+ @Test public void IntDefine_Valid_1() { runTest("IntDefine_Valid_1"); }
+ @Test public void IntDiv_Valid_1() { runTest("IntDiv_Valid_1"); }
+ @Test public void IntDiv_Valid_2() { runTest("IntDiv_Valid_2"); } 
+ @Test public void IntEquals_Valid_1() { runTest("IntEquals_Valid_1"); }
+ @Test public void IntMul_Valid_1() { runTest("IntMul_Valid_1"); }
+ @Test public void LengthOf_Valid_1() { runTest("LengthOf_Valid_1"); }
+ @Test public void LengthOf_Valid_5() { runTest("LengthOf_Valid_5"); }
+ @Test public void ListAccess_Valid_1() { runTest("ListAccess_Valid_1"); } 
+ @Test public void ListAccess_Valid_3() { runTest("ListAccess_Valid_3"); }
+ @Test public void ListAccess_Valid_4() { runTest("ListAccess_Valid_4"); }  
+ @Test public void ListAppend_Valid_1() { runTest("ListAppend_Valid_1"); }
+ @Test public void ListAppend_Valid_2() { runTest("ListAppend_Valid_2"); }
+ @Test public void ListAppend_Valid_3() { runTest("ListAppend_Valid_3"); }
+ @Test public void ListAppend_Valid_4() { runTest("ListAppend_Valid_4"); }
+ @Test public void ListAppend_Valid_5() { runTest("ListAppend_Valid_5"); }
+ @Test public void ListAppend_Valid_6() { runTest("ListAppend_Valid_6"); }
+ @Test public void ListAppend_Valid_7() { runTest("ListAppend_Valid_7"); } 
+ @Test public void ListAssign_Valid_1() { runTest("ListAssign_Valid_1"); }
+ @Test public void ListAssign_Valid_2() { runTest("ListAssign_Valid_2"); }
+ @Test public void ListAssign_Valid_3() { runTest("ListAssign_Valid_3"); }
+ @Test public void ListAssign_Valid_4() { runTest("ListAssign_Valid_4"); }
+ @Test public void ListAssign_Valid_5() { runTest("ListAssign_Valid_5"); }
+ @Test public void ListAssign_Valid_6() { runTest("ListAssign_Valid_6"); }
+ @Test public void ListAssign_Valid_10() { runTest("ListAssign_Valid_10"); }
+ @Test public void ListConversion_Valid_1() { runTest("ListConversion_Valid_1"); }
+ @Test public void ListEmpty_Valid_1() { runTest("ListEmpty_Valid_1"); }
+ @Test public void ListEquals_Valid_1() { runTest("ListEquals_Valid_1"); }
+ @Test public void ListGenerator_Valid_1() { runTest("ListGenerator_Valid_1"); }
+ @Test public void ListGenerator_Valid_2() { runTest("ListGenerator_Valid_2"); }
+ @Test public void ListGenerator_Valid_3() { runTest("ListGenerator_Valid_3"); } 
+ @Test public void ListLength_Valid_1() { runTest("ListLength_Valid_1"); }
+ @Test public void ListLength_Valid_2() { runTest("ListLength_Valid_2"); }
+ @Test public void MultiLineComment_Valid_1() { runTest("MultiLineComment_Valid_1"); }
+ @Test public void MultiLineComment_Valid_2() { runTest("MultiLineComment_Valid_2"); }
+ @Test public void RealDiv_Valid_1() { runTest("RealDiv_Valid_1"); } 
+ @Test public void RealDiv_Valid_3() { runTest("RealDiv_Valid_3"); } 
+ @Test public void RealDiv_Valid_4() { runTest("RealDiv_Valid_4"); }
+ @Test public void RealNeg_Valid_1() { runTest("RealNeg_Valid_1"); } 
+ @Test public void RealSub_Valid_1() { runTest("RealSub_Valid_1"); }
+ @Test public void RealSub_Valid_2() { runTest("RealSub_Valid_2"); } 
+ @Test public void Real_Valid_1() { runTest("Real_Valid_1"); }
+ @Test public void Real_Valid_2() { runTest("Real_Valid_2"); }
+ @Test public void RecordAccess_Valid_2() { runTest("RecordAccess_Valid_2"); }
+ @Test public void RecordAssign_Valid_1() { runTest("RecordAssign_Valid_1"); }
+ @Test public void RecordAssign_Valid_2() { runTest("RecordAssign_Valid_2"); }
+ @Test public void RecordAssign_Valid_3() { runTest("RecordAssign_Valid_3"); }
+ @Test public void RecordAssign_Valid_4() { runTest("RecordAssign_Valid_4"); }
+ @Test public void RecordAssign_Valid_5() { runTest("RecordAssign_Valid_5"); }
+ @Test public void RecordAssign_Valid_6() { runTest("RecordAssign_Valid_6"); }
+ @Test public void RecordDefine_Valid_1() { runTest("RecordDefine_Valid_1"); } 
+ @Test public void Remainder_Valid_1() { runTest("Remainder_Valid_1"); } 
+ @Test public void SingleLineComment_Valid_1() { runTest("SingleLineComment_Valid_1"); } 
+ @Test public void String_Valid_1() { runTest("String_Valid_1"); }
+ @Test public void String_Valid_2() { runTest("String_Valid_2"); }
+ @Test public void String_Valid_3() { runTest("String_Valid_3"); }
+ @Test public void String_Valid_4() { runTest("String_Valid_4"); } 
  
- @Test public void Switch_Valid_1() { runClassFileTest("Switch_Valid_1"); }
- @Test public void Switch_Valid_2() { runClassFileTest("Switch_Valid_2"); }
- @Test public void Switch_Valid_3() { runClassFileTest("Switch_Valid_3"); }
- @Test public void Switch_Valid_4() { runClassFileTest("Switch_Valid_4"); } 
- @Test public void Switch_Valid_6() { runClassFileTest("Switch_Valid_6"); }
- @Test public void Switch_Valid_7() { runClassFileTest("Switch_Valid_7"); }
- @Test public void Switch_Valid_8() { runClassFileTest("Switch_Valid_8"); }
+ @Test public void Switch_Valid_1() { runTest("Switch_Valid_1"); }
+ @Test public void Switch_Valid_2() { runTest("Switch_Valid_2"); }
+ @Test public void Switch_Valid_3() { runTest("Switch_Valid_3"); }
+ @Test public void Switch_Valid_4() { runTest("Switch_Valid_4"); } 
+ @Test public void Switch_Valid_6() { runTest("Switch_Valid_6"); }
+ @Test public void Switch_Valid_7() { runTest("Switch_Valid_7"); }
+ @Test public void Switch_Valid_8() { runTest("Switch_Valid_8"); }
  
- @Test public void TypeEquals_Valid_1_RuntimeTest() { runClassFileTest("TypeEquals_Valid_1"); }
- @Test public void TypeEquals_Valid_2_RuntimeTest() { runClassFileTest("TypeEquals_Valid_2"); }
- @Test public void TypeEquals_Valid_5_RuntimeTest() { runClassFileTest("TypeEquals_Valid_5"); }
- @Test public void TypeEquals_Valid_8_RuntimeTest() { runClassFileTest("TypeEquals_Valid_8"); } 
- @Test public void TypeEquals_Valid_9_RuntimeTest() { runClassFileTest("TypeEquals_Valid_9"); }
- @Test public void TypeEquals_Valid_11_RuntimeTest() { runClassFileTest("TypeEquals_Valid_11"); }
- @Test public void TypeEquals_Valid_14_RuntimeTest() { runClassFileTest("TypeEquals_Valid_14"); } 
- @Test public void TypeEquals_Valid_16_RuntimeTest() { runClassFileTest("TypeEquals_Valid_16"); } 
- @Test public void TypeEquals_Valid_20_RuntimeTest() { runClassFileTest("TypeEquals_Valid_20"); }
+ @Test public void TypeEquals_Valid_1_RuntimeTest() { runTest("TypeEquals_Valid_1"); }
+ @Test public void TypeEquals_Valid_2_RuntimeTest() { runTest("TypeEquals_Valid_2"); }
+ @Test public void TypeEquals_Valid_5_RuntimeTest() { runTest("TypeEquals_Valid_5"); }
+ @Test public void TypeEquals_Valid_8_RuntimeTest() { runTest("TypeEquals_Valid_8"); } 
+ @Test public void TypeEquals_Valid_9_RuntimeTest() { runTest("TypeEquals_Valid_9"); }
+ @Test public void TypeEquals_Valid_11_RuntimeTest() { runTest("TypeEquals_Valid_11"); }
+ @Test public void TypeEquals_Valid_14_RuntimeTest() { runTest("TypeEquals_Valid_14"); } 
+ @Test public void TypeEquals_Valid_16_RuntimeTest() { runTest("TypeEquals_Valid_16"); } 
+ @Test public void TypeEquals_Valid_20_RuntimeTest() { runTest("TypeEquals_Valid_20"); }
  
- @Test public void UnionType_Valid_1() { runClassFileTest("UnionType_Valid_1"); }
- @Test public void UnionType_Valid_2() { runClassFileTest("UnionType_Valid_2"); }
- @Test public void UnionType_Valid_4() { runClassFileTest("UnionType_Valid_4"); }
- @Test public void UnionType_Valid_5() { runClassFileTest("UnionType_Valid_5"); }
- @Test public void UnionType_Valid_6() { runClassFileTest("UnionType_Valid_6"); }
- @Test public void UnionType_Valid_7() { runClassFileTest("UnionType_Valid_7"); }
- @Test public void UnionType_Valid_8() { runClassFileTest("UnionType_Valid_8"); }
- @Test public void UnionType_Valid_9() { runClassFileTest("UnionType_Valid_9"); }
- @Test public void While_Valid_1() { runClassFileTest("While_Valid_1"); }
- @Test public void While_Valid_2() { runClassFileTest("While_Valid_2"); }
- @Test public void While_Valid_4() { runClassFileTest("While_Valid_4"); }
- @Test public void While_Valid_6() { runClassFileTest("While_Valid_6"); }
+ @Test public void UnionType_Valid_1() { runTest("UnionType_Valid_1"); }
+ @Test public void UnionType_Valid_2() { runTest("UnionType_Valid_2"); }
+ @Test public void UnionType_Valid_4() { runTest("UnionType_Valid_4"); }
+ @Test public void UnionType_Valid_5() { runTest("UnionType_Valid_5"); }
+ @Test public void UnionType_Valid_6() { runTest("UnionType_Valid_6"); }
+ @Test public void UnionType_Valid_7() { runTest("UnionType_Valid_7"); }
+ @Test public void UnionType_Valid_8() { runTest("UnionType_Valid_8"); }
+ @Test public void UnionType_Valid_9() { runTest("UnionType_Valid_9"); }
+ @Test public void While_Valid_1() { runTest("While_Valid_1"); }
+ @Test public void While_Valid_2() { runTest("While_Valid_2"); }
+ @Test public void While_Valid_4() { runTest("While_Valid_4"); }
+ @Test public void While_Valid_6() { runTest("While_Valid_6"); }
 }
@@ -9,61 +9,61 @@ public class InvalidTests extends TestHarness {
 		super("tests/invalid","tests/invalid","sysout");
 	}	
 	
-	 @Test public void DefiniteAssign_Invalid_1() { runInterpreterTest("DefiniteAssign_Invalid_1"); }
-	 @Test public void DefiniteAssign_Invalid_2() { runInterpreterTest("DefiniteAssign_Invalid_2"); }
-	 @Test public void DefiniteAssign_Invalid_3() { runInterpreterTest("DefiniteAssign_Invalid_3"); }
-	 @Test public void DefiniteAssign_Invalid_4() { runInterpreterTest("DefiniteAssign_Invalid_4"); }
-	 @Test public void DefiniteAssign_Invalid_5() { runInterpreterTest("DefiniteAssign_Invalid_5"); }
-	 @Test public void DefiniteAssign_Invalid_6() { runInterpreterTest("DefiniteAssign_Invalid_6"); }
-	 @Test public void DefiniteAssign_Invalid_7() { runInterpreterTest("DefiniteAssign_Invalid_7"); }
-	 @Test public void DefiniteAssign_Invalid_8() { runInterpreterTest("DefiniteAssign_Invalid_8"); }
-	 @Test public void DefiniteAssign_Invalid_9() { runInterpreterTest("DefiniteAssign_Invalid_9"); }
-	 @Test public void DefiniteAssign_Invalid_10() { runInterpreterTest("DefiniteAssign_Invalid_10"); }
-	 @Test public void DefiniteAssign_Invalid_11() { runInterpreterTest("DefiniteAssign_Invalid_11"); }
-	 @Test public void DefiniteAssign_Invalid_12() { runInterpreterTest("DefiniteAssign_Invalid_12"); }
-	 @Test public void DefiniteAssign_Invalid_13() { runInterpreterTest("DefiniteAssign_Invalid_13"); }
-	 @Test public void DefiniteAssign_Invalid_14() { runInterpreterTest("DefiniteAssign_Invalid_14"); }
-	 @Test public void DefiniteAssign_Invalid_15() { runInterpreterTest("DefiniteAssign_Invalid_15"); }
-	 @Test public void DefiniteAssign_Invalid_16() { runInterpreterTest("DefiniteAssign_Invalid_16"); }
-	 @Test public void DefiniteAssign_Invalid_17() { runInterpreterTest("DefiniteAssign_Invalid_17"); }
-	 @Test public void DefiniteAssign_Invalid_18() { runInterpreterTest("DefiniteAssign_Invalid_18"); }
-	 @Test public void DefiniteAssign_Invalid_19() { runInterpreterTest("DefiniteAssign_Invalid_19"); }
-	 @Test public void DefiniteAssign_Invalid_20() { runInterpreterTest("DefiniteAssign_Invalid_20"); }
-	 @Test public void DefiniteAssign_Invalid_21() { runInterpreterTest("DefiniteAssign_Invalid_21"); }
-	 @Test public void DefiniteAssign_Invalid_22() { runInterpreterTest("DefiniteAssign_Invalid_22"); }
-	 @Test public void DefiniteAssign_Invalid_23() { runInterpreterTest("DefiniteAssign_Invalid_23"); }
-	 @Test public void DefiniteAssign_Invalid_24() { runInterpreterTest("DefiniteAssign_Invalid_24"); }
-	 @Test public void DefiniteAssign_Invalid_25() { runInterpreterTest("DefiniteAssign_Invalid_25"); }
+	 @Test public void DefiniteAssign_Invalid_1() { runInvalidTest("DefiniteAssign_Invalid_1"); }
+	 @Test public void DefiniteAssign_Invalid_2() { runInvalidTest("DefiniteAssign_Invalid_2"); }
+	 @Test public void DefiniteAssign_Invalid_3() { runInvalidTest("DefiniteAssign_Invalid_3"); }
+	 @Test public void DefiniteAssign_Invalid_4() { runInvalidTest("DefiniteAssign_Invalid_4"); }
+	 @Test public void DefiniteAssign_Invalid_5() { runInvalidTest("DefiniteAssign_Invalid_5"); }
+	 @Test public void DefiniteAssign_Invalid_6() { runInvalidTest("DefiniteAssign_Invalid_6"); }
+	 @Test public void DefiniteAssign_Invalid_7() { runInvalidTest("DefiniteAssign_Invalid_7"); }
+	 @Test public void DefiniteAssign_Invalid_8() { runInvalidTest("DefiniteAssign_Invalid_8"); }
+	 @Test public void DefiniteAssign_Invalid_9() { runInvalidTest("DefiniteAssign_Invalid_9"); }
+	 @Test public void DefiniteAssign_Invalid_10() { runInvalidTest("DefiniteAssign_Invalid_10"); }
+	 @Test public void DefiniteAssign_Invalid_11() { runInvalidTest("DefiniteAssign_Invalid_11"); }
+	 @Test public void DefiniteAssign_Invalid_12() { runInvalidTest("DefiniteAssign_Invalid_12"); }
+	 @Test public void DefiniteAssign_Invalid_13() { runInvalidTest("DefiniteAssign_Invalid_13"); }
+	 @Test public void DefiniteAssign_Invalid_14() { runInvalidTest("DefiniteAssign_Invalid_14"); }
+	 @Test public void DefiniteAssign_Invalid_15() { runInvalidTest("DefiniteAssign_Invalid_15"); }
+	 @Test public void DefiniteAssign_Invalid_16() { runInvalidTest("DefiniteAssign_Invalid_16"); }
+	 @Test public void DefiniteAssign_Invalid_17() { runInvalidTest("DefiniteAssign_Invalid_17"); }
+	 @Test public void DefiniteAssign_Invalid_18() { runInvalidTest("DefiniteAssign_Invalid_18"); }
+	 @Test public void DefiniteAssign_Invalid_19() { runInvalidTest("DefiniteAssign_Invalid_19"); }
+	 @Test public void DefiniteAssign_Invalid_20() { runInvalidTest("DefiniteAssign_Invalid_20"); }
+	 @Test public void DefiniteAssign_Invalid_21() { runInvalidTest("DefiniteAssign_Invalid_21"); }
+	 @Test public void DefiniteAssign_Invalid_22() { runInvalidTest("DefiniteAssign_Invalid_22"); }
+	 @Test public void DefiniteAssign_Invalid_23() { runInvalidTest("DefiniteAssign_Invalid_23"); }
+	 @Test public void DefiniteAssign_Invalid_24() { runInvalidTest("DefiniteAssign_Invalid_24"); }
+	 @Test public void DefiniteAssign_Invalid_25() { runInvalidTest("DefiniteAssign_Invalid_25"); }
 	 
-	 @Test public void Typing_Invalid_1() { runInterpreterTest("Typing_Invalid_1"); }
-	 @Test public void Typing_Invalid_2() { runInterpreterTest("Typing_Invalid_2"); }
-	 @Test public void Typing_Invalid_3() { runInterpreterTest("Typing_Invalid_3"); }
-	 @Test public void Typing_Invalid_4() { runInterpreterTest("Typing_Invalid_4"); }
-	 @Test public void Typing_Invalid_5() { runInterpreterTest("Typing_Invalid_5"); }
-	 @Test public void Typing_Invalid_6() { runInterpreterTest("Typing_Invalid_6"); }
-	 @Test public void Typing_Invalid_7() { runInterpreterTest("Typing_Invalid_7"); }
-	 @Test public void Typing_Invalid_8() { runInterpreterTest("Typing_Invalid_8"); }
-	 @Test public void Typing_Invalid_9() { runInterpreterTest("Typing_Invalid_9"); }
-	 @Test public void Typing_Invalid_10() { runInterpreterTest("Typing_Invalid_10"); }
-	 @Test public void Typing_Invalid_11() { runInterpreterTest("Typing_Invalid_11"); }
-	 @Test public void Typing_Invalid_12() { runInterpreterTest("Typing_Invalid_12"); }
-	 @Test public void Typing_Invalid_13() { runInterpreterTest("Typing_Invalid_13"); }
-	 @Test public void Typing_Invalid_14() { runInterpreterTest("Typing_Invalid_14"); }
-	 @Test public void Typing_Invalid_15() { runInterpreterTest("Typing_Invalid_15"); }
-	 @Test public void Typing_Invalid_16() { runInterpreterTest("Typing_Invalid_16"); }
-	 @Test public void Typing_Invalid_17() { runInterpreterTest("Typing_Invalid_17"); }
-	 @Test public void Typing_Invalid_18() { runInterpreterTest("Typing_Invalid_18"); }
-	 @Test public void Typing_Invalid_19() { runInterpreterTest("Typing_Invalid_19"); }
-	 @Test public void Typing_Invalid_20() { runInterpreterTest("Typing_Invalid_20"); }
-	 @Test public void Typing_Invalid_21() { runInterpreterTest("Typing_Invalid_21"); }
-	 @Test public void Typing_Invalid_22() { runInterpreterTest("Typing_Invalid_22"); }
-	 @Test public void Typing_Invalid_23() { runInterpreterTest("Typing_Invalid_23"); }
-	 @Test public void Typing_Invalid_24() { runInterpreterTest("Typing_Invalid_24"); }
-	 @Test public void Typing_Invalid_25() { runInterpreterTest("Typing_Invalid_25"); }	 
-	 @Test public void Typing_Invalid_26() { runInterpreterTest("Typing_Invalid_26"); }
-	 @Test public void Typing_Invalid_27() { runInterpreterTest("Typing_Invalid_27"); }
-	 @Test public void Typing_Invalid_28() { runInterpreterTest("Typing_Invalid_28"); }
-	 @Test public void Typing_Invalid_29() { runInterpreterTest("Typing_Invalid_29"); }
-	 @Test public void Typing_Invalid_30() { runInterpreterTest("Typing_Invalid_30"); }
+	 @Test public void Typing_Invalid_1() { runInvalidTest("Typing_Invalid_1"); }
+	 @Test public void Typing_Invalid_2() { runInvalidTest("Typing_Invalid_2"); }
+	 @Test public void Typing_Invalid_3() { runInvalidTest("Typing_Invalid_3"); }
+	 @Test public void Typing_Invalid_4() { runInvalidTest("Typing_Invalid_4"); }
+	 @Test public void Typing_Invalid_5() { runInvalidTest("Typing_Invalid_5"); }
+	 @Test public void Typing_Invalid_6() { runInvalidTest("Typing_Invalid_6"); }
+	 @Test public void Typing_Invalid_7() { runInvalidTest("Typing_Invalid_7"); }
+	 @Test public void Typing_Invalid_8() { runInvalidTest("Typing_Invalid_8"); }
+	 @Test public void Typing_Invalid_9() { runInvalidTest("Typing_Invalid_9"); }
+	 @Test public void Typing_Invalid_10() { runInvalidTest("Typing_Invalid_10"); }
+	 @Test public void Typing_Invalid_11() { runInvalidTest("Typing_Invalid_11"); }
+	 @Test public void Typing_Invalid_12() { runInvalidTest("Typing_Invalid_12"); }
+	 @Test public void Typing_Invalid_13() { runInvalidTest("Typing_Invalid_13"); }
+	 @Test public void Typing_Invalid_14() { runInvalidTest("Typing_Invalid_14"); }
+	 @Test public void Typing_Invalid_15() { runInvalidTest("Typing_Invalid_15"); }
+	 @Test public void Typing_Invalid_16() { runInvalidTest("Typing_Invalid_16"); }
+	 @Test public void Typing_Invalid_17() { runInvalidTest("Typing_Invalid_17"); }
+	 @Test public void Typing_Invalid_18() { runInvalidTest("Typing_Invalid_18"); }
+	 @Test public void Typing_Invalid_19() { runInvalidTest("Typing_Invalid_19"); }
+	 @Test public void Typing_Invalid_20() { runInvalidTest("Typing_Invalid_20"); }
+	 @Test public void Typing_Invalid_21() { runInvalidTest("Typing_Invalid_21"); }
+	 @Test public void Typing_Invalid_22() { runInvalidTest("Typing_Invalid_22"); }
+	 @Test public void Typing_Invalid_23() { runInvalidTest("Typing_Invalid_23"); }
+	 @Test public void Typing_Invalid_24() { runInvalidTest("Typing_Invalid_24"); }
+	 @Test public void Typing_Invalid_25() { runInvalidTest("Typing_Invalid_25"); }	 
+	 @Test public void Typing_Invalid_26() { runInvalidTest("Typing_Invalid_26"); }
+	 @Test public void Typing_Invalid_27() { runInvalidTest("Typing_Invalid_27"); }
+	 @Test public void Typing_Invalid_28() { runInvalidTest("Typing_Invalid_28"); }
+	 @Test public void Typing_Invalid_29() { runInvalidTest("Typing_Invalid_29"); }
+	 @Test public void Typing_Invalid_30() { runInvalidTest("Typing_Invalid_30"); }
 	 
 }
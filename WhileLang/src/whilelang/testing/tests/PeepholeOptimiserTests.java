@@ -0,0 +1,197 @@
+package whilelang.testing.tests;
+
+import static org.junit.Assert.*;
+
+import jasm.lang.Bytecode;
+import jasm.lang.JvmTypes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.*;
+
+import whilelang.io.PeepholeOptimiser;
+
+/**
+ * Tests for the individual rewrites performed by the
+ * <code>PeepholeOptimiser</code>. These check the shape of the bytecodes
+ * produced, whilst <code>ClassFileValidTests</code> checks that every valid
+ * test prints the same output with and without the optimiser.
+ *
+ * @author agent
+ *
+ */
+public class PeepholeOptimiserTests {
+
+	@Test public void ConstantBranch_1() {
+		// The constant pushed on the "true" path reaches the branch through a
+		// label, and the branch is followed by a bytecode (rather than a
+		// label) which must be given one.
+		List<Bytecode> bytecodes = optimise(
+				new Bytecode.Load(0, JvmTypes.T_INT),
+				new Bytecode.If(Bytecode.IfMode.EQ, "T"),
+				new Bytecode.LoadConst(0),
+				new Bytecode.Goto("J"),
+				new Bytecode.Label("T"),
+				new Bytecode.LoadConst(1),
+				new Bytecode.Label("J"),
+				new Bytecode.If(Bytecode.IfMode.EQ, "E"),
+				new Bytecode.LoadConst(3),
+				new Bytecode.Return(JvmTypes.T_INT),
+				new Bytecode.Label("E"),
+				new Bytecode.LoadConst(4),
+				new Bytecode.Return(JvmTypes.T_INT));
+		assertEquals(9, bytecodes.size());
+		assertLoad(0, bytecodes.get(0));
+		Bytecode.If branch = (Bytecode.If) bytecodes.get(1);
+		assertEquals(Bytecode.IfMode.EQ, branch.op);
+		assertEquals("E", ((Bytecode.Goto) bytecodes.get(2)).label);
+		assertEquals(branch.label, ((Bytecode.Label) bytecodes.get(3)).name);
+		assertConstant(3, bytecodes.get(4));
+		assertTrue(bytecodes.get(5) instanceof Bytecode.Return);
+		assertEquals("E", ((Bytecode.Label) bytecodes.get(6)).name);
+		assertConstant(4, bytecodes.get(7));
+		assertTrue(bytecodes.get(8) instanceof Bytecode.Return);
+	}
+
+	@Test public void ConstantBranch_2() {
+		// The branch which isn't taken is followed by a label already
+		List<Bytecode> bytecodes = optimise(
+				new Bytecode.LoadConst(false),
+				new Bytecode.If(Bytecode.IfMode.NE, "A"),
+				new Bytecode.Label("B"),
+				new Bytecode.LoadConst(3),
+				new Bytecode.Return(JvmTypes.T_INT),
+				new Bytecode.Label("A"),
+				new Bytecode.Goto("B"));
+		assertEquals(2, bytecodes.size());
+		assertConstant(3, bytecodes.get(0));
+		assertTrue(bytecodes.get(1) instanceof Bytecode.Return);
+	}
+
+	@Test public void GotoReturn_1() {
+		List<Bytecode> bytecodes = optimise(
+				new Bytecode.Load(0, JvmTypes.T_INT),
+				new Bytecode.If(Bytecode.IfMode.EQ, "L"),
+				new Bytecode.LoadConst(1),
+				new Bytecode.Goto("End"),
+				new Bytecode.Label("L"),
+				new Bytecode.LoadConst(2),
+				new Bytecode.Label("End"),
+				new Bytecode.Return(JvmTypes.T_INT));
+		assertEquals(7, bytecodes.size());
+		assertLoad(0, bytecodes.get(0));
+		assertEquals("L", ((Bytecode.If) bytecodes.get(1)).label);
+		assertConstant(1, bytecodes.get(2));
+		assertEquals(JvmTypes.T_INT, ((Bytecode.Return) bytecodes.get(3)).type);
+		assertEquals("L", ((Bytecode.Label) bytecodes.get(4)).name);
+		assertConstant(2, bytecodes.get(5));
+		assertEquals(JvmTypes.T_INT, ((Bytecode.Return) bytecodes.get(6)).type);
+	}
+
+	@Test public void Iinc_1() {
+		assertIinc(127, increment(Bytecode.BinOp.ADD, 127));
+	}
+
+	@Test public void Iinc_2() {
+		assertNotIinc(increment(Bytecode.BinOp.ADD, 128));
+	}
+
+	@Test public void Iinc_3() {
+		assertIinc(-128, increment(Bytecode.BinOp.ADD, -128));
+	}
+
+	@Test public void Iinc_4() {
+		assertNotIinc(increment(Bytecode.BinOp.ADD, -129));
+	}
+
+	@Test public void Iinc_5() {
+		assertIinc(-128, increment(Bytecode.BinOp.SUB, 128));
+	}
+
+	@Test public void Iinc_6() {
+		assertNotIinc(increment(Bytecode.BinOp.SUB, 129));
+	}
+
+	@Test public void Iinc_7() {
+		assertNotIinc(increment(Bytecode.BinOp.SUB, -128));
+	}
+
+	@Test public void Iinc_8() {
+		assertNotIinc(increment(Bytecode.BinOp.SUB, Integer.MIN_VALUE));
+	}
+
+	@Test public void Unreachable_1() {
+		List<Bytecode> bytecodes = optimise(
+				new Bytecode.Load(0, JvmTypes.JAVA_LANG_OBJECT),
+				new Bytecode.Throw(),
+				new Bytecode.LoadConst(1),
+				new Bytecode.Pop(JvmTypes.T_INT));
+		assertEquals(2, bytecodes.size());
+		assertLoad(0, bytecodes.get(0));
+		assertTrue(bytecodes.get(1) instanceof Bytecode.Throw);
+	}
+
+	@Test public void Unreachable_2() {
+		// Only the bytecodes up to the next label which is branched to can be
+		// removed.
+		List<Bytecode> bytecodes = optimise(
+				new Bytecode.Load(0, JvmTypes.T_INT),
+				new Bytecode.If(Bytecode.IfMode.EQ, "L"),
+				new Bytecode.Load(1, JvmTypes.JAVA_LANG_OBJECT),
+				new Bytecode.Throw(),
+				new Bytecode.LoadConst(1),
+				new Bytecode.Return(JvmTypes.T_INT),
+				new Bytecode.Label("L"),
+				new Bytecode.LoadConst(2),
+				new Bytecode.Return(JvmTypes.T_INT));
+		assertEquals(7, bytecodes.size());
+		assertLoad(1, bytecodes.get(2));
+		assertTrue(bytecodes.get(3) instanceof Bytecode.Throw);
+		assertEquals("L", ((Bytecode.Label) bytecodes.get(4)).name);
+		assertConstant(2, bytecodes.get(5));
+	}
+
+	private static List<Bytecode> optimise(Bytecode... bytecodes) {
+		ArrayList<Bytecode> list = new ArrayList<Bytecode>(
+				Arrays.asList(bytecodes));
+		new PeepholeOptimiser().optimise(list);
+		return list;
+	}
+
+	/**
+	 * Optimise the increment of an integer variable by a given constant, which
+	 * is then returned.
+	 */
+	private static List<Bytecode> increment(int op, int constant) {
+		return optimise(new Bytecode.Load(1, JvmTypes.T_INT),
+				new Bytecode.LoadConst(constant),
+				new Bytecode.BinOp(op, JvmTypes.T_INT),
+				new Bytecode.Store(1, JvmTypes.T_INT),
+				new Bytecode.Load(1, JvmTypes.T_INT),
+				new Bytecode.Return(JvmTypes.T_INT));
+	}
+
+	private static void assertIinc(int increment, List<Bytecode> bytecodes) {
+		assertEquals(3, bytecodes.size());
+		Bytecode.Iinc iinc = (Bytecode.Iinc) bytecodes.get(0);
+		assertEquals(1, iinc.slot);
+		assertEquals(increment, iinc.increment);
+	}
+
+	private static void assertNotIinc(List<Bytecode> bytecodes) {
+		assertEquals(6, bytecodes.size());
+		for (Bytecode b : bytecodes) {
+			assertFalse(b instanceof Bytecode.Iinc);
+		}
+	}
+
+	private static void assertLoad(int slot, Bytecode b) {
+		assertEquals(slot, ((Bytecode.Load) b).slot);
+	}
+
+	private static void assertConstant(Object constant, Bytecode b) {
+		assertEquals(constant, ((Bytecode.LoadConst) b).constant);
+	}
+}
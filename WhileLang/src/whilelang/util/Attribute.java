@@ -43,4 +43,42 @@ public interface Attribute {
 		  this.type = type;
 	  }
   }
+
+  /**
+   * Identifies the slot in its enclosing function's stack frame which holds a
+   * given variable. This is attached to parameters, variable declarations and
+   * variable uses by the <code>SlotResolver</code>.
+   */
+  public static class Slot implements Attribute {
+
+	  public final int index;
+
+	  public Slot(int index) {
+		  this.index = index;
+	  }
+
+	  public String toString() {
+		  return "#" + index;
+	  }
+  }
+
+  /**
+   * Records the number of slots needed in the stack frame of a given function.
+   */
+  public static class FrameSize implements Attribute {
+
+	  public final int size;
+
+	  public FrameSize(int size) {
+		  this.size = size;
+	  }
+  }
+
+  /**
+   * Indicates that a given function is pure. That is, it has no side-effects
+   * and, hence, its result is determined entirely by its arguments. This is
+   * attached to functions by the <code>PurityAnalysis</code>.
+   */
+  public static class Pure implements Attribute {
+  }
 }
@@ -0,0 +1,344 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang.util;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * <p>
+ * A persistent, on-disk cache of compilation results. Each entry records the
+ * outcome of compiling a single source file: whether it succeeded, the
+ * diagnostics it produced and either the generated classes or the checked
+ * AST (as written by <code>WhileFileWriter</code>). Entries are keyed by a
+ * hash of the source file's name and contents, and of the compiler version,
+ * so an entry is only ever reused for an identical compilation.
+ * </p>
+ *
+ * <p>
+ * The total size of the cache is bounded. When an entry is added which takes
+ * it beyond this, the least recently used entries are deleted. Each entry is
+ * stored in a separate file, whose last-modified time records when it was
+ * last used. Entries are written to a temporary file first and then renamed,
+ * so that concurrent compilers never see a partially written entry.
+ * </p>
+ *
+ * @author agent
+ *
+ */
+public class BuildCache {
+
+	private static final int MAGIC = 0x574C4344; // "WLCD"
+
+	private final File directory;
+
+	private final long capacity;
+
+	/**
+	 * The total size of all entries in the cache (in bytes), or -1 if this
+	 * has not yet been determined.
+	 */
+	private long size = -1;
+
+	/**
+	 * Construct a cache in a given directory, which is created if it does not
+	 * already exist.
+	 *
+	 * @param directory
+	 *            The directory in which entries are stored.
+	 * @param capacity
+	 *            The maximum total size of all entries (in bytes).
+	 */
+	public BuildCache(File directory, long capacity) {
+		this.directory = directory;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Determine the key for a given source file.
+	 *
+	 * @param version
+	 *            The version of the compiler, and anything else which
+	 *            determines what is produced.
+	 * @param filename
+	 *            The name of the source file, which determines the names of
+	 *            the generated classes and appears in diagnostics.
+	 * @param contents
+	 *            The contents of the source file.
+	 * @return
+	 */
+	public static String key(String version, String filename, byte[] contents) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(version.getBytes("UTF8"));
+			digest.update((byte) 0);
+			digest.update(filename.getBytes("UTF8"));
+			digest.update((byte) 0);
+			return hex(digest.digest(contents));
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Compute a fingerprint of the compiler itself. This is a hash of every
+	 * class file in the package tree of a given class or, if it was loaded
+	 * from a jar file, of that jar file. Including this in every key ensures
+	 * that entries produced by a different build of the compiler are never
+	 * reused, even when its version number has not been changed.
+	 *
+	 * @param c
+	 *            A class belonging to the compiler.
+	 * @return
+	 */
+	public static String fingerprint(Class<?> c) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			CodeSource source = c.getProtectionDomain().getCodeSource();
+			if (source == null) {
+				throw new RuntimeException("cannot locate classes of "
+						+ c.getName());
+			}
+			File location = new File(source.getLocation().toURI());
+			if (location.isDirectory()) {
+				// Only the package tree is hashed, since the same directory may
+				// also hold other things (e.g. source files).
+				String name = c.getName();
+				fingerprint(new File(location, name.substring(0,
+						name.indexOf('.'))), digest);
+			} else {
+				digest.update(Files.readAllBytes(location.toPath()));
+			}
+			return hex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (URISyntaxException e) {
+			throw new RuntimeException(e);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void fingerprint(File file, MessageDigest digest)
+			throws IOException {
+		if (file.isDirectory()) {
+			// Sort the names, since the order they are listed in is not
+			// specified.
+			String[] names = file.list();
+			Arrays.sort(names);
+			for (String name : names) {
+				fingerprint(new File(file, name), digest);
+			}
+		} else if (file.getName().endsWith(".class")) {
+			digest.update(file.getName().getBytes("UTF8"));
+			digest.update((byte) 0);
+			digest.update(Files.readAllBytes(file.toPath()));
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder r = new StringBuilder();
+		for (byte b : bytes) {
+			r.append(Character.forDigit((b >> 4) & 0xF, 16));
+			r.append(Character.forDigit(b & 0xF, 16));
+		}
+		return r.toString();
+	}
+
+	/**
+	 * Look up the entry for a given key.
+	 *
+	 * @param key
+	 * @return The entry, or <code>null</code> if there is none.
+	 */
+	public Entry get(String key) {
+		File file = new File(directory, key);
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC) {
+					return null;
+				}
+				boolean ok = in.readBoolean();
+				byte[] stdout = readBytes(in);
+				byte[] stderr = readBytes(in);
+				int count = in.readInt();
+				Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+				for (int i = 0; i != count; ++i) {
+					String name = in.readUTF();
+					classes.put(name, readBytes(in));
+				}
+				byte[] ast = readBytes(in);
+				// Mark this entry as recently used.
+				file.setLastModified(System.currentTimeMillis());
+				return new Entry(ok, stdout, stderr, classes, ast);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// A corrupt or concurrently evicted entry is simply a miss.
+			return null;
+		}
+	}
+
+	/**
+	 * Add an entry to the cache, evicting the least recently used entries if
+	 * necessary. Failure to write the entry is silently ignored, since it only
+	 * means a later compilation will not be able to reuse it.
+	 *
+	 * @param key
+	 * @param entry
+	 */
+	public void put(String key, Entry entry) {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			return;
+		}
+		File file = new File(directory, key);
+		try {
+			File tmp = File.createTempFile(key, ".tmp", directory);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeBoolean(entry.ok);
+				writeBytes(out, entry.stdout);
+				writeBytes(out, entry.stderr);
+				out.writeInt(entry.classes.size());
+				for (Map.Entry<String, byte[]> e : entry.classes.entrySet()) {
+					out.writeUTF(e.getKey());
+					writeBytes(out, e.getValue());
+				}
+				writeBytes(out, entry.ast);
+			} finally {
+				out.close();
+			}
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				tmp.delete();
+				return;
+			}
+		} catch (IOException e) {
+			return;
+		}
+		added(file.length());
+	}
+
+	/**
+	 * Record that a given number of bytes has been added to the cache and, if
+	 * it is now over capacity, delete entries in least recently used order
+	 * until it is not.
+	 *
+	 * @param bytes
+	 */
+	private synchronized void added(long bytes) {
+		if (size >= 0) {
+			size += bytes;
+			if (size <= capacity) {
+				return;
+			}
+		}
+		// Either the size is not yet known, or the cache is over capacity. In
+		// both cases, the directory must be scanned since other compilers may
+		// also be using it.
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				long t1 = f1.lastModified();
+				long t2 = f2.lastModified();
+				return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+			}
+		});
+		size = 0;
+		for (File f : files) {
+			size += f.length();
+		}
+		for (int i = 0; i != files.length && size > capacity; ++i) {
+			long length = files[i].length();
+			if (files[i].delete()) {
+				size -= length;
+			}
+		}
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes)
+			throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * The result of compiling a single source file.
+	 *
+	 * @author agent
+	 *
+	 */
+	public static final class Entry {
+		/**
+		 * Whether or not the source file compiled successfully.
+		 */
+		public final boolean ok;
+
+		/**
+		 * Everything written to standard output and standard error during
+		 * compilation, including any diagnostics.
+		 */
+		public final byte[] stdout, stderr;
+
+		/**
+		 * The generated classes, indexed by binary name. The first class is
+		 * the one named after the source file.
+		 */
+		public final Map<String, byte[]> classes;
+
+		/**
+		 * The checked AST, as written by <code>WhileFileWriter</code>, or an
+		 * empty array if it was not recorded.
+		 */
+		public final byte[] ast;
+
+		public Entry(boolean ok, byte[] stdout, byte[] stderr,
+				Map<String, byte[]> classes, byte[] ast) {
+			this.ok = ok;
+			this.stdout = stdout;
+			this.stderr = stderr;
+			this.classes = classes;
+			this.ast = ast;
+		}
+	}
+}
@@ -0,0 +1,558 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang.util;
+
+import static whilelang.util.SyntaxError.internalFailure;
+
+import java.util.*;
+
+import whilelang.lang.Expr;
+import whilelang.lang.Stmt;
+import whilelang.lang.Type;
+import whilelang.lang.WhileFile;
+
+/**
+ * <p>
+ * Responsible for evaluating those expressions whose operands are all known
+ * at compile time, such as <code>2 * 3</code> or <code>-1.0</code>, and
+ * replacing them with the resulting constant. References to constants whose
+ * values are known (e.g. <code>PI</code> in <code>2.0 * PI</code>) are
+ * treated as constants themselves. Certain identities (e.g. <code>x * 1</code>,
+ * <code>x + 0</code>, <code>!!b</code> and <code>true && b</code>) are also
+ * simplified, whether or not the remaining operand is known.
+ * </p>
+ *
+ * <p>
+ * This must be run after the <code>TypeChecker</code>, since it relies on the
+ * types of expressions, and each expression it produces is given the type of
+ * the expression it replaces. Since syntactic elements cannot be modified,
+ * the result is a new source file. An expression is never folded where this
+ * would change the behaviour of the program, such as when an integer is
+ * divided by zero.
+ * </p>
+ *
+ * @author agent
+ *
+ */
+public class ConstantFolder {
+	private WhileFile file;
+
+	/**
+	 * The folded expression of every constant examined so far, indexed by
+	 * name. This is <code>null</code> for a constant which is currently being
+	 * folded, so that a cyclic constant is not folded forever.
+	 */
+	private HashMap<String, Expr> constants;
+
+	/**
+	 * The names of all variables declared in the function being folded,
+	 * which therefore do not refer to constants.
+	 */
+	private Set<String> locals;
+
+	public WhileFile fold(WhileFile wf) {
+		this.file = wf;
+		this.constants = new HashMap<String, Expr>();
+		ArrayList<WhileFile.Decl> declarations = new ArrayList<WhileFile.Decl>(
+				wf.declarations.size());
+		for (WhileFile.Decl declaration : wf.declarations) {
+			if (declaration instanceof WhileFile.ConstDecl) {
+				WhileFile.ConstDecl cd = (WhileFile.ConstDecl) declaration;
+				declarations.add(new WhileFile.ConstDecl(fold(cd), cd.name,
+						attributes(cd)));
+			} else if (declaration instanceof WhileFile.FunDecl) {
+				declarations.add(fold((WhileFile.FunDecl) declaration));
+			} else {
+				declarations.add(declaration);
+			}
+		}
+		return new WhileFile(wf.filename, declarations);
+	}
+
+	/**
+	 * Fold the expression of a given constant declaration. Where a name is
+	 * declared more than once, only the last declaration is referred to and,
+	 * hence, only this is remembered.
+	 */
+	private Expr fold(WhileFile.ConstDecl cd) {
+		boolean current = file.constant(cd.name) == cd;
+		if (current && constants.containsKey(cd.name)) {
+			Expr e = constants.get(cd.name);
+			return e != null ? e : cd.constant;
+		} else if (current) {
+			constants.put(cd.name, null);
+		}
+		// The expression of a constant cannot refer to any variables.
+		Set<String> locals = this.locals;
+		this.locals = Collections.emptySet();
+		Expr e = fold(cd.constant);
+		this.locals = locals;
+		if (current) {
+			constants.put(cd.name, e);
+		}
+		return e;
+	}
+
+	public WhileFile.FunDecl fold(WhileFile.FunDecl fd) {
+		locals = new HashSet<String>();
+		for (WhileFile.Parameter p : fd.parameters) {
+			locals.add(p.name());
+		}
+		declared(fd.statements, locals);
+		return new WhileFile.FunDecl(fd.name, fd.ret, fd.parameters,
+				fold(fd.statements), attributes(fd));
+	}
+
+	/**
+	 * Determine the names of all variables declared in a given block of
+	 * statements, including those in nested blocks.
+	 */
+	private static void declared(List<Stmt> statements, Set<String> names) {
+		for (Stmt stmt : statements) {
+			if (stmt instanceof Stmt.VariableDeclaration) {
+				names.add(((Stmt.VariableDeclaration) stmt).getName());
+			} else if (stmt instanceof Stmt.IfElse) {
+				declared(((Stmt.IfElse) stmt).getTrueBranch(), names);
+				declared(((Stmt.IfElse) stmt).getFalseBranch(), names);
+			} else if (stmt instanceof Stmt.For) {
+				Stmt.For s = (Stmt.For) stmt;
+				if (s.getDeclaration() != null) {
+					names.add(s.getDeclaration().getName());
+				}
+				declared(s.getBody(), names);
+			} else if (stmt instanceof Stmt.While) {
+				declared(((Stmt.While) stmt).getBody(), names);
+			}
+		}
+	}
+
+	public List<Stmt> fold(List<Stmt> statements) {
+		ArrayList<Stmt> r = new ArrayList<Stmt>(statements.size());
+		for (Stmt s : statements) {
+			r.add(fold(s));
+		}
+		return r;
+	}
+
+	public Stmt fold(Stmt stmt) {
+		if (stmt instanceof Stmt.Assign) {
+			Stmt.Assign s = (Stmt.Assign) stmt;
+			return new Stmt.Assign(fold(s.getLhs()), fold(s.getRhs()),
+					attributes(s));
+		} else if (stmt instanceof Stmt.Print) {
+			Stmt.Print s = (Stmt.Print) stmt;
+			return new Stmt.Print(fold(s.getExpr()), attributes(s));
+		} else if (stmt instanceof Stmt.Return) {
+			Stmt.Return s = (Stmt.Return) stmt;
+			Expr e = s.getExpr() != null ? fold(s.getExpr()) : null;
+			return new Stmt.Return(e, attributes(s));
+		} else if (stmt instanceof Stmt.VariableDeclaration) {
+			return fold((Stmt.VariableDeclaration) stmt);
+		} else if (stmt instanceof Expr.Invoke) {
+			return fold((Expr.Invoke) stmt);
+		} else if (stmt instanceof Stmt.IfElse) {
+			Stmt.IfElse s = (Stmt.IfElse) stmt;
+			return new Stmt.IfElse(fold(s.getCondition()),
+					fold(s.getTrueBranch()), fold(s.getFalseBranch()),
+					attributes(s));
+		} else if (stmt instanceof Stmt.For) {
+			Stmt.For s = (Stmt.For) stmt;
+			Stmt.VariableDeclaration d = s.getDeclaration() != null ? fold(s
+					.getDeclaration()) : null;
+			Expr c = s.getCondition() != null ? fold(s.getCondition()) : null;
+			Stmt i = s.getIncrement() != null ? fold(s.getIncrement()) : null;
+			return new Stmt.For(d, c, i, fold(s.getBody()), attributes(s));
+		} else if (stmt instanceof Stmt.While) {
+			Stmt.While s = (Stmt.While) stmt;
+			return new Stmt.While(fold(s.getCondition()), fold(s.getBody()),
+					attributes(s));
+		} else {
+			internalFailure("unknown statement encountered (" + stmt + ")",
+					file.filename, stmt);
+			return null; // dead code
+		}
+	}
+
+	public Stmt.VariableDeclaration fold(Stmt.VariableDeclaration stmt) {
+		Expr e = stmt.getExpr() != null ? fold(stmt.getExpr()) : null;
+		return new Stmt.VariableDeclaration(stmt.getType(), stmt.getName(), e,
+				attributes(stmt));
+	}
+
+	/**
+	 * Fold the left-hand side of an assignment. The variable being assigned is
+	 * left as is, but any expressions used to access it (e.g. the index in
+	 * <code>xs[i+1]</code>) are folded.
+	 */
+	public Expr.LVal fold(Expr.LVal lval) {
+		if (lval instanceof Expr.IndexOf) {
+			Expr.IndexOf e = (Expr.IndexOf) lval;
+			Expr src = foldSource(e.getSource());
+			Expr index = fold(e.getIndex());
+			if (src != e.getSource() || index != e.getIndex()) {
+				return new Expr.IndexOf(src, index, attributes(e));
+			}
+		} else if (lval instanceof Expr.RecordAccess) {
+			Expr.RecordAccess e = (Expr.RecordAccess) lval;
+			Expr src = foldSource(e.getSource());
+			if (src != e.getSource()) {
+				return new Expr.RecordAccess(src, e.getName(), attributes(e));
+			}
+		}
+		return lval;
+	}
+
+	private Expr foldSource(Expr source) {
+		if (source instanceof Expr.LVal) {
+			return fold((Expr.LVal) source);
+		}
+		return fold(source);
+	}
+
+	public Expr fold(Expr expr) {
+		if (expr instanceof Expr.Binary) {
+			return fold((Expr.Binary) expr);
+		} else if (expr instanceof Expr.Cast) {
+			return fold((Expr.Cast) expr);
+		} else if (expr instanceof Expr.Constant) {
+			return expr;
+		} else if (expr instanceof Expr.IndexOf) {
+			Expr.IndexOf e = (Expr.IndexOf) expr;
+			Expr src = fold(e.getSource());
+			Expr index = fold(e.getIndex());
+			if (src != e.getSource() || index != e.getIndex()) {
+				return new Expr.IndexOf(src, index, attributes(e));
+			}
+			return e;
+		} else if (expr instanceof Expr.Invoke) {
+			return fold((Expr.Invoke) expr);
+		} else if (expr instanceof Expr.ListConstructor) {
+			Expr.ListConstructor e = (Expr.ListConstructor) expr;
+			List<Expr> arguments = foldAll(e.getArguments());
+			if (arguments != e.getArguments()) {
+				return new Expr.ListConstructor(arguments, attributes(e));
+			}
+			return e;
+		} else if (expr instanceof Expr.RecordAccess) {
+			Expr.RecordAccess e = (Expr.RecordAccess) expr;
+			Expr src = fold(e.getSource());
+			if (src != e.getSource()) {
+				return new Expr.RecordAccess(src, e.getName(), attributes(e));
+			}
+			return e;
+		} else if (expr instanceof Expr.RecordConstructor) {
+			Expr.RecordConstructor e = (Expr.RecordConstructor) expr;
+			ArrayList<Pair<String, Expr>> fields = new ArrayList<Pair<String, Expr>>();
+			boolean changed = false;
+			for (Pair<String, Expr> p : e.getFields()) {
+				Expr f = fold(p.second());
+				fields.add(new Pair<String, Expr>(p.first(), f));
+				changed |= f != p.second();
+			}
+			return changed ? new Expr.RecordConstructor(fields, attributes(e))
+					: e;
+		} else if (expr instanceof Expr.Unary) {
+			return fold((Expr.Unary) expr);
+		} else if (expr instanceof Expr.Variable) {
+			return fold((Expr.Variable) expr);
+		} else {
+			internalFailure("unknown expression encountered (" + expr + ")",
+					file.filename, expr);
+			return null; // dead code
+		}
+	}
+
+	/**
+	 * Fold a list of expressions.
+	 *
+	 * @return The given list, if no expression in it was changed.
+	 */
+	private List<Expr> foldAll(List<Expr> exprs) {
+		ArrayList<Expr> r = new ArrayList<Expr>(exprs.size());
+		boolean changed = false;
+		for (Expr e : exprs) {
+			Expr f = fold(e);
+			r.add(f);
+			changed |= f != e;
+		}
+		return changed ? r : exprs;
+	}
+
+	public Expr.Invoke fold(Expr.Invoke expr) {
+		List<Expr> arguments = foldAll(expr.getArguments());
+		if (arguments != expr.getArguments()) {
+			return new Expr.Invoke(expr.getName(), arguments, attributes(expr));
+		}
+		return expr;
+	}
+
+	public Expr fold(Expr.Variable expr) {
+		WhileFile.ConstDecl cd = file.constant(expr.getName());
+		if (cd == null || locals.contains(expr.getName())) {
+			return expr;
+		}
+		Expr e = fold(cd);
+		if (e instanceof Expr.Constant) {
+			return new Expr.Constant(((Expr.Constant) e).getValue(),
+					attributes(expr));
+		}
+		return expr;
+	}
+
+	public Expr fold(Expr.Binary expr) {
+		Expr lhs = fold(expr.getLhs());
+		Expr rhs = fold(expr.getRhs());
+		Object l = lhs instanceof Expr.Constant ? ((Expr.Constant) lhs)
+				.getValue() : null;
+		Object r = rhs instanceof Expr.Constant ? ((Expr.Constant) rhs)
+				.getValue() : null;
+		Expr.BOp op = expr.getOp();
+
+		if (op == Expr.BOp.AND || op == Expr.BOp.OR) {
+			// Only the right-hand side can be discarded when it is known,
+			// since the left-hand side may have side-effects.
+			boolean and = op == Expr.BOp.AND;
+			if (l instanceof Boolean) {
+				// e.g. true && b, false || b
+				return (Boolean) l == and ? rhs : constant(!and, expr);
+			} else if (r instanceof Boolean && (Boolean) r == and) {
+				// e.g. b && true, b || false
+				return lhs;
+			}
+		} else if (lhs instanceof Expr.Constant && rhs instanceof Expr.Constant) {
+			Object value = evaluate(op, l, r);
+			if (value != null) {
+				return constant(value, expr);
+			}
+		} else if (isIdentity(op, r, true) && hasSameType(lhs, rhs, expr)) {
+			// e.g. x + 0, x * 1
+			return lhs;
+		} else if (isIdentity(op, l, false) && hasSameType(lhs, rhs, expr)) {
+			// e.g. 0 + x, 1 * x
+			return rhs;
+		}
+
+		if (lhs != expr.getLhs() || rhs != expr.getRhs()) {
+			return new Expr.Binary(op, lhs, rhs, attributes(expr));
+		}
+		return expr;
+	}
+
+	/**
+	 * Evaluate a binary operation on two constants.
+	 *
+	 * @return The result, or <code>null</code> if it should be determined at
+	 *         run time (e.g. because it would raise an exception).
+	 */
+	private static Object evaluate(Expr.BOp op, Object l, Object r) {
+		if (l instanceof Integer && r instanceof Integer) {
+			int x = (Integer) l;
+			int y = (Integer) r;
+			switch (op) {
+			case ADD:
+				return x + y;
+			case SUB:
+				return x - y;
+			case MUL:
+				return x * y;
+			case DIV:
+				return y != 0 ? x / y : null;
+			case REM:
+				return y != 0 ? x % y : null;
+			case EQ:
+				return x == y;
+			case NEQ:
+				return x != y;
+			case LT:
+				return x < y;
+			case LTEQ:
+				return x <= y;
+			case GT:
+				return x > y;
+			case GTEQ:
+				return x >= y;
+			}
+		} else if (l instanceof Double && r instanceof Double) {
+			double x = (Double) l;
+			double y = (Double) r;
+			switch (op) {
+			case ADD:
+				return x + y;
+			case SUB:
+				return x - y;
+			case MUL:
+				return x * y;
+			case DIV:
+				return x / y;
+			case REM:
+				return x % y;
+			case EQ:
+				return x == y;
+			case NEQ:
+				return x != y;
+			case LT:
+				return x < y;
+			case LTEQ:
+				return x <= y;
+			case GT:
+				return x > y;
+			case GTEQ:
+				return x >= y;
+			}
+		} else if (l instanceof String && r instanceof String
+				&& op == Expr.BOp.APPEND) {
+			return (String) l + (String) r;
+		} else if ((op == Expr.BOp.EQ || op == Expr.BOp.NEQ)
+				&& (l == null ? r == null : r != null
+						&& l.getClass() == r.getClass()
+						&& !(l instanceof Double))) {
+			// e.g. true == false, 'a' != 'b', null == null
+			boolean equal = l == null || l.equals(r);
+			return equal == (op == Expr.BOp.EQ);
+		}
+		return null;
+	}
+
+	/**
+	 * Determine whether a given constant operand of a binary operation leaves
+	 * the other operand unchanged. For example, <code>x - 0</code> is
+	 * <code>x</code>, but <code>0 - x</code> is not. Note that
+	 * <code>x + 0.0</code> is not <code>x</code> when <code>x</code> is
+	 * <code>-0.0</code>.
+	 *
+	 * @param right
+	 *            Whether the constant is the right-hand operand.
+	 */
+	private static boolean isIdentity(Expr.BOp op, Object constant,
+			boolean right) {
+		if (constant instanceof Integer) {
+			int c = (Integer) constant;
+			return (c == 0 && (op == Expr.BOp.ADD || (right && op == Expr.BOp.SUB)))
+					|| (c == 1 && (op == Expr.BOp.MUL || (right && op == Expr.BOp.DIV)));
+		} else if (constant instanceof Double) {
+			double c = (Double) constant;
+			return (c == 0.0 && right && op == Expr.BOp.SUB && 1 / c > 0)
+					|| (c == 1.0 && (op == Expr.BOp.MUL || (right && op == Expr.BOp.DIV)));
+		}
+		return false;
+	}
+
+	/**
+	 * Check that both operands of a binary operation have the same
+	 * (primitive) type as the operation itself, so that either operand can
+	 * replace it.
+	 */
+	private static boolean hasSameType(Expr lhs, Expr rhs, Expr.Binary expr) {
+		Class<?> kind = kind(expr);
+		return (kind == Type.Int.class || kind == Type.Real.class)
+				&& kind(lhs) == kind && kind(rhs) == kind;
+	}
+
+	private static Class<?> kind(Expr expr) {
+		Attribute.Type attr = expr.attribute(Attribute.Type.class);
+		return attr != null ? attr.type.getClass() : null;
+	}
+
+	public Expr fold(Expr.Unary expr) {
+		Expr e = fold(expr.getExpr());
+		Object value = e instanceof Expr.Constant ? ((Expr.Constant) e)
+				.getValue() : null;
+		switch (expr.getOp()) {
+		case NOT:
+			if (value instanceof Boolean) {
+				return constant(!(Boolean) value, expr);
+			} else if (e instanceof Expr.Unary
+					&& ((Expr.Unary) e).getOp() == Expr.UOp.NOT) {
+				// e.g. !!b
+				return ((Expr.Unary) e).getExpr();
+			}
+			break;
+		case NEG:
+			if (value instanceof Integer) {
+				return constant(-(Integer) value, expr);
+			} else if (value instanceof Double) {
+				return constant(-(Double) value, expr);
+			} else if (e instanceof Expr.Unary
+					&& ((Expr.Unary) e).getOp() == Expr.UOp.NEG) {
+				// e.g. --x
+				return ((Expr.Unary) e).getExpr();
+			}
+			break;
+		case LENGTHOF:
+			if (value instanceof String) {
+				return constant(((String) value).length(), expr);
+			}
+			break;
+		}
+		if (e != expr.getExpr()) {
+			return new Expr.Unary(expr.getOp(), e, attributes(expr));
+		}
+		return expr;
+	}
+
+	public Expr fold(Expr.Cast expr) {
+		Expr e = fold(expr.getSource());
+		if (e instanceof Expr.Constant) {
+			Object value = ((Expr.Constant) e).getValue();
+			Type type = expand(expr.getType());
+			if (type instanceof Type.Real && value instanceof Integer) {
+				return constant((double) (Integer) value, expr);
+			} else if ((type instanceof Type.Int && value instanceof Integer)
+					|| (type instanceof Type.Real && value instanceof Double)
+					|| (type instanceof Type.Bool && value instanceof Boolean)
+					|| (type instanceof Type.Char && value instanceof Character)
+					|| (type instanceof Type.Strung && value instanceof String)) {
+				return constant(value, expr);
+			}
+		}
+		if (e != expr.getSource()) {
+			return new Expr.Cast(expr.getType(), e, attributes(expr));
+		}
+		return expr;
+	}
+
+	/**
+	 * Expand a named type into the type it is declared as.
+	 */
+	private Type expand(Type type) {
+		HashSet<String> visited = new HashSet<String>();
+		while (type instanceof Type.Named
+				&& visited.add(((Type.Named) type).getName())) {
+			WhileFile.TypeDecl td = file.type(((Type.Named) type).getName());
+			if (td == null) {
+				break;
+			}
+			type = td.type;
+		}
+		return type;
+	}
+
+	/**
+	 * Construct a constant which replaces a given expression, and which
+	 * therefore has the same attributes (including its type).
+	 */
+	private static Expr.Constant constant(Object value, Expr expr) {
+		return new Expr.Constant(value, attributes(expr));
+	}
+
+	private static Attribute[] attributes(SyntacticElement element) {
+		List<Attribute> attributes = element.attributes();
+		return attributes.toArray(new Attribute[attributes.size()]);
+	}
+}
@@ -21,17 +21,9 @@ import whilelang.lang.WhileFile;
 public class DefiniteAssignment {
 	private WhileFile file;
 	private WhileFile.FunDecl function;
-	private HashSet<String> constants;
 
 	public void check(WhileFile wf) {
 		this.file = wf;
-		this.constants = new HashSet<String>();
-		for (WhileFile.Decl declaration : wf.declarations) {
-			if (declaration instanceof WhileFile.ConstDecl) {
-				WhileFile.ConstDecl cd = (WhileFile.ConstDecl) declaration;
-				this.constants.add(cd.name());
-			}
-		}
 
 		for (WhileFile.Decl declaration : wf.declarations) {
 			if (declaration instanceof WhileFile.FunDecl) {
@@ -44,8 +36,9 @@ public class DefiniteAssignment {
 		this.function = fd;
 
 		// First, initialise the environment with all parameters (since these
-		// are assumed to be definitely assigned)
-		HashSet<String> environment = new HashSet<String>(constants);
+		// are assumed to be definitely assigned). Constants are always
+		// definitely assigned, and are looked up in the file instead.
+		HashSet<String> environment = new HashSet<String>();
 		for (WhileFile.Parameter p : fd.parameters) {
 			environment.add(p.name());
 		}
@@ -132,7 +125,8 @@ public class DefiniteAssignment {
 	}
 
 	public void check(Stmt.VariableDeclaration stmt, Set<String> environment) {
-		if (environment.contains(stmt.getName())) {
+		if (environment.contains(stmt.getName())
+				|| file.constant(stmt.getName()) != null) {
 			syntaxError("variable already declared: " + stmt.getName(),
 					file.filename, stmt);
 		} else if (stmt.getExpr() != null) {
@@ -263,7 +257,8 @@ public class DefiniteAssignment {
 	}
 
 	public void check(Expr.Variable expr, Set<String> environment) {
-		if (!environment.contains(expr.getName())) {
+		if (!environment.contains(expr.getName())
+				&& file.constant(expr.getName()) == null) {
 			// This variable is not definitely assigned.
 			syntaxError("variable " + expr.getName()
 					+ " is not definitely assigned", file.filename, expr);
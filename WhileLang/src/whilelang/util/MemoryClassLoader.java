@@ -0,0 +1,81 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import whilelang.runtime.Output;
+
+/**
+ * Responsible for loading classes generated in memory by
+ * <code>ClassFileWriter.generate()</code>, so they can be run without first
+ * being written to disk. Classes from the runtime library (e.g.
+ * <code>whilelang.runtime.Util</code>) are loaded by the parent class loader.
+ *
+ * @author agent
+ *
+ */
+public class MemoryClassLoader extends ClassLoader {
+
+	/**
+	 * The bytes of each class, indexed by binary name.
+	 */
+	private final Map<String, byte[]> classes;
+
+	public MemoryClassLoader(Map<String, byte[]> classes) {
+		super(MemoryClassLoader.class.getClassLoader());
+		this.classes = classes;
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		byte[] bytes = classes.get(name);
+		if (bytes == null) {
+			throw new ClassNotFoundException(name);
+		}
+		return defineClass(name, bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Run the <code>main</code> method of a given class, which must have been
+	 * generated by <code>ClassFileWriter</code>.
+	 *
+	 * @param className
+	 *            The binary name of the class to run.
+	 * @throws Exception
+	 *             Any exception raised by the program itself is rethrown.
+	 */
+	public void run(String className) throws Exception {
+		Class<?> clazz = loadClass(className);
+		Method main = clazz.getMethod("main", String[].class);
+		try {
+			main.invoke(null, (Object) new String[0]);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw (Exception) e.getCause();
+		} finally {
+			// Since the JVM is not exiting, the output must be flushed here.
+			Output.flush();
+		}
+	}
+}
@@ -0,0 +1,193 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang.util;
+
+import static whilelang.util.SyntaxError.internalFailure;
+
+import java.util.*;
+
+import whilelang.lang.Expr;
+import whilelang.lang.Stmt;
+import whilelang.lang.WhileFile;
+
+/**
+ * Responsible for determining which functions are pure. Since While has value
+ * semantics, the only side-effect a function can have is printing. Therefore,
+ * a function is pure if it contains no print statements, and every function
+ * it invokes is also pure. Every such function is marked with the
+ * <code>Attribute.Pure</code> attribute.
+ *
+ * @author agent
+ *
+ */
+public class PurityAnalysis {
+	private WhileFile file;
+
+	public void analyse(WhileFile wf) {
+		this.file = wf;
+
+		// First, determine which functions print directly, and which
+		// functions each function invokes.
+		HashMap<String, Set<String>> callees = new HashMap<String, Set<String>>();
+		HashSet<String> impure = new HashSet<String>();
+		for (WhileFile.Decl declaration : wf.declarations) {
+			if (declaration instanceof WhileFile.FunDecl) {
+				WhileFile.FunDecl fd = (WhileFile.FunDecl) declaration;
+				HashSet<String> invoked = new HashSet<String>();
+				callees.put(fd.name(), invoked);
+				if (!analyse(fd.statements, invoked)) {
+					impure.add(fd.name());
+				}
+			}
+		}
+
+		// Second, propagate impurity from callees to callers until a fixed
+		// point is reached. Invoking an unknown function is considered impure.
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Map.Entry<String, Set<String>> e : callees.entrySet()) {
+				if (impure.contains(e.getKey())) {
+					continue;
+				}
+				for (String callee : e.getValue()) {
+					if (impure.contains(callee)
+							|| wf.function(callee) == null) {
+						impure.add(e.getKey());
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+
+		// Finally, mark those functions which remain pure.
+		for (WhileFile.Decl declaration : wf.declarations) {
+			if (declaration instanceof WhileFile.FunDecl
+					&& !impure.contains(declaration.name())
+					&& declaration.attribute(Attribute.Pure.class) == null) {
+				declaration.attributes().add(new Attribute.Pure());
+			}
+		}
+	}
+
+	/**
+	 * Analyse a given list of statements, recording the names of all
+	 * functions invoked within them.
+	 *
+	 * @param statements
+	 *            The list of statements to analyse.
+	 * @param invoked
+	 *            The set of functions invoked so far.
+	 * @return False if the statements print directly, true otherwise.
+	 */
+	public boolean analyse(List<Stmt> statements, Set<String> invoked) {
+		boolean pure = true;
+		for (Stmt s : statements) {
+			pure &= analyse(s, invoked);
+		}
+		return pure;
+	}
+
+	public boolean analyse(Stmt stmt, Set<String> invoked) {
+		if (stmt instanceof Stmt.Assign) {
+			Stmt.Assign s = (Stmt.Assign) stmt;
+			analyse(s.getLhs(), invoked);
+			analyse(s.getRhs(), invoked);
+			return true;
+		} else if (stmt instanceof Stmt.Print) {
+			analyse(((Stmt.Print) stmt).getExpr(), invoked);
+			return false;
+		} else if (stmt instanceof Stmt.Return) {
+			Expr e = ((Stmt.Return) stmt).getExpr();
+			if (e != null) {
+				analyse(e, invoked);
+			}
+			return true;
+		} else if (stmt instanceof Stmt.VariableDeclaration) {
+			Expr e = ((Stmt.VariableDeclaration) stmt).getExpr();
+			if (e != null) {
+				analyse(e, invoked);
+			}
+			return true;
+		} else if (stmt instanceof Expr.Invoke) {
+			analyse((Expr) stmt, invoked);
+			return true;
+		} else if (stmt instanceof Stmt.IfElse) {
+			Stmt.IfElse s = (Stmt.IfElse) stmt;
+			analyse(s.getCondition(), invoked);
+			boolean pure = analyse(s.getTrueBranch(), invoked);
+			return analyse(s.getFalseBranch(), invoked) && pure;
+		} else if (stmt instanceof Stmt.For) {
+			Stmt.For s = (Stmt.For) stmt;
+			boolean pure = analyse(s.getDeclaration(), invoked);
+			analyse(s.getCondition(), invoked);
+			pure &= analyse(s.getIncrement(), invoked);
+			return analyse(s.getBody(), invoked) && pure;
+		} else if (stmt instanceof Stmt.While) {
+			Stmt.While s = (Stmt.While) stmt;
+			analyse(s.getCondition(), invoked);
+			return analyse(s.getBody(), invoked);
+		} else {
+			internalFailure("unknown statement encountered (" + stmt + ")",
+					file.filename, stmt);
+			return false; // dead code
+		}
+	}
+
+	public void analyse(Expr expr, Set<String> invoked) {
+		if (expr instanceof Expr.Binary) {
+			Expr.Binary e = (Expr.Binary) expr;
+			analyse(e.getLhs(), invoked);
+			analyse(e.getRhs(), invoked);
+		} else if (expr instanceof Expr.Cast) {
+			analyse(((Expr.Cast) expr).getSource(), invoked);
+		} else if (expr instanceof Expr.Constant) {
+			// Constants don't invoke anything
+		} else if (expr instanceof Expr.IndexOf) {
+			Expr.IndexOf e = (Expr.IndexOf) expr;
+			analyse(e.getSource(), invoked);
+			analyse(e.getIndex(), invoked);
+		} else if (expr instanceof Expr.Invoke) {
+			Expr.Invoke e = (Expr.Invoke) expr;
+			invoked.add(e.getName());
+			for (Expr arg : e.getArguments()) {
+				analyse(arg, invoked);
+			}
+		} else if (expr instanceof Expr.ListConstructor) {
+			for (Expr arg : ((Expr.ListConstructor) expr).getArguments()) {
+				analyse(arg, invoked);
+			}
+		} else if (expr instanceof Expr.RecordAccess) {
+			analyse(((Expr.RecordAccess) expr).getSource(), invoked);
+		} else if (expr instanceof Expr.RecordConstructor) {
+			for (Pair<String, Expr> p : ((Expr.RecordConstructor) expr)
+					.getFields()) {
+				analyse(p.second(), invoked);
+			}
+		} else if (expr instanceof Expr.Unary) {
+			analyse(((Expr.Unary) expr).getExpr(), invoked);
+		} else if (expr instanceof Expr.Variable) {
+			// Variables don't invoke anything
+		} else {
+			internalFailure("unknown expression encountered (" + expr + ")",
+					file.filename, expr);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang.util;
+
+import static whilelang.util.SyntaxError.internalFailure;
+
+import java.util.*;
+
+import whilelang.lang.Expr;
+import whilelang.lang.Stmt;
+import whilelang.lang.WhileFile;
+
+/**
+ * Responsible for assigning every local variable a fixed slot in the stack
+ * frame of its enclosing function. Parameters occupy the first slots (in
+ * declaration order), followed by one slot for each variable declaration in
+ * the function body. Every use of a local variable is then resolved to the
+ * slot of the declaration it refers to. Variables which are not resolved
+ * (e.g. references to constants) are left without a slot.
+ *
+ * @author agent
+ *
+ */
+public class SlotResolver {
+	private WhileFile file;
+	private int nextSlot;
+
+	public void resolve(WhileFile wf) {
+		this.file = wf;
+
+		for (WhileFile.Decl declaration : wf.declarations) {
+			if (declaration instanceof WhileFile.FunDecl) {
+				resolve((WhileFile.FunDecl) declaration);
+			}
+		}
+	}
+
+	public void resolve(WhileFile.FunDecl fd) {
+		// Only resolve a function once, since otherwise its slot attributes
+		// would be duplicated.
+		if (fd.attribute(Attribute.FrameSize.class) != null) {
+			return;
+		}
+		this.nextSlot = 0;
+
+		// First, allocate slots for the parameters.
+		HashMap<String, Integer> environment = new HashMap<String, Integer>();
+		for (WhileFile.Parameter p : fd.parameters) {
+			environment.put(p.name(), allocate(p));
+		}
+
+		// Second, allocate slots for all variables declared in the body.
+		resolve(fd.statements, environment);
+
+		fd.attributes().add(new Attribute.FrameSize(nextSlot));
+	}
+
+	/**
+	 * Resolve all variables in a given block of statements. Variables declared
+	 * within the block are scoped to the block and, hence, the environment is
+	 * cloned.
+	 *
+	 * @param statements
+	 *            The list of statements to resolve.
+	 * @param environment
+	 *            Map of variables in scope to their slots.
+	 */
+	public void resolve(List<Stmt> statements, Map<String, Integer> environment) {
+		environment = new HashMap<String, Integer>(environment);
+		for (Stmt s : statements) {
+			resolve(s, environment);
+		}
+	}
+
+	public void resolve(Stmt stmt, Map<String, Integer> environment) {
+		if (stmt instanceof Stmt.Assign) {
+			resolve((Stmt.Assign) stmt, environment);
+		} else if (stmt instanceof Stmt.Print) {
+			resolve(((Stmt.Print) stmt).getExpr(), environment);
+		} else if (stmt instanceof Stmt.Return) {
+			Expr e = ((Stmt.Return) stmt).getExpr();
+			if (e != null) {
+				resolve(e, environment);
+			}
+		} else if (stmt instanceof Stmt.VariableDeclaration) {
+			resolve((Stmt.VariableDeclaration) stmt, environment);
+		} else if (stmt instanceof Expr.Invoke) {
+			resolve((Expr.Invoke) stmt, environment);
+		} else if (stmt instanceof Stmt.IfElse) {
+			resolve((Stmt.IfElse) stmt, environment);
+		} else if (stmt instanceof Stmt.For) {
+			resolve((Stmt.For) stmt, environment);
+		} else if (stmt instanceof Stmt.While) {
+			resolve((Stmt.While) stmt, environment);
+		} else {
+			internalFailure("unknown statement encountered (" + stmt + ")",
+					file.filename, stmt);
+		}
+	}
+
+	public void resolve(Stmt.Assign stmt, Map<String, Integer> environment) {
+		resolve(stmt.getLhs(), environment);
+		resolve(stmt.getRhs(), environment);
+	}
+
+	public void resolve(Stmt.VariableDeclaration stmt,
+			Map<String, Integer> environment) {
+		// The initialiser is resolved before the variable comes into scope.
+		if (stmt.getExpr() != null) {
+			resolve(stmt.getExpr(), environment);
+		}
+		environment.put(stmt.getName(), allocate(stmt));
+	}
+
+	public void resolve(Stmt.IfElse stmt, Map<String, Integer> environment) {
+		resolve(stmt.getCondition(), environment);
+		resolve(stmt.getTrueBranch(), environment);
+		resolve(stmt.getFalseBranch(), environment);
+	}
+
+	public void resolve(Stmt.For stmt, Map<String, Integer> environment) {
+		// The loop variable is only scoped for the life of the loop itself.
+		environment = new HashMap<String, Integer>(environment);
+		resolve(stmt.getDeclaration(), environment);
+		resolve(stmt.getCondition(), environment);
+		resolve(stmt.getIncrement(), environment);
+		resolve(stmt.getBody(), environment);
+	}
+
+	public void resolve(Stmt.While stmt, Map<String, Integer> environment) {
+		resolve(stmt.getCondition(), environment);
+		resolve(stmt.getBody(), environment);
+	}
+
+	public void resolve(Expr expr, Map<String, Integer> environment) {
+		if (expr instanceof Expr.Binary) {
+			Expr.Binary e = (Expr.Binary) expr;
+			resolve(e.getLhs(), environment);
+			resolve(e.getRhs(), environment);
+		} else if (expr instanceof Expr.Cast) {
+			resolve(((Expr.Cast) expr).getSource(), environment);
+		} else if (expr instanceof Expr.Constant) {
+			// Constants don't refer to any variables
+		} else if (expr instanceof Expr.IndexOf) {
+			Expr.IndexOf e = (Expr.IndexOf) expr;
+			resolve(e.getSource(), environment);
+			resolve(e.getIndex(), environment);
+		} else if (expr instanceof Expr.Invoke) {
+			resolve((Expr.Invoke) expr, environment);
+		} else if (expr instanceof Expr.ListConstructor) {
+			for (Expr arg : ((Expr.ListConstructor) expr).getArguments()) {
+				resolve(arg, environment);
+			}
+		} else if (expr instanceof Expr.RecordAccess) {
+			resolve(((Expr.RecordAccess) expr).getSource(), environment);
+		} else if (expr instanceof Expr.RecordConstructor) {
+			for (Pair<String, Expr> p : ((Expr.RecordConstructor) expr)
+					.getFields()) {
+				resolve(p.second(), environment);
+			}
+		} else if (expr instanceof Expr.Unary) {
+			resolve(((Expr.Unary) expr).getExpr(), environment);
+		} else if (expr instanceof Expr.Variable) {
+			resolve((Expr.Variable) expr, environment);
+		} else {
+			internalFailure("unknown expression encountered (" + expr + ")",
+					file.filename, expr);
+		}
+	}
+
+	public void resolve(Expr.Invoke expr, Map<String, Integer> environment) {
+		for (Expr arg : expr.getArguments()) {
+			resolve(arg, environment);
+		}
+	}
+
+	public void resolve(Expr.Variable expr, Map<String, Integer> environment) {
+		Integer slot = environment.get(expr.getName());
+		if (slot != null) {
+			expr.attributes().add(new Attribute.Slot(slot));
+		}
+	}
+
+	private int allocate(SyntacticElement element) {
+		int slot = nextSlot++;
+		element.attributes().add(new Attribute.Slot(slot));
+		return slot;
+	}
+}
@@ -19,7 +19,6 @@
 package whilelang.util;
 
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A Syntactic Element represents any part of the file for which is relevant to
@@ -45,42 +44,140 @@ public interface SyntacticElement {
    */
   public <T extends Attribute> T attribute(Class<T> c);
 
+  /**
+   * Get the index of the stack frame slot assigned to this element, or -1 if
+   * it has not been assigned one. This avoids searching the attributes on
+   * every variable access.
+   * 
+   * @return
+   */
+  public int slot();
+
+  /**
+   * The standard implementation of a syntactic element. Since almost every
+   * element has a source attribute, and every checked expression has a type
+   * attribute, these are held in dedicated fields so they can be found without
+   * searching. The same goes for slot attributes, which are read on every
+   * variable access. Any other attributes are held in a list, which is only
+   * allocated when the first is added.
+   */
   public class Impl implements SyntacticElement {
 
-    private List<Attribute> attributes;
+    private Attribute.Source source;
+
+    private Attribute.Type type;
+
+    private Attribute.Slot slot;
+
+    private ArrayList<Attribute> others;
 
     public Impl() {
-      // I use copy on write here, since for the most part I don't expect
-      // attributes to change, and hence can be safely aliased. But, when they
-      // do change I need fresh copies.
-      attributes = new CopyOnWriteArrayList<Attribute>();
     }
 
     public Impl(Attribute x) {
-      attributes = new ArrayList<Attribute>();
-      attributes.add(x);
+      add(x);
     }
 
     public Impl(Collection<Attribute> attributes) {
-      this.attributes = new ArrayList<Attribute>(attributes);
+      for (Attribute a : attributes) {
+        add(a);
+      }
     }
 
     public Impl(Attribute[] attributes) {
-      this.attributes = new ArrayList<Attribute>(Arrays.asList(attributes));
+      for (Attribute a : attributes) {
+        add(a);
+      }
     }
 
+    /**
+     * Get the attributes of this element. The list returned is a view, which
+     * can be used to add attributes. Adding a source, type or slot attribute
+     * replaces any existing one.
+     */
     public List<Attribute> attributes() {
-      return attributes;
+      return new AbstractList<Attribute>() {
+        public Attribute get(int index) {
+          if (source != null && index-- == 0) {
+            return source;
+          } else if (type != null && index-- == 0) {
+            return type;
+          } else if (slot != null && index-- == 0) {
+            return slot;
+          } else if (others == null) {
+            throw new IndexOutOfBoundsException();
+          }
+          return others.get(index);
+        }
+
+        public int size() {
+          return (source != null ? 1 : 0) + (type != null ? 1 : 0)
+              + (slot != null ? 1 : 0) + (others != null ? others.size() : 0);
+        }
+
+        public void add(int index, Attribute a) {
+          Impl.this.add(a);
+          modCount++;
+        }
+
+        public Attribute remove(int index) {
+          Attribute a = get(index);
+          if (a == source) {
+            source = null;
+          } else if (a == type) {
+            type = null;
+          } else if (a == slot) {
+            slot = null;
+          } else {
+            others.remove(a);
+          }
+          modCount++;
+          return a;
+        }
+      };
     }
 
     @SuppressWarnings("unchecked")
     public <T extends Attribute> T attribute(Class<T> c) {
-      for (Attribute a : attributes) {
-        if (c.isInstance(a)) {
-          return (T) a;
+      if (c == Attribute.Source.class) {
+        return (T) source;
+      } else if (c == Attribute.Type.class) {
+        return (T) type;
+      } else if (c == Attribute.Slot.class) {
+        return (T) slot;
+      } else if (c.isInstance(source)) {
+        return (T) source;
+      } else if (c.isInstance(type)) {
+        return (T) type;
+      } else if (c.isInstance(slot)) {
+        return (T) slot;
+      } else if (others != null) {
+        for (Attribute a : others) {
+          if (c.isInstance(a)) {
+            return (T) a;
+          }
         }
       }
       return null;
     }
+
+    public int slot() {
+      return slot == null ? -1 : slot.index;
+    }
+
+    private void add(Attribute a) {
+      if (a instanceof Attribute.Source) {
+        source = (Attribute.Source) a;
+      } else if (a instanceof Attribute.Type) {
+        type = (Attribute.Type) a;
+      } else if (a instanceof Attribute.Slot) {
+        slot = (Attribute.Slot) a;
+      } else {
+        if (others == null) {
+          others = new ArrayList<Attribute>(1);
+        }
+        others.add(a);
+      }
+    }
   }
 }
@@ -5,6 +5,7 @@ import static whilelang.util.SyntaxError.internalFailure;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -25,39 +26,77 @@ import whilelang.lang.WhileFile.ConstDecl;
 public class TypeChecker {
 	private WhileFile file;
 	private WhileFile.FunDecl function;
-	private HashMap<String, WhileFile.FunDecl> functions;
-	private HashMap<String, WhileFile.TypeDecl> types;
-	private HashMap<String, WhileFile.ConstDecl> constants;
+
+	/**
+	 * Maps each type encountered to its canonical instance. Types are interned
+	 * before being attached to expressions, or being compared, such that the
+	 * results of comparing them can be remembered.
+	 */
+	private TypeInterner types = new TypeInterner();
+
+	/**
+	 * The result of every subtype check performed so far, indexed by the
+	 * (canonical) supertype and subtype.
+	 */
+	private HashMap<Pair<Type, Type>, Boolean> subtypes = new HashMap<Pair<Type, Type>, Boolean>();
+
+	/**
+	 * The depth of each subtype check currently in progress.
+	 */
+	private HashMap<Pair<Type, Type>, Integer> assumptions = new HashMap<Pair<Type, Type>, Integer>();
+
+	/**
+	 * The shallowest depth of any check in progress which was assumed to hold
+	 * by the checks below it, or <code>Integer.MAX_VALUE</code> if none was.
+	 */
+	private int assumed = Integer.MAX_VALUE;
+
+	/**
+	 * Every cast check performed so far, indexed by the (canonical) target and
+	 * source types.
+	 */
+	private HashSet<Pair<Type, Type>> casts = new HashSet<Pair<Type, Type>>();
+
+	/**
+	 * The type of every constant checked so far, indexed by name. A constant
+	 * which is currently being checked is mapped to <code>null</code>.
+	 */
+	private HashMap<String, Type> constants = new HashMap<String, Type>();
 
 	public void check(WhileFile wf) {
 		this.file = wf;
-		this.functions = new HashMap<String, WhileFile.FunDecl>();
-		this.types = new HashMap<String, WhileFile.TypeDecl>();
-		this.constants = new HashMap<String, WhileFile.ConstDecl>();
-
-		for (WhileFile.Decl declaration : wf.declarations) {
-			if (declaration instanceof WhileFile.FunDecl) {
-				WhileFile.FunDecl fd = (WhileFile.FunDecl) declaration;
-				this.functions.put(fd.name(), fd);
-			} else if (declaration instanceof WhileFile.TypeDecl) {
-				WhileFile.TypeDecl fd = (WhileFile.TypeDecl) declaration;
-				this.types.put(fd.name(), fd);
-			} else if (declaration instanceof WhileFile.ConstDecl) {
-				WhileFile.ConstDecl fd = (WhileFile.ConstDecl) declaration;
-				this.constants.put(fd.name(), fd);
-			}
-		}
+		// Named types are specific to a file, so nothing computed for a
+		// previous file can be reused.
+		this.types = new TypeInterner();
+		this.subtypes.clear();
+		this.casts.clear();
+		this.constants.clear();
 
 		for (WhileFile.Decl declaration : wf.declarations) {
 			if (declaration instanceof WhileFile.FunDecl) {
 				check((WhileFile.FunDecl) declaration);
 			}else if (declaration instanceof ConstDecl){
-				Type type = check(((ConstDecl)declaration).constant, null);
-				declaration.attributes().add(new Attribute.Type(type));
+				check((ConstDecl) declaration);
 			}
 		}
 	}
 
+	/**
+	 * Check a given constant declaration, unless this has already been done
+	 * (e.g. because the constant was referred to before being declared). In
+	 * either case, the constant's type is returned.
+	 */
+	public Type check(ConstDecl cd) {
+		if (constants.containsKey(cd.name())) {
+			return constants.get(cd.name());
+		}
+		constants.put(cd.name(), null);
+		Type type = check(cd.constant, new HashMap<String, Type>());
+		cd.attributes().add(new Attribute.Type(type));
+		constants.put(cd.name(), type);
+		return type;
+	}
+
 	public void check(WhileFile.FunDecl fd) {
 		this.function = fd;
 
@@ -220,6 +259,7 @@ public class TypeChecker {
 
 		// Save the type attribute so that subsequent stages can use it without
 		// having to recalculate it from scratch.
+		type = types.intern(type);
 		expr.attributes().add(new Attribute.Type(type));
 
 		return type;
@@ -317,7 +357,7 @@ public class TypeChecker {
 	}
 
 	public Type check(Expr.Invoke expr, Map<String, Type> environment) {
-		WhileFile.FunDecl fn = functions.get(expr.getName());
+		WhileFile.FunDecl fn = file.function(expr.getName());
 		List<Expr> arguments = expr.getArguments();
 		List<WhileFile.Parameter> parameters = fn.parameters;
 		if (arguments.size() != parameters.size()) {
@@ -412,9 +452,9 @@ public class TypeChecker {
 		Type type = environment.get(expr.getName());
 
 		if (type == null) {
-			ConstDecl cd = constants.get(expr.getName());
+			ConstDecl cd = file.constant(expr.getName());
 			if (cd != null) {
-				type = check(cd.constant, environment);
+				type = check(cd);
 			}
 		}
 
@@ -440,8 +480,8 @@ public class TypeChecker {
 
 		if (type instanceof Type.Named) {
 			Type.Named tn = (Type.Named) type;
-			if (types.containsKey(tn.getName())) {
-				Type body = types.get(tn.getName()).type;
+			if (file.type(tn.getName()) != null) {
+				Type body = file.type(tn.getName()).type;
 				return checkInstanceOf(body, element, instances);
 			} else {
 //				syntaxError("unknown type encountered: " + type, file.filename,
@@ -521,6 +561,40 @@ public class TypeChecker {
 	 *            Used for determining where to report syntax errors.
 	 */
 	public boolean isSubtype(Type t1, Type t2, SyntacticElement element) {
+		t1 = types.intern(t1);
+		t2 = types.intern(t2);
+		Pair<Type, Type> key = new Pair<Type, Type>(t1, t2);
+		Boolean result = subtypes.get(key);
+		if (result != null) {
+			return result;
+		}
+		Integer depth = assumptions.get(key);
+		if (depth != null) {
+			// This check is already in progress, meaning the types are
+			// recursive. In this case, it is assumed to hold.
+			assumed = Math.min(assumed, depth);
+			return true;
+		}
+		depth = assumptions.size();
+		int outer = assumed;
+		assumptions.put(key, depth);
+		assumed = Integer.MAX_VALUE;
+		result = isStructuralSubtype(t1, t2, element);
+		assumptions.remove(key);
+		// A result can only be remembered if it does not depend on the
+		// assumption that some check still in progress holds. A negative
+		// result never does, since assumptions only make more checks hold.
+		if (!result || assumed >= depth) {
+			subtypes.put(key, result);
+			assumed = outer;
+		} else {
+			assumed = Math.min(outer, assumed);
+		}
+		return result;
+	}
+
+	private boolean isStructuralSubtype(Type t1, Type t2,
+			SyntacticElement element) {
 		if (t2 instanceof Type.Void) {
 			// OK
 		} else if (t1 instanceof Type.Null && t2 instanceof Type.Null) {
@@ -563,8 +637,8 @@ public class TypeChecker {
 			}
 		} else if (t1 instanceof Type.Named) {
 			Type.Named tn = (Type.Named) t1;
-			if (types.containsKey(tn.getName())) {
-				Type body = types.get(tn.getName()).type;
+			if (file.type(tn.getName()) != null) {
+				Type body = file.type(tn.getName()).type;
 				return isSubtype(body, t2, element);
 			} else {
 //				syntaxError("unknown type encountered: " + t1, file.filename,
@@ -572,8 +646,8 @@ public class TypeChecker {
 			}
 		} else if (t2 instanceof Type.Named) {
 			Type.Named tn = (Type.Named) t2;
-			if (types.containsKey(tn.getName())) {
-				Type body = types.get(tn.getName()).type;
+			if (file.type(tn.getName()) != null) {
+				Type body = file.type(tn.getName()).type;
 				return isSubtype(t1, body, element);
 			} else {
 //				syntaxError("unknown type encountered: " + t2, file.filename,
@@ -625,6 +699,12 @@ public class TypeChecker {
 	 *            Used for determining where to report syntax errors.
 	 */
 	public void checkCast(Type t1, Type t2, SyntacticElement element) {
+		t1 = types.intern(t1);
+		t2 = types.intern(t2);
+		if (!casts.add(new Pair<Type, Type>(t1, t2))) {
+			// Already checked, or in progress (for recursive types).
+			return;
+		}
 		if (t1 instanceof Type.Null && t2 instanceof Type.Null) {
 			// OK
 		} else if (t1 instanceof Type.Bool && t2 instanceof Type.Bool) {
@@ -660,8 +740,8 @@ public class TypeChecker {
 			}
 		} else if (t1 instanceof Type.Named) {
 			Type.Named tn = (Type.Named) t1;
-			if (types.containsKey(tn.getName())) {
-				Type body = types.get(tn.getName()).type;
+			if (file.type(tn.getName()) != null) {
+				Type body = file.type(tn.getName()).type;
 				checkCast(body, t2, element);
 			} else {
 //				syntaxError("unknown type encountered: " + t1, file.filename,
@@ -669,8 +749,8 @@ public class TypeChecker {
 			}
 		} else if (t2 instanceof Type.Named) {
 			Type.Named tn = (Type.Named) t2;
-			if (types.containsKey(tn.getName())) {
-				Type body = types.get(tn.getName()).type;
+			if (file.type(tn.getName()) != null) {
+				Type body = file.type(tn.getName()).type;
 				checkCast(t1, body, element);
 			} else {
 //				syntaxError("unknown type encountered: " + t2, file.filename,
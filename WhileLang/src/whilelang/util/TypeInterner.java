@@ -0,0 +1,192 @@
+// This file is part of the WhileLang Compiler (wlc).
+//
+// The WhileLang Compiler is free software; you can redistribute
+// it and/or modify it under the terms of the GNU General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The WhileLang Compiler is distributed in the hope that it
+// will be useful, but WITHOUT ANY WARRANTY; without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE. See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public
+// License along with the WhileLang Compiler. If not, see
+// <http://www.gnu.org/licenses/>
+//
+// Copyright 2026, agent.
+
+package whilelang.util;
+
+import java.util.*;
+
+import whilelang.lang.Type;
+
+/**
+ * <p>
+ * Responsible for mapping each <code>Type</code> to a canonical instance, such
+ * that two types are structurally identical if and only if their canonical
+ * instances are the same object. This allows types to be compared (and used
+ * as keys) by reference. Canonical instances carry no attributes, since they
+ * are shared between many occurrences of the same type.
+ * </p>
+ *
+ * <p>
+ * Types are compared purely structurally: named types are identified by name
+ * (i.e. they are not expanded), the order of fields in a record is ignored
+ * and the order of bounds in a union is preserved.
+ * </p>
+ *
+ * @author agent
+ *
+ */
+public class TypeInterner {
+
+	/**
+	 * The canonical instance of every type interned so far, indexed by its
+	 * structure.
+	 */
+	private final HashMap<Key, Type> canonical = new HashMap<Key, Type>();
+
+	/**
+	 * The canonical instance of every type instance interned so far. This
+	 * means interning the same instance again (e.g. the declared type of a
+	 * variable) does not require its structure to be examined.
+	 */
+	private final IdentityHashMap<Type, Type> interned = new IdentityHashMap<Type, Type>();
+
+	/**
+	 * Get the canonical instance of a given type.
+	 *
+	 * @param type
+	 *            The type to intern, which may be <code>null</code>.
+	 * @return
+	 */
+	public Type intern(Type type) {
+		if (type == null) {
+			return null;
+		}
+		Type c = interned.get(type);
+		if (c == null) {
+			c = canonicalise(type);
+			interned.put(type, c);
+			interned.put(c, c);
+		}
+		return c;
+	}
+
+	private Type canonicalise(Type type) {
+		if (type instanceof Type.Named) {
+			String name = ((Type.Named) type).getName();
+			Key key = new Key(Type.Named.class, name);
+			Type c = canonical.get(key);
+			if (c == null) {
+				c = new Type.Named(name);
+				canonical.put(key, c);
+			}
+			return c;
+		} else if (type instanceof Type.List) {
+			Type element = intern(((Type.List) type).getElement());
+			Key key = new Key(Type.List.class, element);
+			Type c = canonical.get(key);
+			if (c == null) {
+				c = new Type.List(element);
+				canonical.put(key, c);
+			}
+			return c;
+		} else if (type instanceof Type.Record) {
+			Map<String, Type> fields = ((Type.Record) type).getFields();
+			ArrayList<String> names = new ArrayList<String>(fields.keySet());
+			Collections.sort(names);
+			Object[] parts = new Object[names.size() * 2];
+			HashMap<String, Type> cfields = new HashMap<String, Type>();
+			for (int i = 0; i != names.size(); ++i) {
+				String name = names.get(i);
+				Type field = intern(fields.get(name));
+				parts[i * 2] = name;
+				parts[(i * 2) + 1] = field;
+				cfields.put(name, field);
+			}
+			Key key = new Key(Type.Record.class, parts);
+			Type c = canonical.get(key);
+			if (c == null) {
+				c = new Type.Record(cfields);
+				canonical.put(key, c);
+			}
+			return c;
+		} else if (type instanceof Type.Union) {
+			java.util.List<Type> bounds = ((Type.Union) type).getBounds();
+			ArrayList<Type> cbounds = new ArrayList<Type>(bounds.size());
+			for (Type bound : bounds) {
+				cbounds.add(intern(bound));
+			}
+			Key key = new Key(Type.Union.class, cbounds.toArray());
+			Type c = canonical.get(key);
+			if (c == null) {
+				c = new Type.Union(cbounds);
+				canonical.put(key, c);
+			}
+			return c;
+		} else {
+			// The remaining types have no structure beyond their kind.
+			Key key = new Key(type.getClass());
+			Type c = canonical.get(key);
+			if (c == null) {
+				c = primitive(type);
+				canonical.put(key, c);
+			}
+			return c;
+		}
+	}
+
+	private static Type primitive(Type type) {
+		if (type instanceof Type.Void) {
+			return new Type.Void();
+		} else if (type instanceof Type.Null) {
+			return new Type.Null();
+		} else if (type instanceof Type.Bool) {
+			return new Type.Bool();
+		} else if (type instanceof Type.Char) {
+			return new Type.Char();
+		} else if (type instanceof Type.Int) {
+			return new Type.Int();
+		} else if (type instanceof Type.Real) {
+			return new Type.Real();
+		} else if (type instanceof Type.Strung) {
+			return new Type.Strung();
+		} else {
+			throw new IllegalArgumentException("unknown type encountered ("
+					+ type + ")");
+		}
+	}
+
+	/**
+	 * The structure of a type, given by its kind and its components. The
+	 * components are either names, or canonical types which are compared by
+	 * reference.
+	 *
+	 * @author agent
+	 *
+	 */
+	private static final class Key {
+		private final Class<?> kind;
+		private final Object[] parts;
+
+		public Key(Class<?> kind, Object... parts) {
+			this.kind = kind;
+			this.parts = parts;
+		}
+
+		public int hashCode() {
+			return kind.hashCode() ^ Arrays.hashCode(parts);
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof Key) {
+				Key k = (Key) o;
+				return kind == k.kind && Arrays.equals(parts, k.parts);
+			}
+			return false;
+		}
+	}
+}